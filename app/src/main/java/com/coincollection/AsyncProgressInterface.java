@@ -34,6 +34,13 @@ public interface AsyncProgressInterface {
      */
     void asyncProgressOnPreExecute();
 
+    /**
+     * Method to perform on the UI thread when the async task reports progress
+     * @param progress amount of work done
+     * @param max total amount of work
+     */
+    void asyncProgressOnProgressUpdate(int progress, int max);
+
     /**
      * Method to perform on the UI thread after of the async task
      * This method should check the
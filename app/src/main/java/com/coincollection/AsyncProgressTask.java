@@ -28,7 +28,7 @@ import android.os.AsyncTask;
 // TODO For passing the AsyncTask between Activity instances, see this post:
 // http://www.androiddesignpatterns.com/2013/04/retaining-objects-across-config-changes.html
 // Our method is subject to the race conditions described therein :O
-class AsyncProgressTask extends AsyncTask<Void, Void, Void>
+class AsyncProgressTask extends AsyncTask<Void, Integer, Void>
 {
     AsyncProgressInterface mListener;
     int mAsyncTaskId = 0;
@@ -70,6 +70,29 @@ class AsyncProgressTask extends AsyncTask<Void, Void, Void>
             }
         }
     }
+    /**
+     * Reports progress to the listener on the UI thread. This may be called from
+     * asyncProgressDoInBackground, including when it's run on the UI thread (unit tests).
+     * @param progress amount of work done
+     * @param max total amount of work
+     */
+    void reportProgress(int progress, int max) {
+        if (getStatus() == Status.RUNNING) {
+            publishProgress(progress, max);
+        } else if (mListener != null) {
+            // Not executing, so this is already on the UI thread
+            mListener.asyncProgressOnProgressUpdate(progress, max);
+        }
+    }
+    @Override
+    protected void onProgressUpdate( Integer... values )
+    {
+        super.onProgressUpdate(values);
+        // Progress is only informational, so skip it if the activity isn't ready
+        if (mListener != null) {
+            mListener.asyncProgressOnProgressUpdate(values[0], values[1]);
+        }
+    }
     @Override
     protected void onPostExecute( Void result )
     {
@@ -57,10 +57,15 @@ public class BaseActivity extends AppCompatActivity implements AsyncProgressInte
     public static final int TASK_IMPORT_COLLECTIONS = 1;
     public static final int TASK_CREATE_UPDATE_COLLECTION = 2;
     public static final int TASK_EXPORT_COLLECTIONS = 3;
+    public static final int TASK_SAVE_ADV_INFO = 4;
+    public static final int TASK_LOAD_STATISTICS = 5;
+    public static final int TASK_DATABASE_MAINTENANCE = 6;
 
     // Common activity variables
     protected final Context mContext = this;
     protected ProgressDialog mProgressDialog;
+    private String mProgressDialogMessage;
+    private boolean mProgressDialogIsDeterminate = false;
     public Resources mRes;
     protected Intent mCallingIntent;
     public DatabaseAdapter mDbAdapter = null;
@@ -152,6 +157,24 @@ public class BaseActivity extends AppCompatActivity implements AsyncProgressInte
     @Override
     public void asyncProgressOnPreExecute() { }
 
+    /**
+     * This is called on the UI thread when the async task reports progress. By default,
+     * this switches the progress dialog (if shown) to show the progress.
+     * @param progress amount of work done
+     * @param max total amount of work
+     */
+    @Override
+    public void asyncProgressOnProgressUpdate(int progress, int max) {
+        if (mProgressDialog == null) {
+            return;
+        }
+        if (!mProgressDialogIsDeterminate) {
+            createProgressDialog(mProgressDialogMessage, true);
+        }
+        mProgressDialog.setMax(max);
+        mProgressDialog.setProgress(progress);
+    }
+
     /**
      * This should be overridden by Activities that use the AsyncTask
      * - This is method is called on the UI thread after executing DoInBackground
@@ -218,13 +241,24 @@ public class BaseActivity extends AppCompatActivity implements AsyncProgressInte
      * Create a new progress dialog
      */
     protected void createProgressDialog(String message){
+        createProgressDialog(message, false);
+    }
+
+    /**
+     * Create a new progress dialog
+     * @param message message to display
+     * @param isDeterminate if true, shows a progress bar instead of a spinner
+     */
+    protected void createProgressDialog(String message, boolean isDeterminate){
         dismissProgressDialog();
         mProgressDialog = new ProgressDialog(this);
         mProgressDialog.setCancelable(false);
         mProgressDialog.setMessage(message);
-        mProgressDialog.setProgressStyle(ProgressDialog.STYLE_SPINNER);
+        mProgressDialog.setProgressStyle(isDeterminate ? ProgressDialog.STYLE_HORIZONTAL : ProgressDialog.STYLE_SPINNER);
         mProgressDialog.setProgress(0);
         mProgressDialog.show();
+        mProgressDialogMessage = message;
+        mProgressDialogIsDeterminate = isDeterminate;
     }
 
     /**
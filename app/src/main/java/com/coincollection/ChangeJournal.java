@@ -0,0 +1,126 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import android.database.Cursor;
+
+/**
+ * Change journal kept in the database. A row is appended for each change to a coin or a
+ * collection, in the same transaction as the change, so the journal only records changes
+ * that were committed. Rows are read in order of their id, which always increases, so a
+ * reader can keep the id of the last row it read and later read only the rows after it.
+ */
+public class ChangeJournal {
+
+    // Database keys
+    public final static String TBL_CHANGE_JOURNAL = "change_journal";
+    public final static String COL_JOURNAL_ID = "_id";
+    public final static String COL_JOURNAL_TIME = "time";
+    public final static String COL_JOURNAL_OP = "op";
+    public final static String COL_JOURNAL_COLLECTION = "collection";
+    public final static String COL_JOURNAL_COIN_ID = "coinId";
+    public final static String COL_JOURNAL_VALUE = "value";
+
+    // Only the most recent entries are kept
+    public final static int MAX_JOURNAL_ENTRIES = 10000;
+
+    // Changes to more coins than this at once are journaled as a single collection entry
+    public final static int MAX_COIN_ENTRIES_PER_CHANGE = 100;
+
+    // Types of change. The value column holds the detail noted for each, or null.
+    /** Coin collected or not. Value: "1" if now in the collection, otherwise "0" */
+    public final static int OP_SET_IN_COLLECTION = 1;
+    /** Coin grade, quantity, notes or collected state updated */
+    public final static int OP_UPDATE_ADV_INFO = 2;
+    /** Coin added. Value: coin identifier */
+    public final static int OP_ADD_COIN = 3;
+    /** Coin removed. Value: coin identifier, or null if not known (Ex: removed by an import) */
+    public final static int OP_REMOVE_COIN = 4;
+    /** Coin identifier, mint or sort order changed, or coin replaced by an import. Value: coin identifier */
+    public final static int OP_UPDATE_COIN = 5;
+    /** Coin sort orders renumbered */
+    public final static int OP_REORDER_COINS = 6;
+    /** Collection created. Also used for copies and imports */
+    public final static int OP_CREATE_COLLECTION = 7;
+    /** Collection deleted */
+    public final static int OP_DELETE_COLLECTION = 8;
+    /** Collection renamed. The collection is the new name. Value: old name */
+    public final static int OP_RENAME_COLLECTION = 9;
+    /** Collection settings or coin list changed, so any of its coins may have changed */
+    public final static int OP_UPDATE_COLLECTION = 10;
+    /** Collection display orders changed. No collection is given */
+    public final static int OP_REORDER_COLLECTIONS = 11;
+
+    /**
+     * Journal row
+     */
+    public static class Entry {
+        private final long mId;
+        private final long mTimeMillis;
+        private final int mOp;
+        private final String mCollectionName;
+        private final long mCoinId;
+        private final String mValue;
+
+        /**
+         * Reads the entry at the current position of a cursor from getJournalEntries
+         * @param cursor cursor
+         */
+        public Entry(Cursor cursor) {
+            mId = cursor.getLong(cursor.getColumnIndexOrThrow(COL_JOURNAL_ID));
+            mTimeMillis = cursor.getLong(cursor.getColumnIndexOrThrow(COL_JOURNAL_TIME));
+            mOp = cursor.getInt(cursor.getColumnIndexOrThrow(COL_JOURNAL_OP));
+            mCollectionName = cursor.getString(cursor.getColumnIndexOrThrow(COL_JOURNAL_COLLECTION));
+            mCoinId = cursor.getLong(cursor.getColumnIndexOrThrow(COL_JOURNAL_COIN_ID));
+            mValue = cursor.getString(cursor.getColumnIndexOrThrow(COL_JOURNAL_VALUE));
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public int getOp() {
+            return mOp;
+        }
+
+        /**
+         * @return collection name, or null if the change isn't for one collection
+         */
+        public String getCollectionName() {
+            return mCollectionName;
+        }
+
+        /**
+         * @return coin database id, or 0 if the change isn't for one coin
+         */
+        public long getCoinId() {
+            return mCoinId;
+        }
+
+        public String getValue() {
+            return mValue;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.CoinSlot.COL_COIN_IDENTIFIER;
+import static com.coincollection.CoinSlot.COL_COIN_MINT;
+import static com.coincollection.CoinSlot.COL_IN_COLLECTION;
+import static com.coincollection.CoinSlot.COL_SORT_ORDER;
+import static com.coincollection.CollectionListInfo.COL_END_YEAR;
+import static com.coincollection.CollectionListInfo.COL_NAME;
+import static com.coincollection.CollectionListInfo.TBL_COLLECTION_INFO;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects the coins to append to a collection during a database upgrade so that they can
+ * be written together.
+ *
+ * The add methods follow the same rules as DatabaseHelper.addFromYear and addFromArrayList,
+ * including skipping years if the collection has an earlier end year, but nothing is written
+ * until apply() is called. apply() then looks up the next sort order once, inserts all the
+ * coins with a single compiled statement, and updates the collection's end year once.
+ */
+public class CoinAppendPlanner {
+
+    private final CollectionListInfo mCollectionListInfo;
+    private final ArrayList<String[]> mPlannedCoins = new ArrayList<>();
+    private int mPlannedEndYear;
+    private boolean mEndYearChanged = false;
+
+    /**
+     * Constructor
+     * @param collectionListInfo the collection info
+     */
+    public CoinAppendPlanner(CollectionListInfo collectionListInfo) {
+        mCollectionListInfo = collectionListInfo;
+        mPlannedEndYear = collectionListInfo.getEndYear();
+    }
+
+    /**
+     * Plan coins for the new year for the "P", "D", and "" mint marks
+     * @param year coin year
+     */
+    public void addFromYear(int year) {
+        addFromYear(year - 1, year, String.valueOf(year));
+    }
+
+    /**
+     * Plan coins for the new year for the "P", "D", and "" mint marks
+     * @param previousYear previous year to look for to know if this coin should be added
+     * @param year coin year
+     * @param identifier identifier of the coin to add
+     */
+    public void addFromYear(int previousYear, int year, String identifier) {
+        ArrayList<String> mintList = new ArrayList<>(Arrays.asList("P", "D"));
+        addFromYear(previousYear, year, identifier, mintList);
+    }
+
+    /**
+     * Plan coins for the new year, based on the collection parameters
+     * @param previousYear previous year to look for to know if this coin should be added
+     * @param year coin year
+     * @param identifier identifier of the coin to add
+     * @param mintsToAdd list of the mint marks to add
+     */
+    public void addFromYear(int previousYear, int year, String identifier,
+                            ArrayList<String> mintsToAdd) {
+        // Skip adding if the collection has an earlier end date
+        if (previousYear != mPlannedEndYear) {
+            return;
+        }
+        addIdentifier(identifier, mintsToAdd);
+        mPlannedEndYear = year;
+        mEndYearChanged = true;
+    }
+
+    /**
+     * Plan coins based on collection creation parameters
+     * @param values the ArrayList containing coinIdentifier values to add
+     */
+    public void addFromArrayList(ArrayList<String> values) {
+        for (String value : values) {
+            addIdentifier(value, null);
+        }
+    }
+
+    /**
+     * Plan a coin for each mint mark shown in the collection
+     * @param identifier identifier of the coin to add
+     * @param mintsToAdd list of the mint marks to add, or null to add all mint marks
+     */
+    private void addIdentifier(String identifier, ArrayList<String> mintsToAdd) {
+        if (mCollectionListInfo.hasMintMarks()) {
+            for (String flagStr : CollectionListInfo.MINT_STRING_TO_FLAGS.keySet()) {
+                Integer mintFlag = CollectionListInfo.MINT_STRING_TO_FLAGS.get(flagStr);
+                if (mintsToAdd != null && !mintsToAdd.contains(flagStr)) {
+                    continue;
+                }
+                if (mintFlag != null && ((mCollectionListInfo.getMintMarkFlags() & mintFlag) != 0)) {
+                    mPlannedCoins.add(new String[]{identifier, flagStr});
+                }
+            }
+        } else {
+            mPlannedCoins.add(new String[]{identifier, ""});
+        }
+    }
+
+    /**
+     * @return number of coins planned so far
+     */
+    public int getPlannedCoinCount() {
+        return mPlannedCoins.size();
+    }
+
+    /**
+     * Writes the planned coins and the new end year to the database. The plan is cleared
+     * afterward, so the planner can be reused.
+     * @param db database
+     * @return total number of coins added
+     * @throws SQLException if a database error occurred
+     */
+    public int apply(SQLiteDatabase db) throws SQLException {
+        int total = 0;
+        String tableName = mCollectionListInfo.getName();
+
+        if (!mPlannedCoins.isEmpty()) {
+            int newSortOrder = DatabaseHelper.getNextCoinSortOrder(db, tableName);
+            String sqlCmd = "INSERT INTO [" + tableName + "] (" + COL_COIN_IDENTIFIER + ", "
+                    + COL_COIN_MINT + ", " + COL_IN_COLLECTION + ", " + COL_SORT_ORDER
+                    + ") VALUES (?, ?, 0, ?)";
+            SQLiteStatement compiledStatement = db.compileStatement(sqlCmd);
+            db.beginTransaction();
+            try {
+                for (String[] coin : mPlannedCoins) {
+                    compiledStatement.bindString(1, coin[0]);
+                    compiledStatement.bindString(2, coin[1]);
+                    compiledStatement.bindLong(3, newSortOrder++);
+                    try {
+                        if (compiledStatement.executeInsert() != -1) {
+                            total++;
+                        }
+                    } catch (SQLException e) {
+                        // Matches SQLiteDatabase.insert(), which skips rows that fail
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                compiledStatement.close();
+            }
+            mPlannedCoins.clear();
+        }
+
+        // Update the collection's end year
+        if (mEndYearChanged) {
+            ContentValues updateValues = new ContentValues();
+            updateValues.put(COL_END_YEAR, mPlannedEndYear);
+            DatabaseHelper.runSqlUpdate(db, TBL_COLLECTION_INFO, updateValues, COL_NAME + "=?",
+                    new String[] { tableName });
+            mCollectionListInfo.setEndYear(mPlannedEndYear);
+            mEndYearChanged = false;
+        }
+        return total;
+    }
+}
@@ -942,6 +942,13 @@ public class CoinPageCreator extends BaseActivity {
                 }
             }
 
+            // The kept coins may have been renumbered with gaps (Ex: after copying a coin),
+            // while the new coins are numbered by their index, so renumber the merged list
+            // by position to keep the two from interleaving
+            for (int i = 0; i < mergedCoinList.size(); i++) {
+                mergedCoinList.get(i).setSortOrder(i * DatabaseAdapter.COIN_SORT_ORDER_GAP);
+            }
+
             // Replace the coin list with the merged coin list
             mCoinList = mergedCoinList;
         }
@@ -1025,8 +1032,10 @@ public class CoinPageCreator extends BaseActivity {
         }
         int mintMarkFlags = getMintMarkFlagsFromParameters(mParameters);
         int checkboxFlags = getCheckboxFlagsFromParameters(mParameters);
+        // The display type is changed from the collection page without updating the
+        // info passed in, so read the current one from the database
         int displayType = (mExistingCollection != null)
-                ? mExistingCollection.getDisplayType() : SIMPLE_DISPLAY;
+                ? mDbAdapter.fetchTableDisplay(mExistingCollection.getName()) : SIMPLE_DISPLAY;
         Integer startYear = (Integer) mParameters.get(OPT_START_YEAR);
         Integer stopYear = (Integer) mParameters.get(OPT_STOP_YEAR);
         return new CollectionListInfo(
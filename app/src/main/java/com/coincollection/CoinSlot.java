@@ -56,6 +56,9 @@ public class CoinSlot implements Parcelable {
     private Integer mAdvancedQuantities = 0;
     private String mAdvancedNotes = "";
 
+    /** Whether the advanced info has been read from the database (or set for a new coin) */
+    private boolean mAdvInfoLoaded = true;
+
     /** Sort order **/
     private int mSortOrder;
 
@@ -94,8 +97,8 @@ public class CoinSlot implements Parcelable {
      * @param sortOrder sort order in the collection
      * @param customCoin whether the coin was manually added by the user
      */
-    public CoinSlot (long databaseId, String identifier, String mint, boolean inCollection, Integer advancedGrades,
-                     Integer advancedQuantities, String advancedNotes, int sortOrder, boolean customCoin) {
+    public CoinSlot (long databaseId, String identifier, String mint, boolean inCollection, int advancedGrades,
+                     int advancedQuantities, String advancedNotes, int sortOrder, boolean customCoin) {
         mDatabaseId = databaseId;
         mIdentifier = identifier;
         mMint = mint;
@@ -108,7 +111,8 @@ public class CoinSlot implements Parcelable {
     }
 
     /**
-     * Constructor used when pulling the collection from the database, without advanced info
+     * Constructor used when pulling the collection from the database, without advanced info.
+     * The advanced info is marked as not loaded.
      * @param databaseId id of the coin in the database
      * @param identifier coin name
      * @param mint coin mint
@@ -123,6 +127,7 @@ public class CoinSlot implements Parcelable {
         mInCollection = inCollection;
         mSortOrder = sortOrder;
         mCustomCoin = customCoin;
+        mAdvInfoLoaded = false;
     }
 
     /**
@@ -181,10 +186,42 @@ public class CoinSlot implements Parcelable {
         return this.isInCollection() ? R.string.collected : R.string.missing;
     }
 
-    boolean hasAdvInfoChanged() {
+    public boolean hasAdvInfoChanged() {
         return mAdvInfoHasChanged;
     }
 
+    /**
+     * @return true if the advanced info has been loaded. If false, the advanced info has the
+     *         default values rather than the values in the database.
+     */
+    public boolean isAdvInfoLoaded() {
+        return mAdvInfoLoaded;
+    }
+
+    /**
+     * Sets the advanced info read from the database
+     * @param advancedGrades coin grade info
+     * @param advancedQuantities coin quantity info
+     * @param advancedNotes coin notes
+     */
+    void setAdvInfoFromDatabase(int advancedGrades, int advancedQuantities, String advancedNotes) {
+        mAdvancedGrades = advancedGrades;
+        mAdvancedQuantities = advancedQuantities;
+        mAdvancedNotes = advancedNotes;
+        mAdvInfoLoaded = true;
+    }
+
+    /**
+     * Resets the advanced info to the defaults to free up memory. The advanced info must be
+     * loaded again before it's used.
+     */
+    void clearAdvInfo() {
+        mAdvancedGrades = 0;
+        mAdvancedQuantities = 0;
+        mAdvancedNotes = "";
+        mAdvInfoLoaded = false;
+    }
+
     public Integer getAdvancedGrades() {
         return mAdvancedGrades;
     }
@@ -282,6 +319,10 @@ public class CoinSlot implements Parcelable {
     public void writeToJson(JsonWriter writer) throws IOException {
 
         writer.beginObject();
+        if (mDatabaseId != 0) {
+            // Written so that later change exports can refer to the coin
+            writer.name(COL_COIN_ID).value(mDatabaseId);
+        }
         writer.name(COL_COIN_IDENTIFIER).value(mIdentifier);
         writer.name(COL_COIN_MINT).value(mMint);
         writer.name(COL_IN_COLLECTION).value(mInCollection);
@@ -301,6 +342,7 @@ public class CoinSlot implements Parcelable {
      */
     public CoinSlot(JsonReader reader, int coinIndex) throws IOException {
 
+        long databaseId = 0;
         String identifier = "";
         String mint = "";
         boolean inCollection = false;
@@ -314,6 +356,9 @@ public class CoinSlot implements Parcelable {
         while (reader.hasNext()) {
             String name = reader.nextName();
             switch (name) {
+                case COL_COIN_ID:
+                    databaseId = reader.nextLong();
+                    break;
                 case COL_COIN_IDENTIFIER:
                     identifier = reader.nextString();
                     break;
@@ -345,6 +390,7 @@ public class CoinSlot implements Parcelable {
         }
         reader.endObject();
 
+        mDatabaseId = databaseId;
         mIdentifier = identifier;
         mMint = mint;
         mInCollection = inCollection;
@@ -421,6 +467,7 @@ public class CoinSlot implements Parcelable {
             mAdvancedQuantities = in.readInt();
         }
         mAdvancedNotes = in.readString();
+        mAdvInfoLoaded = in.readByte() != 0;
         mSortOrder = in.readInt();
         mCustomCoin = in.readByte() != 0;
     }
@@ -462,6 +509,7 @@ public class CoinSlot implements Parcelable {
             dest.writeInt(mAdvancedQuantities);
         }
         dest.writeString(mAdvancedNotes);
+        dest.writeByte((byte) (mAdvInfoLoaded ? 1 : 0));
         dest.writeInt(mSortOrder);
         dest.writeByte((byte) (mCustomCoin ? 1 : 0));
     }
@@ -41,7 +41,7 @@ import android.widget.Toast;
 import com.spencerpages.MainApplication;
 import com.spencerpages.R;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * BaseAdapter for the collection pages
@@ -58,7 +58,8 @@ class CoinSlotAdapter extends BaseAdapter {
     private final CollectionInfo mCollectionTypeObj;
     private String mTableName;
 
-    private final ArrayList<CoinSlot> mCoinList;
+    private List<CoinSlot> mCoinList;
+    private final CoinSlotAdvInfoLoader mAdvInfoLoader;
 
     private OnItemSelectedListener mGradeOnItemSelectedListener = null;
     private ArrayAdapter<CharSequence> mGradeArrayAdapter;
@@ -79,8 +80,10 @@ class CoinSlotAdapter extends BaseAdapter {
      * @param tableName The collection name
      * @param collectionTypeObj The backing object in the COLLECTION_TYPE list
      * @param coinList The list of coins
+     * @param advInfoLoader Loader for the advanced info of coins as they're displayed
      */
-    CoinSlotAdapter(CollectionPage context, String tableName, CollectionInfo collectionTypeObj, ArrayList<CoinSlot> coinList, int displayType) {
+    CoinSlotAdapter(CollectionPage context, String tableName, CollectionInfo collectionTypeObj, List<CoinSlot> coinList,
+                    CoinSlotAdvInfoLoader advInfoLoader, int displayType) {
         // Used for State, National Park, Presidential Coins, and Native American coins
         // and Pennies, Nickels, American Innovation Dollars
         super();
@@ -88,6 +91,7 @@ class CoinSlotAdapter extends BaseAdapter {
         mTableName = tableName;
         mCollectionTypeObj = collectionTypeObj;
         mCoinList = coinList;
+        mAdvInfoLoader = advInfoLoader;
         mDisplayType = displayType;
 
         mRes = mCollectionPageContext.getResources();
@@ -103,6 +107,15 @@ class CoinSlotAdapter extends BaseAdapter {
         mTableName = tableName;
     }
 
+    /**
+     * Sets the coin list, such as after it's read from the database again
+     * @param coinList Coin list
+     */
+    void setCoinList(List<CoinSlot> coinList){
+        mCoinList = coinList;
+        notifyDataSetChanged();
+    }
+
     @Override
     public int getCount() {
         return mCoinList.size();
@@ -212,10 +225,7 @@ class CoinSlotAdapter extends BaseAdapter {
                     // Update the data structure and set index changed
                     // - Changes will be committed to the database when the user presses save
                     coinSlot.setAdvancedGrades(pos);
-                    coinSlot.setAdvInfoChanged(true);
-
-                    // Tell the parent page to show the unsaved changes view
-                    mCollectionPageContext.showUnsavedTextView();
+                    mCollectionPageContext.onCoinSlotAdvInfoChanged(coinSlot);
                 }
             }
             public void onNothingSelected(AdapterView<?> parent) {}
@@ -240,10 +250,7 @@ class CoinSlotAdapter extends BaseAdapter {
                     // Update the data structure and set index changed
                     // - Changes will be committed to the database when the user presses save
                     coinSlot.setAdvancedQuantities(pos);
-                    coinSlot.setAdvInfoChanged(true);
-
-                    // Tell the parent page to show the unsaved changes view
-                    mCollectionPageContext.showUnsavedTextView();
+                    mCollectionPageContext.onCoinSlotAdvInfoChanged(coinSlot);
                 }
             }
 
@@ -259,7 +266,8 @@ class CoinSlotAdapter extends BaseAdapter {
      */
     private void setupAdvancedView(View coinView, int position, boolean coinViewWasRecycled) {
 
-        // Get the coin slot at the position in the list
+        // Get the coin slot at the position in the list, loading its advanced info if needed
+        mAdvInfoLoader.loadForPosition(mCoinList, position);
         CoinSlot coinSlot = mCoinList.get(position);
 
         // Set up on-click listeners for the image
@@ -278,13 +286,10 @@ class CoinSlotAdapter extends BaseAdapter {
                 CoinSlot viewTagCoinSlot = (CoinSlot) view.getTag();
                 boolean oldValue = viewTagCoinSlot.isInCollection();
                 viewTagCoinSlot.setInCollection(!oldValue);
-                viewTagCoinSlot.setAdvInfoChanged(true);
+                mCollectionPageContext.onCoinSlotAdvInfoChanged(viewTagCoinSlot);
 
                 // Notify the adapter to re-draw the view
                 CoinSlotAdapter.this.notifyDataSetChanged();
-
-                // Tell the parent page to show the unsaved changes view
-                mCollectionPageContext.showUnsavedTextView();
             }
         });
 
@@ -404,9 +409,6 @@ class CoinSlotAdapter extends BaseAdapter {
         // Update the data structure and set index changed
         // - Changes will be committed to the database when the user presses save
         coinSlot.setAdvancedNotes(newText);
-        coinSlot.setAdvInfoChanged(true);
-
-        // Tell the parent page to show the unsaved changes view
-        mCollectionPageContext.showUnsavedTextView();
+        mCollectionPageContext.onCoinSlotAdvInfoChanged(coinSlot);
     }
 }
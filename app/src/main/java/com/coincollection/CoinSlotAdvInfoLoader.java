@@ -0,0 +1,133 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import android.database.SQLException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the advanced info (grade, quantity and notes) for coins as they're displayed.
+ *
+ * The coin list is loaded without the advanced info, and when a coin is displayed its
+ * advanced info is read along with that of the coins around it in a single query. Only the
+ * most recently displayed coins keep their advanced info in memory. When a coin is evicted
+ * its advanced info is cleared, unless it has changes that haven't been saved yet.
+ */
+class CoinSlotAdvInfoLoader {
+
+    /** Number of coins to load advanced info for at once */
+    final static int BATCH_SIZE = 40;
+
+    /** Maximum number of coins to keep advanced info in memory for */
+    final static int MAX_LOADED_COINS = 300;
+
+    private final DatabaseAdapter mDbAdapter;
+    private String mTableName;
+
+    // Coins with advanced info in memory, keyed by coin database id
+    private final LruCache<Long, CoinSlot> mLoadedCoinSlots = new LruCache<Long, CoinSlot>(MAX_LOADED_COINS) {
+        @Override
+        protected void entryRemoved(boolean evicted, @NonNull Long key, @NonNull CoinSlot oldValue,
+                                    @Nullable CoinSlot newValue) {
+            if (evicted && !oldValue.hasAdvInfoChanged()) {
+                oldValue.clearAdvInfo();
+            }
+        }
+    };
+
+    /**
+     * Constructor
+     * @param dbAdapter database adapter to read from
+     * @param tableName collection name
+     */
+    CoinSlotAdvInfoLoader(DatabaseAdapter dbAdapter, String tableName) {
+        mDbAdapter = dbAdapter;
+        mTableName = tableName;
+    }
+
+    /**
+     * Update the collection name used for loading
+     * @param tableName new collection name
+     */
+    void setTableName(String tableName) {
+        mTableName = tableName;
+    }
+
+    /**
+     * Makes sure the advanced info is loaded for the coin being displayed. If it isn't, the
+     * advanced info is loaded for it and the nearby coins that aren't loaded yet.
+     * @param coinList coin list being displayed
+     * @param position index of the coin being displayed
+     */
+    void loadForPosition(List<CoinSlot> coinList, int position) {
+        CoinSlot coinSlot = coinList.get(position);
+        if (coinSlot.isAdvInfoLoaded()) {
+            // Mark as recently used
+            mLoadedCoinSlots.get(coinSlot.getDatabaseId());
+            return;
+        }
+
+        // Include a few coins before the position, for scrolling back up
+        int startIndex = Math.max(0, position - (BATCH_SIZE / 4));
+        int endIndex = Math.min(coinList.size(), startIndex + BATCH_SIZE);
+        ArrayList<CoinSlot> coinSlotsToLoad = new ArrayList<>(BATCH_SIZE);
+        for (int i = startIndex; i < endIndex; i++) {
+            CoinSlot nearbyCoinSlot = coinList.get(i);
+            if (!nearbyCoinSlot.isAdvInfoLoaded()) {
+                coinSlotsToLoad.add(nearbyCoinSlot);
+            }
+        }
+        load(coinSlotsToLoad);
+    }
+
+    /**
+     * Makes sure the advanced info is loaded for a coin, such as before it's copied
+     * @param coinSlot coin to load
+     */
+    void ensureLoaded(CoinSlot coinSlot) {
+        if (!coinSlot.isAdvInfoLoaded()) {
+            load(Collections.singletonList(coinSlot));
+        }
+    }
+
+    /**
+     * Loads the advanced info for a group of coins
+     * @param coinSlots coins to load
+     */
+    private void load(List<CoinSlot> coinSlots) {
+        try {
+            mDbAdapter.populateAdvInfo(mTableName, coinSlots);
+        } catch (SQLException e) {
+            // Leave the coins unloaded so that loading is tried again when they're displayed
+            return;
+        }
+        for (CoinSlot coinSlot : coinSlots) {
+            mLoadedCoinSlots.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+    }
+}
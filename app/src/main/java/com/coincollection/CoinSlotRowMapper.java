@@ -0,0 +1,133 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.CoinSlot.COL_ADV_GRADE_INDEX;
+import static com.coincollection.CoinSlot.COL_ADV_NOTES;
+import static com.coincollection.CoinSlot.COL_ADV_QUANTITY_INDEX;
+import static com.coincollection.CoinSlot.COL_COIN_ID;
+import static com.coincollection.CoinSlot.COL_COIN_IDENTIFIER;
+import static com.coincollection.CoinSlot.COL_COIN_MINT;
+import static com.coincollection.CoinSlot.COL_CUSTOM_COIN;
+import static com.coincollection.CoinSlot.COL_IN_COLLECTION;
+import static com.coincollection.CoinSlot.COL_SORT_ORDER;
+
+import android.database.Cursor;
+
+/**
+ * Creates CoinSlot objects from the rows of a coin list cursor.
+ *
+ * The column indexes are looked up once when the mapper is created, rather than for every
+ * row, and the primitive column values are passed straight to the CoinSlot constructors.
+ */
+class CoinSlotRowMapper {
+
+    /** Columns to query for the basic coin information */
+    static final String[] BASIC_COLUMNS = {COL_COIN_ID, COL_COIN_IDENTIFIER, COL_COIN_MINT,
+            COL_IN_COLLECTION, COL_SORT_ORDER, COL_CUSTOM_COIN};
+
+    /** Columns to query for the coin information including advanced attributes */
+    static final String[] ADV_COLUMNS = {COL_COIN_ID, COL_COIN_IDENTIFIER, COL_COIN_MINT,
+            COL_IN_COLLECTION, COL_SORT_ORDER, COL_CUSTOM_COIN, COL_ADV_GRADE_INDEX,
+            COL_ADV_QUANTITY_INDEX, COL_ADV_NOTES};
+
+    private final boolean mPopulateAdvInfo;
+    private final boolean mUseSortOrder;
+    private final int mIdIndex;
+    private final int mIdentifierIndex;
+    private final int mMintIndex;
+    private final int mInCollectionIndex;
+    private final int mSortOrderIndex;
+    private final int mCustomCoinIndex;
+    private final int mGradeIndex;
+    private final int mQuantityIndex;
+    private final int mNotesIndex;
+
+    /**
+     * Constructor
+     * @param cursor cursor queried with the columns from getProjection()
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @param useSortOrder If true, uses the sort order column for the coin sort order,
+     *                     otherwise uses the database id
+     * @throws IllegalArgumentException if a column is missing from the cursor
+     */
+    CoinSlotRowMapper(Cursor cursor, boolean populateAdvInfo, boolean useSortOrder) {
+        mPopulateAdvInfo = populateAdvInfo;
+        mUseSortOrder = useSortOrder;
+        mIdIndex = cursor.getColumnIndexOrThrow(COL_COIN_ID);
+        mIdentifierIndex = cursor.getColumnIndexOrThrow(COL_COIN_IDENTIFIER);
+        mMintIndex = cursor.getColumnIndexOrThrow(COL_COIN_MINT);
+        mInCollectionIndex = cursor.getColumnIndexOrThrow(COL_IN_COLLECTION);
+        mSortOrderIndex = useSortOrder ? cursor.getColumnIndexOrThrow(COL_SORT_ORDER) : -1;
+        mCustomCoinIndex = cursor.getColumnIndexOrThrow(COL_CUSTOM_COIN);
+        if (populateAdvInfo) {
+            mGradeIndex = cursor.getColumnIndexOrThrow(COL_ADV_GRADE_INDEX);
+            mQuantityIndex = cursor.getColumnIndexOrThrow(COL_ADV_QUANTITY_INDEX);
+            mNotesIndex = cursor.getColumnIndexOrThrow(COL_ADV_NOTES);
+        } else {
+            mGradeIndex = -1;
+            mQuantityIndex = -1;
+            mNotesIndex = -1;
+        }
+    }
+
+    /**
+     * Get the columns to query for use with this mapper. The returned array is shared and
+     * must not be modified.
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @return projection array
+     */
+    static String[] getProjection(boolean populateAdvInfo) {
+        return populateAdvInfo ? ADV_COLUMNS : BASIC_COLUMNS;
+    }
+
+    /**
+     * Creates a CoinSlot from the current row of the cursor
+     * @param cursor cursor positioned on a row
+     * @return CoinSlot
+     */
+    CoinSlot mapRow(Cursor cursor) {
+        long databaseId = cursor.getLong(mIdIndex);
+        int sortOrder = mUseSortOrder ? cursor.getInt(mSortOrderIndex) : (int) databaseId;
+        boolean inCollection = cursor.getInt(mInCollectionIndex) != 0;
+        boolean customCoin = cursor.getInt(mCustomCoinIndex) != 0;
+        if (mPopulateAdvInfo) {
+            return new CoinSlot(
+                    databaseId,
+                    cursor.getString(mIdentifierIndex),
+                    cursor.getString(mMintIndex),
+                    inCollection,
+                    cursor.getInt(mGradeIndex),
+                    cursor.getInt(mQuantityIndex),
+                    cursor.getString(mNotesIndex),
+                    sortOrder,
+                    customCoin);
+        } else {
+            return new CoinSlot(
+                    databaseId,
+                    cursor.getString(mIdentifierIndex),
+                    cursor.getString(mMintIndex),
+                    inCollection,
+                    sortOrder,
+                    customCoin);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Queue that writes changes to whether coins are in a collection on a background thread.
+ *
+ * Changes are applied to the in-memory CoinSlot right away, and repeated toggles of the same
+ * coin are combined so that only the final state is written. Pending changes are written
+ * in batches, each in a single transaction. If a batch fails, the affected coins are reverted
+ * to the state in the database and the listener is notified.
+ *
+ * All methods must be called from the UI thread.
+ */
+class CoinSlotWriteQueue {
+
+    /**
+     * Interface used to report a failed write back to the activity
+     */
+    interface OnWriteFailedListener {
+        /**
+         * Called on the UI thread after the coins in a failed batch have been reverted
+         */
+        void onCoinSlotWriteFailed();
+    }
+
+    // Delay before writing, so that quick successive taps are written together
+    private final static long FLUSH_DELAY_MS = 250;
+
+    private final DatabaseAdapter mDbAdapter;
+    private final OnWriteFailedListener mListener;
+    private final boolean mUseBackgroundThread;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = this::flushAsync;
+    private String mTableName;
+
+    // Changes not yet written, keyed by coin database id (guarded by mPendingChanges)
+    private final LinkedHashMap<Long, PendingChange> mPendingChanges = new LinkedHashMap<>();
+
+    /**
+     * A change to whether a coin is in the collection that hasn't been written yet
+     */
+    private static class PendingChange {
+        final CoinSlot mCoinSlot;
+        final boolean mPersistedValue;
+        boolean mNewValue;
+
+        PendingChange(CoinSlot coinSlot, boolean persistedValue, boolean newValue) {
+            mCoinSlot = coinSlot;
+            mPersistedValue = persistedValue;
+            mNewValue = newValue;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param dbAdapter database adapter to write to
+     * @param tableName collection name
+     * @param listener listener to notify when a write fails
+     * @param useBackgroundThread if false, changes are written right away on the calling
+     *                            thread (used for unit tests)
+     */
+    CoinSlotWriteQueue(DatabaseAdapter dbAdapter, String tableName, OnWriteFailedListener listener,
+                       boolean useBackgroundThread) {
+        mDbAdapter = dbAdapter;
+        mTableName = tableName;
+        mListener = listener;
+        mUseBackgroundThread = useBackgroundThread;
+    }
+
+    /**
+     * Update the collection name used for writes. Any pending changes are written first.
+     * @param tableName new collection name
+     */
+    void setTableName(String tableName) {
+        flushAndWait();
+        synchronized (mPendingChanges) {
+            mTableName = tableName;
+        }
+    }
+
+    /**
+     * Toggles whether a coin is in the collection and queues the change to be written
+     * @param coinSlot coin to toggle
+     */
+    void toggleInCollection(CoinSlot coinSlot) {
+        boolean currentValue = coinSlot.isInCollection();
+        coinSlot.setInCollection(!currentValue);
+        synchronized (mPendingChanges) {
+            PendingChange pendingChange = mPendingChanges.get(coinSlot.getDatabaseId());
+            if (pendingChange == null) {
+                mPendingChanges.put(coinSlot.getDatabaseId(),
+                        new PendingChange(coinSlot, currentValue, !currentValue));
+            } else if (pendingChange.mPersistedValue == !currentValue) {
+                // Toggled back to the value in the database, so nothing to write
+                mPendingChanges.remove(coinSlot.getDatabaseId());
+            } else {
+                pendingChange.mNewValue = !currentValue;
+            }
+        }
+
+        if (mUseBackgroundThread) {
+            // Delay the write so that further taps are included in the same batch
+            mMainHandler.removeCallbacks(mFlushRunnable);
+            mMainHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+        } else {
+            flushAndWait();
+        }
+    }
+
+    /**
+     * @return true if there are changes that haven't been written yet
+     */
+    boolean hasPendingChanges() {
+        synchronized (mPendingChanges) {
+            return !mPendingChanges.isEmpty();
+        }
+    }
+
+    /**
+     * @param coinId coin database id
+     * @return true if there's a change to the coin that hasn't been written yet
+     */
+    boolean hasPendingChange(long coinId) {
+        synchronized (mPendingChanges) {
+            return mPendingChanges.containsKey(coinId);
+        }
+    }
+
+    /**
+     * Writes any pending changes on the background thread
+     */
+    private void flushAsync() {
+        mExecutor.execute(() -> {
+            final ArrayList<PendingChange> failedChanges = writePendingChanges();
+            if (!failedChanges.isEmpty()) {
+                mMainHandler.post(() -> handleFailedChanges(failedChanges));
+            }
+        });
+    }
+
+    /**
+     * Writes any pending changes and waits for all writes to complete. This should be called
+     * before the activity is paused, and before any other change to the collection is made.
+     * @return true if all changes were written successfully
+     */
+    boolean flushAndWait() {
+        mMainHandler.removeCallbacks(mFlushRunnable);
+        ArrayList<PendingChange> failedChanges;
+        if (mUseBackgroundThread) {
+            // Run on the background thread so that this waits for any write in progress
+            Future<ArrayList<PendingChange>> result = mExecutor.submit(this::writePendingChanges);
+            try {
+                failedChanges = result.get();
+            } catch (InterruptedException | ExecutionException e) {
+                failedChanges = new ArrayList<>();
+            }
+        } else {
+            failedChanges = writePendingChanges();
+        }
+        if (!failedChanges.isEmpty()) {
+            handleFailedChanges(failedChanges);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes any pending changes and stops the background thread. The queue can't be
+     * used after this is called.
+     */
+    void shutdown() {
+        flushAndWait();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Writes the pending changes in a single transaction
+     * @return list of changes that couldn't be written
+     */
+    private ArrayList<PendingChange> writePendingChanges() {
+        ArrayList<PendingChange> changes;
+        String tableName;
+        synchronized (mPendingChanges) {
+            changes = new ArrayList<>(mPendingChanges.values());
+            mPendingChanges.clear();
+            tableName = mTableName;
+        }
+        if (changes.isEmpty()) {
+            return changes;
+        }
+
+        LinkedHashMap<Long, Boolean> coinStates = new LinkedHashMap<>();
+        for (PendingChange change : changes) {
+            coinStates.put(change.mCoinSlot.getDatabaseId(), change.mNewValue);
+        }
+        try {
+            mDbAdapter.updateInCollection(tableName, coinStates);
+        } catch (SQLException e) {
+            return changes;
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Reverts the coins in a failed batch back to the state in the database, dropping any
+     * newer changes to those coins, and notifies the listener
+     * @param failedChanges changes that couldn't be written
+     */
+    private void handleFailedChanges(ArrayList<PendingChange> failedChanges) {
+        synchronized (mPendingChanges) {
+            for (PendingChange change : failedChanges) {
+                mPendingChanges.remove(change.mCoinSlot.getDatabaseId());
+                change.mCoinSlot.setInCollection(change.mPersistedValue);
+            }
+        }
+        mListener.onCoinSlotWriteFailed();
+    }
+}
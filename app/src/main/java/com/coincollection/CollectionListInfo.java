@@ -56,6 +56,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Object used to represent each collection in the various list of collections
@@ -110,6 +111,7 @@ public class CollectionListInfo implements Parcelable {
     public final static String COL_END_YEAR = "endYear";
     public final static String COL_SHOW_MINT_MARKS = "showMintMarks";
     public final static String COL_SHOW_CHECKBOXES = "showCheckboxes";
+    public final static String COL_COLLECTED = "collected";
     public final static String JSON_KEY_COLLECTED = "collected";
 
     // Collections in this list use the start/end years
@@ -509,7 +511,17 @@ public class CollectionListInfo implements Parcelable {
         // think we populate that value except when importing...
         // TODO Update the code so that this value is used instead
         // of the separate fetchTableDisplay calls
-        int displayType = dbAdapter.fetchTableDisplay(mCollectionName);
+        writeToJson(writer, dbAdapter.fetchTableDisplay(mCollectionName), coinList);
+    }
+
+    /**
+     * Write collection list info to JSON, with a display type that has already been read
+     * @param writer JsonWriter to write to
+     * @param displayType collection display type
+     * @param coinList List of coins in the collection
+     * @throws IOException if an error occurred
+     */
+    void writeToJson(JsonWriter writer, int displayType, List<CoinSlot> coinList) throws IOException {
 
         writer.beginObject();
         writer.name(COL_NAME).value(mCollectionName);
@@ -0,0 +1,347 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.ChangeJournal.OP_CREATE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_DELETE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_RENAME_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REORDER_COLLECTIONS;
+import static com.coincollection.CollectionListInfo.COL_NAME;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the list of collections in memory, in display order. When refreshed, the change journal
+ * is read to find the collections changed since the last refresh, and only those are read from
+ * the database again. Changes already read from the journal (Ex: those delivered to a
+ * DatabaseAdapter.ChangeListener) can be applied directly instead. The listener is told about each change made to the list, so that only the
+ * affected rows need to be updated on screen.
+ */
+public class CollectionListRepository {
+
+    /**
+     * Receives the changes made to the list. These are called from refresh() and applyChanges(),
+     * in order, and each index refers to the list as it is after the earlier calls.
+     */
+    public interface Listener {
+        /** The collection at an index was read again */
+        void onCollectionChanged(int index);
+
+        /** A collection was inserted at an index */
+        void onCollectionInserted(int index);
+
+        /** The collection at an index was removed */
+        void onCollectionRemoved(int index);
+
+        /** A collection was moved from one index to another */
+        void onCollectionMoved(int fromIndex, int toIndex);
+
+        /** The whole list was read again */
+        void onCollectionListReloaded();
+    }
+
+    // Above this many changes, reading the whole list is quicker than reading the changes
+    private final static int MAX_INCREMENTAL_CHANGES = 200;
+
+    private final ArrayList<CollectionListInfo> mCollections = new ArrayList<>();
+    private final Listener mListener;
+
+    // Whether the list has been read, and the last journal entry reflected in it
+    private boolean mLoaded = false;
+    private long mLastJournalId = 0;
+
+    /**
+     * Constructor
+     * @param listener listener to notify of changes to the list
+     */
+    public CollectionListRepository(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return number of collections
+     */
+    public int size() {
+        return mCollections.size();
+    }
+
+    /**
+     * @param index collection index
+     * @return collection at the index
+     */
+    public CollectionListInfo get(int index) {
+        return mCollections.get(index);
+    }
+
+    /**
+     * @return a copy of the collection list
+     */
+    public ArrayList<CollectionListInfo> getCollections() {
+        return new ArrayList<>(mCollections);
+    }
+
+    /**
+     * Marks the whole list as out of date, so that the next refresh reads it again. This is
+     * needed after changes that aren't recorded in the change journal (Ex: an import)
+     */
+    public void invalidateAll() {
+        mLoaded = false;
+    }
+
+    /**
+     * Brings the list up to date with the database
+     * @param dbAdapter database adapter
+     * @throws SQLException if a database error occurs
+     */
+    public void refresh(DatabaseAdapter dbAdapter) throws SQLException {
+        // Read the journal id first, so that any changes made while refreshing are also
+        // picked up by the next refresh
+        long latestJournalId = dbAdapter.getLatestJournalId();
+        if (mLoaded && (latestJournalId == mLastJournalId)) {
+            return;
+        }
+        if (!mLoaded || (latestJournalId < mLastJournalId)
+                || (latestJournalId - mLastJournalId > MAX_INCREMENTAL_CHANGES)
+                || !refreshChanged(dbAdapter)) {
+            reload(dbAdapter, latestJournalId);
+        }
+    }
+
+    /**
+     * Brings the list up to date using changes that have already been read from the journal,
+     * without reading the journal again. Changes already reflected in the list are skipped,
+     * and the whole list is read again if any changes are missing.
+     * @param dbAdapter database adapter
+     * @param changes journal entries in the order they were made
+     * @throws SQLException if a database error occurs
+     */
+    public void applyChanges(DatabaseAdapter dbAdapter, List<ChangeJournal.Entry> changes) throws SQLException {
+        ArrayList<ChangeJournal.Entry> newChanges = new ArrayList<>(changes.size());
+        for (ChangeJournal.Entry entry : changes) {
+            if (entry.getId() > mLastJournalId) {
+                newChanges.add(entry);
+            }
+        }
+        if (mLoaded && newChanges.isEmpty()) {
+            return;
+        }
+        if (!mLoaded || (newChanges.size() > MAX_INCREMENTAL_CHANGES)
+                || !applyEntries(dbAdapter, newChanges)) {
+            reload(dbAdapter, dbAdapter.getLatestJournalId());
+        }
+    }
+
+    /**
+     * Reads the whole list again
+     * @param dbAdapter database adapter
+     * @param latestJournalId latest journal id, read before the list
+     * @throws SQLException if a database error occurs
+     */
+    private void reload(DatabaseAdapter dbAdapter, long latestJournalId) throws SQLException {
+        dbAdapter.getAllTables(mCollections);
+        mLoaded = true;
+        mLastJournalId = latestJournalId;
+        mListener.onCollectionListReloaded();
+    }
+
+    /**
+     * Updates the collections changed since the last refresh
+     * @param dbAdapter database adapter
+     * @return false if the changes couldn't be found, in which case the list must be read again
+     * @throws SQLException if a database error occurs
+     */
+    private boolean refreshChanged(DatabaseAdapter dbAdapter) throws SQLException {
+        ArrayList<ChangeJournal.Entry> entries = new ArrayList<>();
+        Cursor cursor = dbAdapter.getJournalEntries(mLastJournalId, MAX_INCREMENTAL_CHANGES);
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(new ChangeJournal.Entry(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return applyEntries(dbAdapter, entries);
+    }
+
+    /**
+     * Updates the collections changed by journal entries that follow the last one reflected
+     * in the list
+     * @param dbAdapter database adapter
+     * @param entries journal entries, in order
+     * @return false if entries are missing, in which case the list must be read again
+     * @throws SQLException if a database error occurs
+     */
+    private boolean applyEntries(DatabaseAdapter dbAdapter, List<ChangeJournal.Entry> entries) throws SQLException {
+
+        // Find the collections that changed from the journal
+        LinkedHashSet<String> changedNames = new LinkedHashSet<>();
+        LinkedHashMap<String, String> renamedFrom = new LinkedHashMap<>();
+        boolean orderChanged = false;
+        long lastId = mLastJournalId;
+        for (ChangeJournal.Entry entry : entries) {
+            // Entry ids have no gaps, so a gap means some entries were trimmed or missed
+            if (entry.getId() != lastId + 1) {
+                return false;
+            }
+            lastId = entry.getId();
+            switch (entry.getOp()) {
+                case OP_RENAME_COLLECTION: {
+                    // Track the name each renamed collection had in the list
+                    String originalName = renamedFrom.remove(entry.getValue());
+                    renamedFrom.put(entry.getCollectionName(),
+                            (originalName != null) ? originalName : entry.getValue());
+                    changedNames.add(entry.getCollectionName());
+                    orderChanged = true;
+                    break;
+                }
+                case OP_CREATE_COLLECTION:
+                    changedNames.add(entry.getCollectionName());
+                    orderChanged = true;
+                    break;
+                case OP_DELETE_COLLECTION:
+                case OP_REORDER_COLLECTIONS:
+                    orderChanged = true;
+                    break;
+                default:
+                    changedNames.add(entry.getCollectionName());
+                    break;
+            }
+        }
+
+        // Only read the collection order if collections were added, removed or moved
+        ArrayList<String> orderedNames = new ArrayList<>();
+        if (orderChanged) {
+            Cursor namesCursor = dbAdapter.getAllCollectionNames();
+            try {
+                int nameIndex = namesCursor.getColumnIndexOrThrow(COL_NAME);
+                while (namesCursor.moveToNext()) {
+                    orderedNames.add(namesCursor.getString(nameIndex));
+                }
+            } finally {
+                namesCursor.close();
+            }
+        } else {
+            for (CollectionListInfo info : mCollections) {
+                orderedNames.add(info.getName());
+            }
+            if (!orderedNames.containsAll(changedNames)) {
+                return false;
+            }
+        }
+        if (!updateList(dbAdapter, orderedNames, changedNames, renamedFrom)) {
+            return false;
+        }
+        mLastJournalId = lastId;
+        return true;
+    }
+
+    /**
+     * Updates the list to match a new collection order, reading the changed collections again
+     * @param dbAdapter database adapter
+     * @param orderedNames collection names in display order
+     * @param changedNames names of the collections that need to be read again
+     * @param renamedFrom map of new collection names to the names they had in the list
+     * @return false if a collection couldn't be read
+     * @throws SQLException if a database error occurs
+     */
+    private boolean updateList(DatabaseAdapter dbAdapter, ArrayList<String> orderedNames,
+                               LinkedHashSet<String> changedNames,
+                               LinkedHashMap<String, String> renamedFrom) throws SQLException {
+
+        // Rename collections in place, so that they aren't removed and inserted again
+        for (Map.Entry<String, String> rename : renamedFrom.entrySet()) {
+            // Skip if the new name is still held by a collection that was since deleted
+            int index = indexOf(rename.getValue(), 0);
+            if (index == -1 || !changedNames.contains(rename.getKey())
+                    || indexOf(rename.getKey(), 0) != -1) {
+                continue;
+            }
+            CollectionListInfo info = dbAdapter.getCollectionInfo(rename.getKey());
+            if (info == null) {
+                // Renamed and then deleted, so this is removed below
+                continue;
+            }
+            mCollections.set(index, info);
+            changedNames.remove(rename.getKey());
+            mListener.onCollectionChanged(index);
+        }
+
+        // Remove the collections that aren't in the new order
+        HashSet<String> orderedNameSet = new HashSet<>(orderedNames);
+        for (int i = mCollections.size() - 1; i >= 0; i--) {
+            if (!orderedNameSet.contains(mCollections.get(i).getName())) {
+                mCollections.remove(i);
+                mListener.onCollectionRemoved(i);
+            }
+        }
+
+        // Move, insert and read again collections in order
+        for (int i = 0; i < orderedNames.size(); i++) {
+            String name = orderedNames.get(i);
+            int currentIndex = indexOf(name, i);
+            if (currentIndex == -1) {
+                CollectionListInfo info = dbAdapter.getCollectionInfo(name);
+                if (info == null) {
+                    return false;
+                }
+                mCollections.add(i, info);
+                mListener.onCollectionInserted(i);
+                continue;
+            }
+            if (currentIndex != i) {
+                mCollections.add(i, mCollections.remove(currentIndex));
+                mListener.onCollectionMoved(currentIndex, i);
+            }
+            if (changedNames.contains(name)) {
+                CollectionListInfo info = dbAdapter.getCollectionInfo(name);
+                if (info == null) {
+                    return false;
+                }
+                mCollections.set(i, info);
+                mListener.onCollectionChanged(i);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a collection in the list
+     * @param name collection name
+     * @param startIndex index to start searching from
+     * @return index of the collection, or -1 if not found
+     */
+    private int indexOf(String name, int startIndex) {
+        for (int i = startIndex; i < mCollections.size(); i++) {
+            if (mCollections.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -20,7 +20,16 @@
 
 package com.coincollection;
 
+import static com.coincollection.ChangeJournal.OP_ADD_COIN;
+import static com.coincollection.ChangeJournal.OP_CREATE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REMOVE_COIN;
+import static com.coincollection.ChangeJournal.OP_REORDER_COINS;
+import static com.coincollection.ChangeJournal.OP_SET_IN_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_UPDATE_ADV_INFO;
+import static com.coincollection.ChangeJournal.OP_UPDATE_COIN;
+import static com.coincollection.ChangeJournal.OP_UPDATE_COLLECTION;
 import static com.coincollection.CoinPageCreator.getCollectionOrCoinNameFilter;
+import static com.coincollection.DatabaseAdapter.COIN_SORT_ORDER_GAP;
 import static com.spencerpages.MainApplication.APP_NAME;
 
 import android.content.Context;
@@ -47,21 +56,33 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.collection.LongSparseArray;
 
 import com.spencerpages.BuildConfig;
 import com.spencerpages.MainApplication;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /** Activity for managing each collection page
  *
  * http://developer.android.com/resources/tutorials/views/hello-gridview.html
  */
-public class CollectionPage extends BaseActivity {
+public class CollectionPage extends BaseActivity implements CoinSlotWriteQueue.OnWriteFailedListener,
+        DatabaseAdapter.ChangeListener {
     private String mCollectionName;
-    public ArrayList<CoinSlot> mCoinList;
+    public List<CoinSlot> mCoinList;
+    // Set if the coin list is loaded a page at a time
+    private PagedCoinList mPagedCoinList;
     private CoinSlotAdapter mCoinSlotAdapter;
+    private CoinSlotAdvInfoLoader mAdvInfoLoader;
+    private CoinSlotWriteQueue mCoinSlotWriteQueue;
+
+    // Coins with unsaved advanced info changes, keyed by coin database id
+    private final LongSparseArray<CoinSlot> mAdvInfoChangedCoinSlots = new LongSparseArray<>();
+    // Coins being saved by the current save task
+    private ArrayList<CoinSlot> mAdvInfoCoinSlotsToSave;
 
     // Saved Instance State Keywords
 
@@ -71,6 +92,7 @@ public class CollectionPage extends BaseActivity {
     private final static String VIEW_INDEX            = "view_index";
     private final static String VIEW_POSITION         = "view_position";
     private final static String COIN_LIST             = "coin_list";
+    private final static String CHANGED_COIN_LIST     = "changed_coin_list";
 
     // Global "enum" values
     public static final int SIMPLE_DISPLAY = 0;
@@ -101,6 +123,12 @@ public class CollectionPage extends BaseActivity {
 
     public static final String IS_LOCKED = "_isLocked";
 
+    // Saves with at least this many changed coins are done on the async task
+    private final static int MIN_COINS_FOR_ASYNC_SAVE = 50;
+
+    // Collections with at least this many coins are loaded a page at a time
+    private final static int MIN_COINS_FOR_PAGED_LIST = 1000;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -146,6 +174,10 @@ public class CollectionPage extends BaseActivity {
         // Determine whether we should show the advanced view or the basic view
         mDisplayType = mDbAdapter.fetchTableDisplay(mCollectionName);
 
+        // Changes to whether coins are collected are written on a background thread
+        mCoinSlotWriteQueue = new CoinSlotWriteQueue(mDbAdapter, mCollectionName, this,
+                (mUseAsyncTasks || !BuildConfig.DEBUG));
+
         // Update the icon
         if(mActionBar != null){
             mActionBar.setIcon(collectionTypeObj.getCoinImageIdentifier());
@@ -171,10 +203,16 @@ public class CollectionPage extends BaseActivity {
             listview.setItemsCanFocus(true);
         }
 
-        // Populate the coin list
+        // Keep the coins up to date with changes made after they're loaded, from outside of
+        // this page (Ex: by database maintenance). The maintenance also leaves the sort orders
+        // alone while the page is open, since they're used when inserting coins.
+        mDbAdapter.addChangeListener(this);
+        mDbAdapter.addOpenCollectionPage(mCollectionName);
+
+        // Populate the coin list. The advanced info is loaded as coins are displayed
+        mAdvInfoLoader = new CoinSlotAdvInfoLoader(mDbAdapter, mCollectionName);
         if(savedInstanceState == null){
-            boolean populateAdvInfo = (mDisplayType == ADVANCED_DISPLAY);
-            mCoinList = mDbAdapter.getCoinList(mCollectionName, populateAdvInfo);
+            loadCoinList();
         } else {
 
             // We have already loaded the advanced lists, so use those instead.
@@ -183,19 +221,32 @@ public class CollectionPage extends BaseActivity {
             if(BuildConfig.DEBUG) {
                 Log.d(APP_NAME, "Successfully restored previous state");
             }
-            mCoinList = savedInstanceState.getParcelableArrayList(COIN_LIST);
-            // Search through the hasChanged history and see whether we should
+            ArrayList<CoinSlot> restoredCoinSlots;
+            if(savedInstanceState.containsKey(COIN_LIST)){
+                restoredCoinSlots = savedInstanceState.getParcelableArrayList(COIN_LIST);
+                mCoinList = restoredCoinSlots;
+            } else {
+                // Large collections only save the coins with unsaved changes, so
+                // reload the list and put those coins back in
+                loadCoinList();
+                restoredCoinSlots = savedInstanceState.getParcelableArrayList(CHANGED_COIN_LIST);
+                restoreChangedCoinSlots(restoredCoinSlots);
+            }
+            // Rebuild the set of unsaved changes and see whether we should
             // re-display the "Unsaved Changes" view
-            if (mCoinList != null){
-                for(int i = 0; i < mCoinList.size(); i++){
-                    if(mCoinList.get(i).hasAdvInfoChanged()){
-                        this.showUnsavedTextView();
-                        break;
+            if (restoredCoinSlots != null){
+                for(CoinSlot coinSlot : restoredCoinSlots){
+                    if(coinSlot.hasAdvInfoChanged()){
+                        mAdvInfoChangedCoinSlots.put(coinSlot.getDatabaseId(), coinSlot);
                     }
                 }
+                if(mAdvInfoChangedCoinSlots.size() != 0){
+                    this.showUnsavedTextView();
+                }
             }
         }
-        mCoinSlotAdapter = new CoinSlotAdapter(this, mCollectionName, collectionTypeObj, mCoinList, mDisplayType);
+        mCoinSlotAdapter = new CoinSlotAdapter(this, mCollectionName, collectionTypeObj, mCoinList,
+                mAdvInfoLoader, mDisplayType);
 
         OnScrollListener scrollListener = new OnScrollListener(){
             public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
@@ -266,6 +317,230 @@ public class CollectionPage extends BaseActivity {
 
         // Scroll to the last position viewed (if saved)
         scrollToIndex(mViewIndex, mViewPosition, false);
+
+        // Restore the progress dialog if the previous task was running
+        if(mPreviousTask != null){
+            asyncProgressOnPreExecute();
+        }
+
+        // At this point the UI is ready to handle any async callbacks
+        setActivityReadyForAsyncCallbacks();
+    }
+
+    @Override
+    public void onPause() {
+        // Make sure any coin changes are written before the user can leave the page
+        if (mCoinSlotWriteQueue != null) {
+            mCoinSlotWriteQueue.flushAndWait();
+        }
+        super.onPause();
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mDbAdapter != null) {
+            mDbAdapter.removeChangeListener(this);
+            mDbAdapter.removeOpenCollectionPage(mCollectionName);
+        }
+        if (mCoinSlotWriteQueue != null) {
+            mCoinSlotWriteQueue.shutdown();
+        }
+        if (mPagedCoinList != null) {
+            mPagedCoinList.close();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Called when writing coin changes to the database failed, after the coins
+     * have been reverted to the values in the database
+     */
+    @Override
+    public void onCoinSlotWriteFailed() {
+        mCoinSlotAdapter.notifyDataSetChanged();
+        if (!isFinishing()) {
+            showCancelableAlert(mRes.getString(R.string.error_updating_database));
+        }
+    }
+
+    /**
+     * Called when changes to the database are committed. Changes made by this page are
+     * already reflected in the coin list, so only coins that differ are updated, and only
+     * their rows are redrawn.
+     * @param changes changes in the order they were made
+     */
+    @Override
+    public void onDataChanged(List<ChangeJournal.Entry> changes) {
+        if (isFinishing()) {
+            return;
+        }
+        LongSparseArray<CoinSlot> loadedCoinSlots = null;
+        ArrayList<CoinSlot> changedCoinSlots = new ArrayList<>();
+        ArrayList<Long> coinIdsToRead = new ArrayList<>();
+        boolean reloadCoinList = false;
+        for (ChangeJournal.Entry change : changes) {
+            if (!mCollectionName.equals(change.getCollectionName())) {
+                continue;
+            }
+            if (loadedCoinSlots == null) {
+                loadedCoinSlots = getLoadedCoinSlotsById();
+            }
+            CoinSlot coinSlot = loadedCoinSlots.get(change.getCoinId());
+            switch (change.getOp()) {
+                case OP_SET_IN_COLLECTION: {
+                    // Skip coins with newer changes that haven't been written yet
+                    boolean inCollection = "1".equals(change.getValue());
+                    if (coinSlot != null && coinSlot.isInCollection() != inCollection
+                            && !mCoinSlotWriteQueue.hasPendingChange(coinSlot.getDatabaseId())) {
+                        coinSlot.setInCollection(inCollection);
+                        changedCoinSlots.add(coinSlot);
+                    }
+                    break;
+                }
+                case OP_UPDATE_COIN:
+                case OP_UPDATE_ADV_INFO: {
+                    if (coinSlot != null) {
+                        coinIdsToRead.add(coinSlot.getDatabaseId());
+                    }
+                    break;
+                }
+                case OP_ADD_COIN: {
+                    // Coins added by this page are already in the list
+                    if (coinSlot == null) {
+                        reloadCoinList = true;
+                    }
+                    break;
+                }
+                case OP_REMOVE_COIN: {
+                    // Coins removed by this page are already gone, which can only be told
+                    // if the whole list is in memory
+                    if (coinSlot != null || (mPagedCoinList != null && !mPagedCoinList.isFullyLoaded())) {
+                        reloadCoinList = true;
+                    }
+                    break;
+                }
+                case OP_REORDER_COINS:
+                case OP_UPDATE_COLLECTION:
+                case OP_CREATE_COLLECTION: {
+                    // The sort orders or coins may have changed (Ex: by database maintenance)
+                    reloadCoinList = true;
+                    break;
+                }
+            }
+        }
+        if (reloadCoinList) {
+            reloadCoinList();
+            return;
+        }
+
+        // Read the coins that were changed again
+        if (!coinIdsToRead.isEmpty()) {
+            ArrayList<CoinSlot> dbCoinSlots;
+            try {
+                dbCoinSlots = mDbAdapter.getCoinsById(mCollectionName, coinIdsToRead);
+            } catch (SQLException e) {
+                return;
+            }
+            for (CoinSlot dbCoinSlot : dbCoinSlots) {
+                CoinSlot coinSlot = loadedCoinSlots.get(dbCoinSlot.getDatabaseId());
+                if (coinSlot.getSortOrder() != dbCoinSlot.getSortOrder()) {
+                    // The coin moved (Ex: an imported change)
+                    reloadCoinList();
+                    return;
+                }
+                coinSlot.setIdentifier(dbCoinSlot.getIdentifier());
+                coinSlot.setMint(dbCoinSlot.getMint());
+                // Don't overwrite advanced info the user is editing
+                if (coinSlot.isAdvInfoLoaded() && !coinSlot.hasAdvInfoChanged()) {
+                    coinSlot.setAdvInfoFromDatabase(dbCoinSlot.getAdvancedGrades(),
+                            dbCoinSlot.getAdvancedQuantities(), dbCoinSlot.getAdvancedNotes());
+                }
+                changedCoinSlots.add(coinSlot);
+            }
+        }
+        rebindCoinSlots(changedCoinSlots);
+    }
+
+    /**
+     * Called when the database changed in a way that isn't described by change events
+     */
+    @Override
+    public void onDataReset() {
+        if (!isFinishing()) {
+            reloadCoinList();
+        }
+    }
+
+    /**
+     * Gets the coins in memory keyed by database id, without loading any more coins
+     * @return coins in memory
+     */
+    private LongSparseArray<CoinSlot> getLoadedCoinSlotsById() {
+        List<CoinSlot> coinSlots = (mPagedCoinList != null) ? mPagedCoinList.getLoadedCoinSlots() : mCoinList;
+        LongSparseArray<CoinSlot> coinSlotsById = new LongSparseArray<>(coinSlots.size());
+        for (CoinSlot coinSlot : coinSlots) {
+            coinSlotsById.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+        return coinSlotsById;
+    }
+
+    /**
+     * Reads the coin list from the database again, keeping any unsaved changes
+     */
+    private void reloadCoinList() {
+        mCoinSlotWriteQueue.flushAndWait();
+        if (mPagedCoinList != null) {
+            mPagedCoinList.close();
+            mPagedCoinList = null;
+        }
+        try {
+            loadCoinList();
+        } catch (SQLException e) {
+            showCancelableAlert(mRes.getString(R.string.error_reading_database));
+            return;
+        }
+        restoreChangedCoinSlots(getAdvInfoChangedCoinSlots());
+        mCoinSlotAdapter.setCoinList(mCoinList);
+    }
+
+    /**
+     * Redraws the rows for coins that are on screen, without redrawing the rest
+     * @param coinSlots coins that changed
+     */
+    private void rebindCoinSlots(List<CoinSlot> coinSlots) {
+        AbsListView view = findViewById((mDisplayType == SIMPLE_DISPLAY) ?
+                R.id.standard_collection_page : R.id.advanced_collection_page);
+        if (coinSlots.isEmpty() || view == null) {
+            return;
+        }
+        LongSparseArray<CoinSlot> coinSlotsById = new LongSparseArray<>(coinSlots.size());
+        for (CoinSlot coinSlot : coinSlots) {
+            coinSlotsById.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+        int firstPosition = view.getFirstVisiblePosition();
+        for (int i = 0; i < view.getChildCount(); i++) {
+            int position = firstPosition + i;
+            if (position < mCoinList.size()
+                    && coinSlotsById.get(mCoinList.get(position).getDatabaseId()) != null) {
+                mCoinSlotAdapter.getView(position, view.getChildAt(i), view);
+            }
+        }
+    }
+
+    /**
+     * Called by the adapter when the user changes the advanced info of a coin
+     * - Changes will be committed to the database when the user presses save
+     * - The advanced info of the coin must already be loaded, which the adapter does
+     *   when the coin is displayed
+     * @param coinSlot coin that was changed
+     */
+    public void onCoinSlotAdvInfoChanged(CoinSlot coinSlot) {
+        coinSlot.setAdvInfoChanged(true);
+        mAdvInfoChangedCoinSlots.put(coinSlot.getDatabaseId(), coinSlot);
+        if (mPagedCoinList != null) {
+            mPagedCoinList.pin(coinSlot);
+        }
+        this.showUnsavedTextView();
     }
 
     /**
@@ -330,84 +605,16 @@ public class CollectionPage extends BaseActivity {
         if (itemId == R.id.lock_unlock_collection) {
             // Need to check the preferences to see whether the collection is locked or unlocked
             SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
-            SharedPreferences.Editor editor = mainPreferences.edit();
-
             boolean isLocked = mainPreferences.getBoolean(mCollectionName + IS_LOCKED, false);
-            boolean finishedSuccessfully = true;
 
             // If we are going from unlocked to lock in advance mode, we need to save the
-            // changes the user may have made (if any)
+            // changes the user may have made (if any) first
             if (mDisplayType == ADVANCED_DISPLAY &&
                     !isLocked &&
                     this.doUnsavedChangesExist()) {
-
-                // In the advanced display case, we also need to save
-
-                // TODO Show some kind of spinner
-
-                for (int i = 0; i < mCoinList.size(); i++) {
-                    CoinSlot coinSlot = mCoinList.get(i);
-                    if (coinSlot.hasAdvInfoChanged()) {
-                        try {
-                            mDbAdapter.updateAdvInfo(mCollectionName, coinSlot);
-                        } catch (SQLException e) {
-                            finishedSuccessfully = false;
-                            // Keep going, though
-                            continue;
-                        }
-                        // Mark this data as being unchanged
-                        coinSlot.setAdvInfoChanged(false);
-                    }
-                }
-
-                if (finishedSuccessfully) {
-                    // Hide the unsaved changes view
-                    Toast.makeText(this, mRes.getString(R.string.changes_saved), Toast.LENGTH_SHORT).show();
-                    this.hideUnsavedTextView();
-                } else {
-                    showCancelableAlert(mRes.getString(R.string.error_updating_database));
-                }
-            }
-
-            if (finishedSuccessfully) {
-                if (isLocked) {
-                    // Locked, change to unlocked
-                    editor.putBoolean(mCollectionName + IS_LOCKED, false);
-                    // Change the text for next time
-                    if (mDisplayType == SIMPLE_DISPLAY) {
-                        item.setTitle(R.string.lock_collection);
-                    }
-                    // Don't update in the advance case, because we are going to blow
-                    // away this
-                } else {
-                    // Unlocked or preference doesn't exist, change preference to locked
-                    editor.putBoolean(mCollectionName + IS_LOCKED, true);
-                    // Change the text for next time
-                    if (mDisplayType == SIMPLE_DISPLAY) {
-                        item.setTitle(R.string.unlock_collection);
-                    }
-                }
-            }
-
-            // Save changes
-            // TODO Consider not saving these if in advance mode and the db update
-            // fails below
-            editor.apply();
-
-            if (mDisplayType == ADVANCED_DISPLAY) {
-                // We need to restart the view so we can show the locked
-                // view.  Also, at this point there are no unsaved changes
-
-                // Save the position that the user was at for convenience
-                ListView listview = findViewById(R.id.advanced_collection_page);
-                Integer[] viewPos = getAbsListViewPosition(listview);
-
-                mCallingIntent.putExtra(VIEW_INDEX, viewPos[0]);
-                mCallingIntent.putExtra(VIEW_POSITION, viewPos[1]);
-                mCallingIntent.putExtra(COLLECTION_NAME, mCollectionName);
-
-                finish();
-                startActivity(mCallingIntent);
+                saveAdvInfoChangesAndLock();
+            } else {
+                setCollectionLocked(!isLocked, item);
             }
 
             return true;
@@ -516,6 +723,7 @@ public class CollectionPage extends BaseActivity {
 
         // Update database
         try {
+            mCoinSlotWriteQueue.flushAndWait();
             mDbAdapter.updateCollectionName(oldCollectionName, newCollectionName);
         } catch (SQLException e) {
             showCancelableAlert(mRes.getString(R.string.error_updating_database));
@@ -531,7 +739,12 @@ public class CollectionPage extends BaseActivity {
 
         // Update current view
         mCollectionName = newCollectionName;
+        mCoinSlotWriteQueue.setTableName(newCollectionName);
         mCoinSlotAdapter.setTableName(newCollectionName);
+        mAdvInfoLoader.setTableName(newCollectionName);
+        if (mPagedCoinList != null) {
+            mPagedCoinList.setTableName(newCollectionName);
+        }
         this.setTitle(newCollectionName);
     }
 
@@ -568,6 +781,7 @@ public class CollectionPage extends BaseActivity {
      * @param coinMint coin mint
      */
     public void addNewCoin(String newName, String coinMint) {
+        loadAllCoins();
         int sortOrder = mDbAdapter.getNextCoinSortOrder(mCollectionName);
         CoinSlot newCoinSlot = new CoinSlot(newName, coinMint, sortOrder);
         try {
@@ -623,6 +837,128 @@ public class CollectionPage extends BaseActivity {
                 .setNegativeButton(mRes.getString(R.string.cancel), (dialog, which) -> dialog.cancel()));
     }
 
+    /**
+     * Locks or unlocks the collection. In the advanced view, the activity is restarted
+     * to show the new state.
+     * @param locked true to lock the collection, false to unlock
+     * @param item menu item to update, or null if not available
+     */
+    private void setCollectionLocked(boolean locked, MenuItem item) {
+        SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
+        SharedPreferences.Editor editor = mainPreferences.edit();
+        editor.putBoolean(mCollectionName + IS_LOCKED, locked);
+        editor.apply();
+
+        if (mDisplayType == SIMPLE_DISPLAY) {
+            // Change the text for next time
+            if (item != null) {
+                item.setTitle(locked ? R.string.unlock_collection : R.string.lock_collection);
+            }
+        } else if (mDisplayType == ADVANCED_DISPLAY) {
+            // We need to restart the view so we can show the locked
+            // view.  Also, at this point there are no unsaved changes
+
+            // Save the position that the user was at for convenience
+            ListView listview = findViewById(R.id.advanced_collection_page);
+            Integer[] viewPos = getAbsListViewPosition(listview);
+
+            mCallingIntent.putExtra(VIEW_INDEX, viewPos[0]);
+            mCallingIntent.putExtra(VIEW_POSITION, viewPos[1]);
+            mCallingIntent.putExtra(COLLECTION_NAME, mCollectionName);
+
+            finish();
+            startActivity(mCallingIntent);
+        }
+    }
+
+    /**
+     * Saves the unsaved advanced info changes in a single transaction and then locks the
+     * collection. Large saves are done on the async task while a progress dialog is shown.
+     */
+    private void saveAdvInfoChangesAndLock() {
+        if (mAdvInfoChangedCoinSlots.size() >= MIN_COINS_FOR_ASYNC_SAVE) {
+            kickOffAsyncProgressTask(TASK_SAVE_ADV_INFO);
+        } else {
+            onAdvInfoChangesSaved(saveAdvInfoChanges(getAdvInfoChangedCoinSlots()));
+        }
+    }
+
+    /**
+     * @return list of the coins with unsaved advanced info changes
+     */
+    private ArrayList<CoinSlot> getAdvInfoChangedCoinSlots() {
+        ArrayList<CoinSlot> coinSlots = new ArrayList<>(mAdvInfoChangedCoinSlots.size());
+        for (int i = 0; i < mAdvInfoChangedCoinSlots.size(); i++) {
+            coinSlots.add(mAdvInfoChangedCoinSlots.valueAt(i));
+        }
+        return coinSlots;
+    }
+
+    /**
+     * Writes advanced info changes to the database
+     * @param coinSlots coins to save
+     * @return an error message if the save failed, otherwise ""
+     */
+    private String saveAdvInfoChanges(ArrayList<CoinSlot> coinSlots) {
+        try {
+            mDbAdapter.updateAdvInfo(mCollectionName, coinSlots);
+        } catch (SQLException e) {
+            return mRes.getString(R.string.error_updating_database);
+        }
+        return "";
+    }
+
+    /**
+     * Called on the UI thread once the advanced info changes have been saved
+     * @param resultStr an error message if the save failed, otherwise ""
+     */
+    private void onAdvInfoChangesSaved(String resultStr) {
+        if (!resultStr.equals("")) {
+            // Nothing was saved, so leave the changes in place for the user to retry
+            showCancelableAlert(resultStr);
+            return;
+        }
+
+        // Mark this data as being unchanged
+        for (int i = 0; i < mAdvInfoChangedCoinSlots.size(); i++) {
+            mAdvInfoChangedCoinSlots.valueAt(i).setAdvInfoChanged(false);
+        }
+        mAdvInfoChangedCoinSlots.clear();
+
+        // Hide the unsaved changes view
+        Toast.makeText(this, mRes.getString(R.string.changes_saved), Toast.LENGTH_SHORT).show();
+        this.hideUnsavedTextView();
+        setCollectionLocked(true, null);
+    }
+
+    @Override
+    public String asyncProgressDoInBackground() {
+        if (mTask.mAsyncTaskId == TASK_SAVE_ADV_INFO && mAdvInfoCoinSlotsToSave != null) {
+            return saveAdvInfoChanges(mAdvInfoCoinSlotsToSave);
+        }
+        return "";
+    }
+
+    @Override
+    public void asyncProgressOnPreExecute() {
+        if (mTask.mAsyncTaskId == TASK_SAVE_ADV_INFO) {
+            // The dialog also prevents further changes until the save completes
+            mAdvInfoCoinSlotsToSave = getAdvInfoChangedCoinSlots();
+            createProgressDialog(mRes.getString(R.string.saving_changes));
+        }
+    }
+
+    @Override
+    public void asyncProgressOnPostExecute(String resultStr) {
+        if (mTask.mAsyncTaskId == TASK_SAVE_ADV_INFO) {
+            dismissProgressDialog();
+            mAdvInfoCoinSlotsToSave = null;
+            onAdvInfoChangesSaved(resultStr);
+        } else {
+            super.asyncProgressOnPostExecute(resultStr);
+        }
+    }
+
     /**
      * @return true if a collection has unsaved changes (only possible in advanced view)
      */
@@ -684,8 +1020,13 @@ public class CollectionPage extends BaseActivity {
             viewPos = getAbsListViewPosition(gridview);
         }
 
-        // Save off these lists that may have unsaved user data
-        outState.putParcelableArrayList(COIN_LIST, mCoinList);
+        // Save off these lists that may have unsaved user data. Large collections
+        // are reloaded from the database, so only the coins with changes are saved.
+        if(mPagedCoinList != null){
+            outState.putParcelableArrayList(CHANGED_COIN_LIST, getAdvInfoChangedCoinSlots());
+        } else {
+            outState.putParcelableArrayList(COIN_LIST, new ArrayList<>(mCoinList));
+        }
         outState.putInt(VIEW_INDEX, viewPos[0]);
         outState.putInt(VIEW_POSITION, viewPos[1]);
         outState.putString(COLLECTION_NAME, mCollectionName);
@@ -740,7 +1081,7 @@ public class CollectionPage extends BaseActivity {
      * Toggle whether a given coin slot is collected or not
      * @param coinSlot the CoinSlot to update
      */
-    private void toggleCoinSlotInCollection(CoinSlot coinSlot) {
+    public void toggleCoinSlotInCollection(CoinSlot coinSlot) {
         // Need to check whether the collection is locked
         SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
 
@@ -749,16 +1090,13 @@ public class CollectionPage extends BaseActivity {
             showLockedMessage();
         } else {
             // Preference doesn't exist or Collection is unlocked
-            try {
-                mDbAdapter.toggleInCollection(mCollectionName, coinSlot);
-            } catch (SQLException e) {
-                showCancelableAlert(mRes.getString(R.string.error_updating_database));
+            // Update the mCoinSlotAdapters copy of the coins in this collection right away
+            // and queue the database update
+            mCoinSlotWriteQueue.toggleInCollection(coinSlot);
+            if (mPagedCoinList != null) {
+                mPagedCoinList.pin(coinSlot);
             }
 
-            // Update the mCoinSlotAdapters copy of the coins in this collection
-            boolean oldValue = coinSlot.isInCollection();
-            coinSlot.setInCollection(!oldValue);
-
             // And have the adapter redraw with this new info
             mCoinSlotAdapter.notifyDataSetChanged();
         }
@@ -777,17 +1115,20 @@ public class CollectionPage extends BaseActivity {
             showLockedMessage();
         } else {
             // Create the new coin slot
-            // - copy() also sets the sort order to original + 1
             // - Mark as custom coin since it wasn't added when the collection was created
+            // - The advanced info is copied too, so make sure it's loaded
+            loadAllCoins();
+            mAdvInfoLoader.ensureLoaded(coinSlot);
             CoinSlot newCoinSlot = coinSlot.copy(coinSlot.getIdentifier(), coinSlot.getMint(), true);
             try {
-                // Update the sort order in the database and coin list
-                mDbAdapter.updateCoinSortOrderForInsert(mCollectionName, newCoinSlot.getSortOrder());
-                for(CoinSlot currCoinSlot : mCoinList) {
-                    if (currCoinSlot.getSortOrder() >= newCoinSlot.getSortOrder()) {
-                        currCoinSlot.setSortOrder(currCoinSlot.getSortOrder() + 1);
-                    }
+                // Place the new coin between its neighbors. If there's no room between them,
+                // renumber the collection to make room (this happens rarely)
+                Integer sortOrder = getSortOrderForInsert(coinListInsertIndex);
+                if (sortOrder == null) {
+                    mDbAdapter.renumberCoinSortOrders(mCollectionName, mCoinList);
+                    sortOrder = getSortOrderForInsert(coinListInsertIndex);
                 }
+                newCoinSlot.setSortOrder(sortOrder);
 
                 // Insert the new coin into the database
                 mDbAdapter.addCoinSlotToCollection(newCoinSlot, mCollectionName, true, mCoinList.size() + 1);
@@ -802,6 +1143,81 @@ public class CollectionPage extends BaseActivity {
         }
     }
 
+    /**
+     * Loads the coin list from the database. Large collections are loaded a page at a
+     * time as they're scrolled through, rather than all at once. The advanced info isn't
+     * included, since mAdvInfoLoader loads it for the coins being displayed.
+     */
+    private void loadCoinList() {
+        PagedCoinList pagedCoinList = new PagedCoinList(mDbAdapter, mCollectionName, false,
+                (mUseAsyncTasks || !BuildConfig.DEBUG));
+        if (pagedCoinList.size() >= MIN_COINS_FOR_PAGED_LIST) {
+            mPagedCoinList = pagedCoinList;
+            mCoinList = pagedCoinList;
+        } else {
+            pagedCoinList.close();
+            mCoinList = mDbAdapter.getCoinList(mCollectionName, false);
+        }
+    }
+
+    /**
+     * Puts coins with unsaved changes back into a coin list that was reloaded
+     * @param changedCoinSlots coins with unsaved changes
+     */
+    private void restoreChangedCoinSlots(ArrayList<CoinSlot> changedCoinSlots) {
+        if (changedCoinSlots == null) {
+            return;
+        }
+        if (mPagedCoinList != null) {
+            for (CoinSlot coinSlot : changedCoinSlots) {
+                mPagedCoinList.pin(coinSlot);
+            }
+            return;
+        }
+        LongSparseArray<CoinSlot> changedCoinSlotsById = new LongSparseArray<>();
+        for (CoinSlot coinSlot : changedCoinSlots) {
+            changedCoinSlotsById.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+        for (int i = 0; i < mCoinList.size(); i++) {
+            CoinSlot changedCoinSlot = changedCoinSlotsById.get(mCoinList.get(i).getDatabaseId());
+            if (changedCoinSlot != null) {
+                mCoinList.set(i, changedCoinSlot);
+            }
+        }
+    }
+
+    /**
+     * Loads the rest of a paged coin list. This must be done before coins are added,
+     * removed or reordered, since the pages are based on the sort orders in the database.
+     */
+    private void loadAllCoins() {
+        if (mPagedCoinList != null) {
+            mPagedCoinList.loadAll();
+        }
+    }
+
+    /**
+     * Gets a sort order for a coin inserted into the coin list at a given index
+     * @param coinListInsertIndex index the coin will be inserted at
+     * @return sort order between the neighboring coins, or null if there's no room
+     */
+    private Integer getSortOrderForInsert(int coinListInsertIndex) {
+        boolean hasPrevious = (coinListInsertIndex > 0);
+        boolean hasNext = (coinListInsertIndex < mCoinList.size());
+        if (!hasNext) {
+            return hasPrevious ? mCoinList.get(coinListInsertIndex - 1).getSortOrder() + COIN_SORT_ORDER_GAP : 0;
+        }
+        int nextSortOrder = mCoinList.get(coinListInsertIndex).getSortOrder();
+        if (!hasPrevious) {
+            return nextSortOrder - COIN_SORT_ORDER_GAP;
+        }
+        int previousSortOrder = mCoinList.get(coinListInsertIndex - 1).getSortOrder();
+        if (nextSortOrder - previousSortOrder < 2) {
+            return null;
+        }
+        return previousSortOrder + (nextSortOrder - previousSortOrder) / 2;
+    }
+
     /**
      * Deletes the coin slot in the collection at a given position
      * @param position the CoinSlot index to delete
@@ -814,6 +1230,10 @@ public class CollectionPage extends BaseActivity {
             // Collection is locked
             showLockedMessage();
         } else {
+            // Write any queued changes first, in case one is for this coin
+            mCoinSlotWriteQueue.flushAndWait();
+            loadAllCoins();
+
             // Delete the coin from the coin list
             CoinSlot coinSlot = mCoinList.remove(position);
             try {
@@ -0,0 +1,198 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coin counts across all collections, grouped by year, mint mark, grade and coin type.
+ * Coins don't store a denomination, so the coin type of the collection (Ex: "Pennies" or
+ * "State Quarters") is used instead. Several coin types can share a denomination.
+ * Objects are immutable once created so that they can be shared between screens.
+ */
+public class CollectionStatistics {
+
+    /**
+     * Number of coins with a given value (Ex: a year or a mint mark)
+     */
+    public static class Group {
+        private final String mKey;
+        private final int mTotal;
+        private final int mCollected;
+
+        Group(String key, int total, int collected) {
+            mKey = key;
+            mTotal = total;
+            mCollected = collected;
+        }
+
+        /**
+         * @return value the coins were grouped by, or "" if the coins didn't have a value
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * @return number of coins in the group
+         */
+        public int getTotal() {
+            return mTotal;
+        }
+
+        /**
+         * @return number of coins in the group that are in the collection
+         */
+        public int getCollected() {
+            return mCollected;
+        }
+    }
+
+    private final List<Group> mByYear;
+    private final List<Group> mByMint;
+    private final List<Group> mByGrade;
+    private final List<Group> mByType;
+    private final int mTotal;
+    private final int mCollected;
+
+    /**
+     * Constructor
+     * @param byYear map of coin years to {total coins, collected coins}
+     * @param byMint map of mint marks to {total coins, collected coins}
+     * @param byGrade map of grade indexes to {total coins, collected coins}
+     * @param byType map of coin types to {total coins, collected coins}
+     */
+    CollectionStatistics(Map<String, int[]> byYear, Map<String, int[]> byMint,
+                         Map<String, int[]> byGrade, Map<String, int[]> byType) {
+        mByYear = toSortedGroups(byYear);
+        mByMint = toSortedGroups(byMint);
+        mByGrade = toSortedGroups(byGrade);
+        mByType = toSortedGroups(byType);
+        int total = 0;
+        int collected = 0;
+        for (Group group : mByType) {
+            total += group.getTotal();
+            collected += group.getCollected();
+        }
+        mTotal = total;
+        mCollected = collected;
+    }
+
+    /**
+     * @return coin counts by year, oldest first. Coins without a year have the key ""
+     */
+    public List<Group> getByYear() {
+        return mByYear;
+    }
+
+    /**
+     * @return coin counts by mint mark. Coins without a mint mark have the key ""
+     */
+    public List<Group> getByMint() {
+        return mByMint;
+    }
+
+    /**
+     * @return coin counts by grade, keyed by the index into the coin_grades array
+     */
+    public List<Group> getByGrade() {
+        return mByGrade;
+    }
+
+    /**
+     * @return coin counts by coin type
+     */
+    public List<Group> getByType() {
+        return mByType;
+    }
+
+    /**
+     * @return number of coins in all collections
+     */
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * @return number of coins in all collections that are in the collection
+     */
+    public int getCollected() {
+        return mCollected;
+    }
+
+    /**
+     * Converts a map of group counts to a list of groups, sorted with numeric keys first
+     * (compared as numbers), then the other keys, then the "" key
+     * @param groups map of each key to {total coins, collected coins}
+     * @return unmodifiable list of groups
+     */
+    private static List<Group> toSortedGroups(Map<String, int[]> groups) {
+        ArrayList<Group> result = new ArrayList<>(groups.size());
+        for (Map.Entry<String, int[]> entry : groups.entrySet()) {
+            int[] counts = entry.getValue();
+            result.add(new Group(entry.getKey(), counts[0], counts[1]));
+        }
+        Collections.sort(result, (a, b) -> compareKeys(a.getKey(), b.getKey()));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Compares two group keys for sorting
+     * @param a first key
+     * @param b second key
+     * @return comparison result
+     */
+    private static int compareKeys(@NonNull String a, @NonNull String b) {
+        int aRank = getKeyRank(a);
+        int bRank = getKeyRank(b);
+        if (aRank != bRank) {
+            return aRank - bRank;
+        }
+        if (aRank == 0) {
+            long aValue = Long.parseLong(a);
+            long bValue = Long.parseLong(b);
+            return (aValue < bValue) ? -1 : ((aValue == bValue) ? 0 : 1);
+        }
+        return a.compareTo(b);
+    }
+
+    /**
+     * Gets the position of a kind of key in the sort order
+     * @param key group key
+     * @return 0 for numeric keys, 1 for other keys and 2 for ""
+     */
+    private static int getKeyRank(String key) {
+        if (key.isEmpty()) {
+            return 2;
+        }
+        try {
+            Long.parseLong(key);
+            return 0;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import com.spencerpages.BuildConfig;
+import com.spencerpages.MainApplication;
+import com.spencerpages.R;
+
+import java.util.List;
+
+/**
+ * Activity showing coin counts across all collections by coin type, year, mint mark and grade.
+ * The menu also has the database timing options used to find slow statements, and can run
+ * the database maintenance on demand.
+ */
+public class CollectionStatisticsActivity extends BaseActivity {
+
+    private CollectionStatisticsService mStatisticsService;
+    private CollectionStatistics mStatistics = null;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_collection_statistics);
+
+        if (mActionBar != null) {
+            mActionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        mStatisticsService = ((MainApplication) getApplication()).getStatisticsService();
+
+        // Show the statistics right away if nothing has changed since they were computed,
+        // otherwise compute them on the async task
+        CollectionStatistics cachedStatistics = mStatisticsService.getCachedStatistics();
+        if (cachedStatistics != null) {
+            showStatistics(cachedStatistics);
+        } else if (mPreviousTask != null) {
+            // Restore the progress dialog if the previous task was running
+            asyncProgressOnPreExecute();
+        } else {
+            kickOffAsyncProgressTask(TASK_LOAD_STATISTICS);
+        }
+
+        // At this point the UI is ready to handle any async callbacks
+        setActivityReadyForAsyncCallbacks();
+    }
+
+    @Override
+    public String asyncProgressDoInBackground() {
+        if (mTask.mAsyncTaskId == TASK_LOAD_STATISTICS) {
+            try {
+                mStatistics = mStatisticsService.getStatistics();
+            } catch (SQLException e) {
+                return mRes.getString(R.string.error_reading_database);
+            }
+        } else if (mTask.mAsyncTaskId == TASK_DATABASE_MAINTENANCE) {
+            try {
+                DatabaseMaintenance.Report report = new DatabaseMaintenance(mDbAdapter).run(true);
+                DatabaseMaintenance.saveReport(getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE), mRes, report);
+            } catch (SQLException e) {
+                return mRes.getString(R.string.error_reading_database);
+            }
+        }
+        return "";
+    }
+
+    @Override
+    public void asyncProgressOnPreExecute() {
+        if (mTask.mAsyncTaskId == TASK_LOAD_STATISTICS) {
+            createProgressDialog(mRes.getString(R.string.calculating_statistics));
+        } else if (mTask.mAsyncTaskId == TASK_DATABASE_MAINTENANCE) {
+            createProgressDialog(mRes.getString(R.string.running_database_maintenance));
+        }
+    }
+
+    @Override
+    public void asyncProgressOnPostExecute(String resultStr) {
+        if (mTask.mAsyncTaskId == TASK_LOAD_STATISTICS) {
+            dismissProgressDialog();
+            if (mStatistics == null) {
+                // The task was started by a previous instance of the activity
+                mStatistics = mStatisticsService.getCachedStatistics();
+            }
+            if (mStatistics != null) {
+                showStatistics(mStatistics);
+            }
+        } else if (mTask.mAsyncTaskId == TASK_DATABASE_MAINTENANCE) {
+            dismissProgressDialog();
+            if (resultStr.isEmpty()) {
+                showMaintenanceReport();
+            }
+        }
+        super.asyncProgressOnPostExecute(resultStr);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // The menu only has the SQL timing and maintenance tools, which are for debugging
+        if (!BuildConfig.DEBUG) {
+            return super.onCreateOptionsMenu(menu);
+        }
+        getMenuInflater().inflate(R.menu.menu_collection_statistics, menu);
+        menu.findItem(R.id.sql_timing_enabled).setChecked(SqlInstrumentation.isEnabled());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == android.R.id.home) {
+            this.onBackPressed();
+            return true;
+        } else if (itemId == R.id.sql_timing_enabled) {
+            boolean enabled = !item.isChecked();
+            SqlInstrumentation.setEnabled(enabled);
+            SharedPreferences.Editor editor = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE).edit();
+            editor.putBoolean(SqlInstrumentation.SQL_TIMING_ENABLED, enabled);
+            editor.apply();
+            item.setChecked(enabled);
+            return true;
+        } else if (itemId == R.id.sql_slow_threshold) {
+            final long[] choices = SqlInstrumentation.SLOW_THRESHOLD_CHOICES_MS;
+            CharSequence[] names = new CharSequence[choices.length];
+            for (int i = 0; i < choices.length; i++) {
+                names[i] = mRes.getString(R.string.sql_slow_threshold_template, choices[i]);
+            }
+            showAlert(newBuilder()
+                    .setTitle(mRes.getString(R.string.sql_slow_threshold))
+                    .setItems(names, (dialog, index) -> {
+                        dialog.dismiss();
+                        SqlInstrumentation.setSlowThresholdMs(choices[index]);
+                        SharedPreferences.Editor editor = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE).edit();
+                        editor.putLong(SqlInstrumentation.SQL_SLOW_THRESHOLD_MS, choices[index]);
+                        editor.apply();
+                    }));
+            return true;
+        } else if (itemId == R.id.view_sql_timing) {
+            LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(LAYOUT_INFLATER_SERVICE);
+            View layout = inflater.inflate(R.layout.info_popup, findViewById(R.id.info_layout_root));
+            TextView tv = layout.findViewById(R.id.info_textview);
+            tv.setText(SqlInstrumentation.buildReport());
+            showAlert(newBuilder().setView(layout));
+            return true;
+        } else if (itemId == R.id.share_sql_timing) {
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("text/plain");
+            intent.putExtra(Intent.EXTRA_TEXT, SqlInstrumentation.buildReport());
+            startActivity(Intent.createChooser(intent, mRes.getString(R.string.share_sql_timing)));
+            return true;
+        } else if (itemId == R.id.reset_sql_timing) {
+            SqlInstrumentation.reset();
+            return true;
+        } else if (itemId == R.id.run_database_maintenance) {
+            kickOffAsyncProgressTask(TASK_DATABASE_MAINTENANCE);
+            return true;
+        } else if (itemId == R.id.view_database_maintenance) {
+            showMaintenanceReport();
+            return true;
+        } else {
+            return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * Displays the report of the most recent database maintenance run
+     */
+    void showMaintenanceReport() {
+        String report = DatabaseMaintenance.getLastReport(getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE));
+        if (report == null) {
+            showCancelableAlert(mRes.getString(R.string.no_database_maintenance));
+            return;
+        }
+        LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(LAYOUT_INFLATER_SERVICE);
+        View layout = inflater.inflate(R.layout.info_popup, findViewById(R.id.info_layout_root));
+        TextView tv = layout.findViewById(R.id.info_textview);
+        tv.setText(report);
+        showAlert(newBuilder().setView(layout));
+    }
+
+    /**
+     * Displays the statistics
+     * @param statistics statistics to display
+     */
+    void showStatistics(CollectionStatistics statistics) {
+        TextView textView = findViewById(R.id.statistics_textview);
+        textView.setText(buildStatisticsText(statistics));
+    }
+
+    /**
+     * Builds the text shown for the statistics
+     * @param statistics statistics to display
+     * @return text to display
+     */
+    String buildStatisticsText(CollectionStatistics statistics) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(mRes.getString(R.string.statistics_overall_template,
+                statistics.getCollected(), statistics.getTotal()));
+
+        appendSectionHeader(builder, R.string.statistics_by_type);
+        appendGroups(builder, statistics.getByType(), null);
+
+        appendSectionHeader(builder, R.string.statistics_by_year);
+        appendGroups(builder, statistics.getByYear(), mRes.getString(R.string.statistics_no_year));
+
+        appendSectionHeader(builder, R.string.statistics_by_mint);
+        appendGroups(builder, statistics.getByMint(), mRes.getString(R.string.statistics_no_mint));
+
+        // Grades are only set for coins in the collection, so only show those
+        appendSectionHeader(builder, R.string.statistics_by_grade);
+        String[] gradeNames = mRes.getStringArray(R.array.coin_grades);
+        for (CollectionStatistics.Group group : statistics.getByGrade()) {
+            if (group.getCollected() == 0) {
+                continue;
+            }
+            String name = group.getKey();
+            try {
+                int gradeIndex = Integer.parseInt(name);
+                if (gradeIndex == 0) {
+                    name = mRes.getString(R.string.statistics_no_grade);
+                } else if (gradeIndex > 0 && gradeIndex < gradeNames.length) {
+                    name = gradeNames[gradeIndex];
+                }
+            } catch (NumberFormatException e) {
+                // Show the value stored in the database
+            }
+            builder.append("\n");
+            builder.append(mRes.getString(R.string.statistics_grade_template, name, group.getCollected()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Adds a section header to the statistics text
+     * @param builder text being built
+     * @param headerResId header string resource
+     */
+    private void appendSectionHeader(StringBuilder builder, int headerResId) {
+        builder.append("\n\n");
+        builder.append(mRes.getString(headerResId));
+    }
+
+    /**
+     * Adds a line for each group to the statistics text
+     * @param builder text being built
+     * @param groups groups to add
+     * @param emptyKeyName name to show for the "" key, or null to show it as-is
+     */
+    private void appendGroups(StringBuilder builder, List<CollectionStatistics.Group> groups, String emptyKeyName) {
+        for (CollectionStatistics.Group group : groups) {
+            String name = group.getKey();
+            if (name.isEmpty() && emptyKeyName != null) {
+                name = emptyKeyName;
+            }
+            builder.append("\n");
+            builder.append(mRes.getString(R.string.statistics_group_template,
+                    name, group.getCollected(), group.getTotal()));
+        }
+    }
+}
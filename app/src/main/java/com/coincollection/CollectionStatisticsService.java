@@ -0,0 +1,112 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.CoinSlot.COL_ADV_GRADE_INDEX;
+import static com.coincollection.CoinSlot.COL_COIN_IDENTIFIER;
+import static com.coincollection.CoinSlot.COL_COIN_MINT;
+
+import android.database.SQLException;
+
+/**
+ * Computes the coin counts across all collections shown on the statistics screen.
+ *
+ * The counts are computed with GROUP BY queries over the collection tables, and the result
+ * is kept along with the database change count it was computed at. As long as nothing has
+ * been written since, the same result is returned without querying the database again.
+ */
+public class CollectionStatisticsService {
+
+    // Groups by the year at the start of the identifier (Ex: "1999" or "2009 Proof")
+    final static String YEAR_EXPRESSION = "CASE WHEN " + COL_COIN_IDENTIFIER
+            + " GLOB '[0-9][0-9][0-9][0-9]*' THEN substr(" + COL_COIN_IDENTIFIER + ", 1, 4) ELSE '' END";
+    final static String MINT_EXPRESSION = "IFNULL(TRIM(" + COL_COIN_MINT + "), '')";
+    final static String GRADE_EXPRESSION = "IFNULL(" + COL_ADV_GRADE_INDEX + ", 0)";
+
+    /**
+     * Statistics along with the change count they were computed at
+     */
+    private static class CachedStatistics {
+        final CollectionStatistics mStatistics;
+        final int mChangeCount;
+
+        CachedStatistics(CollectionStatistics statistics, int changeCount) {
+            mStatistics = statistics;
+            mChangeCount = changeCount;
+        }
+    }
+
+    private final DatabaseAdapter mDbAdapter;
+    // Read without locking by getCachedStatistics, so it doesn't wait on a computation
+    private volatile CachedStatistics mCachedStatistics = null;
+    private int mComputeCount = 0;
+
+    /**
+     * Constructor
+     * @param dbAdapter database adapter to read from
+     */
+    public CollectionStatisticsService(DatabaseAdapter dbAdapter) {
+        mDbAdapter = dbAdapter;
+    }
+
+    /**
+     * Gets the statistics, computing them only if the database has changed since they were
+     * last computed. This may take a while for large databases, so it should be called on a
+     * background thread unless getCachedStatistics() returned a result.
+     * @return statistics
+     * @throws SQLException if a database error occurs
+     */
+    public synchronized CollectionStatistics getStatistics() throws SQLException {
+        // Read the count first, so that changes made while computing cause a recompute later
+        int changeCount = mDbAdapter.getChangeCount();
+        CachedStatistics cachedStatistics = mCachedStatistics;
+        if (cachedStatistics != null && cachedStatistics.mChangeCount == changeCount) {
+            return cachedStatistics.mStatistics;
+        }
+        CollectionStatistics statistics = new CollectionStatistics(
+                mDbAdapter.getAllCoinsGroupedBy(YEAR_EXPRESSION),
+                mDbAdapter.getAllCoinsGroupedBy(MINT_EXPRESSION),
+                mDbAdapter.getAllCoinsGroupedBy(GRADE_EXPRESSION),
+                mDbAdapter.getCollectionTotalsByType());
+        mCachedStatistics = new CachedStatistics(statistics, changeCount);
+        mComputeCount++;
+        return statistics;
+    }
+
+    /**
+     * Gets the statistics only if they don't need to be computed
+     * @return statistics, or null if the database has changed since they were last computed
+     */
+    public CollectionStatistics getCachedStatistics() {
+        CachedStatistics cachedStatistics = mCachedStatistics;
+        if (cachedStatistics != null && cachedStatistics.mChangeCount == mDbAdapter.getChangeCount()) {
+            return cachedStatistics.mStatistics;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of times the statistics have been computed from the database
+     */
+    public synchronized int getComputeCount() {
+        return mComputeCount;
+    }
+}
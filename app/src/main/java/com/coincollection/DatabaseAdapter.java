@@ -27,7 +27,27 @@ import static com.coincollection.CoinSlot.COL_COIN_ID;
 import static com.coincollection.CoinSlot.COL_CUSTOM_COIN;
 import static com.coincollection.CoinSlot.COL_IN_COLLECTION;
 import static com.coincollection.CoinSlot.COL_SORT_ORDER;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_COIN_ID;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_COLLECTION;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_OP;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_TIME;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_VALUE;
+import static com.coincollection.ChangeJournal.MAX_JOURNAL_ENTRIES;
+import static com.coincollection.ChangeJournal.MAX_COIN_ENTRIES_PER_CHANGE;
+import static com.coincollection.ChangeJournal.OP_ADD_COIN;
+import static com.coincollection.ChangeJournal.OP_CREATE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_DELETE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REMOVE_COIN;
+import static com.coincollection.ChangeJournal.OP_RENAME_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REORDER_COINS;
+import static com.coincollection.ChangeJournal.OP_REORDER_COLLECTIONS;
+import static com.coincollection.ChangeJournal.OP_SET_IN_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_UPDATE_ADV_INFO;
+import static com.coincollection.ChangeJournal.OP_UPDATE_COIN;
+import static com.coincollection.ChangeJournal.OP_UPDATE_COLLECTION;
+import static com.coincollection.ChangeJournal.TBL_CHANGE_JOURNAL;
 import static com.coincollection.CollectionListInfo.COL_COIN_TYPE;
+import static com.coincollection.CollectionListInfo.COL_COLLECTED;
 import static com.coincollection.CollectionListInfo.COL_DISPLAY;
 import static com.coincollection.CollectionListInfo.COL_DISPLAY_ORDER;
 import static com.coincollection.CollectionListInfo.COL_END_YEAR;
@@ -37,6 +57,8 @@ import static com.coincollection.CollectionListInfo.COL_SHOW_MINT_MARKS;
 import static com.coincollection.CollectionListInfo.COL_START_YEAR;
 import static com.coincollection.CollectionListInfo.COL_TOTAL;
 import static com.coincollection.CollectionListInfo.TBL_COLLECTION_INFO;
+import static com.coincollection.DatabaseHelper.bindIntegerOrNull;
+import static com.coincollection.DatabaseHelper.bindStringOrNull;
 import static com.coincollection.DatabaseHelper.simpleQueryForLong;
 import static com.coincollection.ExportImportHelper.LEGACY_EXPORT_COLLECTION_LIST_FILE_NAME;
 
@@ -46,14 +68,24 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.spencerpages.MainApplication;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Adapter based on the Simple Notes Database Access Helper Class on the Android site.
@@ -63,9 +95,127 @@ import java.util.Locale;
  */
 public class DatabaseAdapter {
 
+    // Spacing between coin sort orders after renumbering a collection
+    public final static int COIN_SORT_ORDER_GAP = 1024;
+
     private final DatabaseHelper mDbHelper;
     private SQLiteDatabase mDb = null;
 
+    /**
+     * Cache of compiled statements used by the frequently called query methods, keyed by the
+     * table the statement accesses and the SQL command. Statements are closed when evicted,
+     * when the table they access is renamed or dropped, and when the database is closed.
+     *
+     * Statements are removed from the cache while in use and returned afterwards, so that the
+     * cache lock is never held while waiting on the database. Statements checked out before
+     * an invalidation are closed rather than returned.
+     */
+    private final static int STATEMENT_CACHE_SIZE = 16;
+    private final static String STATEMENT_CACHE_KEY_SEPARATOR = "\0";
+    private final LinkedHashMap<String, SQLiteStatement> mStatementCache =
+            new LinkedHashMap<String, SQLiteStatement>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+            if (size() > STATEMENT_CACHE_SIZE) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+    private int mStatementCacheGeneration = 0;
+    private int mStatementCacheHits = 0;
+    private int mStatementCacheMisses = 0;
+
+    /**
+     * Compiled statement checked out of the statement cache
+     */
+    private static class CachedStatement {
+        final String mKey;
+        final SQLiteStatement mStatement;
+        final int mGeneration;
+
+        CachedStatement(String key, SQLiteStatement statement, int generation) {
+            mKey = key;
+            mStatement = statement;
+            mGeneration = generation;
+        }
+    }
+
+    /**
+     * Names of all collections, lower-cased, used to check names without reading the collection
+     * info table. Loaded when first needed and kept in sync as collections are created, renamed
+     * and deleted. Set to null when it may be out of date so that it's reloaded. Guarded by
+     * the mNextCollectionNameSuffixes lock.
+     */
+    private HashSet<String> mCollectionNames = null;
+
+    // Next copy number to try for each base name, used by getAvailableCollectionName. Cleared
+    // whenever a collection name is removed, since that may free up a lower number.
+    private final HashMap<String, Integer> mNextCollectionNameSuffixes = new HashMap<>();
+
+    // Incremented whenever the data may have changed, so that results computed from the
+    // database (Ex: statistics) can tell when they're out of date
+    private final AtomicInteger mChangeCount = new AtomicInteger();
+
+    // The change journal is trimmed back to MAX_JOURNAL_ENTRIES after this many appends
+    private final static int JOURNAL_TRIM_INTERVAL = 100;
+    private final AtomicInteger mJournalAppendCount = new AtomicInteger();
+
+    // Statement used to append to the change journal. This is kept outside of the statement
+    // cache since it's used by every change and would otherwise take up one of its entries.
+    // Guarded by mJournalLock.
+    private final Object mJournalLock = new Object();
+    private SQLiteStatement mJournalStatement = null;
+
+    /**
+     * Interface used to publish changes to the data. Changes are read from the change journal
+     * once they're committed, and are delivered on the main thread in batches, so listeners
+     * see each committed change once and in order, whichever thread made it.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on the main thread with the changes committed since the last call
+         * @param changes changes in the order they were made
+         */
+        void onDataChanged(List<ChangeJournal.Entry> changes);
+
+        /**
+         * Called on the main thread when the data changed in a way that isn't described by
+         * change events (Ex: the database was upgraded, or there were too many changes to
+         * deliver). Anything read from the database should be read again.
+         */
+        void onDataReset();
+    }
+
+    // Above this many changes in a batch, listeners are told to read everything again instead
+    public final static int MAX_PUBLISHED_CHANGES = 500;
+
+    // Listeners, each with the last journal entry committed before it was registered, and the
+    // last journal entry delivered to them. These are only used on the main thread.
+    private final LinkedHashMap<ChangeListener, Long> mChangeListeners = new LinkedHashMap<>();
+    private long mLastPublishedJournalId = 0;
+
+    // Changes are delivered by posting to the main thread once per batch
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mPublishChangesRunnable = this::publishChanges;
+    private final AtomicBoolean mPublishPending = new AtomicBoolean();
+    private final AtomicBoolean mDataResetPending = new AtomicBoolean();
+
+    // Number of background tasks using the connection (Ex: the maintenance job), and whether
+    // close() was called while they were. Closing waits until the last one is done so that
+    // the connection isn't closed out from under them. Guarded by mOpenLock.
+    private final Object mOpenLock = new Object();
+    private int mBackgroundUseCount = 0;
+    private boolean mClosePending = false;
+
+    // Number of collection pages showing each collection. The pages keep the coin sort orders
+    // in memory, so these collections aren't renumbered by the maintenance.
+    private final HashMap<String, Integer> mOpenCollectionPages = new HashMap<>();
+
+    // Table listing the tables and indexes in the database
+    private final static String TBL_SQLITE_MASTER = "sqlite_master";
+
     /**
      * Record any internal DB names here!
      * Because internal tables and user tables aren't differentiated, we must prohibit
@@ -74,6 +224,7 @@ public class DatabaseAdapter {
      */
     private final List<String> mReservedDbNames = new ArrayList<>(Arrays.asList(
             TBL_COLLECTION_INFO,
+            TBL_CHANGE_JOURNAL,
             LEGACY_EXPORT_COLLECTION_LIST_FILE_NAME
     ));
 
@@ -94,21 +245,115 @@ public class DatabaseAdapter {
      * @throws SQLException if the database cannot be opened
      */
     public void open() throws SQLException {
-        if (mDb == null || !mDb.isOpen()) {
-            mDb = mDbHelper.getWritableDatabase();
+        synchronized (mOpenLock) {
+            mClosePending = false;
+            if (mDb == null || !mDb.isOpen()) {
+                mDb = mDbHelper.getWritableDatabase();
+                // The database may have been upgraded or replaced while it was closed
+                mDataResetPending.set(true);
+                markDataChanged();
+            }
         }
     }
 
     /**
-     * Close the current database connection
+     * Close the current database connection. If a background task is using the connection,
+     * it's closed once the task is done instead.
      */
     public void close() {
-        if (mDb != null && mDb.isOpen()) {
-            mDb.close();
-            mDb = null;
+        synchronized (mOpenLock) {
+            if (mBackgroundUseCount > 0) {
+                mClosePending = true;
+                return;
+            }
+            clearStatementCache();
+            invalidateCollectionNames();
+            if (mDb != null && mDb.isOpen()) {
+                mDb.close();
+                mDb = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the database for a background task, and keeps it open until endBackgroundUse
+     * is called even if close() is called in the meantime
+     * @throws SQLException if the database cannot be opened
+     */
+    public void beginBackgroundUse() throws SQLException {
+        synchronized (mOpenLock) {
+            open();
+            mBackgroundUseCount++;
+        }
+    }
+
+    /**
+     * Called when a background task is done with the database. Closes the database if
+     * close() was called while the task was running.
+     */
+    public void endBackgroundUse() {
+        synchronized (mOpenLock) {
+            mBackgroundUseCount--;
+            if (mBackgroundUseCount == 0 && mClosePending) {
+                mClosePending = false;
+                close();
+            }
         }
     }
 
+    /**
+     * Records that a collection page is showing a collection
+     * @param tableName collection name
+     */
+    public void addOpenCollectionPage(String tableName) {
+        synchronized (mOpenCollectionPages) {
+            Integer count = mOpenCollectionPages.get(tableName);
+            mOpenCollectionPages.put(tableName, (count == null) ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Records that a collection page showing a collection was closed
+     * @param tableName collection name
+     */
+    public void removeOpenCollectionPage(String tableName) {
+        synchronized (mOpenCollectionPages) {
+            Integer count = mOpenCollectionPages.get(tableName);
+            if (count == null || count <= 1) {
+                mOpenCollectionPages.remove(tableName);
+            } else {
+                mOpenCollectionPages.put(tableName, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Begin a transaction on the database. Transactions may be nested, in which case the
+     * outermost transaction determines whether the changes are committed.
+     */
+    void beginTransaction() {
+        mDb.beginTransaction();
+    }
+
+    /**
+     * Marks the current transaction as successful, so that the changes are committed
+     * when endTransaction() is called
+     */
+    void setTransactionSuccessful() {
+        mDb.setTransactionSuccessful();
+    }
+
+    /**
+     * End the current transaction, committing the changes only if the transaction
+     * was marked as successful
+     */
+    void endTransaction() {
+        mDb.endTransaction();
+        // The transaction may have been rolled back, undoing collection changes
+        invalidateCollectionNames();
+        markDataChanged();
+    }
+
     /**
      * Returns whether a coinIdentifier and coinMint has been marked as collected in a given
      * collection.
@@ -121,28 +366,78 @@ public class DatabaseAdapter {
     // instead have one query that returns all of the info.
     public int fetchIsInCollection(String tableName, CoinSlot coinSlot) throws SQLException {
         String sqlCmd = "SELECT " + COL_IN_COLLECTION + " FROM [" + tableName + "] WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE + " LIMIT 1";
-        SQLiteStatement compiledStatement = mDb.compileStatement(sqlCmd);
-        compiledStatement.bindString(1, String.valueOf(coinSlot.getDatabaseId()));
-        int result = simpleQueryForLong(compiledStatement);
-        compiledStatement.clearBindings();
-        compiledStatement.close();
-        return result;
+        return cachedSimpleQueryForLong(tableName, sqlCmd, String.valueOf(coinSlot.getDatabaseId()));
     }
 
     /**
-     * Updates a coins presence in the database.
+     * Flips a coin's presence in the database. The flip is done by an UPDATE relative to the
+     * stored value, so that quick successive toggles can't race with each other, and the new
+     * value is then read back with a SELECT in the same transaction. The collected count in
+     * the collection info table is updated by trigger as part of the UPDATE.
      *
      * @param tableName The name of the collection of interest
-     * @param coinSlot The coin we want to retrieve data for
+     * @param coinSlot The coin we want to update
+     * @return true if the coin is now in the collection, false otherwise
      * @throws SQLException if the database update was not successful
      */
-    public void toggleInCollection(String tableName, CoinSlot coinSlot) throws SQLException {
-        int result = fetchIsInCollection(tableName, coinSlot);
-        int newValue = (result + 1) % 2;
-        ContentValues args = new ContentValues();
-        args.put(COL_IN_COLLECTION, newValue);
-        String[] whereValues = new String[] {String.valueOf(coinSlot.getDatabaseId())};
-        runSqlUpdateAndCheck(tableName, args, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
+    public boolean toggleInCollection(String tableName, CoinSlot coinSlot) throws SQLException {
+        // Note: IFNULL treats a missing value as not collected, matching the display
+        String sqlCmd = "UPDATE [" + tableName + "] SET " + COL_IN_COLLECTION + " = 1 - IFNULL(" + COL_IN_COLLECTION + ", 0)"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE;
+        String coinId = String.valueOf(coinSlot.getDatabaseId());
+        mDb.beginTransaction();
+        try {
+            CachedStatement cachedStatement = acquireCachedStatement(tableName, sqlCmd);
+            try {
+                cachedStatement.mStatement.bindString(1, coinId);
+                if (cachedStatement.mStatement.executeUpdateDelete() <= 0) {
+                    throw new SQLException();
+                }
+            } finally {
+                releaseCachedStatement(cachedStatement);
+            }
+            // Read back the new value within the same transaction
+            boolean isInCollection = (fetchIsInCollection(tableName, coinSlot) == 1);
+            appendJournal(OP_SET_IN_COLLECTION, tableName, coinSlot.getDatabaseId(), isInCollection ? "1" : "0");
+            mDb.setTransactionSuccessful();
+            return isInCollection;
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+    }
+
+    /**
+     * Sets whether each of a group of coins is in the collection, in a single transaction
+     *
+     * @param tableName The name of the collection of interest
+     * @param coinStates Map of coin database ids to whether the coin is in the collection
+     * @throws SQLException if any of the updates were not successful, in which case none
+     *                      of the updates are applied
+     */
+    public void updateInCollection(String tableName, Map<Long, Boolean> coinStates) throws SQLException {
+        String sqlCmd = "UPDATE [" + tableName + "] SET " + COL_IN_COLLECTION + " = ?"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE;
+        mDb.beginTransaction();
+        try {
+            CachedStatement cachedStatement = acquireCachedStatement(tableName, sqlCmd);
+            try {
+                for (Map.Entry<Long, Boolean> coinState : coinStates.entrySet()) {
+                    cachedStatement.mStatement.bindLong(1, coinState.getValue() ? 1 : 0);
+                    cachedStatement.mStatement.bindString(2, String.valueOf(coinState.getKey()));
+                    if (cachedStatement.mStatement.executeUpdateDelete() <= 0) {
+                        throw new SQLException();
+                    }
+                    appendJournal(OP_SET_IN_COLLECTION, tableName, coinState.getKey(), coinState.getValue() ? "1" : "0");
+                }
+            } finally {
+                releaseCachedStatement(cachedStatement);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
@@ -155,12 +450,7 @@ public class DatabaseAdapter {
     public int fetchTableDisplay(String tableName) throws SQLException {
         // The database will only be set up this way in this case
         String sqlCmd = "SELECT " + COL_DISPLAY + " FROM " + TBL_COLLECTION_INFO + " WHERE " + COL_NAME + "=? LIMIT 1";
-        SQLiteStatement compiledStatement = mDb.compileStatement(sqlCmd);
-        compiledStatement.bindString(1, tableName);
-        int result = simpleQueryForLong(compiledStatement);
-        compiledStatement.clearBindings();
-        compiledStatement.close();
-        return result;
+        return cachedSimpleQueryForLong(TBL_COLLECTION_INFO, sqlCmd, tableName);
     }
 
     /**
@@ -173,7 +463,15 @@ public class DatabaseAdapter {
     public void updateTableDisplay(String tableName, int displayType) throws SQLException {
         ContentValues args = new ContentValues();
         args.put(COL_DISPLAY, displayType);
-        runSqlUpdateAndCheck(TBL_COLLECTION_INFO, args, COL_NAME + "=?", new String[] { tableName });
+        mDb.beginTransaction();
+        try {
+            // Only changes how the collection is shown, so it isn't journaled
+            runSqlUpdateAndCheck(TBL_COLLECTION_INFO, args, COL_NAME + "=?", new String[] { tableName });
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
@@ -186,25 +484,97 @@ public class DatabaseAdapter {
     public void updateDisplayOrder(String tableName, int displayOrder) throws SQLException {
         ContentValues args = new ContentValues();
         args.put(COL_DISPLAY_ORDER, displayOrder);
-        runSqlUpdateAndCheck(TBL_COLLECTION_INFO, args, COL_NAME + "=?", new String[] { tableName });
+        mDb.beginTransaction();
+        try {
+            runSqlUpdateAndCheck(TBL_COLLECTION_INFO, args, COL_NAME + "=?", new String[] { tableName });
+            appendJournal(OP_REORDER_COLLECTIONS, null, 0, null);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
-     * Updates the info for the coin in table 'name' where the coin is identified with
-     * coinIdentifier and coinMint. This includes the advanced info (coin grade, quantity, and
-     * notes) in addition to whether it is inc the collection.
-     * @param tableName The collection name
-     * @param coinSlot Coin slot
+     * Updates the order in which the collections should appear in the list of collections,
+     * in a single transaction. Only the collections that moved are written.
+     *
+     * @param orderedNames - Collection names in the new display order
+     * @return number of collections whose display order was updated
+     * @throws SQLException if the database update was not successful, in which case none
+     *                      of the display orders are changed
+     */
+    public int updateDisplayOrders(List<String> orderedNames) throws SQLException {
+        mDb.beginTransaction();
+        try {
+            int numUpdated = DatabaseHelper.updateDisplayOrders(mDb, orderedNames);
+            if (numUpdated > 0) {
+                appendJournal(OP_REORDER_COLLECTIONS, null, 0, null);
+            }
+            mDb.setTransactionSuccessful();
+            return numUpdated;
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+    }
+
+    /**
+     * Renumbers the display orders of the collections to remove any gaps, such as after a
+     * collection is deleted, keeping the current order
+     *
+     * @return number of collections whose display order was updated
      * @throws SQLException if the database update was not successful
      */
-    void updateAdvInfo(String tableName, CoinSlot coinSlot) throws SQLException {
-        ContentValues args = new ContentValues();
-        args.put(COL_IN_COLLECTION, coinSlot.isInCollectionInt());
-        args.put(COL_ADV_GRADE_INDEX, coinSlot.getAdvancedGrades());
-        args.put(COL_ADV_QUANTITY_INDEX, coinSlot.getAdvancedQuantities());
-        args.put(COL_ADV_NOTES, coinSlot.getAdvancedNotes());
-        String[] whereValues = new String[] {String.valueOf(coinSlot.getDatabaseId())};
-        runSqlUpdateAndCheck(tableName, args, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
+    public int compactDisplayOrders() throws SQLException {
+        ArrayList<String> orderedNames = new ArrayList<>();
+        Cursor cursor = getAllCollectionNames();
+        while (cursor.moveToNext()) {
+            orderedNames.add(cursor.getString(0));
+        }
+        cursor.close();
+        return updateDisplayOrders(orderedNames);
+    }
+
+    /**
+     * Updates the info for a group of coins in a single transaction. This includes the advanced
+     * info (coin grade, quantity, and notes) in addition to whether it is in the collection.
+     * @param tableName The collection name
+     * @param coinSlots Coin slots to update
+     * @throws SQLException if any of the updates were not successful, in which case none
+     *                      of the updates are applied
+     */
+    void updateAdvInfo(String tableName, List<CoinSlot> coinSlots) throws SQLException {
+        String sqlCmd = "UPDATE [" + tableName + "] SET "
+                + COL_IN_COLLECTION + " = ?, "
+                + COL_ADV_GRADE_INDEX + " = ?, "
+                + COL_ADV_QUANTITY_INDEX + " = ?, "
+                + COL_ADV_NOTES + " = ?"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE;
+        mDb.beginTransaction();
+        try {
+            CachedStatement cachedStatement = acquireCachedStatement(tableName, sqlCmd);
+            try {
+                SQLiteStatement compiledStatement = cachedStatement.mStatement;
+                for (CoinSlot coinSlot : coinSlots) {
+                    compiledStatement.bindLong(1, coinSlot.isInCollectionInt());
+                    bindIntegerOrNull(compiledStatement, 2, coinSlot.getAdvancedGrades());
+                    bindIntegerOrNull(compiledStatement, 3, coinSlot.getAdvancedQuantities());
+                    bindStringOrNull(compiledStatement, 4, coinSlot.getAdvancedNotes());
+                    compiledStatement.bindString(5, String.valueOf(coinSlot.getDatabaseId()));
+                    if (compiledStatement.executeUpdateDelete() <= 0) {
+                        throw new SQLException();
+                    }
+                    appendJournal(OP_UPDATE_ADV_INFO, tableName, coinSlot.getDatabaseId(), null);
+                }
+            } finally {
+                releaseCachedStatement(cachedStatement);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
@@ -225,7 +595,9 @@ public class DatabaseAdapter {
         + " " + COL_ADV_NOTES + " text default \"\","
         + " " + COL_SORT_ORDER + " integer not null,"
         + " " + COL_CUSTOM_COIN + " integer default 0);";
-        mDb.execSQL(sqlCmd);
+        DatabaseHelper.execSql(mDb, sqlCmd);
+        DatabaseHelper.createCollectionTableTriggers(mDb, tableName);
+        DatabaseHelper.createCollectionTableIndexes(mDb, tableName);
     }
 
     /**
@@ -237,29 +609,98 @@ public class DatabaseAdapter {
      */
     public void createAndPopulateNewTable(CollectionListInfo collectionListInfo, int displayOrder, ArrayList<CoinSlot> coinData) throws SQLException {
 
-        // Actually make the table
-        String tableName = collectionListInfo.getName();
-        createCollectionTable(tableName);
+        // Create and populate the table in a single transaction so that the coins aren't
+        // each committed to disk individually
+        mDb.beginTransaction();
+        try {
+            // Add the table to the list of tables first, since the triggers that maintain the
+            // collected count update this entry as coins are inserted
+            String tableName = collectionListInfo.getName();
+            ContentValues values = new ContentValues();
+            values.put(COL_NAME, tableName);
+            values.put(COL_COIN_TYPE, collectionListInfo.getType());
+            values.put(COL_TOTAL, collectionListInfo.getMax());
+            values.put(COL_DISPLAY_ORDER, displayOrder);
+            values.put(COL_DISPLAY, collectionListInfo.getDisplayType());
+            values.put(COL_START_YEAR, collectionListInfo.getStartYear());
+            values.put(COL_END_YEAR, collectionListInfo.getEndYear());
+            values.put(COL_SHOW_MINT_MARKS, collectionListInfo.getMintMarkFlags());
+            values.put(COL_SHOW_CHECKBOXES, collectionListInfo.getCheckboxFlags());
+            values.put(COL_COLLECTED, 0);
+            runSqlInsert(TBL_COLLECTION_INFO, values);
 
-        // We have the list of identifiers, now set them correctly
-        if (coinData != null) {
-            for (CoinSlot coinSlot : coinData) {
-                addCoinSlotToCollection(coinSlot, tableName, false, 0);
+            // Actually make the table
+            createCollectionTable(tableName);
+
+            // We have the list of identifiers, now set them correctly
+            if (coinData != null) {
+                bulkInsertCoinSlots(tableName, coinData);
             }
+            appendJournal(OP_CREATE_COLLECTION, tableName, 0, null);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
         }
+        addCollectionName(collectionListInfo.getName());
+    }
 
-        // We also need to add the table to the list of tables
-        ContentValues values = new ContentValues();
-        values.put(COL_NAME, collectionListInfo.getName());
-        values.put(COL_COIN_TYPE, collectionListInfo.getType());
-        values.put(COL_TOTAL, collectionListInfo.getMax());
-        values.put(COL_DISPLAY_ORDER, displayOrder);
-        values.put(COL_DISPLAY, collectionListInfo.getDisplayType());
-        values.put(COL_START_YEAR, collectionListInfo.getStartYear());
-        values.put(COL_END_YEAR, collectionListInfo.getEndYear());
-        values.put(COL_SHOW_MINT_MARKS, collectionListInfo.getMintMarkFlags());
-        values.put(COL_SHOW_CHECKBOXES, collectionListInfo.getCheckboxFlags());
-        runSqlInsert(TBL_COLLECTION_INFO, values);
+    /**
+     * Inserts a list of coins into a collection, reusing a single compiled statement for all of
+     * the rows. This should be called within a transaction.
+     * @param tableName The collection name
+     * @param coinData The coins to insert. If every coin already has a different database id
+     *                 (Ex: coins from an export or another collection), those ids are kept so
+     *                 that later change exports can refer to them. Otherwise new ids are used.
+     *                 The database id of each coin is set after insertion
+     * @throws SQLException if any of the inserts fail
+     */
+    private void bulkInsertCoinSlots(String tableName, ArrayList<CoinSlot> coinData) throws SQLException {
+        HashSet<Long> coinIds = new HashSet<>();
+        for (CoinSlot coinSlot : coinData) {
+            if ((coinSlot.getDatabaseId() <= 0) || !coinIds.add(coinSlot.getDatabaseId())) {
+                coinIds = null;
+                break;
+            }
+        }
+        boolean keepIds = (coinIds != null);
+
+        String sqlCmd = "INSERT INTO [" + tableName + "] ("
+                + COL_COIN_IDENTIFIER + ", "
+                + COL_COIN_MINT + ", "
+                + COL_IN_COLLECTION + ", "
+                + COL_ADV_GRADE_INDEX + ", "
+                + COL_ADV_QUANTITY_INDEX + ", "
+                + COL_ADV_NOTES + ", "
+                + COL_SORT_ORDER + ", "
+                + COL_CUSTOM_COIN + ", "
+                + COL_COIN_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        SQLiteStatement compiledStatement = mDb.compileStatement(sqlCmd);
+        try {
+            for (CoinSlot coinSlot : coinData) {
+                bindStringOrNull(compiledStatement, 1, coinSlot.getIdentifier());
+                bindStringOrNull(compiledStatement, 2, coinSlot.getMint());
+                compiledStatement.bindLong(3, coinSlot.isInCollectionInt());
+                bindIntegerOrNull(compiledStatement, 4, coinSlot.getAdvancedGrades());
+                bindIntegerOrNull(compiledStatement, 5, coinSlot.getAdvancedQuantities());
+                bindStringOrNull(compiledStatement, 6, coinSlot.getAdvancedNotes());
+                compiledStatement.bindLong(7, coinSlot.getSortOrder());
+                compiledStatement.bindLong(8, coinSlot.isCustomCoinInt());
+                if (keepIds) {
+                    compiledStatement.bindLong(9, coinSlot.getDatabaseId());
+                } else {
+                    compiledStatement.bindNull(9);
+                }
+                long rowId = compiledStatement.executeInsert();
+                if (rowId == -1) {
+                    throw new SQLException();
+                }
+                coinSlot.setDatabaseId(rowId);
+                compiledStatement.clearBindings();
+            }
+        } finally {
+            compiledStatement.close();
+        }
     }
 
     /**
@@ -268,9 +709,19 @@ public class DatabaseAdapter {
      * @throws SQLException if a database error occurs
      */
     public void dropCollectionTable(String tableName) throws SQLException {
-        String dropTableCmd = "DROP TABLE [" + tableName + "];";
-        mDb.execSQL(dropTableCmd);
-        runSqlDeleteAndCheck(TBL_COLLECTION_INFO, COL_NAME + "=?", new String[] { tableName });
+        invalidateStatementCache(tableName);
+        mDb.beginTransaction();
+        try {
+            String dropTableCmd = "DROP TABLE [" + tableName + "];";
+            DatabaseHelper.execSql(mDb, dropTableCmd);
+            runSqlDeleteAndCheck(TBL_COLLECTION_INFO, COL_NAME + "=?", new String[] { tableName });
+            appendJournal(OP_DELETE_COLLECTION, tableName, 0, null);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+        removeCollectionName(tableName);
     }
 
     /**
@@ -278,8 +729,11 @@ public class DatabaseAdapter {
      * @throws SQLException if a database error occurs
      */
     void dropCollectionInfoTable() throws SQLException {
+        clearStatementCache();
+        invalidateCollectionNames();
         String dropTableCmd = "DROP TABLE [" + TBL_COLLECTION_INFO + "];";
-        mDb.execSQL(dropTableCmd);
+        DatabaseHelper.execSql(mDb, dropTableCmd);
+        markDataChanged();
     }
 
     /**
@@ -290,6 +744,247 @@ public class DatabaseAdapter {
         return mDb.query(TBL_COLLECTION_INFO, new String[] {COL_NAME}, null, null, null, null, COL_DISPLAY_ORDER);
     }
 
+    /**
+     * Counts the coins in every collection, grouped by the value of an expression over the
+     * coin columns
+     * @param keyExpression SQL expression to group the coins by
+     * @return map of each group key to {total coins, collected coins}
+     * @throws SQLException if a database error occurs
+     */
+    public HashMap<String, int[]> getAllCoinsGroupedBy(String keyExpression) throws SQLException {
+        return DatabaseHelper.getAllCoinsGroupedBy(mDb, keyExpression);
+    }
+
+    /**
+     * Counts the coins in every collection grouped by coin type
+     * @return map of each coin type to {total coins, collected coins}
+     * @throws SQLException if a database error occurs
+     */
+    public HashMap<String, int[]> getCollectionTotalsByType() throws SQLException {
+        return DatabaseHelper.getCollectionTotalsByType(mDb);
+    }
+
+    /**
+     * Gets a count that changes whenever the data in the database may have changed. Results
+     * computed from the database can be reused as long as the count is the same as when they
+     * were computed. The count should be read before reading the data.
+     * @return change count
+     */
+    public int getChangeCount() {
+        return mChangeCount.get();
+    }
+
+    /**
+     * Records that the data in the database may have changed, and schedules the changes to
+     * be published to the change listeners
+     */
+    private void markDataChanged() {
+        mChangeCount.incrementAndGet();
+        if (mPublishPending.compareAndSet(false, true)) {
+            mMainHandler.post(mPublishChangesRunnable);
+        }
+    }
+
+    /**
+     * Registers a listener to be told about changes to the data. This must be called on the
+     * main thread, and the listener only receives changes committed after it's registered.
+     * @param listener listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        long latestJournalId = getLatestJournalId();
+        if (mChangeListeners.isEmpty()) {
+            // Changes made while nobody was listening aren't published
+            mLastPublishedJournalId = latestJournalId;
+            mDataResetPending.set(false);
+        }
+        if (!mChangeListeners.containsKey(listener)) {
+            mChangeListeners.put(listener, latestJournalId);
+        }
+    }
+
+    /**
+     * Unregisters a change listener. This must be called on the main thread.
+     * @param listener listener to remove
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        mChangeListeners.remove(listener);
+    }
+
+    /**
+     * Delivers the changes committed since the last call to the change listeners. Changes
+     * that are still in an open transaction aren't in the journal yet, so they're delivered
+     * by the call scheduled when the transaction ends.
+     */
+    private void publishChanges() {
+        mPublishPending.set(false);
+        if (mChangeListeners.isEmpty() || mDb == null || !mDb.isOpen()) {
+            return;
+        }
+        boolean dataReset = mDataResetPending.getAndSet(false);
+        ArrayList<ChangeJournal.Entry> changes = new ArrayList<>();
+        try {
+            long lastId = mLastPublishedJournalId;
+            if (!dataReset) {
+                Cursor cursor = getJournalEntries(lastId, MAX_PUBLISHED_CHANGES + 1);
+                try {
+                    while (cursor.moveToNext()) {
+                        ChangeJournal.Entry entry = new ChangeJournal.Entry(cursor);
+                        // Entry ids have no gaps, so a gap means some entries were trimmed
+                        if (entry.getId() != lastId + 1) {
+                            dataReset = true;
+                            break;
+                        }
+                        lastId = entry.getId();
+                        changes.add(entry);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                dataReset |= (changes.size() > MAX_PUBLISHED_CHANGES);
+            }
+            mLastPublishedJournalId = dataReset ? getLatestJournalId() : lastId;
+        } catch (SQLException e) {
+            // Have the listeners read everything again once the database can be read
+            mDataResetPending.set(true);
+            return;
+        }
+
+        // Copy the listeners, since they may add or remove listeners when called
+        ArrayList<Map.Entry<ChangeListener, Long>> listeners = new ArrayList<>(mChangeListeners.entrySet());
+        for (Map.Entry<ChangeListener, Long> listener : listeners) {
+            if (!mChangeListeners.containsKey(listener.getKey())) {
+                continue;
+            }
+            if (dataReset) {
+                listener.getKey().onDataReset();
+                continue;
+            }
+            // Skip the changes committed before the listener was registered
+            int start = 0;
+            while (start < changes.size() && changes.get(start).getId() <= listener.getValue()) {
+                start++;
+            }
+            if (start < changes.size()) {
+                listener.getKey().onDataChanged(
+                        Collections.unmodifiableList(changes.subList(start, changes.size())));
+            }
+        }
+    }
+
+    /**
+     * Gets the query plan SQLite would use for a query, for checking index usage
+     * @param sqlCmd query to explain
+     * @param args query arguments
+     * @return the detail of each step of the plan, one per line
+     */
+    public String explainQueryPlan(String sqlCmd, String... args) {
+        return DatabaseHelper.explainQueryPlan(mDb, sqlCmd, args);
+    }
+
+    /**
+     * Gets the size of the database file
+     * @return size in bytes
+     */
+    public long getDatabaseSizeBytes() {
+        return DatabaseHelper.getDatabaseSizeBytes(mDb);
+    }
+
+    /**
+     * Updates the statistics used by the query planner
+     * @throws SQLException if a database error occurs
+     */
+    public void analyze() throws SQLException {
+        DatabaseHelper.analyze(mDb);
+    }
+
+    /**
+     * Returns free pages to the file system
+     * @param allowFullVacuum true if a full VACUUM may be used to enable incremental vacuum
+     * @return true if a full VACUUM was done
+     * @throws SQLException if a database error occurs
+     */
+    public boolean vacuum(boolean allowFullVacuum) throws SQLException {
+        // Don't hold compiled statements open while the file is rebuilt
+        clearStatementCache();
+        return DatabaseHelper.vacuum(mDb, allowFullVacuum);
+    }
+
+    /**
+     * Runs a full check of the database file
+     * @param maxErrors maximum number of errors to report
+     * @return list of problems found, empty if the database is ok
+     */
+    public ArrayList<String> checkIntegrity(int maxErrors) {
+        return DatabaseHelper.checkIntegrity(mDb, maxErrors);
+    }
+
+    /**
+     * Adds a row to the change journal. This should be called in the same transaction as
+     * the change, so that the row is only kept if the change is committed.
+     * @param op type of change, one of the ChangeJournal OP_ values
+     * @param collectionName collection changed, or null
+     * @param coinId database id of the coin changed, or 0
+     * @param value detail of the change, or null
+     * @throws SQLException if a database error occurs
+     */
+    private void appendJournal(int op, String collectionName, long coinId, String value) throws SQLException {
+        synchronized (mJournalLock) {
+            if (mJournalStatement == null) {
+                mJournalStatement = mDb.compileStatement("INSERT INTO " + TBL_CHANGE_JOURNAL + " ("
+                        + COL_JOURNAL_TIME + ", " + COL_JOURNAL_OP + ", " + COL_JOURNAL_COLLECTION + ", "
+                        + COL_JOURNAL_COIN_ID + ", " + COL_JOURNAL_VALUE + ") VALUES (?, ?, ?, ?, ?)");
+            }
+            mJournalStatement.bindLong(1, System.currentTimeMillis());
+            mJournalStatement.bindLong(2, op);
+            bindStringOrNull(mJournalStatement, 3, collectionName);
+            mJournalStatement.bindLong(4, coinId);
+            bindStringOrNull(mJournalStatement, 5, value);
+            if (mJournalStatement.executeInsert() == -1) {
+                throw new SQLException();
+            }
+        }
+        if (mJournalAppendCount.incrementAndGet() % JOURNAL_TRIM_INTERVAL == 0) {
+            trimChangeJournal();
+        }
+    }
+
+    /**
+     * Reads the change journal in order, starting after a given row. To read the whole
+     * journal, start with 0 and then pass the id of the last entry returned by each call.
+     * @param afterId id of the last entry already read, or 0 to read from the start
+     * @param maxEntries maximum number of entries to return
+     * @return cursor over the entries, which the caller must close. Use
+     *         ChangeJournal.Entry to read each row.
+     */
+    public Cursor getJournalEntries(long afterId, int maxEntries) {
+        return DatabaseHelper.getJournalEntries(mDb, afterId, maxEntries);
+    }
+
+    /**
+     * Gets the id of the newest change journal entry, which can be recorded as a checkpoint
+     * @return entry id, or 0 if the journal is empty
+     */
+    public long getLatestJournalId() {
+        return DatabaseHelper.getLatestJournalId(mDb);
+    }
+
+    /**
+     * Deletes the oldest change journal entries beyond MAX_JOURNAL_ENTRIES
+     * @return number of entries deleted
+     * @throws SQLException if a database error occurs
+     */
+    public int trimChangeJournal() throws SQLException {
+        return DatabaseHelper.trimChangeJournal(mDb, MAX_JOURNAL_ENTRIES);
+    }
+
+    /**
+     * Sets the listener to notify of progress if the database is upgraded when opened
+     * @param listener listener, or null to remove
+     */
+    public void setUpgradeListener(DatabaseHelper.UpgradeListener listener) {
+        mDbHelper.setUpgradeListener(listener);
+    }
+
     /**
      * Expose the dbHelper's onUpgrade method so we can call it manually when importing collections
      *
@@ -297,7 +992,16 @@ public class DatabaseAdapter {
      * @param fromImport true if the upgrade is part of a database import
      */
     void upgradeCollections(int oldVersion, boolean fromImport) {
-        DatabaseHelper.upgradeDb(mDb, oldVersion, MainApplication.DATABASE_VERSION, fromImport);
+        // The upgrade may change the structure of any table
+        clearStatementCache();
+        invalidateCollectionNames();
+        try {
+            DatabaseHelper.upgradeDb(mDb, oldVersion, MainApplication.DATABASE_VERSION, fromImport);
+        } finally {
+            // Upgrades aren't recorded in the change journal
+            mDataResetPending.set(true);
+            markDataChanged();
+        }
     }
 
     /**
@@ -313,21 +1017,100 @@ public class DatabaseAdapter {
         }
 
         // By the time the user is able to click this mDbAdapter should not be NULL anymore
-        Cursor cursor = this.getAllCollectionNames();
-        if (cursor.moveToFirst()){
-            do {
-                Locale defaultLocale = Locale.getDefault();
-                if(cursor.getString(cursor.getColumnIndexOrThrow(COL_NAME)).toLowerCase(defaultLocale).equals(tableName.toLowerCase(defaultLocale))){
-                    cursor.close();
-                    return R.string.collection_name_exists;
-                }
+        synchronized (mNextCollectionNameSuffixes) {
+            if (getCollectionNames().contains(tableName.toLowerCase(Locale.getDefault()))) {
+                return R.string.collection_name_exists;
+            }
+        }
 
-            } while(cursor.moveToNext());
+        // Tables and indexes share a namespace in SQLite, so neither the name nor the names
+        // of the indexes created for the collection can already be in use
+        String sqlCmd = "SELECT COUNT(*) FROM " + TBL_SQLITE_MASTER + " WHERE name IN (?, ?, ?) COLLATE NOCASE";
+        if (cachedSimpleQueryForLong(TBL_SQLITE_MASTER, sqlCmd, tableName,
+                DatabaseHelper.getIndexName(tableName, COL_SORT_ORDER),
+                DatabaseHelper.getIndexName(tableName, COL_IN_COLLECTION)) != 0) {
+            return R.string.collection_name_reserved;
         }
-        cursor.close();
         return -1;
     }
 
+    /**
+     * Get a name that can be used for a new collection, made by adding the suffix and
+     * the lowest number needed to make the name unique (Ex: "Pennies (copy)" or
+     * "Pennies (copy)2"). Numbers already known to be taken aren't checked again.
+     * @param baseName The base collection name
+     * @param suffix The suffix to add to the base name
+     * @return new collection name
+     */
+    public String getAvailableCollectionName(String baseName, String suffix) {
+        String key = (baseName + suffix).toLowerCase(Locale.getDefault());
+        synchronized (mNextCollectionNameSuffixes) {
+            Integer nextSuffixIndex = mNextCollectionNameSuffixes.get(key);
+            int suffixIndex = (nextSuffixIndex == null) ? 0 : nextSuffixIndex;
+            String newName;
+            do {
+                newName = baseName + suffix + ((suffixIndex == 0) ? "" : Integer.toString(suffixIndex));
+                suffixIndex++;
+            } while (checkCollectionName(newName) != -1);
+            // Start from this name next time, since it may not end up being used
+            mNextCollectionNameSuffixes.put(key, suffixIndex - 1);
+            return newName;
+        }
+    }
+
+    /**
+     * Gets the set of lower-cased collection names, loading it from the database if needed.
+     * Must be called while holding the mNextCollectionNameSuffixes lock.
+     * @return collection name set
+     */
+    private HashSet<String> getCollectionNames() {
+        if (mCollectionNames == null) {
+            HashSet<String> collectionNames = new HashSet<>();
+            Cursor cursor = this.getAllCollectionNames();
+            while (cursor.moveToNext()) {
+                collectionNames.add(cursor.getString(0).toLowerCase(Locale.getDefault()));
+            }
+            cursor.close();
+            mCollectionNames = collectionNames;
+        }
+        return mCollectionNames;
+    }
+
+    /**
+     * Adds a new collection to the collection name set
+     * @param tableName The collection name
+     */
+    private void addCollectionName(String tableName) {
+        synchronized (mNextCollectionNameSuffixes) {
+            if (mCollectionNames != null) {
+                mCollectionNames.add(tableName.toLowerCase(Locale.getDefault()));
+            }
+        }
+    }
+
+    /**
+     * Removes a collection from the collection name set
+     * @param tableName The collection name
+     */
+    private void removeCollectionName(String tableName) {
+        synchronized (mNextCollectionNameSuffixes) {
+            if (mCollectionNames != null) {
+                mCollectionNames.remove(tableName.toLowerCase(Locale.getDefault()));
+            }
+            mNextCollectionNameSuffixes.clear();
+        }
+    }
+
+    /**
+     * Forces the collection name set to be reloaded from the database
+     */
+    private void invalidateCollectionNames() {
+        synchronized (mNextCollectionNameSuffixes) {
+            mCollectionNames = null;
+            mNextCollectionNameSuffixes.clear();
+        }
+    }
+
     /**
      * Get the next display order for a new collection
      * @return The next display order to use
@@ -335,11 +1118,7 @@ public class DatabaseAdapter {
      */
     public int getNextDisplayOrder() throws SQLException {
         String sqlCmd = "SELECT MAX(" + COL_DISPLAY_ORDER + ") FROM " + TBL_COLLECTION_INFO;
-        SQLiteStatement compiledStatement = mDb.compileStatement(sqlCmd);
-        int result = simpleQueryForLong(compiledStatement);
-        compiledStatement.clearBindings();
-        compiledStatement.close();
-        return result + 1;
+        return cachedSimpleQueryForLong(TBL_COLLECTION_INFO, sqlCmd) + 1;
     }
 
     /**
@@ -349,7 +1128,8 @@ public class DatabaseAdapter {
      * @throws SQLException if a database error occurred
      */
     public int getNextCoinSortOrder(String tableName) throws SQLException {
-        return DatabaseHelper.getNextCoinSortOrder(mDb, tableName);
+        String sqlCmd = "SELECT MAX(" + COL_SORT_ORDER + ") FROM [" + tableName + "]";
+        return cachedSimpleQueryForLong(tableName, sqlCmd) + 1;
     }
 
     /**
@@ -362,14 +1142,21 @@ public class DatabaseAdapter {
      */
     CollectionListInfo createCollectionCopy(CollectionListInfo sourceCollectionListInfo, String newTableName, int insertIndex) throws SQLException {
 
-        // Add the new table but don't populate
+        // Add the new table but don't populate. The copy is done in one transaction, so that
+        // the journal entry for the new collection is only kept if the coins were copied.
         CollectionListInfo newCollectionListInfo = sourceCollectionListInfo.copy(newTableName);
-        createAndPopulateNewTable(newCollectionListInfo, insertIndex, null);
+        beginTransaction();
+        try {
+            createAndPopulateNewTable(newCollectionListInfo, insertIndex, null);
 
-        // Populate the contents use SQL commands
-        String sourceTableName = sourceCollectionListInfo.getName();
-        String populateDbCmd = "INSERT INTO [" + newTableName + "] SELECT * FROM [" + sourceTableName + "];";
-        mDb.execSQL(populateDbCmd);
+            // Populate the contents use SQL commands
+            String sourceTableName = sourceCollectionListInfo.getName();
+            String populateDbCmd = "INSERT INTO [" + newTableName + "] SELECT * FROM [" + sourceTableName + "];";
+            DatabaseHelper.execSql(mDb, populateDbCmd);
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
 
         // Return the newly created object
         return newCollectionListInfo;
@@ -382,7 +1169,24 @@ public class DatabaseAdapter {
      * @throws SQLException if the database update was not successful
      */
     public void updateCollectionName(String oldName, String newName) throws SQLException {
-        DatabaseHelper.updateCollectionName(mDb, oldName, newName);
+        invalidateStatementCache(oldName);
+        mDb.beginTransaction();
+        try {
+            DatabaseHelper.updateCollectionName(mDb, oldName, newName);
+            appendJournal(OP_RENAME_COLLECTION, newName, 0, oldName);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+        removeCollectionName(oldName);
+        addCollectionName(newName);
+        synchronized (mOpenCollectionPages) {
+            Integer count = mOpenCollectionPages.remove(oldName);
+            if (count != null) {
+                mOpenCollectionPages.put(newName, count);
+            }
+        }
     }
 
     /**
@@ -396,7 +1200,15 @@ public class DatabaseAdapter {
         values.put(COL_COIN_IDENTIFIER, coinSlot.getIdentifier());
         values.put(COL_COIN_MINT, coinSlot.getMint());
         String[] whereValues = new String[] {String.valueOf(coinSlot.getDatabaseId())};
-        runSqlUpdateAndCheck(tableName, values, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
+        mDb.beginTransaction();
+        try {
+            runSqlUpdateAndCheck(tableName, values, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
+            appendJournal(OP_UPDATE_COIN, tableName, coinSlot.getDatabaseId(), coinSlot.getIdentifier());
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
@@ -407,7 +1219,24 @@ public class DatabaseAdapter {
      * @throws SQLException if a database error occurs
      */
     public void updateExistingCollection(String oldTableName, CollectionListInfo collectionListInfo, ArrayList<CoinSlot> coinData) throws SQLException {
-        DatabaseHelper.updateExistingCollection(mDb, oldTableName, collectionListInfo, coinData);
+        invalidateStatementCache(oldTableName);
+        String newTableName = collectionListInfo.getName();
+        mDb.beginTransaction();
+        try {
+            DatabaseHelper.updateExistingCollection(mDb, oldTableName, collectionListInfo, coinData);
+            if (!oldTableName.equals(newTableName)) {
+                appendJournal(OP_RENAME_COLLECTION, newTableName, 0, oldTableName);
+            }
+            appendJournal(OP_UPDATE_COLLECTION, newTableName, 0, null);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+        if (!oldTableName.equals(collectionListInfo.getName())) {
+            removeCollectionName(oldTableName);
+            addCollectionName(collectionListInfo.getName());
+        }
     }
 
 
@@ -416,7 +1245,9 @@ public class DatabaseAdapter {
      * @throws SQLException if a database error occurs
      */
     void createCollectionInfoTable() throws SQLException {
+        invalidateCollectionNames();
         DatabaseHelper.createCollectionInfoTable(mDb);
+        markDataChanged();
     }
 
     /**
@@ -428,14 +1259,98 @@ public class DatabaseAdapter {
     }
 
     /**
-     * Inserts a hole in the sort order at a given position (to accommodate a new coin being added)
+     * Returns the info for a single collection
+     * @param tableName The collection name
+     * @return collection info, or null if there's no collection with that name
+     * @throws SQLException if a database error occurs
+     */
+    public CollectionListInfo getCollectionInfo(String tableName) throws SQLException {
+        return DatabaseHelper.getCollectionInfo(mDb, tableName);
+    }
+
+    /**
+     * Renumbers the sort orders of all coins in a collection, leaving a gap of
+     * COIN_SORT_ORDER_GAP between each coin so that new coins can be inserted between
+     * existing coins without updating any other rows. The coin list is only updated
+     * if the database update succeeds.
      * @param tableName table name to update
-     * @param insertSortOrder sort order where the new coin will be inserted
+     * @param coinList all coins in the collection, in sort order
      * @throws SQLException if a database error occurs
      */
-    public void updateCoinSortOrderForInsert(String tableName, int insertSortOrder) throws SQLException {
-        mDb.execSQL("UPDATE [" + tableName + "] SET " + COL_SORT_ORDER + " = " + COL_SORT_ORDER + "+1 "
-                + "WHERE " + COL_SORT_ORDER + " >= " + insertSortOrder);
+    public void renumberCoinSortOrders(String tableName, List<CoinSlot> coinList) throws SQLException {
+        renumberCoinSortOrders(tableName, coinList, false);
+    }
+
+    /**
+     * Renumbers the sort orders of all coins in a collection, only updating the coins whose
+     * sort order changes
+     * @param tableName table name to update
+     * @param coinList all coins in the collection, in sort order
+     * @param journalChangedCoins if true, each changed coin is journaled (unless there are
+     *                            many) instead of journaling that all coins were reordered
+     * @throws SQLException if a database error occurs
+     */
+    private void renumberCoinSortOrders(String tableName, List<CoinSlot> coinList,
+                                        boolean journalChangedCoins) throws SQLException {
+        String sqlCmd = "UPDATE [" + tableName + "] SET " + COL_SORT_ORDER + " = ?"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE;
+        mDb.beginTransaction();
+        try {
+            ArrayList<CoinSlot> changedCoins = new ArrayList<>();
+            CachedStatement cachedStatement = acquireCachedStatement(tableName, sqlCmd);
+            try {
+                for (int i = 0; i < coinList.size(); i++) {
+                    CoinSlot coinSlot = coinList.get(i);
+                    if (coinSlot.getSortOrder() == i * COIN_SORT_ORDER_GAP) {
+                        continue;
+                    }
+                    cachedStatement.mStatement.bindLong(1, (long) i * COIN_SORT_ORDER_GAP);
+                    cachedStatement.mStatement.bindString(2, String.valueOf(coinSlot.getDatabaseId()));
+                    if (cachedStatement.mStatement.executeUpdateDelete() <= 0) {
+                        throw new SQLException();
+                    }
+                    changedCoins.add(coinSlot);
+                }
+            } finally {
+                releaseCachedStatement(cachedStatement);
+            }
+            if (journalChangedCoins && changedCoins.size() <= MAX_COIN_ENTRIES_PER_CHANGE) {
+                for (CoinSlot coinSlot : changedCoins) {
+                    appendJournal(OP_UPDATE_COIN, tableName, coinSlot.getDatabaseId(), coinSlot.getIdentifier());
+                }
+            } else if (!changedCoins.isEmpty()) {
+                appendJournal(OP_REORDER_COINS, tableName, 0, null);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+        for (int i = 0; i < coinList.size(); i++) {
+            coinList.get(i).setSortOrder(i * COIN_SORT_ORDER_GAP);
+        }
+    }
+
+    /**
+     * Renumbers the coin sort orders of a collection if there are holes in them, unless the
+     * collection is open in a collection page. No page can be opened for the collection
+     * while this runs, so a page never loads sort orders that are about to change.
+     * @param tableName collection name
+     * @return true if the sort orders were renumbered
+     * @throws SQLException if a database error occurs
+     */
+    boolean compactCoinSortOrders(String tableName) throws SQLException {
+        synchronized (mOpenCollectionPages) {
+            if (mOpenCollectionPages.containsKey(tableName)) {
+                return false;
+            }
+            ArrayList<CoinSlot> coinList = getCoinList(tableName, false);
+            if (DatabaseMaintenance.isSortOrderCompact(coinList)) {
+                return false;
+            }
+            renumberCoinSortOrders(tableName, coinList, true);
+            return true;
+        }
     }
 
     /**
@@ -455,14 +1370,25 @@ public class DatabaseAdapter {
         values.put(COL_SORT_ORDER, coinSlot.getSortOrder());
         values.put(COL_CUSTOM_COIN, coinSlot.isCustomCoinInt());
 
-        // Add coin into database and record database id in CoinSlot object
-        coinSlot.setDatabaseId(runSqlInsert(tableName, values));
+        mDb.beginTransaction();
+        try {
+            // Add coin into database
+            long coinId = runSqlInsert(tableName, values);
 
-        // Update the collection total if needed
-        if (updateTotal) {
-            values = new ContentValues();
-            values.put(COL_TOTAL, newCollectionSize);
-            runSqlUpdateAndCheck(TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            // Update the collection total if needed
+            if (updateTotal) {
+                values = new ContentValues();
+                values.put(COL_TOTAL, newCollectionSize);
+                runSqlUpdateAndCheck(TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            }
+            appendJournal(OP_ADD_COIN, tableName, coinId, coinSlot.getIdentifier());
+            mDb.setTransactionSuccessful();
+
+            // Record database id in CoinSlot object
+            coinSlot.setDatabaseId(coinId);
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
         }
     }
 
@@ -474,14 +1400,55 @@ public class DatabaseAdapter {
      */
     public void removeCoinSlotFromCollection(CoinSlot coinSlot, String tableName, int newCollectionSize) throws SQLException {
         String[] whereValues = new String[] {String.valueOf(coinSlot.getDatabaseId())};
-        runSqlDeleteAndCheck(tableName, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
-        // Note: This doesn't update the sort order of all remaining coins, which means there
-        //       may be holes in the sort order after this.
+        mDb.beginTransaction();
+        try {
+            runSqlDeleteAndCheck(tableName, COIN_SLOT_COIN_ID_WHERE_CLAUSE, whereValues);
+            // Note: This doesn't update the sort order of all remaining coins, which means there
+            //       may be holes in the sort order after this. These are removed by the
+            //       periodic database maintenance.
 
-        // Update the collection total
-        ContentValues values = new ContentValues();
-        values.put(COL_TOTAL, newCollectionSize);
-        runSqlUpdateAndCheck(TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            // Update the collection total
+            ContentValues values = new ContentValues();
+            values.put(COL_TOTAL, newCollectionSize);
+            runSqlUpdateAndCheck(TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            appendJournal(OP_REMOVE_COIN, tableName, coinSlot.getDatabaseId(), coinSlot.getIdentifier());
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
+    }
+
+    /**
+     * Applies a set of coin changes to a collection, such as from a change export
+     * @param tableName The collection name
+     * @param changedCoins coins to update or insert, each with a database id
+     * @param removedCoinIds database ids of coins to delete
+     * @param total new collection total
+     * @throws SQLException if a database error occurs
+     */
+    public void applyCoinChanges(String tableName, List<CoinSlot> changedCoins, List<Long> removedCoinIds,
+                                 int total) throws SQLException {
+        mDb.beginTransaction();
+        try {
+            HashSet<Long> insertedCoinIds = DatabaseHelper.applyCoinChanges(mDb, tableName,
+                    changedCoins, removedCoinIds, total);
+            if (changedCoins.size() + removedCoinIds.size() <= MAX_COIN_ENTRIES_PER_CHANGE) {
+                for (long coinId : removedCoinIds) {
+                    appendJournal(OP_REMOVE_COIN, tableName, coinId, null);
+                }
+                for (CoinSlot coinSlot : changedCoins) {
+                    appendJournal(insertedCoinIds.contains(coinSlot.getDatabaseId()) ? OP_ADD_COIN : OP_UPDATE_COIN,
+                            tableName, coinSlot.getDatabaseId(), coinSlot.getIdentifier());
+                }
+            } else {
+                appendJournal(OP_UPDATE_COLLECTION, tableName, 0, null);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            markDataChanged();
+        }
     }
 
     /**
@@ -506,6 +1473,173 @@ public class DatabaseAdapter {
     public ArrayList<CoinSlot> getCoinList(String tableName, boolean populateAdvInfo) {
         return DatabaseHelper.getCoinList(mDb, tableName, populateAdvInfo, true);
     }
+
+    /**
+     * Get a group of coins by database id, sorted by sort order
+     * @param tableName The name of the collection
+     * @param coinIds database ids of the coins to get
+     * @return CoinSlot list, with advanced info
+     */
+    public ArrayList<CoinSlot> getCoinsById(String tableName, List<Long> coinIds) {
+        return DatabaseHelper.getCoinsById(mDb, tableName, coinIds);
+    }
+
+    /**
+     * Get the coins with sort orders in a given range, sorted by sort order
+     *
+     * @param tableName The name of the collection
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @param minSortOrder lowest sort order to include
+     * @param maxSortOrder if not null, the coins must have a sort order below this
+     * @return CoinSlot list
+     */
+    public ArrayList<CoinSlot> getCoinListInSortOrderRange(String tableName, boolean populateAdvInfo,
+                                                          int minSortOrder, Integer maxSortOrder) {
+        return DatabaseHelper.getCoinListInSortOrderRange(mDb, tableName, populateAdvInfo, minSortOrder, maxSortOrder);
+    }
+
+    /**
+     * Reads the advanced info (grade, quantity and notes) for a group of coins
+     *
+     * @param tableName The name of the collection
+     * @param coinSlots coins to populate
+     */
+    public void populateAdvInfo(String tableName, List<CoinSlot> coinSlots) {
+        DatabaseHelper.populateAdvInfo(mDb, tableName, coinSlots);
+    }
+
+    /**
+     * Splits a collection's coin list into pages by sort order
+     *
+     * @param tableName The name of the collection
+     * @param pageSize number of coins in each page
+     * @param pageStartIndexes list to populate with the index of the first coin in each page
+     * @param pageStartSortOrders list to populate with the sort order of the first coin in each page
+     * @return total number of coins in the collection
+     */
+    public int getCoinListPages(String tableName, int pageSize, ArrayList<Integer> pageStartIndexes,
+                                ArrayList<Integer> pageStartSortOrders) {
+        return DatabaseHelper.getCoinListPages(mDb, tableName, pageSize, pageStartIndexes, pageStartSortOrders);
+    }
+    /**
+     * Runs a query returning a single number using a cached compiled statement
+     * @param tableName The table accessed by the query, used to invalidate the statement
+     * @param sqlCmd The SQL query to run
+     * @param bindArgs Arguments to bind to the query
+     * @return int query result
+     * @throws SQLException if a database error occurs
+     */
+    private int cachedSimpleQueryForLong(String tableName, String sqlCmd, String... bindArgs) throws SQLException {
+        CachedStatement cachedStatement = acquireCachedStatement(tableName, sqlCmd);
+        try {
+            for (int i = 0; i < bindArgs.length; i++) {
+                cachedStatement.mStatement.bindString(i + 1, bindArgs[i]);
+            }
+            return simpleQueryForLong(mDb, cachedStatement.mStatement, sqlCmd);
+        } finally {
+            releaseCachedStatement(cachedStatement);
+        }
+    }
+
+    /**
+     * Checks a compiled statement out of the cache, compiling it if necessary. The statement
+     * must be returned with releaseCachedStatement once finished.
+     * @param tableName The table accessed by the statement
+     * @param sqlCmd The SQL command
+     * @return checked out statement
+     * @throws SQLException if the statement can't be compiled
+     */
+    private CachedStatement acquireCachedStatement(String tableName, String sqlCmd) throws SQLException {
+        String key = tableName + STATEMENT_CACHE_KEY_SEPARATOR + sqlCmd;
+        int generation;
+        synchronized (mStatementCache) {
+            generation = mStatementCacheGeneration;
+            SQLiteStatement compiledStatement = mStatementCache.remove(key);
+            if (compiledStatement != null) {
+                mStatementCacheHits++;
+                return new CachedStatement(key, compiledStatement, generation);
+            }
+            mStatementCacheMisses++;
+        }
+        // Compile outside of the lock, since this accesses the database
+        return new CachedStatement(key, mDb.compileStatement(sqlCmd), generation);
+    }
+
+    /**
+     * Returns a statement to the cache, or closes it if the cache was invalidated while the
+     * statement was in use or if another copy was returned in the meantime
+     * @param cachedStatement statement from acquireCachedStatement
+     */
+    private void releaseCachedStatement(CachedStatement cachedStatement) {
+        cachedStatement.mStatement.clearBindings();
+        synchronized (mStatementCache) {
+            if (cachedStatement.mGeneration == mStatementCacheGeneration
+                    && !mStatementCache.containsKey(cachedStatement.mKey)) {
+                mStatementCache.put(cachedStatement.mKey, cachedStatement.mStatement);
+                return;
+            }
+        }
+        cachedStatement.mStatement.close();
+    }
+
+    /**
+     * Closes and removes any cached statements that access a table
+     * @param tableName The table name
+     */
+    private void invalidateStatementCache(String tableName) {
+        String keyPrefix = tableName + STATEMENT_CACHE_KEY_SEPARATOR;
+        synchronized (mStatementCache) {
+            mStatementCacheGeneration++;
+            Iterator<Map.Entry<String, SQLiteStatement>> iterator = mStatementCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, SQLiteStatement> entry = iterator.next();
+                if (entry.getKey().startsWith(keyPrefix)) {
+                    entry.getValue().close();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes and removes all cached statements, including the change journal statement
+     */
+    private void clearStatementCache() {
+        synchronized (mStatementCache) {
+            mStatementCacheGeneration++;
+            for (SQLiteStatement compiledStatement : mStatementCache.values()) {
+                compiledStatement.close();
+            }
+            mStatementCache.clear();
+        }
+        synchronized (mJournalLock) {
+            if (mJournalStatement != null) {
+                mJournalStatement.close();
+                mJournalStatement = null;
+            }
+        }
+    }
+
+    /**
+     * Get the number of times a cached compiled statement was reused
+     * @return number of statement cache hits
+     */
+    public int getStatementCacheHits() {
+        synchronized (mStatementCache) {
+            return mStatementCacheHits;
+        }
+    }
+
+    /**
+     * Get the number of times a statement had to be compiled
+     * @return number of statement cache misses
+     */
+    public int getStatementCacheMisses() {
+        synchronized (mStatementCache) {
+            return mStatementCacheMisses;
+        }
+    }
+
     /**
      * Executes the SQL insert command and returns false if an error occurs
      * @param tableName The table to insert into
@@ -514,7 +1648,9 @@ public class DatabaseAdapter {
      * @return id of row inserted into database
      */
     long runSqlInsert(String tableName, ContentValues values) throws SQLException {
-        return DatabaseHelper.runSqlInsert(mDb, tableName, values);
+        long rowId = DatabaseHelper.runSqlInsert(mDb, tableName, values);
+        markDataChanged();
+        return rowId;
     }
 
     /**
@@ -526,7 +1662,9 @@ public class DatabaseAdapter {
      * @throws SQLException if the update did not affect any rows
      */
     void runSqlUpdateAndCheck(String tableName, ContentValues values, String whereClause, String[] whereArgs) throws SQLException {
-        if (DatabaseHelper.runSqlUpdate(mDb, tableName, values, whereClause, whereArgs) <= 0) {
+        int rowsUpdated = DatabaseHelper.runSqlUpdate(mDb, tableName, values, whereClause, whereArgs);
+        markDataChanged();
+        if (rowsUpdated <= 0) {
             throw new SQLException();
         }
     }
@@ -539,7 +1677,9 @@ public class DatabaseAdapter {
      * @throws SQLException if the delete did not affect any rows
      */
     void runSqlDeleteAndCheck(String table, String whereClause, String[] whereArgs) throws SQLException {
-        if (DatabaseHelper.runSqlDelete(mDb, table, whereClause, whereArgs) <= 0) {
+        int rowsDeleted = DatabaseHelper.runSqlDelete(mDb, table, whereClause, whereArgs);
+        markDataChanged();
+        if (rowsDeleted <= 0) {
             throw new SQLException();
         }
     }
@@ -1,5 +1,6 @@
 package com.coincollection;
 
+import static com.coincollection.CoinSlot.COIN_SLOT_COIN_ID_WHERE_CLAUSE;
 import static com.coincollection.CoinSlot.COL_ADV_GRADE_INDEX;
 import static com.coincollection.CoinSlot.COL_ADV_NOTES;
 import static com.coincollection.CoinSlot.COL_ADV_QUANTITY_INDEX;
@@ -9,7 +10,15 @@ import static com.coincollection.CoinSlot.COL_COIN_ID;
 import static com.coincollection.CoinSlot.COL_CUSTOM_COIN;
 import static com.coincollection.CoinSlot.COL_IN_COLLECTION;
 import static com.coincollection.CoinSlot.COL_SORT_ORDER;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_COIN_ID;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_COLLECTION;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_ID;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_OP;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_TIME;
+import static com.coincollection.ChangeJournal.COL_JOURNAL_VALUE;
+import static com.coincollection.ChangeJournal.TBL_CHANGE_JOURNAL;
 import static com.coincollection.CollectionListInfo.COL_COIN_TYPE;
+import static com.coincollection.CollectionListInfo.COL_COLLECTED;
 import static com.coincollection.CollectionListInfo.COL_DISPLAY;
 import static com.coincollection.CollectionListInfo.COL_DISPLAY_ORDER;
 import static com.coincollection.CollectionListInfo.COL_END_YEAR;
@@ -33,24 +42,87 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.collection.LongSparseArray;
+
 import com.spencerpages.BuildConfig;
 import com.spencerpages.MainApplication;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    // SQLite limits the number of SELECTs that can be combined in a single compound query
+    private final static int MAX_COMPOUND_SELECT = 500;
+
+    // SQLite limits the number of parameters in a single statement (999 on older versions)
+    private final static int MAX_QUERY_PARAMETERS = 999;
+
+    // Column holding the group key in the queries used by getAllCoinsGroupedBy
+    private final static String COL_STAT_KEY = "statKey";
+
+    // Value of PRAGMA auto_vacuum when incremental vacuum is enabled
+    private final static int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Interface used to report the progress of a database upgrade
+     */
+    public interface UpgradeListener {
+        /**
+         * Called on the upgrading thread before the first collection is upgraded and after
+         * each collection is upgraded. Not called if there are no collections to upgrade.
+         * @param collectionsDone number of collections upgraded so far
+         * @param totalCollections total number of collections to upgrade
+         */
+        void onUpgradeProgress(int collectionsDone, int totalCollections);
+
+        /**
+         * Called on the upgrading thread after each stage of the upgrade finishes. When the
+         * upgrade runs inside an outer transaction (always the case from onUpgrade), nothing
+         * is committed until the whole upgrade finishes, so a later failure still rolls back
+         * the stages already reported.
+         * @param stageName name of the stage (the structure stage or a collection name)
+         * @param durationMs time taken by the stage
+         */
+        void onUpgradeStageComplete(String stageName, long durationMs);
+    }
+
+    // Name of the upgrade stage that updates the database structure
+    public final static String UPGRADE_STAGE_STRUCTURE = "structure";
+
+    private volatile UpgradeListener mUpgradeListener = null;
+
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Use write-ahead logging so that reads (ex: exports) on other threads use their own
+        // connections and don't block writes (ex: toggling coins) from the UI thread
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         // This is called if the DB doesn't exist (A fresh installation)
         createCollectionInfoTable(db);
+        createChangeJournalTable(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Older versions can't enable write-ahead logging before the database is opened
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     /**
@@ -72,15 +144,172 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + " " + COL_START_YEAR + " integer default 0,"
                 + " " + COL_END_YEAR + " integer default 0,"
                 + " " + COL_SHOW_MINT_MARKS + " integer default 0,"
-                + " " + COL_SHOW_CHECKBOXES + " integer default 0"
+                + " " + COL_SHOW_CHECKBOXES + " integer default 0,"
+                + " " + COL_COLLECTED + " integer default 0"
                 + ");";
 
-        db.execSQL(makeCollectionInfoTable);
+        execSql(db, makeCollectionInfoTable);
+        createCollectionInfoIndexes(db);
+    }
+
+    /**
+     * Creates the change journal table. The id isn't autoincrement, but ids still always
+     * increase since only the oldest rows are ever deleted.
+     * @param db database to add to
+     * @throws SQLException if an error occurs
+     */
+    static void createChangeJournalTable(SQLiteDatabase db) throws SQLException {
+        execSql(db, "CREATE TABLE IF NOT EXISTS " + TBL_CHANGE_JOURNAL + " ("
+                + " " + COL_JOURNAL_ID + " integer primary key,"
+                + " " + COL_JOURNAL_TIME + " integer not null,"
+                + " " + COL_JOURNAL_OP + " integer not null,"
+                + " " + COL_JOURNAL_COLLECTION + " text,"
+                + " " + COL_JOURNAL_COIN_ID + " integer default 0,"
+                + " " + COL_JOURNAL_VALUE + " text"
+                + ");");
+    }
+
+    /**
+     * Creates the index used to look up collections by name. Collection names must be unique
+     * ignoring case, since SQLite table names are case-insensitive.
+     * @param db database
+     * @throws SQLException if an error occurs
+     */
+    static void createCollectionInfoIndexes(SQLiteDatabase db) throws SQLException {
+        String indexName = getIndexName(TBL_COLLECTION_INFO, COL_NAME);
+        try {
+            execSql(db, "CREATE UNIQUE INDEX IF NOT EXISTS [" + indexName + "]"
+                    + " ON [" + TBL_COLLECTION_INFO + "] (" + COL_NAME + " COLLATE NOCASE);");
+        } catch (SQLException e) {
+            // Don't fail the upgrade if the collection info table already has duplicate
+            // names, but still index the names for lookups
+            Log.e(APP_NAME, "Failed to create unique collection name index: " + e);
+            execSql(db, "CREATE INDEX IF NOT EXISTS [" + indexName + "]"
+                    + " ON [" + TBL_COLLECTION_INFO + "] (" + COL_NAME + " COLLATE NOCASE);");
+        }
+    }
+
+    /**
+     * Creates the triggers that keep the collected count in the collection info table up to
+     * date as coins in a collection are inserted, updated or deleted. The collection must have
+     * an entry in the collection info table before coins are added for the count to be correct.
+     * @param db database
+     * @param tableName the collection name
+     * @throws SQLException if an error occurs
+     */
+    static void createCollectionTableTriggers(SQLiteDatabase db, String tableName) throws SQLException {
+        // Note: 'x IS 1' is used instead of 'x = 1' so that NULL is treated as not collected
+        String collectionInfoWhere = " WHERE " + COL_NAME + " = '" + tableName.replace("'", "''") + "';";
+        execSql(db, "CREATE TRIGGER [" + getTriggerName(tableName, "insert") + "]"
+                + " AFTER INSERT ON [" + tableName + "]"
+                + " WHEN NEW." + COL_IN_COLLECTION + " IS 1"
+                + " BEGIN UPDATE " + TBL_COLLECTION_INFO
+                + " SET " + COL_COLLECTED + " = " + COL_COLLECTED + " + 1"
+                + collectionInfoWhere + " END;");
+        execSql(db, "CREATE TRIGGER [" + getTriggerName(tableName, "update") + "]"
+                + " AFTER UPDATE OF " + COL_IN_COLLECTION + " ON [" + tableName + "]"
+                + " WHEN (NEW." + COL_IN_COLLECTION + " IS 1) != (OLD." + COL_IN_COLLECTION + " IS 1)"
+                + " BEGIN UPDATE " + TBL_COLLECTION_INFO
+                + " SET " + COL_COLLECTED + " = " + COL_COLLECTED
+                + " + (NEW." + COL_IN_COLLECTION + " IS 1) - (OLD." + COL_IN_COLLECTION + " IS 1)"
+                + collectionInfoWhere + " END;");
+        execSql(db, "CREATE TRIGGER [" + getTriggerName(tableName, "delete") + "]"
+                + " AFTER DELETE ON [" + tableName + "]"
+                + " WHEN OLD." + COL_IN_COLLECTION + " IS 1"
+                + " BEGIN UPDATE " + TBL_COLLECTION_INFO
+                + " SET " + COL_COLLECTED + " = " + COL_COLLECTED + " - 1"
+                + collectionInfoWhere + " END;");
+    }
+
+    /**
+     * Drops the triggers created by createCollectionTableTriggers. This is needed before
+     * renaming a collection, since the triggers refer to the collection by name.
+     * @param db database
+     * @param tableName the collection name
+     * @throws SQLException if an error occurs
+     */
+    static void dropCollectionTableTriggers(SQLiteDatabase db, String tableName) throws SQLException {
+        execSql(db, "DROP TRIGGER IF EXISTS [" + getTriggerName(tableName, "insert") + "];");
+        execSql(db, "DROP TRIGGER IF EXISTS [" + getTriggerName(tableName, "update") + "];");
+        execSql(db, "DROP TRIGGER IF EXISTS [" + getTriggerName(tableName, "delete") + "];");
+    }
+
+    /**
+     * Get the name of a collected count trigger for a collection
+     * @param tableName the collection name
+     * @param event the trigger event (insert, update or delete)
+     * @return trigger name
+     */
+    private static String getTriggerName(String tableName, String event) {
+        return "collected_" + event + "_" + tableName;
+    }
+
+    /**
+     * Creates the indexes used when reading a collection. The sort order index includes all
+     * of the columns read for the simple view, so the coin list can be read in sort order
+     * from the index alone. The in collection index is used to count the collected coins.
+     * @param db database
+     * @param tableName the collection name
+     * @throws SQLException if an error occurs
+     */
+    static void createCollectionTableIndexes(SQLiteDatabase db, String tableName) throws SQLException {
+        // Note: _id is the rowid, so it's included in every index automatically
+        execSql(db, "CREATE INDEX [" + getIndexName(tableName, COL_SORT_ORDER) + "]"
+                + " ON [" + tableName + "] (" + COL_SORT_ORDER + ", " + COL_COIN_IDENTIFIER + ", "
+                + COL_COIN_MINT + ", " + COL_IN_COLLECTION + ", " + COL_CUSTOM_COIN + ");");
+        execSql(db, "CREATE INDEX [" + getIndexName(tableName, COL_IN_COLLECTION) + "]"
+                + " ON [" + tableName + "] (" + COL_IN_COLLECTION + ");");
+    }
+
+    /**
+     * Drops the indexes created by createCollectionTableIndexes. This is needed before
+     * renaming a collection, since the index names include the collection name.
+     * @param db database
+     * @param tableName the collection name
+     * @throws SQLException if an error occurs
+     */
+    static void dropCollectionTableIndexes(SQLiteDatabase db, String tableName) throws SQLException {
+        execSql(db, "DROP INDEX IF EXISTS [" + getIndexName(tableName, COL_SORT_ORDER) + "];");
+        execSql(db, "DROP INDEX IF EXISTS [" + getIndexName(tableName, COL_IN_COLLECTION) + "];");
+    }
+
+    // Prefix of all index names. Tables and indexes share a namespace in SQLite, so
+    // DatabaseAdapter.checkCollectionName rejects names that collide with an existing index.
+    static final String INDEX_NAME_PREFIX = "index_";
+
+    /**
+     * Get the name of an index for a collection
+     * @param tableName the collection name
+     * @param column the first column in the index
+     * @return index name
+     */
+    static String getIndexName(String tableName, String column) {
+        return INDEX_NAME_PREFIX + column + "_" + tableName;
+    }
+
+    /**
+     * Recalculates the collected count for a collection from the collection's contents
+     * @param db database
+     * @param tableName the collection name
+     * @throws SQLException if an error occurs
+     */
+    static void updateCollectedCount(SQLiteDatabase db, String tableName) throws SQLException {
+        ContentValues values = new ContentValues();
+        values.put(COL_COLLECTED, fetchTotalCollected(db, tableName));
+        runSqlUpdate(db, TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        DatabaseHelper.upgradeDb(db, oldVersion, newVersion, false);
+        DatabaseHelper.upgradeDb(db, oldVersion, newVersion, false, mUpgradeListener);
+    }
+
+    /**
+     * Sets the listener to notify of progress if the database is upgraded when opened
+     * @param listener listener, or null to remove
+     */
+    void setUpgradeListener(UpgradeListener listener) {
+        mUpgradeListener = listener;
     }
 
     /**
@@ -105,7 +334,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         if (oldVersion <= 5 && !fromImport) {
 
             // We need to add in columns to support the new advanced view
-            db.execSQL("ALTER TABLE " + TBL_COLLECTION_INFO + " ADD COLUMN " + COL_DISPLAY + " INTEGER DEFAULT " + CollectionPage.SIMPLE_DISPLAY);
+            execSql(db, "ALTER TABLE " + TBL_COLLECTION_INFO + " ADD COLUMN " + COL_DISPLAY + " INTEGER DEFAULT " + CollectionPage.SIMPLE_DISPLAY);
 
             // Get all of the created tables
             Cursor resultCursor = db.query(TBL_COLLECTION_INFO, new String[]{COL_NAME}, null, null, null, null, COL_COIN_ID);
@@ -113,9 +342,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 do {
 
                     String name = resultCursor.getString(resultCursor.getColumnIndexOrThrow(COL_NAME));
-                    db.execSQL("ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_GRADE_INDEX + " INTEGER DEFAULT 0");
-                    db.execSQL("ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_QUANTITY_INDEX + " INTEGER DEFAULT 0");
-                    db.execSQL("ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_NOTES + " TEXT DEFAULT \"\"");
+                    execSql(db, "ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_GRADE_INDEX + " INTEGER DEFAULT 0");
+                    execSql(db, "ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_QUANTITY_INDEX + " INTEGER DEFAULT 0");
+                    execSql(db, "ALTER TABLE [" + name + "] ADD COLUMN " + COL_ADV_NOTES + " TEXT DEFAULT \"\"");
 
                     // Move to the next collection
                 } while (resultCursor.moveToNext());
@@ -127,7 +356,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
             if (!fromImport) {
                 // Add another column for the display order
-                db.execSQL("ALTER TABLE " + TBL_COLLECTION_INFO + " ADD COLUMN " + COL_DISPLAY_ORDER + " INTEGER");
+                execSql(db, "ALTER TABLE " + TBL_COLLECTION_INFO + " ADD COLUMN " + COL_DISPLAY_ORDER + " INTEGER");
             }
 
             Cursor resultCursor = db.query(TBL_COLLECTION_INFO, new String[]{COL_NAME, COL_COIN_TYPE},
@@ -208,10 +437,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
             if (!fromImport) {
                 // Add columns that keep track of the creation parameters (so these can be changed later)
-                db.execSQL("ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_START_YEAR + " INTEGER DEFAULT 0");
-                db.execSQL("ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_END_YEAR + " INTEGER DEFAULT 0");
-                db.execSQL("ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_SHOW_MINT_MARKS + " INTEGER DEFAULT 0");
-                db.execSQL("ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_SHOW_CHECKBOXES + " INTEGER DEFAULT 0");
+                execSql(db, "ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_START_YEAR + " INTEGER DEFAULT 0");
+                execSql(db, "ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_END_YEAR + " INTEGER DEFAULT 0");
+                execSql(db, "ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_SHOW_MINT_MARKS + " INTEGER DEFAULT 0");
+                execSql(db, "ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_SHOW_CHECKBOXES + " INTEGER DEFAULT 0");
             }
 
             // Determine the collection parameters for each existing collection
@@ -230,11 +459,37 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 do {
                     String name = resultCursor.getString(resultCursor.getColumnIndexOrThrow(COL_NAME));
 
-                    db.execSQL("ALTER TABLE [" + name + "] ADD COLUMN " + COL_SORT_ORDER + " INTEGER DEFAULT 0");
-                    db.execSQL("ALTER TABLE [" + name + "] ADD COLUMN " + COL_CUSTOM_COIN + " INTEGER DEFAULT 0");
+                    execSql(db, "ALTER TABLE [" + name + "] ADD COLUMN " + COL_SORT_ORDER + " INTEGER DEFAULT 0");
+                    execSql(db, "ALTER TABLE [" + name + "] ADD COLUMN " + COL_CUSTOM_COIN + " INTEGER DEFAULT 0");
 
                     // Set the sort order to the IDs, as a starting point
-                    db.execSQL("UPDATE [" + name + "] SET " + COL_SORT_ORDER + " = " + COL_COIN_ID);
+                    execSql(db, "UPDATE [" + name + "] SET " + COL_SORT_ORDER + " = " + COL_COIN_ID);
+
+                    // Move to the next collection
+                } while (resultCursor.moveToNext());
+            }
+            resultCursor.close();
+        }
+
+        // Add the collected count, which is kept up to date by triggers on each collection,
+        // the indexes used when reading each collection, and the change journal
+        // - Skip if importing, since the database will be created with the latest structure
+        if (oldVersion <= 18 && !fromImport) {
+
+            execSql(db, "ALTER TABLE [" + TBL_COLLECTION_INFO + "] ADD COLUMN " + COL_COLLECTED + " INTEGER DEFAULT 0");
+            createCollectionInfoIndexes(db);
+            createChangeJournalTable(db);
+
+            // Get all of the created tables
+            Cursor resultCursor = db.query(TBL_COLLECTION_INFO, new String[]{COL_NAME}, null, null, null, null, COL_DISPLAY_ORDER);
+            if (resultCursor.moveToFirst()) {
+                do {
+                    String name = resultCursor.getString(resultCursor.getColumnIndexOrThrow(COL_NAME));
+
+                    // Backfill the count and then let the triggers maintain it
+                    updateCollectedCount(db, name);
+                    createCollectionTableTriggers(db, name);
+                    createCollectionTableIndexes(db, name);
 
                     // Move to the next collection
                 } while (resultCursor.moveToNext());
@@ -253,7 +508,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static int getNextCoinSortOrder(SQLiteDatabase db, String tableName) throws SQLException {
         String sqlCmd = "SELECT MAX(" + COL_SORT_ORDER + ") FROM [" + tableName + "]";
         SQLiteStatement compiledStatement = db.compileStatement(sqlCmd);
-        int result = simpleQueryForLong(compiledStatement);
+        int result = simpleQueryForLong(db, compiledStatement, sqlCmd);
         compiledStatement.clearBindings();
         compiledStatement.close();
         return result + 1;
@@ -268,6 +523,23 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @param fromImport if true, indicates that the upgrade is part of a collection import
      */
     public static void upgradeDb(SQLiteDatabase db, int oldVersion, int newVersion, boolean fromImport) {
+        upgradeDb(db, oldVersion, newVersion, fromImport, null);
+    }
+
+    /**
+     * Upgrades the database in stages, each in its own transaction: first the structure,
+     * then each collection. If called within a transaction (ex: from onUpgrade or an import),
+     * the stages are nested in that transaction, so a failure in any stage rolls back the
+     * entire upgrade.
+     *
+     * @param db the SQLiteDatabase db object to use when making updates
+     * @param oldVersion the previous database version
+     * @param newVersion the new database version
+     * @param fromImport true if the upgrade is part of a database import
+     * @param listener listener to notify of progress, or null
+     */
+    static void upgradeDb(SQLiteDatabase db, int oldVersion, int newVersion, boolean fromImport,
+                          UpgradeListener listener) {
 
         if(BuildConfig.DEBUG) {
             Log.i(APP_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion);
@@ -275,24 +547,111 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
         // First call the MainApplication's onDatabaseUpgrade to ensure that any changes necessary
         // for the app to work are done.
-        upgradeDbStructure(db, oldVersion, newVersion, fromImport);
+        long stageStartTime = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            upgradeDbStructure(db, oldVersion, newVersion, fromImport);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onUpgradeStageComplete(listener, UPGRADE_STAGE_STRUCTURE, stageStartTime);
 
         // Now get a list of the collections and call each one's onCollectionDatabaseUpgrade method
         ArrayList<CollectionListInfo> collectionList = new ArrayList<>();
         getAllTables(db, collectionList);
-        for (CollectionListInfo collectionListInfo : collectionList) {
+        if (listener != null && !collectionList.isEmpty()) {
+            listener.onUpgradeProgress(0, collectionList.size());
+        }
+        for (int i = 0; i < collectionList.size(); i++) {
+            CollectionListInfo collectionListInfo = collectionList.get(i);
             String tableName = collectionListInfo.getName();
-            int numCoinsAdded = collectionListInfo.getCollectionObj().onCollectionDatabaseUpgrade (
-                    db, collectionListInfo, oldVersion, newVersion);
-            // Update the collection total if coins were added or removed
-            if (numCoinsAdded != 0) {
-                int newTotal = collectionListInfo.getMax() + numCoinsAdded;
-                collectionListInfo.setMax(newTotal);
-                ContentValues values = new ContentValues();
-                values.put(COL_TOTAL, newTotal);
-                runSqlUpdate(db, TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[]{tableName});
+            stageStartTime = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                int numCoinsAdded = collectionListInfo.getCollectionObj().onCollectionDatabaseUpgrade (
+                        db, collectionListInfo, oldVersion, newVersion);
+                // Update the collection total if coins were added or removed
+                if (numCoinsAdded != 0) {
+                    int newTotal = collectionListInfo.getMax() + numCoinsAdded;
+                    collectionListInfo.setMax(newTotal);
+                    ContentValues values = new ContentValues();
+                    values.put(COL_TOTAL, newTotal);
+                    runSqlUpdate(db, TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[]{tableName});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            onUpgradeStageComplete(listener, tableName, stageStartTime);
+            if (listener != null) {
+                listener.onUpgradeProgress(i + 1, collectionList.size());
+            }
+        }
+    }
+
+    /**
+     * Records the time taken by an upgrade stage
+     * @param listener listener to notify, or null
+     * @param stageName name of the stage
+     * @param stageStartTime time the stage started (from SystemClock.elapsedRealtime)
+     */
+    private static void onUpgradeStageComplete(UpgradeListener listener, String stageName, long stageStartTime) {
+        long durationMs = SystemClock.elapsedRealtime() - stageStartTime;
+        if (BuildConfig.DEBUG) {
+            Log.d(APP_NAME, "Upgrade stage '" + stageName + "' took " + durationMs + " ms");
+        }
+        if (listener != null) {
+            listener.onUpgradeStageComplete(stageName, durationMs);
+        }
+    }
+
+    /**
+     * Sets the display order of each collection to its index in a list, in a single
+     * transaction. Only the collections whose display order changes are written.
+     * @param db database
+     * @param orderedNames collection names in the new display order
+     * @return number of collections whose display order was updated
+     * @throws SQLException if a database error occurs, in which case none of the display
+     *                      orders are changed
+     */
+    static int updateDisplayOrders(SQLiteDatabase db, List<String> orderedNames) throws SQLException {
+        int numUpdated = 0;
+        db.beginTransaction();
+        try {
+            // Read the current display orders, so that unchanged rows can be skipped
+            HashMap<String, Integer> currentDisplayOrders = new HashMap<>();
+            Cursor cursor = db.query(TBL_COLLECTION_INFO, new String[] {COL_NAME, COL_DISPLAY_ORDER},
+                    null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                currentDisplayOrders.put(cursor.getString(0), cursor.getInt(1));
             }
+            cursor.close();
+
+            SQLiteStatement compiledStatement = db.compileStatement("UPDATE " + TBL_COLLECTION_INFO
+                    + " SET " + COL_DISPLAY_ORDER + " = ? WHERE " + COL_NAME + " = ?");
+            try {
+                for (int i = 0; i < orderedNames.size(); i++) {
+                    String name = orderedNames.get(i);
+                    Integer currentDisplayOrder = currentDisplayOrders.get(name);
+                    if (currentDisplayOrder != null && currentDisplayOrder == i) {
+                        continue;
+                    }
+                    compiledStatement.bindLong(1, i);
+                    compiledStatement.bindString(2, name);
+                    if (compiledStatement.executeUpdateDelete() <= 0) {
+                        throw new SQLException();
+                    }
+                    numUpdated++;
+                }
+            } finally {
+                compiledStatement.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        return numUpdated;
     }
 
     /**
@@ -303,11 +662,17 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @throws SQLException if the database update was not successful
      */
     static void updateCollectionName(SQLiteDatabase db, String oldName, String newName) throws SQLException {
+        // The triggers and index names refer to the collection by name, so these are
+        // re-created after the rename
+        dropCollectionTableTriggers(db, oldName);
+        dropCollectionTableIndexes(db, oldName);
         String alterDbSqlStr = "ALTER TABLE [" + oldName + "] RENAME TO [" + newName + "]";
-        db.execSQL(alterDbSqlStr);
+        execSql(db, alterDbSqlStr);
         ContentValues args = new ContentValues();
         args.put(COL_NAME, newName);
         runSqlUpdate(db, TBL_COLLECTION_INFO, args, COL_NAME + "=?", new String[] { oldName });
+        createCollectionTableTriggers(db, newName);
+        createCollectionTableIndexes(db, newName);
     }
 
     /**
@@ -318,36 +683,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public static int addFromArrayList(SQLiteDatabase db, CollectionListInfo collectionListInfo,
                                        ArrayList<String> values) {
-        int total = 0;
-        String tableName = collectionListInfo.getName();
-        int newSortOrder = getNextCoinSortOrder(db, tableName);
-        for (int i = 0; i < values.size(); i++) {
-            if (collectionListInfo.hasMintMarks()) {
-                for (String flagStr : CollectionListInfo.MINT_STRING_TO_FLAGS.keySet()) {
-                    Integer mintFlag = CollectionListInfo.MINT_STRING_TO_FLAGS.get(flagStr);
-                    if (mintFlag != null && ((collectionListInfo.getMintMarkFlags() & mintFlag) != 0)) {
-                        ContentValues insertValues = new ContentValues();
-                        insertValues.put(COL_COIN_IDENTIFIER, values.get(i));
-                        insertValues.put(COL_IN_COLLECTION, 0);
-                        insertValues.put(COL_COIN_MINT, flagStr);
-                        insertValues.put(COL_SORT_ORDER, newSortOrder++);
-                        if (db.insert("[" + tableName + "]", null, insertValues) != -1) {
-                            total++;
-                        }
-                    }
-                }
-            } else {
-                ContentValues insertValues = new ContentValues();
-                insertValues.put(COL_COIN_IDENTIFIER, values.get(i));
-                insertValues.put(COL_IN_COLLECTION, 0);
-                insertValues.put(COL_COIN_MINT, "");
-                insertValues.put(COL_SORT_ORDER, newSortOrder++);
-                if (db.insert("[" + tableName + "]", null, insertValues) != -1) {
-                    total++;
-                }
-            }
-        }
-        return total;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
+        planner.addFromArrayList(values);
+        return planner.apply(db);
     }
 
     /**
@@ -361,8 +699,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public static int addFromYear(SQLiteDatabase db, CollectionListInfo collectionListInfo,
                                   int previousYear, int year, String identifier) {
-        ArrayList<String> mintList = new ArrayList<>(Arrays.asList("P", "D"));
-        return addFromYear(db, collectionListInfo, previousYear, year, identifier, mintList);
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
+        planner.addFromYear(previousYear, year, identifier);
+        return planner.apply(db);
     }
 
     /**
@@ -373,8 +712,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return total number of coins added
      */
     public static int addFromYear(SQLiteDatabase db, CollectionListInfo collectionListInfo, int year) {
-        ArrayList<String> mintList = new ArrayList<>(Arrays.asList("P", "D"));
-        return addFromYear(db, collectionListInfo, year-1, year, String.valueOf(year), mintList);
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
+        planner.addFromYear(year);
+        return planner.apply(db);
     }
 
     /**
@@ -390,51 +730,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static int addFromYear(SQLiteDatabase db, CollectionListInfo collectionListInfo,
                                   int previousYear, int year, String identifier,
                                   ArrayList<String> mintsToAdd) {
-        int total = 0;
-
-        // Skip adding if the collection has an earlier end date
-        if (previousYear != collectionListInfo.getEndYear()) {
-            return total;
-        }
-
-        // Add the new coin entries
-        String tableName = collectionListInfo.getName();
-        int newSortOrder = getNextCoinSortOrder(db, tableName);
-        if (collectionListInfo.hasMintMarks()) {
-            for (String flagStr : CollectionListInfo.MINT_STRING_TO_FLAGS.keySet()) {
-                Integer mintFlag = CollectionListInfo.MINT_STRING_TO_FLAGS.get(flagStr);
-                if (!mintsToAdd.contains(flagStr)) {
-                    continue;
-                }
-                if (mintFlag != null && ((collectionListInfo.getMintMarkFlags() & mintFlag) != 0)) {
-                    ContentValues insertValues = new ContentValues();
-                    insertValues.put(COL_COIN_IDENTIFIER, identifier);
-                    insertValues.put(COL_IN_COLLECTION, 0);
-                    insertValues.put(COL_COIN_MINT, flagStr);
-                    insertValues.put(COL_SORT_ORDER, newSortOrder++);
-                    if (db.insert("[" + tableName + "]", null, insertValues) != -1) {
-                        total++;
-                    }
-                }
-            }
-        } else {
-            ContentValues insertValues = new ContentValues();
-            insertValues.put(COL_COIN_IDENTIFIER, identifier);
-            insertValues.put(COL_IN_COLLECTION, 0);
-            insertValues.put(COL_COIN_MINT, "");
-            insertValues.put(COL_SORT_ORDER, newSortOrder++);
-            if (db.insert("[" + tableName + "]", null, insertValues) != -1) {
-                total++;
-            }
-        }
-
-        // Update the collection's end year
-        ContentValues updateValues = new ContentValues();
-        updateValues.put(COL_END_YEAR, year);
-        runSqlUpdate(db, TBL_COLLECTION_INFO, updateValues, COL_NAME + "=?", new String[] { tableName });
-        collectionListInfo.setEndYear(year);
-
-        return total;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
+        planner.addFromYear(previousYear, year, identifier, mintsToAdd);
+        return planner.apply(db);
     }
 
     /**
@@ -446,48 +744,159 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return CoinSlot list
      */
     static ArrayList<CoinSlot> getCoinList(SQLiteDatabase db, String tableName, boolean populateAdvInfo, boolean useSortOrder) {
+        String sortColumn = useSortOrder ? COL_SORT_ORDER : COL_COIN_ID;
+        return queryCoinList(db, tableName, populateAdvInfo, useSortOrder, null, null, sortColumn);
+    }
 
-        ArrayList<String> dbColumns = new ArrayList<>(
-                Arrays.asList(COL_COIN_ID, COL_COIN_IDENTIFIER, COL_COIN_MINT, COL_IN_COLLECTION, COL_SORT_ORDER, COL_CUSTOM_COIN));
-        if (populateAdvInfo) {
-            dbColumns.addAll(
-                    Arrays.asList(COL_ADV_GRADE_INDEX, COL_ADV_QUANTITY_INDEX, COL_ADV_NOTES));
+    /**
+     * Get the coins with sort orders in a given range, sorted by sort order
+     * @param db database
+     * @param tableName The name of the collection
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @param minSortOrder lowest sort order to include
+     * @param maxSortOrder if not null, the coins must have a sort order below this
+     * @return CoinSlot list
+     */
+    static ArrayList<CoinSlot> getCoinListInSortOrderRange(SQLiteDatabase db, String tableName, boolean populateAdvInfo,
+                                                          int minSortOrder, Integer maxSortOrder) {
+        if (maxSortOrder == null) {
+            return queryCoinList(db, tableName, populateAdvInfo, true, COL_SORT_ORDER + ">=?",
+                    new String[] {String.valueOf(minSortOrder)}, COL_SORT_ORDER);
         }
+        return queryCoinList(db, tableName, populateAdvInfo, true, COL_SORT_ORDER + ">=? AND " + COL_SORT_ORDER + "<?",
+                new String[] {String.valueOf(minSortOrder), String.valueOf(maxSortOrder)}, COL_SORT_ORDER);
+    }
 
-        ArrayList<CoinSlot> coinList = new ArrayList<>();
-        String sortColumn = useSortOrder ? COL_SORT_ORDER : COL_COIN_ID;
-        Cursor cursor = db.query("[" + tableName + "]", dbColumns.toArray(new String[0]),
-                null, null, null, null, sortColumn);
+    /**
+     * Query coins from a collection
+     * @param db database
+     * @param tableName The name of the collection
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @param useSortOrder If true, uses the sort order column for the coin sort order
+     * @param selection where clause, or null for all coins
+     * @param selectionArgs where clause arguments
+     * @param orderBy column to sort by
+     * @return CoinSlot list
+     */
+    private static ArrayList<CoinSlot> queryCoinList(SQLiteDatabase db, String tableName, boolean populateAdvInfo,
+                                                     boolean useSortOrder, String selection, String[] selectionArgs,
+                                                     String orderBy) {
+        Cursor cursor = db.query("[" + tableName + "]", CoinSlotRowMapper.getProjection(populateAdvInfo),
+                selection, selectionArgs, null, null, orderBy);
+        ArrayList<CoinSlot> coinList = new ArrayList<>(cursor.getCount());
         if (cursor.moveToFirst()) {
+            CoinSlotRowMapper rowMapper = new CoinSlotRowMapper(cursor, populateAdvInfo, useSortOrder);
             do {
-                int sortOrder = useSortOrder ? cursor.getInt(cursor.getColumnIndexOrThrow(COL_SORT_ORDER))
-                        : (int) cursor.getLong(cursor.getColumnIndexOrThrow(COL_COIN_ID));
-                if (populateAdvInfo) {
-                    coinList.add(new CoinSlot(
-                            cursor.getLong(cursor.getColumnIndexOrThrow(COL_COIN_ID)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_IDENTIFIER)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_MINT)),
-                            (cursor.getInt(cursor.getColumnIndexOrThrow(COL_IN_COLLECTION)) != 0),
-                            cursor.getInt(cursor.getColumnIndexOrThrow(COL_ADV_GRADE_INDEX)),
-                            cursor.getInt(cursor.getColumnIndexOrThrow(COL_ADV_QUANTITY_INDEX)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COL_ADV_NOTES)),
-                            sortOrder,
-                            (cursor.getInt(cursor.getColumnIndexOrThrow(COL_CUSTOM_COIN)) != 0)));
-                } else {
-                    coinList.add(new CoinSlot(
-                            cursor.getLong(cursor.getColumnIndexOrThrow(COL_COIN_ID)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_IDENTIFIER)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_MINT)),
-                            (cursor.getInt(cursor.getColumnIndexOrThrow(COL_IN_COLLECTION)) != 0),
-                            sortOrder,
-                            (cursor.getInt(cursor.getColumnIndexOrThrow(COL_CUSTOM_COIN)) != 0)));
-                }
+                coinList.add(rowMapper.mapRow(cursor));
             } while(cursor.moveToNext());
         }
         cursor.close();
         return coinList;
     }
 
+    /**
+     * Reads the advanced info (grade, quantity and notes) for a group of coins and sets it
+     * on the coins. Coins that are no longer in the database keep their current values.
+     * @param db database
+     * @param tableName The name of the collection
+     * @param coinSlots coins to populate (limited by the SQLite maximum of 999 parameters)
+     */
+    static void populateAdvInfo(SQLiteDatabase db, String tableName, List<CoinSlot> coinSlots) {
+        if (coinSlots.isEmpty()) {
+            return;
+        }
+        LongSparseArray<CoinSlot> coinSlotsById = new LongSparseArray<>(coinSlots.size());
+        StringBuilder placeholders = new StringBuilder();
+        String[] selectionArgs = new String[coinSlots.size()];
+        for (int i = 0; i < coinSlots.size(); i++) {
+            CoinSlot coinSlot = coinSlots.get(i);
+            coinSlotsById.put(coinSlot.getDatabaseId(), coinSlot);
+            placeholders.append((i == 0) ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(coinSlot.getDatabaseId());
+        }
+        Cursor cursor = db.query("[" + tableName + "]",
+                new String[] {COL_COIN_ID, COL_ADV_GRADE_INDEX, COL_ADV_QUANTITY_INDEX, COL_ADV_NOTES},
+                COL_COIN_ID + " IN (" + placeholders + ")", selectionArgs, null, null, null);
+        while (cursor.moveToNext()) {
+            CoinSlot coinSlot = coinSlotsById.get(cursor.getLong(0));
+            if (coinSlot != null) {
+                coinSlot.setAdvInfoFromDatabase(cursor.getInt(1), cursor.getInt(2), cursor.getString(3));
+                coinSlotsById.remove(cursor.getLong(0));
+            }
+        }
+        cursor.close();
+
+        // Mark coins that aren't in the database as loaded, so they aren't queried again
+        for (int i = 0; i < coinSlotsById.size(); i++) {
+            CoinSlot coinSlot = coinSlotsById.valueAt(i);
+            coinSlot.setAdvInfoFromDatabase(coinSlot.getAdvancedGrades(),
+                    coinSlot.getAdvancedQuantities(), coinSlot.getAdvancedNotes());
+        }
+    }
+
+    /**
+     * Get a group of coins by database id, sorted by sort order. Ids of coins that are no
+     * longer in the collection are ignored.
+     * @param db database
+     * @param tableName The name of the collection
+     * @param coinIds database ids of the coins to get
+     * @return CoinSlot list, with advanced info
+     */
+    static ArrayList<CoinSlot> getCoinsById(SQLiteDatabase db, String tableName, List<Long> coinIds) {
+        ArrayList<CoinSlot> coinList = new ArrayList<>(coinIds.size());
+        for (int start = 0; start < coinIds.size(); start += MAX_QUERY_PARAMETERS) {
+            int end = Math.min(start + MAX_QUERY_PARAMETERS, coinIds.size());
+            StringBuilder placeholders = new StringBuilder();
+            String[] selectionArgs = new String[end - start];
+            for (int i = start; i < end; i++) {
+                placeholders.append((i == start) ? "?" : ",?");
+                selectionArgs[i - start] = String.valueOf(coinIds.get(i));
+            }
+            coinList.addAll(queryCoinList(db, tableName, true, true,
+                    COL_COIN_ID + " IN (" + placeholders + ")", selectionArgs, COL_SORT_ORDER));
+        }
+        if (coinIds.size() > MAX_QUERY_PARAMETERS) {
+            // Each chunk is sorted, but the chunks need to be merged
+            Collections.sort(coinList, (a, b) -> (a.getSortOrder() < b.getSortOrder()) ? -1
+                    : ((a.getSortOrder() == b.getSortOrder()) ? 0 : 1));
+        }
+        return coinList;
+    }
+
+    /**
+     * Splits a collection's coin list into pages by sort order, so that the list can be loaded
+     * a page at a time. Coins that share a sort order are always placed in the same page, so
+     * some pages may be slightly larger than the page size.
+     * @param db database
+     * @param tableName The name of the collection
+     * @param pageSize number of coins in each page
+     * @param pageStartIndexes list to populate with the index of the first coin in each page
+     * @param pageStartSortOrders list to populate with the sort order of the first coin in each page
+     * @return total number of coins in the collection
+     */
+    static int getCoinListPages(SQLiteDatabase db, String tableName, int pageSize,
+                                ArrayList<Integer> pageStartIndexes, ArrayList<Integer> pageStartSortOrders) {
+        // Only the sort order is read, and it comes from the sort order index
+        Cursor cursor = db.query("[" + tableName + "]", new String[] {COL_SORT_ORDER},
+                null, null, null, null, COL_SORT_ORDER);
+        int index = 0;
+        int pageStartIndex = 0;
+        int previousSortOrder = 0;
+        while (cursor.moveToNext()) {
+            int sortOrder = cursor.getInt(0);
+            boolean pageIsFull = (index - pageStartIndex >= pageSize) && (sortOrder != previousSortOrder);
+            if (index == 0 || pageIsFull) {
+                pageStartIndexes.add(index);
+                pageStartSortOrders.add(sortOrder);
+                pageStartIndex = index;
+            }
+            previousSortOrder = sortOrder;
+            index++;
+        }
+        cursor.close();
+        return index;
+    }
+
     /**
      * Get the basic coin information used by the legacy code to determine collection params
      * This function should not be updated past DB version 16
@@ -518,6 +927,217 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return coinList;
     }
 
+    /**
+     * Counts the coins in every collection, grouped by the value of an expression over the
+     * coin columns (Ex: the year or the mint mark). The grouping is done by SQLite so only
+     * one row per group is read back, and collections are combined with compound queries.
+     * @param db database
+     * @param keyExpression SQL expression to group the coins by
+     * @return map of each group key to {total coins, collected coins}. Null keys map to ""
+     * @throws SQLException if a database error occurs
+     */
+    static HashMap<String, int[]> getAllCoinsGroupedBy(SQLiteDatabase db, String keyExpression) throws SQLException {
+        ArrayList<String> tableNames = new ArrayList<>();
+        Cursor infoCursor = db.query(TBL_COLLECTION_INFO, new String[] {COL_NAME},
+                null, null, null, null, null);
+        while (infoCursor.moveToNext()) {
+            tableNames.add(infoCursor.getString(0));
+        }
+        infoCursor.close();
+
+        // Split into multiple queries if there are more collections than SQLite allows, and
+        // merge the groups from each query
+        HashMap<String, int[]> groups = new HashMap<>();
+        for (int start = 0; start < tableNames.size(); start += MAX_COMPOUND_SELECT) {
+            int end = Math.min(start + MAX_COMPOUND_SELECT, tableNames.size());
+            StringBuilder sqlCmd = new StringBuilder("SELECT " + COL_STAT_KEY + ", COUNT(*), SUM("
+                    + COL_IN_COLLECTION + " = 1) FROM (");
+            for (int i = start; i < end; i++) {
+                if (i != start) {
+                    sqlCmd.append(" UNION ALL ");
+                }
+                sqlCmd.append("SELECT ").append(keyExpression).append(" AS ").append(COL_STAT_KEY)
+                        .append(", ").append(COL_IN_COLLECTION)
+                        .append(" FROM [").append(tableNames.get(i)).append("]");
+            }
+            sqlCmd.append(") GROUP BY " + COL_STAT_KEY);
+            Cursor cursor = db.rawQuery(sqlCmd.toString(), null);
+            while (cursor.moveToNext()) {
+                String key = cursor.isNull(0) ? "" : cursor.getString(0);
+                int[] counts = groups.get(key);
+                if (counts == null) {
+                    counts = new int[2];
+                    groups.put(key, counts);
+                }
+                counts[0] += cursor.getInt(1);
+                counts[1] += cursor.getInt(2);
+            }
+            cursor.close();
+        }
+        return groups;
+    }
+
+    /**
+     * Counts the coins in every collection grouped by coin type, using the totals kept in the
+     * collection info table rather than reading the collection tables
+     * @param db database
+     * @return map of each coin type to {total coins, collected coins}
+     * @throws SQLException if a database error occurs
+     */
+    static HashMap<String, int[]> getCollectionTotalsByType(SQLiteDatabase db) throws SQLException {
+        HashMap<String, int[]> groups = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT " + COL_COIN_TYPE + ", SUM(" + COL_TOTAL + "), SUM("
+                + COL_COLLECTED + ") FROM " + TBL_COLLECTION_INFO + " GROUP BY " + COL_COIN_TYPE, null);
+        while (cursor.moveToNext()) {
+            String key = cursor.isNull(0) ? "" : cursor.getString(0);
+            groups.put(key, new int[] {cursor.getInt(1), cursor.getInt(2)});
+        }
+        cursor.close();
+        return groups;
+    }
+
+    /**
+     * Gets the query plan SQLite would use for a query, for checking index usage
+     * @param db database
+     * @param sqlCmd query to explain
+     * @param args query arguments
+     * @return the detail of each step of the plan, one per line
+     */
+    static String explainQueryPlan(SQLiteDatabase db, String sqlCmd, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sqlCmd, args);
+        if (cursor.moveToFirst()) {
+            do {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append("\n");
+            } while(cursor.moveToNext());
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    /**
+     * Gets the change journal rows after a given row, oldest first
+     * @param db database
+     * @param afterId id of the last row already read, or 0 to read from the start
+     * @param maxEntries maximum number of rows to return
+     * @return cursor over the rows, which the caller must close
+     */
+    static Cursor getJournalEntries(SQLiteDatabase db, long afterId, int maxEntries) {
+        return db.query(TBL_CHANGE_JOURNAL, null, COL_JOURNAL_ID + " > ?",
+                new String[] {String.valueOf(afterId)}, null, null, COL_JOURNAL_ID,
+                String.valueOf(maxEntries));
+    }
+
+    /**
+     * Gets the id of the newest change journal row
+     * @param db database
+     * @return row id, or 0 if the journal is empty
+     */
+    static long getLatestJournalId(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MAX(" + COL_JOURNAL_ID + ") FROM " + TBL_CHANGE_JOURNAL, null);
+        long result = 0;
+        if (cursor.moveToFirst()) {
+            result = cursor.getLong(0);
+        }
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Deletes the oldest change journal rows so that at most a given number remain
+     * @param db database
+     * @param maxEntries number of rows to keep
+     * @return number of rows deleted
+     * @throws SQLException if a database error occurs
+     */
+    static int trimChangeJournal(SQLiteDatabase db, int maxEntries) throws SQLException {
+        // New rows always get the next id, so the ids have no gaps
+        return runSqlDelete(db, TBL_CHANGE_JOURNAL, COL_JOURNAL_ID + " <= (SELECT MAX("
+                + COL_JOURNAL_ID + ") FROM " + TBL_CHANGE_JOURNAL + ") - ?",
+                new String[] {String.valueOf(maxEntries)});
+    }
+
+    /**
+     * Runs a PRAGMA that returns a single number
+     * @param db database
+     * @param pragma pragma name
+     * @return pragma value
+     */
+    static long getPragmaLong(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        long result = 0;
+        if (cursor.moveToFirst()) {
+            result = cursor.getLong(0);
+        }
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Gets the size of the database file, not including the write-ahead log
+     * @param db database
+     * @return size in bytes
+     */
+    static long getDatabaseSizeBytes(SQLiteDatabase db) {
+        return getPragmaLong(db, "page_count") * getPragmaLong(db, "page_size");
+    }
+
+    /**
+     * Updates the table and index statistics used by the query planner
+     * @param db database
+     * @throws SQLException if a database error occurs
+     */
+    static void analyze(SQLiteDatabase db) throws SQLException {
+        execSql(db, "ANALYZE");
+    }
+
+    /**
+     * Returns free pages to the file system. Databases created before incremental vacuum
+     * was enabled are converted with a full VACUUM, which rebuilds the whole file, so this
+     * is only done if allowed. Must not be called inside a transaction.
+     * @param db database
+     * @param allowFullVacuum true if a full VACUUM may be used to enable incremental vacuum
+     * @return true if a full VACUUM was done
+     * @throws SQLException if a database error occurs
+     */
+    static boolean vacuum(SQLiteDatabase db, boolean allowFullVacuum) throws SQLException {
+        if (getPragmaLong(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            if (!allowFullVacuum) {
+                return false;
+            }
+            // Changing the auto_vacuum mode only takes effect after a VACUUM
+            execSql(db, "PRAGMA auto_vacuum = INCREMENTAL");
+            execSql(db, "VACUUM");
+            return true;
+        }
+        // incremental_vacuum frees pages as the statement is stepped, so use a cursor
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+        while (cursor.moveToNext()) {
+            // Nothing to read
+        }
+        cursor.close();
+        return false;
+    }
+
+    /**
+     * Runs a full check of the database file
+     * @param db database
+     * @param maxErrors maximum number of errors to report
+     * @return list of problems found, empty if the database is ok
+     */
+    static ArrayList<String> checkIntegrity(SQLiteDatabase db, int maxErrors) {
+        ArrayList<String> errors = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA integrity_check(" + maxErrors + ")", null);
+        while (cursor.moveToNext()) {
+            String result = cursor.getString(0);
+            if (!"ok".equals(result)) {
+                errors.add(result);
+            }
+        }
+        cursor.close();
+        return errors;
+    }
+
     /**
      * Get the total number of coins in the collection
      * @param db database
@@ -528,7 +1148,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static int fetchTotalCollected(SQLiteDatabase db, String tableName) throws SQLException {
         String sqlCmd = "SELECT COUNT(" + COL_COIN_ID + ") FROM [" + tableName + "] WHERE " + COL_IN_COLLECTION + "=1 LIMIT 1";
         SQLiteStatement compiledStatement = db.compileStatement(sqlCmd);
-        int result = simpleQueryForLong(compiledStatement);
+        int result = simpleQueryForLong(db, compiledStatement, sqlCmd);
         compiledStatement.clearBindings();
         compiledStatement.close();
         return result;
@@ -542,6 +1162,74 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public static void getAllTables(SQLiteDatabase db, ArrayList<CollectionListInfo> collectionListEntries) throws SQLException {
 
+        // Get rid of the other items in the list (if any)
+        collectionListEntries.clear();
+        queryCollectionInfo(db, null, null, collectionListEntries);
+    }
+
+    /**
+     * Returns the info for a single collection
+     * @param db database
+     * @param tableName The collection name
+     * @return collection info, or null if there's no collection with that name
+     * @throws SQLException if a database error occurs
+     */
+    static CollectionListInfo getCollectionInfo(SQLiteDatabase db, String tableName) throws SQLException {
+        ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>(1);
+        queryCollectionInfo(db, COL_NAME + "=?", new String[] { tableName }, collectionListEntries);
+        return collectionListEntries.isEmpty() ? null : collectionListEntries.get(0);
+    }
+
+    /**
+     * Reads collections from the collection info table, sorted by display order
+     * @param db database
+     * @param selection where clause, or null for all collections
+     * @param selectionArgs where clause arguments
+     * @param collectionListEntries List of CollectionListInfo to add to
+     * @throws SQLException if a database error occurs
+     */
+    private static void queryCollectionInfo(SQLiteDatabase db, String selection, String[] selectionArgs,
+                                            ArrayList<CollectionListInfo> collectionListEntries) throws SQLException {
+        Cursor cursor = db.query(TBL_COLLECTION_INFO,
+                new String[] {COL_NAME, COL_COIN_TYPE, COL_TOTAL, COL_DISPLAY, COL_START_YEAR,
+                        COL_END_YEAR, COL_SHOW_MINT_MARKS, COL_SHOW_CHECKBOXES, COL_COLLECTED},
+                selection, selectionArgs, null, null, COL_DISPLAY_ORDER);
+        if (cursor.moveToFirst()) {
+            do {
+                String tableName = cursor.getString(cursor.getColumnIndexOrThrow(COL_NAME));
+                String coinType = cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_TYPE));
+                // Figure out what collection type maps to this
+                int index = MainApplication.getIndexFromCollectionNameStr(coinType);
+                if (index == -1) {
+                    cursor.close();
+                    throw new SQLException();
+                }
+                // Add it to the list of collections
+                collectionListEntries.add(new CollectionListInfo(
+                        tableName,
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_TOTAL)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_COLLECTED)),
+                        index,
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_DISPLAY)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_START_YEAR)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_END_YEAR)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_SHOW_MINT_MARKS)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COL_SHOW_CHECKBOXES))));
+            } while(cursor.moveToNext());
+        }
+        cursor.close();
+    }
+
+    /**
+     * Returns a list of all collections in the database, used by the legacy code to determine
+     * collection params. This counts the collected coins directly since the collected count
+     * column doesn't exist yet. This function should not be updated past DB version 18
+     * @param db database
+     * @param collectionListEntries List of CollectionListInfo to populate
+     * @throws SQLException if a database error occurs
+     */
+    private static void getAllTablesForLegacyCollectionParams(SQLiteDatabase db, ArrayList<CollectionListInfo> collectionListEntries) throws SQLException {
+
         // Get rid of the other items in the list (if any)
         collectionListEntries.clear();
         Cursor cursor = db.query(TBL_COLLECTION_INFO,
@@ -589,7 +1277,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static ArrayList<CollectionListInfo> getLegacyCollectionParams(SQLiteDatabase db) {
 
         ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
-        getAllTables(db, collectionListEntries);
+        getAllTablesForLegacyCollectionParams(db, collectionListEntries);
         for (CollectionListInfo collectionListEntry : collectionListEntries) {
             ArrayList<CoinSlot> coinList = getCoinListForLegacyCollectionParams(db, collectionListEntry.getName());
             collectionListEntry.setCreationParametersFromCoinData(coinList);
@@ -598,33 +1286,202 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Updates an existing coin list
+     * Updates an existing coin list. Only the differences between the coin list in the
+     * database and the new coin list are written, so the coins that are kept keep their
+     * database ids. Coins with a database id that's in the collection are updated if they've
+     * changed, other coins are inserted, and any coins no longer in the list are deleted.
      * @param db database
      * @param tableName the collection name
-     * @param coinData coin data to use for updates
+     * @param coinData coin data to use for updates. The database id of each inserted coin is
+     *                 set after insertion
      * @param updateTotal if true, updates the collection info total
-     * @throws SQLException if a database error occurs
+     * @throws SQLException if a database error occurs, in which case none of the changes
+     *                      are applied
      */
     public static void updateCoinList(SQLiteDatabase db, String tableName, ArrayList<CoinSlot> coinData, boolean updateTotal) throws SQLException {
-        runSqlDelete(db, tableName, "1", null);
-        for (CoinSlot coinSlot : coinData) {
-            ContentValues values = new ContentValues();
-            values.put(COL_COIN_IDENTIFIER, coinSlot.getIdentifier());
-            values.put(COL_COIN_MINT, coinSlot.getMint());
-            values.put(COL_IN_COLLECTION, coinSlot.isInCollectionInt());
-            values.put(COL_ADV_GRADE_INDEX, coinSlot.getAdvancedGrades());
-            values.put(COL_ADV_QUANTITY_INDEX, coinSlot.getAdvancedQuantities());
-            values.put(COL_ADV_NOTES, coinSlot.getAdvancedNotes());
-            values.put(COL_SORT_ORDER, coinSlot.getSortOrder());
-            coinSlot.setDatabaseId(runSqlInsert(db, tableName, values));
-        }
-
-        // Update the collection total if needed
-        if (updateTotal) {
+        ArrayList<CoinSlot> existingCoinList = getCoinList(db, tableName, true, true);
+        LongSparseArray<CoinSlot> existingCoinsById = new LongSparseArray<>(existingCoinList.size());
+        for (CoinSlot coinSlot : existingCoinList) {
+            existingCoinsById.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+
+        SQLiteStatement insertStatement = db.compileStatement("INSERT INTO [" + tableName + "] ("
+                + COL_COIN_IDENTIFIER + ", "
+                + COL_COIN_MINT + ", "
+                + COL_IN_COLLECTION + ", "
+                + COL_ADV_GRADE_INDEX + ", "
+                + COL_ADV_QUANTITY_INDEX + ", "
+                + COL_ADV_NOTES + ", "
+                + COL_SORT_ORDER + ", "
+                + COL_CUSTOM_COIN + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement updateStatement = db.compileStatement("UPDATE [" + tableName + "] SET "
+                + COL_COIN_IDENTIFIER + " = ?, "
+                + COL_COIN_MINT + " = ?, "
+                + COL_IN_COLLECTION + " = ?, "
+                + COL_ADV_GRADE_INDEX + " = ?, "
+                + COL_ADV_QUANTITY_INDEX + " = ?, "
+                + COL_ADV_NOTES + " = ?, "
+                + COL_SORT_ORDER + " = ?, "
+                + COL_CUSTOM_COIN + " = ?"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE);
+        SQLiteStatement deleteStatement = db.compileStatement("DELETE FROM [" + tableName + "] WHERE "
+                + COIN_SLOT_COIN_ID_WHERE_CLAUSE);
+        db.beginTransaction();
+        try {
+            for (CoinSlot coinSlot : coinData) {
+                CoinSlot existingCoinSlot = existingCoinsById.get(coinSlot.getDatabaseId());
+                if (existingCoinSlot == null) {
+                    // New coin, or a coin whose database id was already used by an earlier coin
+                    bindCoinSlotColumns(insertStatement, coinSlot);
+                    long rowId = insertStatement.executeInsert();
+                    if (rowId == -1) {
+                        throw new SQLException();
+                    }
+                    coinSlot.setDatabaseId(rowId);
+                    continue;
+                }
+                existingCoinsById.remove(coinSlot.getDatabaseId());
+                if (!coinSlotColumnsEqual(coinSlot, existingCoinSlot)) {
+                    bindCoinSlotColumns(updateStatement, coinSlot);
+                    updateStatement.bindLong(9, coinSlot.getDatabaseId());
+                    if (updateStatement.executeUpdateDelete() <= 0) {
+                        throw new SQLException();
+                    }
+                }
+            }
+
+            // Delete any coins that aren't in the new coin list
+            for (int i = 0; i < existingCoinsById.size(); i++) {
+                deleteStatement.bindLong(1, existingCoinsById.keyAt(i));
+                deleteStatement.executeUpdateDelete();
+            }
+
+            // Update the collection total if needed
+            if (updateTotal) {
+                ContentValues values = new ContentValues();
+                values.put(COL_TOTAL, coinData.size());
+                runSqlUpdate(db, TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertStatement.close();
+            updateStatement.close();
+            deleteStatement.close();
+        }
+    }
+
+    /**
+     * Applies a set of coin changes to a collection, without reading the rest of the coins.
+     * Each changed coin replaces the coin with the same database id, or is inserted with that
+     * id if it isn't in the collection.
+     * @param db database
+     * @param tableName the collection name
+     * @param changedCoins coins to update or insert, each with a database id
+     * @param removedCoinIds database ids of coins to delete
+     * @param total new collection total
+     * @return database ids of the changed coins that were inserted
+     * @throws SQLException if a database error occurs, in which case none of the changes
+     *                      are applied
+     */
+    static HashSet<Long> applyCoinChanges(SQLiteDatabase db, String tableName, List<CoinSlot> changedCoins,
+                                 List<Long> removedCoinIds, int total) throws SQLException {
+        SQLiteStatement insertStatement = db.compileStatement("INSERT INTO [" + tableName + "] ("
+                + COL_COIN_IDENTIFIER + ", "
+                + COL_COIN_MINT + ", "
+                + COL_IN_COLLECTION + ", "
+                + COL_ADV_GRADE_INDEX + ", "
+                + COL_ADV_QUANTITY_INDEX + ", "
+                + COL_ADV_NOTES + ", "
+                + COL_SORT_ORDER + ", "
+                + COL_CUSTOM_COIN + ", "
+                + COL_COIN_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement updateStatement = db.compileStatement("UPDATE [" + tableName + "] SET "
+                + COL_COIN_IDENTIFIER + " = ?, "
+                + COL_COIN_MINT + " = ?, "
+                + COL_IN_COLLECTION + " = ?, "
+                + COL_ADV_GRADE_INDEX + " = ?, "
+                + COL_ADV_QUANTITY_INDEX + " = ?, "
+                + COL_ADV_NOTES + " = ?, "
+                + COL_SORT_ORDER + " = ?, "
+                + COL_CUSTOM_COIN + " = ?"
+                + " WHERE " + COIN_SLOT_COIN_ID_WHERE_CLAUSE);
+        SQLiteStatement deleteStatement = db.compileStatement("DELETE FROM [" + tableName + "] WHERE "
+                + COIN_SLOT_COIN_ID_WHERE_CLAUSE);
+        HashSet<Long> insertedCoinIds = new HashSet<>();
+        db.beginTransaction();
+        try {
+            // Delete first, in case a removed coin's id was later reused by an added coin
+            for (long coinId : removedCoinIds) {
+                deleteStatement.bindLong(1, coinId);
+                deleteStatement.executeUpdateDelete();
+            }
+            for (CoinSlot coinSlot : changedCoins) {
+                bindCoinSlotColumns(updateStatement, coinSlot);
+                updateStatement.bindLong(9, coinSlot.getDatabaseId());
+                if (updateStatement.executeUpdateDelete() <= 0) {
+                    bindCoinSlotColumns(insertStatement, coinSlot);
+                    insertStatement.bindLong(9, coinSlot.getDatabaseId());
+                    if (insertStatement.executeInsert() == -1) {
+                        throw new SQLException();
+                    }
+                    insertedCoinIds.add(coinSlot.getDatabaseId());
+                }
+            }
             ContentValues values = new ContentValues();
-            values.put(COL_TOTAL, coinData.size());
+            values.put(COL_TOTAL, total);
             runSqlUpdate(db, TBL_COLLECTION_INFO, values, COL_NAME + "=?", new String[] { tableName });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertStatement.close();
+            updateStatement.close();
+            deleteStatement.close();
         }
+        return insertedCoinIds;
+    }
+
+    /**
+     * Binds the coin columns in the order used by updateCoinList
+     * @param compiledStatement statement to bind to
+     * @param coinSlot coin to bind
+     */
+    private static void bindCoinSlotColumns(SQLiteStatement compiledStatement, CoinSlot coinSlot) {
+        bindStringOrNull(compiledStatement, 1, coinSlot.getIdentifier());
+        bindStringOrNull(compiledStatement, 2, coinSlot.getMint());
+        compiledStatement.bindLong(3, coinSlot.isInCollectionInt());
+        bindIntegerOrNull(compiledStatement, 4, coinSlot.getAdvancedGrades());
+        bindIntegerOrNull(compiledStatement, 5, coinSlot.getAdvancedQuantities());
+        bindStringOrNull(compiledStatement, 6, coinSlot.getAdvancedNotes());
+        compiledStatement.bindLong(7, coinSlot.getSortOrder());
+        compiledStatement.bindLong(8, coinSlot.isCustomCoinInt());
+    }
+
+    /**
+     * Checks whether any of the columns written by updateCoinList differ between two coins
+     * @param coinSlot new coin
+     * @param existingCoinSlot coin read from the database
+     * @return true if the coins have the same column values
+     */
+    private static boolean coinSlotColumnsEqual(CoinSlot coinSlot, CoinSlot existingCoinSlot) {
+        return equalsOrNull(coinSlot.getIdentifier(), existingCoinSlot.getIdentifier())
+                && equalsOrNull(coinSlot.getMint(), existingCoinSlot.getMint())
+                && coinSlot.isInCollection() == existingCoinSlot.isInCollection()
+                && equalsOrNull(coinSlot.getAdvancedGrades(), existingCoinSlot.getAdvancedGrades())
+                && equalsOrNull(coinSlot.getAdvancedQuantities(), existingCoinSlot.getAdvancedQuantities())
+                && equalsOrNull(coinSlot.getAdvancedNotes(), existingCoinSlot.getAdvancedNotes())
+                && coinSlot.getSortOrder() == existingCoinSlot.getSortOrder()
+                && coinSlot.isCustomCoin() == existingCoinSlot.isCustomCoin();
+    }
+
+    /**
+     * Null-safe equals (Objects.equals requires API 19)
+     * @param a first object
+     * @param b second object
+     * @return true if both are null or they're equal
+     */
+    private static boolean equalsOrNull(Object a, Object b) {
+        return (a == null) ? (b == null) : a.equals(b);
     }
 
     /**
@@ -667,7 +1524,23 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @throws SQLException if an insert error occurred
      */
     public static long runSqlInsert(SQLiteDatabase db, String tableName, ContentValues values) throws SQLException {
-        return db.insertOrThrow("[" + tableName + "]", null, values);
+        long startTime = SqlInstrumentation.startTiming();
+        long rowId = db.insertOrThrow("[" + tableName + "]", null, values);
+        if (startTime != SqlInstrumentation.NOT_TIMED) {
+            StringBuilder sqlCmd = new StringBuilder("INSERT INTO [" + tableName + "] (");
+            StringBuilder valuesStr = new StringBuilder();
+            for (String key : values.keySet()) {
+                if (valuesStr.length() != 0) {
+                    sqlCmd.append(", ");
+                    valuesStr.append(", ");
+                }
+                sqlCmd.append(key);
+                valuesStr.append("?");
+            }
+            sqlCmd.append(") VALUES (").append(valuesStr).append(")");
+            SqlInstrumentation.endTiming(db, startTime, sqlCmd.toString());
+        }
+        return rowId;
     }
 
     /**
@@ -680,20 +1553,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return the number of rows impacted
      */
     public static int runSqlUpdate(SQLiteDatabase db, String tableName, ContentValues values, String whereClause, String[] whereArgs) {
-        return db.update("[" + tableName + "]", values, whereClause, whereArgs);
+        long startTime = SqlInstrumentation.startTiming();
+        int numRows = db.update("[" + tableName + "]", values, whereClause, whereArgs);
+        if (startTime != SqlInstrumentation.NOT_TIMED) {
+            StringBuilder sqlCmd = new StringBuilder("UPDATE [" + tableName + "] SET ");
+            boolean first = true;
+            for (String key : values.keySet()) {
+                sqlCmd.append(first ? "" : ", ").append(key).append(" = ?");
+                first = false;
+            }
+            if (whereClause != null) {
+                sqlCmd.append(" WHERE ").append(whereClause);
+            }
+            SqlInstrumentation.endTiming(db, startTime, sqlCmd.toString());
+        }
+        return numRows;
     }
 
     /**
      * Wrapper for simpleQueryForLong
+     * @param db The database
      * @param compiledStatement statement to execute
+     * @param sqlCmd SQL the statement was compiled from, used for timing
      * @return int query result
      * @throws SQLException if a database exception occurs
      */
-    public static int simpleQueryForLong (SQLiteStatement compiledStatement) throws SQLException {
+    public static int simpleQueryForLong (SQLiteDatabase db, SQLiteStatement compiledStatement, String sqlCmd) throws SQLException {
+        long startTime = SqlInstrumentation.startTiming();
         try {
             return (int) compiledStatement.simpleQueryForLong();
         } catch (SQLiteDoneException e) {
             throw new SQLException();
+        } finally {
+            SqlInstrumentation.endTiming(db, startTime, sqlCmd);
         }
     }
 
@@ -706,6 +1598,52 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return the number of rows impacted
      */
     public static int runSqlDelete(SQLiteDatabase db, String tableName, String whereClause, String[] whereArgs) {
-        return db.delete("[" + tableName + "]", whereClause, whereArgs);
+        long startTime = SqlInstrumentation.startTiming();
+        int numRows = db.delete("[" + tableName + "]", whereClause, whereArgs);
+        if (startTime != SqlInstrumentation.NOT_TIMED) {
+            String sqlCmd = "DELETE FROM [" + tableName + "]" + ((whereClause != null) ? " WHERE " + whereClause : "");
+            SqlInstrumentation.endTiming(db, startTime, sqlCmd);
+        }
+        return numRows;
+    }
+
+    /**
+     * Wrapper for execSQL, used for statements that don't return data
+     * @param db The database
+     * @param sqlCmd The SQL statement to run
+     * @throws SQLException if the statement is invalid
+     */
+    static void execSql(SQLiteDatabase db, String sqlCmd) throws SQLException {
+        long startTime = SqlInstrumentation.startTiming();
+        db.execSQL(sqlCmd);
+        SqlInstrumentation.endTiming(db, startTime, sqlCmd);
+    }
+
+    /**
+     * Binds a string to a compiled statement, handling null values
+     * @param compiledStatement statement to bind to
+     * @param index 1-based index of the parameter
+     * @param value value to bind
+     */
+    static void bindStringOrNull(SQLiteStatement compiledStatement, int index, String value) {
+        if (value == null) {
+            compiledStatement.bindNull(index);
+        } else {
+            compiledStatement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Binds an integer to a compiled statement, handling null values
+     * @param compiledStatement statement to bind to
+     * @param index 1-based index of the parameter
+     * @param value value to bind
+     */
+    static void bindIntegerOrNull(SQLiteStatement compiledStatement, int index, Integer value) {
+        if (value == null) {
+            compiledStatement.bindNull(index);
+        } else {
+            compiledStatement.bindLong(index, value);
+        }
     }
 }
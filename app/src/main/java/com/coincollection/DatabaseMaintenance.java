@@ -0,0 +1,269 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.DatabaseAdapter.COIN_SORT_ORDER_GAP;
+import static com.spencerpages.MainApplication.APP_NAME;
+
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.SQLException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.spencerpages.BuildConfig;
+import com.spencerpages.R;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Periodic database upkeep: closes the holes left in the coin sort orders when coins are
+ * removed, updates the query planner statistics, returns free pages to the file system and
+ * checks the database for corruption. Each run produces a report of the space reclaimed and
+ * the time spent, and the most recent report is kept in the shared preferences.
+ */
+public class DatabaseMaintenance {
+
+    // Shared preference keys
+    public final static String LAST_MAINTENANCE_TIME = "lastDatabaseMaintenanceTime";
+    public final static String LAST_MAINTENANCE_REPORT = "lastDatabaseMaintenanceReport";
+
+    // Minimum time between scheduled runs
+    public final static long MAINTENANCE_INTERVAL_MS = 7L * 24 * 60 * 60 * 1000;
+
+    // Stop listing integrity problems after this many
+    final static int MAX_INTEGRITY_ERRORS = 100;
+
+    /**
+     * Results of a maintenance run
+     */
+    public static class Report {
+        private final long mTimeMillis;
+        private long mSizeBeforeBytes;
+        private long mSizeAfterBytes;
+        private int mCollectionsCompacted;
+        private boolean mFullVacuum;
+        private long mCompactMs;
+        private long mAnalyzeMs;
+        private long mVacuumMs;
+        private long mIntegrityCheckMs;
+        private long mTotalMs;
+        private final ArrayList<String> mIntegrityErrors = new ArrayList<>();
+
+        Report(long timeMillis) {
+            mTimeMillis = timeMillis;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public long getSizeBeforeBytes() {
+            return mSizeBeforeBytes;
+        }
+
+        public long getSizeAfterBytes() {
+            return mSizeAfterBytes;
+        }
+
+        public long getBytesReclaimed() {
+            return Math.max(0, mSizeBeforeBytes - mSizeAfterBytes);
+        }
+
+        public int getCollectionsCompacted() {
+            return mCollectionsCompacted;
+        }
+
+        public boolean isFullVacuum() {
+            return mFullVacuum;
+        }
+
+        public long getTotalMs() {
+            return mTotalMs;
+        }
+
+        public boolean isIntegrityOk() {
+            return mIntegrityErrors.isEmpty();
+        }
+
+        public List<String> getIntegrityErrors() {
+            return mIntegrityErrors;
+        }
+
+        /**
+         * Builds the text shown to the user and saved in the preferences
+         * @param res resources used for the report text
+         * @return report text
+         */
+        public String buildText(Resources res) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(res.getString(R.string.maintenance_report_title,
+                    DateFormat.getDateTimeInstance().format(new Date(mTimeMillis)))).append("\n\n");
+            builder.append(res.getString(mFullVacuum ? R.string.maintenance_report_size_full_vacuum
+                            : R.string.maintenance_report_size,
+                    mSizeBeforeBytes, mSizeAfterBytes, getBytesReclaimed())).append("\n");
+            builder.append(res.getString(R.string.maintenance_report_total_time, mTotalMs)).append("\n");
+            builder.append("  ").append(res.getString(R.string.maintenance_report_compact_time,
+                    mCompactMs, mCollectionsCompacted)).append("\n");
+            builder.append("  ").append(res.getString(R.string.maintenance_report_analyze_time,
+                    mAnalyzeMs)).append("\n");
+            builder.append("  ").append(res.getString(R.string.maintenance_report_vacuum_time,
+                    mVacuumMs)).append("\n");
+            builder.append("  ").append(res.getString(R.string.maintenance_report_integrity_check_time,
+                    mIntegrityCheckMs)).append("\n\n");
+            if (isIntegrityOk()) {
+                builder.append(res.getString(R.string.maintenance_report_integrity_ok)).append("\n");
+            } else {
+                builder.append(res.getString(R.string.maintenance_report_integrity_errors)).append("\n");
+                for (String error : mIntegrityErrors) {
+                    builder.append(error).append("\n");
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    private final DatabaseAdapter mDbAdapter;
+
+    /**
+     * Constructor
+     * @param dbAdapter open database adapter
+     */
+    public DatabaseMaintenance(DatabaseAdapter dbAdapter) {
+        mDbAdapter = dbAdapter;
+    }
+
+    /**
+     * Runs all the maintenance steps. This may take a while, so it should be called on a
+     * background thread. Collections open in a collection page aren't renumbered.
+     * @param allowFullVacuum true if a full VACUUM may be done to enable incremental vacuum
+     * @return report of the run
+     * @throws SQLException if a database error occurs
+     */
+    public Report run(boolean allowFullVacuum) throws SQLException {
+        Report report = new Report(System.currentTimeMillis());
+        long startTime = SystemClock.elapsedRealtime();
+        report.mSizeBeforeBytes = mDbAdapter.getDatabaseSizeBytes();
+
+        long stepStartTime = SystemClock.elapsedRealtime();
+        report.mCollectionsCompacted = compactSortOrders();
+        report.mCompactMs = SystemClock.elapsedRealtime() - stepStartTime;
+
+        stepStartTime = SystemClock.elapsedRealtime();
+        mDbAdapter.analyze();
+        report.mAnalyzeMs = SystemClock.elapsedRealtime() - stepStartTime;
+
+        stepStartTime = SystemClock.elapsedRealtime();
+        report.mFullVacuum = mDbAdapter.vacuum(allowFullVacuum);
+        report.mVacuumMs = SystemClock.elapsedRealtime() - stepStartTime;
+
+        stepStartTime = SystemClock.elapsedRealtime();
+        report.mIntegrityErrors.addAll(mDbAdapter.checkIntegrity(MAX_INTEGRITY_ERRORS));
+        report.mIntegrityCheckMs = SystemClock.elapsedRealtime() - stepStartTime;
+
+        report.mSizeAfterBytes = mDbAdapter.getDatabaseSizeBytes();
+        report.mTotalMs = SystemClock.elapsedRealtime() - startTime;
+
+        if (BuildConfig.DEBUG || !report.isIntegrityOk()) {
+            Log.i(APP_NAME, "Database maintenance took " + report.mTotalMs + " ms, reclaimed "
+                    + report.getBytesReclaimed() + " bytes, compacted " + report.mCollectionsCompacted
+                    + " collections, integrity errors: " + report.mIntegrityErrors);
+        }
+        return report;
+    }
+
+    /**
+     * Renumbers the coin sort orders of any collection with holes left by removed coins,
+     * skipping collections that are open in a collection page
+     * @return number of collections renumbered
+     * @throws SQLException if a database error occurs
+     */
+    int compactSortOrders() throws SQLException {
+        ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+        mDbAdapter.getAllTables(collectionListEntries);
+        int numCompacted = 0;
+        for (CollectionListInfo collectionListInfo : collectionListEntries) {
+            if (mDbAdapter.compactCoinSortOrders(collectionListInfo.getName())) {
+                numCompacted++;
+            }
+        }
+        return numCompacted;
+    }
+
+    /**
+     * Checks whether the sort orders are evenly spaced from 0, either one apart as when the
+     * collection is created or COIN_SORT_ORDER_GAP apart as after being renumbered
+     * @param coinList coins in sort order
+     * @return true if there are no holes in the sort orders
+     */
+    static boolean isSortOrderCompact(List<CoinSlot> coinList) {
+        if (coinList.size() < 2) {
+            return coinList.isEmpty() || coinList.get(0).getSortOrder() == 0;
+        }
+        int step = coinList.get(1).getSortOrder() - coinList.get(0).getSortOrder();
+        if (step != 1 && step != COIN_SORT_ORDER_GAP) {
+            return false;
+        }
+        for (int i = 0; i < coinList.size(); i++) {
+            if (coinList.get(i).getSortOrder() != i * step) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether enough time has passed since the last run
+     * @param mainPreferences shared preferences
+     * @return true if maintenance should be run
+     */
+    public static boolean isMaintenanceDue(SharedPreferences mainPreferences) {
+        long lastTime = mainPreferences.getLong(LAST_MAINTENANCE_TIME, 0);
+        long now = System.currentTimeMillis();
+        // Also run if the clock was moved back
+        return (now - lastTime >= MAINTENANCE_INTERVAL_MS) || (now < lastTime);
+    }
+
+    /**
+     * Saves a report as the most recent run
+     * @param mainPreferences shared preferences
+     * @param res resources used for the report text
+     * @param report report to save
+     */
+    public static void saveReport(SharedPreferences mainPreferences, Resources res, Report report) {
+        SharedPreferences.Editor editor = mainPreferences.edit();
+        editor.putLong(LAST_MAINTENANCE_TIME, report.getTimeMillis());
+        editor.putString(LAST_MAINTENANCE_REPORT, report.buildText(res));
+        editor.apply();
+    }
+
+    /**
+     * Gets the report of the most recent run
+     * @param mainPreferences shared preferences
+     * @return report text, or null if maintenance hasn't been run
+     */
+    public static String getLastReport(SharedPreferences mainPreferences) {
+        return mainPreferences.getString(LAST_MAINTENANCE_REPORT, null);
+    }
+}
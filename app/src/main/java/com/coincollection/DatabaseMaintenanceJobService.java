@@ -0,0 +1,112 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.spencerpages.MainApplication.APP_NAME;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import com.spencerpages.MainApplication;
+
+/**
+ * Job that runs the database maintenance while the device is idle and charging, so that it
+ * doesn't compete with the user for the database or the battery.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class DatabaseMaintenanceJobService extends JobService {
+
+    final static int JOB_ID = 1;
+
+    // How often the job is allowed to run. Runs are skipped if the maintenance isn't due yet.
+    private final static long JOB_PERIOD_MS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Schedules the job if it isn't already scheduled. Doesn't reschedule an existing job,
+     * since that would restart its period.
+     * @param context context
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            if (jobInfo.getId() == JOB_ID) {
+                return;
+            }
+        }
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, DatabaseMaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(JOB_PERIOD_MS)
+                .build();
+        jobScheduler.schedule(jobInfo);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final MainApplication app = (MainApplication) getApplication();
+        final SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
+        if (!DatabaseMaintenance.isMaintenanceDue(mainPreferences)) {
+            return false;
+        }
+        new Thread(() -> {
+            // Use the shared connection so that open screens are told about the changes, and
+            // keep it open until the run is done even if the main screen closes it
+            DatabaseAdapter dbAdapter = app.getDbAdapter();
+            boolean needsReschedule = false;
+            try {
+                dbAdapter.beginBackgroundUse();
+                try {
+                    // The device is idle, so this is a good time for the one-time full vacuum
+                    DatabaseMaintenance.Report report = new DatabaseMaintenance(dbAdapter).run(true);
+                    DatabaseMaintenance.saveReport(mainPreferences, getResources(), report);
+                } finally {
+                    dbAdapter.endBackgroundUse();
+                }
+            } catch (SQLException | IllegalStateException e) {
+                // Ex: The database couldn't be opened. Try again later.
+                Log.e(APP_NAME, "Database maintenance failed: " + e);
+                needsReschedule = true;
+            }
+            jobFinished(params, needsReschedule);
+        }).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The steps can't be interrupted, and the periodic job will run again
+        return false;
+    }
+}
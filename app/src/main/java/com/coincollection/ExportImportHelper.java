@@ -20,14 +20,31 @@
 
 package com.coincollection;
 
+import static com.coincollection.ChangeJournal.OP_CREATE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_DELETE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REMOVE_COIN;
+import static com.coincollection.ChangeJournal.OP_RENAME_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REORDER_COINS;
+import static com.coincollection.ChangeJournal.OP_REORDER_COLLECTIONS;
+import static com.coincollection.ChangeJournal.OP_UPDATE_COLLECTION;
+import static com.coincollection.CollectionListInfo.COL_DISPLAY;
+import static com.coincollection.CollectionListInfo.COL_NAME;
+import static com.coincollection.CollectionListInfo.COL_TOTAL;
+import static com.spencerpages.MainApplication.APP_NAME;
+
+import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.database.Cursor;
 import android.database.SQLException;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.util.JsonReader;
 import android.util.JsonWriter;
+import android.util.Log;
 
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.spencerpages.BuildConfig;
 import com.spencerpages.MainApplication;
 import com.spencerpages.R;
 
@@ -41,12 +58,20 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class ExportImportHelper {
 
     // Internal state
     final Resources mRes;
     final DatabaseAdapter mDbAdapter;
+    private int mLastImportRowCount = 0;
+    private long mLastImportDurationMs = 0;
+    private long mLastExportJournalId = -1;
+    private long mLastImportJournalId = -1;
 
     public final static String JSON_CHARSET = "UTF-8";
 
@@ -54,6 +79,23 @@ public class ExportImportHelper {
     public final static String JSON_DB_VERSION = "databaseVersion";
     public final static String JSON_COLLECTIONS = "collections";
     public final static String JSON_COIN_LIST = "coinList";
+    public final static String JSON_JOURNAL_ID = "journalId";
+
+    // JSON keys used by change exports
+    public final static String JSON_BASE_JOURNAL_ID = "baseJournalId";
+    public final static String JSON_CHANGED_COLLECTIONS = "changedCollections";
+    public final static String JSON_BASE_NAME = "baseName";
+    public final static String JSON_COLLECTION = "collection";
+    public final static String JSON_REMOVED_COINS = "removedCoins";
+
+    // Shared preference holding the journal id of the last JSON export
+    public final static String LAST_EXPORT_JOURNAL_ID = "lastJsonExportJournalId";
+
+    // Shared preference holding the journal id of the export that was last imported
+    public final static String LAST_IMPORT_JOURNAL_ID = "lastJsonImportJournalId";
+
+    // Number of change journal entries read at a time
+    private final static int JOURNAL_PAGE_SIZE = 500;
 
     // CSV keys
     public final static String CSV_SEPARATOR = "-----";
@@ -276,15 +318,31 @@ public class ExportImportHelper {
     }
 
     /**
-     * This method imports collections from a JSON file
+     * This method imports collections from a JSON file. Change exports are only imported on
+     * top of the export imported last by this helper.
      * @param inputStream input stream to read from
      * @return "" if successful, otherwise an error message to display
      */
     public String importCollectionsFromJson(InputStream inputStream) {
+        return importCollectionsFromJson(inputStream, mLastImportJournalId);
+    }
+
+    /**
+     * This method imports collections from a JSON file
+     * @param inputStream input stream to read from
+     * @param lastImportJournalId journal id of the export imported last, from
+     *                            getSavedImportJournalId. Change exports are only imported if
+     *                            they were made after that export.
+     * @return "" if successful, otherwise an error message to display
+     */
+    public String importCollectionsFromJson(InputStream inputStream, long lastImportJournalId) {
 
         int importDatabaseVersion = 0;
+        long importJournalId = -1;
+        long importBaseJournalId = -1;
         ArrayList<CollectionListInfo> importedCollectionInfoList = new ArrayList<>();
         ArrayList<ArrayList<CoinSlot>> importedCollectionContents = new ArrayList<>();
+        ArrayList<CollectionChanges> importedChanges = null;
 
         try (JsonReader reader = new JsonReader(new InputStreamReader(inputStream, JSON_CHARSET))) {
             // Parse the JSON file
@@ -295,6 +353,12 @@ public class ExportImportHelper {
                     case JSON_DB_VERSION:
                         importDatabaseVersion = reader.nextInt();
                         break;
+                    case JSON_JOURNAL_ID:
+                        importJournalId = reader.nextLong();
+                        break;
+                    case JSON_BASE_JOURNAL_ID:
+                        importBaseJournalId = reader.nextLong();
+                        break;
                     case JSON_COLLECTIONS:
                         reader.beginArray();
                         while (reader.hasNext()) {
@@ -304,15 +368,37 @@ public class ExportImportHelper {
                         }
                         reader.endArray();
                         break;
+                    case JSON_CHANGED_COLLECTIONS:
+                        // The file was made by exportChangesToJson
+                        importedChanges = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            importedChanges.add(new CollectionChanges(reader));
+                        }
+                        reader.endArray();
+                        break;
                     default:
                         reader.skipValue();
                         break;
                 }
             }
             reader.endObject();
-            // All data has been parsed from CSV files so perform the DB steps to import
-            return updateDatabaseFromImport(importDatabaseVersion, importedCollectionInfoList,
-                    importedCollectionContents);
+            String resultStr;
+            if (importedChanges != null) {
+                // The changes only apply on top of the export they were made after
+                if ((importBaseJournalId < 0) || (importBaseJournalId != lastImportJournalId)) {
+                    return mRes.getString(R.string.error_import_changes_base);
+                }
+                resultStr = updateDatabaseFromChanges(importDatabaseVersion, importedChanges);
+            } else {
+                // All data has been parsed from the JSON file so perform the DB steps to import
+                resultStr = updateDatabaseFromImport(importDatabaseVersion, importedCollectionInfoList,
+                        importedCollectionContents);
+            }
+            if (resultStr.isEmpty()) {
+                mLastImportJournalId = importJournalId;
+            }
+            return resultStr;
         } catch (UnsupportedEncodingException e) {
             return mRes.getString(R.string.error_importing, e.getMessage());
         } catch (IOException e) {
@@ -331,17 +417,22 @@ public class ExportImportHelper {
                                             ArrayList<CollectionListInfo> importedCollectionInfoList,
                                             ArrayList<ArrayList<CoinSlot>> importedCollectionContents) {
 
-        // Drop existing tables
-        ArrayList<CollectionListInfo> existingCollections = new ArrayList<>();
-        mDbAdapter.getAllTables(existingCollections);
-        for (int i = 0; i < existingCollections.size(); i++) {
-            CollectionListInfo info = existingCollections.get(i);
-            mDbAdapter.dropCollectionTable(info.getName());
-        }
-        mDbAdapter.dropCollectionInfoTable();
-
-        // Take the data we've stored and replace what's in the database with it
+        // The whole import happens in a single transaction, so that the rows aren't committed
+        // individually and so that the existing collections remain if the import fails
+        long startTime = SystemClock.elapsedRealtime();
+        int rowCount = 0;
+        mDbAdapter.beginTransaction();
         try {
+            // Drop existing tables
+            ArrayList<CollectionListInfo> existingCollections = new ArrayList<>();
+            mDbAdapter.getAllTables(existingCollections);
+            for (int i = 0; i < existingCollections.size(); i++) {
+                CollectionListInfo info = existingCollections.get(i);
+                mDbAdapter.dropCollectionTable(info.getName());
+            }
+            mDbAdapter.dropCollectionInfoTable();
+
+            // Take the data we've stored and replace what's in the database with it
             // Add new collections
             mDbAdapter.createCollectionInfoTable();
             for (int i = 0; i < importedCollectionInfoList.size(); i++) {
@@ -354,21 +445,175 @@ public class ExportImportHelper {
                     return mRes.getString(R.string.error_import);
                 }
                 mDbAdapter.createAndPopulateNewTable(collectionListInfo, i, collectionContent);
+                rowCount += collectionContent.size();
             }
 
             // Update any imported tables, if necessary
             if (importDatabaseVersion != MainApplication.DATABASE_VERSION) {
                 mDbAdapter.upgradeCollections(importDatabaseVersion, true);
             }
+            mDbAdapter.setTransactionSuccessful();
         } catch (SQLException e) {
             // Report an import error message to display on the UI thread
             return mRes.getString(R.string.error_import);
+        } finally {
+            mDbAdapter.endTransaction();
+        }
+
+        // Record the import statistics. Imports without a journal id can't have changes
+        // imported on top of them.
+        mLastImportRowCount = rowCount;
+        mLastImportDurationMs = SystemClock.elapsedRealtime() - startTime;
+        mLastImportJournalId = -1;
+        if (BuildConfig.DEBUG) {
+            Log.i(APP_NAME, "Imported " + mLastImportRowCount + " coins in "
+                    + mLastImportDurationMs + " ms (" + getLastImportRowsPerSecond() + " rows/sec)");
         }
 
         // Success!
         return "";
     }
 
+    /**
+     * Update the database with imported changes, applying them on top of the collections
+     * from the export they were made after
+     * @param importDatabaseVersion imported database version
+     * @param importedChanges imported changes, one for each collection in display order
+     * @return "" if successful, otherwise an error string
+     */
+    private String updateDatabaseFromChanges(int importDatabaseVersion,
+                                             ArrayList<CollectionChanges> importedChanges) {
+
+        // The collections in a change export can't be upgraded, since most aren't included
+        if (importDatabaseVersion != MainApplication.DATABASE_VERSION) {
+            return mRes.getString(R.string.error_import_changes_version);
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        int rowCount = 0;
+        mDbAdapter.beginTransaction();
+        try {
+            // Find the existing collection that each changed collection is based on
+            ArrayList<CollectionListInfo> existingCollections = new ArrayList<>();
+            mDbAdapter.getAllTables(existingCollections);
+            HashMap<String, CollectionListInfo> existingInfos = new HashMap<>();
+            for (CollectionListInfo info : existingCollections) {
+                existingInfos.put(info.getName(), info);
+            }
+            Set<String> existingNames = existingInfos.keySet();
+            HashSet<String> keptNames = new HashSet<>();
+            for (CollectionChanges changes : importedChanges) {
+                if (changes.mCollectionListInfo != null) {
+                    continue;
+                }
+                if ((changes.mName == null) || (changes.mBaseName == null)) {
+                    return mRes.getString(R.string.error_import);
+                }
+                if (!existingNames.contains(changes.mBaseName) && existingNames.contains(changes.mName)) {
+                    // Renamed while the earlier export was being written, so it has the new name
+                    changes.mBaseName = changes.mName;
+                }
+                if (!existingNames.contains(changes.mBaseName) || !keptNames.add(changes.mBaseName)) {
+                    return mRes.getString(R.string.error_import_changes_base);
+                }
+            }
+
+            // Drop the collections that were deleted or that are replaced in full
+            for (CollectionListInfo info : existingCollections) {
+                if (!keptNames.contains(info.getName())) {
+                    mDbAdapter.dropCollectionTable(info.getName());
+                }
+            }
+
+            // Rename collections, using temporary names first in case names were swapped
+            ArrayList<CollectionChanges> renamedCollections = new ArrayList<>();
+            ArrayList<String> tempNames = new ArrayList<>();
+            for (CollectionChanges changes : importedChanges) {
+                if ((changes.mCollectionListInfo == null) && !changes.mBaseName.equals(changes.mName)) {
+                    String tempName = mDbAdapter.getAvailableCollectionName(changes.mBaseName, " (renaming)");
+                    mDbAdapter.updateCollectionName(changes.mBaseName, tempName);
+                    renamedCollections.add(changes);
+                    tempNames.add(tempName);
+                }
+            }
+            for (int i = 0; i < renamedCollections.size(); i++) {
+                mDbAdapter.updateCollectionName(tempNames.get(i), renamedCollections.get(i).mName);
+            }
+
+            // Add the new and replaced collections and apply the coin changes to the others
+            ArrayList<String> orderedNames = new ArrayList<>();
+            for (int i = 0; i < importedChanges.size(); i++) {
+                CollectionChanges changes = importedChanges.get(i);
+                if (changes.mCollectionListInfo != null) {
+                    CollectionListInfo collectionListInfo = changes.mCollectionListInfo;
+                    if (mDbAdapter.checkCollectionName(collectionListInfo.getName()) != -1) {
+                        return mRes.getString(R.string.error_import);
+                    }
+                    mDbAdapter.createAndPopulateNewTable(collectionListInfo, i, changes.mCoinList);
+                    orderedNames.add(collectionListInfo.getName());
+                } else {
+                    // The display type isn't journaled, so it's included for every collection
+                    CollectionListInfo baseInfo = existingInfos.get(changes.mBaseName);
+                    if ((changes.mDisplayType >= 0) && (baseInfo.getDisplayType() != changes.mDisplayType)) {
+                        mDbAdapter.updateTableDisplay(changes.mName, changes.mDisplayType);
+                    }
+                    if (changes.mTotal >= 0) {
+                        for (CoinSlot coinSlot : changes.mCoinList) {
+                            if (coinSlot.getDatabaseId() <= 0) {
+                                return mRes.getString(R.string.error_import);
+                            }
+                        }
+                        mDbAdapter.applyCoinChanges(changes.mName, changes.mCoinList,
+                                new ArrayList<>(changes.mRemovedCoinIds), changes.mTotal);
+                    }
+                    orderedNames.add(changes.mName);
+                }
+                rowCount += changes.mCoinList.size();
+            }
+            mDbAdapter.updateDisplayOrders(orderedNames);
+            mDbAdapter.setTransactionSuccessful();
+        } catch (SQLException e) {
+            // Report an import error message to display on the UI thread
+            return mRes.getString(R.string.error_import);
+        } finally {
+            mDbAdapter.endTransaction();
+        }
+
+        // Record the import statistics
+        mLastImportRowCount = rowCount;
+        mLastImportDurationMs = SystemClock.elapsedRealtime() - startTime;
+        if (BuildConfig.DEBUG) {
+            Log.i(APP_NAME, "Imported changes to " + mLastImportRowCount + " coins in "
+                    + mLastImportDurationMs + " ms");
+        }
+        return "";
+    }
+
+    /**
+     * Get the number of coins inserted by the last successful import
+     * @return number of coins imported
+     */
+    public int getLastImportRowCount() {
+        return mLastImportRowCount;
+    }
+
+    /**
+     * Get the time taken by the last successful import to update the database
+     * @return import duration in milliseconds
+     */
+    public long getLastImportDurationMs() {
+        return mLastImportDurationMs;
+    }
+
+    /**
+     * Get the insert rate of the last successful import
+     * @return number of coins imported per second
+     */
+    public long getLastImportRowsPerSecond() {
+        // Avoid dividing by zero for very fast imports
+        return (mLastImportRowCount * 1000L) / Math.max(mLastImportDurationMs, 1);
+    }
+
     /**
      * Exports the collection information to JSON
      * @param outputStream output stream to write to
@@ -377,6 +622,11 @@ public class ExportImportHelper {
      */
     public String exportCollectionsToJson(OutputStream outputStream, String filePath){
 
+        // Record the latest change first, so that any changes made while exporting are also
+        // included in the next change export
+        mLastExportJournalId = -1;
+        long journalId = mDbAdapter.getLatestJournalId();
+
         // Get all collection lists from the database
         ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
         mDbAdapter.getAllTables(collectionListEntries);
@@ -384,6 +634,7 @@ public class ExportImportHelper {
         try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(outputStream, JSON_CHARSET))) {
             writer.beginObject();
             writer.name(JSON_DB_VERSION).value(MainApplication.DATABASE_VERSION);
+            writer.name(JSON_JOURNAL_ID).value(journalId);
             writer.name(JSON_COLLECTIONS).beginArray();
             for (int i = 0; i < collectionListEntries.size(); i++) {
                 // Add the collection and coin info
@@ -393,6 +644,8 @@ public class ExportImportHelper {
             }
             writer.endArray();
             writer.endObject();
+            writer.flush();
+            mLastExportJournalId = journalId;
             return mRes.getString(R.string.success_export, filePath);
         } catch (UnsupportedEncodingException e) {
             return mRes.getString(R.string.error_exporting, e.getMessage());
@@ -401,6 +654,219 @@ public class ExportImportHelper {
         }
     }
 
+    /**
+     * Exports the changes made since an earlier JSON export, which can be imported on top of
+     * that export with importCollectionsFromJson. The changes are found from the change journal,
+     * and only the coins that changed are read and written, so the time taken depends on the
+     * number of changes rather than the number of coins. Collections that were created or
+     * changed as a whole are written in full, and every other collection is listed by name so
+     * that deletes, renames and the display order are kept.
+     * @param outputStream output stream to write to
+     * @param filePath file path being written to
+     * @param baseJournalId journal id of the earlier export, from getLastExportJournalId
+     * @return A message to be displayed to the user, whether successful or not
+     */
+    public String exportChangesToJson(OutputStream outputStream, String filePath, long baseJournalId) {
+
+        mLastExportJournalId = -1;
+
+        // Read in a transaction so that the journal and the collections match. Nothing is
+        // written, and only the changes are read, so they're held in memory and written to
+        // the file after the transaction ends rather than keeping the database busy.
+        long journalId;
+        ArrayList<CollectionChanges> exportedChanges = new ArrayList<>();
+        mDbAdapter.beginTransaction();
+        try {
+            journalId = mDbAdapter.getLatestJournalId();
+            HashMap<String, CollectionChanges> changesByName = getChangesSince(baseJournalId, journalId);
+            if (changesByName == null) {
+                return mRes.getString(R.string.error_no_export_checkpoint);
+            }
+            ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+            mDbAdapter.getAllTables(collectionListEntries);
+            for (CollectionListInfo collectionListInfo : collectionListEntries) {
+                String name = collectionListInfo.getName();
+                CollectionChanges changes = changesByName.get(name);
+                if (changes == null) {
+                    // Unchanged
+                    changes = new CollectionChanges(name, false);
+                } else if (changes.mFullCollection) {
+                    changes.mCollectionListInfo = collectionListInfo;
+                    changes.mCoinList.addAll(mDbAdapter.getCoinList(name, true));
+                } else {
+                    changes.mTotal = collectionListInfo.getMax();
+                    changes.mCoinList.addAll(mDbAdapter.getCoinsById(name, new ArrayList<>(changes.mChangedCoinIds)));
+                }
+                changes.mName = name;
+                changes.mDisplayType = collectionListInfo.getDisplayType();
+                exportedChanges.add(changes);
+            }
+        } finally {
+            mDbAdapter.endTransaction();
+        }
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(outputStream, JSON_CHARSET))) {
+            writer.beginObject();
+            writer.name(JSON_DB_VERSION).value(MainApplication.DATABASE_VERSION);
+            writer.name(JSON_BASE_JOURNAL_ID).value(baseJournalId);
+            writer.name(JSON_JOURNAL_ID).value(journalId);
+            writer.name(JSON_CHANGED_COLLECTIONS).beginArray();
+            for (CollectionChanges changes : exportedChanges) {
+                changes.writeToJson(writer);
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+            mLastExportJournalId = journalId;
+            return mRes.getString(R.string.success_export, filePath);
+        } catch (UnsupportedEncodingException e) {
+            return mRes.getString(R.string.error_exporting, e.getMessage());
+        } catch (IOException e) {
+            return mRes.getString(R.string.error_exporting, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the change journal to find the changes to each collection since an earlier export
+     * @param baseJournalId journal id of the earlier export
+     * @param journalId latest journal id
+     * @return changes keyed by current collection name, or null if some of the journal entries
+     *         are no longer available
+     */
+    private HashMap<String, CollectionChanges> getChangesSince(long baseJournalId, long journalId) {
+        if ((baseJournalId < 0) || (baseJournalId > journalId)) {
+            return null;
+        }
+        HashMap<String, CollectionChanges> changesByName = new HashMap<>();
+        long lastId = baseJournalId;
+        while (lastId < journalId) {
+            Cursor cursor = mDbAdapter.getJournalEntries(lastId, JOURNAL_PAGE_SIZE);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                do {
+                    ChangeJournal.Entry entry = new ChangeJournal.Entry(cursor);
+                    // Entry ids have no gaps, so a gap means the older entries were trimmed
+                    if (entry.getId() != lastId + 1) {
+                        return null;
+                    }
+                    addJournalEntry(changesByName, entry);
+                    lastId = entry.getId();
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+        return changesByName;
+    }
+
+    /**
+     * Adds a journal entry to the changes found so far
+     * @param changesByName changes keyed by collection name
+     * @param entry journal entry
+     */
+    private static void addJournalEntry(HashMap<String, CollectionChanges> changesByName, ChangeJournal.Entry entry) {
+        String name = entry.getCollectionName();
+        switch (entry.getOp()) {
+            case OP_REORDER_COLLECTIONS:
+                // The display order is always exported
+                return;
+            case OP_CREATE_COLLECTION:
+                changesByName.put(name, new CollectionChanges(null, true));
+                return;
+            case OP_DELETE_COLLECTION:
+                changesByName.remove(name);
+                return;
+            case OP_RENAME_COLLECTION: {
+                CollectionChanges changes = changesByName.remove(entry.getValue());
+                if (changes == null) {
+                    changes = new CollectionChanges(entry.getValue(), false);
+                }
+                changesByName.put(name, changes);
+                return;
+            }
+        }
+
+        CollectionChanges changes = changesByName.get(name);
+        if (changes == null) {
+            changes = new CollectionChanges(name, false);
+            changesByName.put(name, changes);
+        }
+        switch (entry.getOp()) {
+            case OP_UPDATE_COLLECTION:
+            case OP_REORDER_COINS:
+                changes.mFullCollection = true;
+                break;
+            case OP_REMOVE_COIN:
+                changes.mChangedCoinIds.remove(entry.getCoinId());
+                changes.mRemovedCoinIds.add(entry.getCoinId());
+                break;
+            default:
+                changes.mChangedCoinIds.add(entry.getCoinId());
+                break;
+        }
+    }
+
+    /**
+     * Get the journal id recorded by the last successful JSON export, which can be passed
+     * to exportChangesToJson to later export the changes made after it
+     * @return journal id, or -1 if the last export wasn't a successful JSON export
+     */
+    public long getLastExportJournalId() {
+        return mLastExportJournalId;
+    }
+
+    /**
+     * Saves the journal id of the last successful JSON export, if there was one
+     * @param mainPreferences shared preferences
+     */
+    public void saveLastExportJournalId(SharedPreferences mainPreferences) {
+        if (mLastExportJournalId >= 0) {
+            SharedPreferences.Editor editor = mainPreferences.edit();
+            editor.putLong(LAST_EXPORT_JOURNAL_ID, mLastExportJournalId);
+            editor.apply();
+        }
+    }
+
+    /**
+     * Gets the saved journal id of the last JSON export
+     * @param mainPreferences shared preferences
+     * @return journal id, or -1 if there hasn't been a JSON export
+     */
+    public static long getSavedExportJournalId(SharedPreferences mainPreferences) {
+        return mainPreferences.getLong(LAST_EXPORT_JOURNAL_ID, -1);
+    }
+
+    /**
+     * Get the journal id of the export imported by the last successful import, which the
+     * next change export imported must have been made after
+     * @return journal id, or -1 if the last import had no journal id (Ex: a CSV import)
+     */
+    public long getLastImportJournalId() {
+        return mLastImportJournalId;
+    }
+
+    /**
+     * Saves the journal id of the last successful import. Should only be called after an
+     * import succeeds, since a failed import leaves the collections unchanged.
+     * @param mainPreferences shared preferences
+     */
+    public void saveLastImportJournalId(SharedPreferences mainPreferences) {
+        SharedPreferences.Editor editor = mainPreferences.edit();
+        editor.putLong(LAST_IMPORT_JOURNAL_ID, mLastImportJournalId);
+        editor.apply();
+    }
+
+    /**
+     * Gets the saved journal id of the export imported last
+     * @param mainPreferences shared preferences
+     * @return journal id, or -1 if the last import had no journal id
+     */
+    public static long getSavedImportJournalId(SharedPreferences mainPreferences) {
+        return mainPreferences.getLong(LAST_IMPORT_JOURNAL_ID, -1);
+    }
+
     /**
      * Extract the contents from a CSV file into a 2D list of strings
      * @param inputFile file to read
@@ -557,4 +1023,112 @@ public class ExportImportHelper {
             return mRes.getString(R.string.error_exporting, e.getMessage());
         }
     }
+
+    /**
+     * Changes to one collection, either found from the change journal for a change export
+     * or read from a change export
+     */
+    private static class CollectionChanges {
+        /** Current collection name */
+        String mName = null;
+        /** Name at the time of the earlier export, or null if created since then */
+        String mBaseName;
+        /** If true, the whole collection is exported instead of the coin changes */
+        boolean mFullCollection;
+        /** Database ids of the coins added or changed */
+        final LinkedHashSet<Long> mChangedCoinIds = new LinkedHashSet<>();
+        /** Database ids of the coins removed */
+        final LinkedHashSet<Long> mRemovedCoinIds = new LinkedHashSet<>();
+
+        // Read from the database for a change export, or read from a change export
+        CollectionListInfo mCollectionListInfo = null;
+        final ArrayList<CoinSlot> mCoinList = new ArrayList<>();
+        int mTotal = -1;
+        int mDisplayType = -1;
+
+        CollectionChanges(String baseName, boolean fullCollection) {
+            mBaseName = baseName;
+            mFullCollection = fullCollection;
+        }
+
+        /**
+         * Reads the changes to a collection from a change export
+         * @param reader JsonReader to read from
+         * @throws IOException if an error occurred
+         */
+        CollectionChanges(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case COL_NAME:
+                        mName = reader.nextString().replace('[', ' ').replace(']', ' ');
+                        break;
+                    case JSON_BASE_NAME:
+                        mBaseName = reader.nextString().replace('[', ' ').replace(']', ' ');
+                        break;
+                    case JSON_COLLECTION:
+                        mCollectionListInfo = new CollectionListInfo(reader, mCoinList);
+                        mFullCollection = true;
+                        break;
+                    case COL_TOTAL:
+                        mTotal = reader.nextInt();
+                        break;
+                    case COL_DISPLAY:
+                        mDisplayType = reader.nextInt();
+                        break;
+                    case JSON_COIN_LIST:
+                        reader.beginArray();
+                        int coinIndex = 0;
+                        while (reader.hasNext()) {
+                            mCoinList.add(new CoinSlot(reader, coinIndex++));
+                        }
+                        reader.endArray();
+                        break;
+                    case JSON_REMOVED_COINS:
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            mRemovedCoinIds.add(reader.nextLong());
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+
+        /**
+         * Writes the changes to a collection to a change export
+         * @param writer JsonWriter to write to
+         * @throws IOException if an error occurred
+         */
+        void writeToJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name(COL_NAME).value(mName);
+            if (mCollectionListInfo != null) {
+                writer.name(JSON_COLLECTION);
+                mCollectionListInfo.writeToJson(writer, mDisplayType, mCoinList);
+            } else {
+                writer.name(JSON_BASE_NAME).value(mBaseName);
+                writer.name(COL_DISPLAY).value(mDisplayType);
+                if (mTotal >= 0) {
+                    writer.name(COL_TOTAL).value(mTotal);
+                    writer.name(JSON_COIN_LIST).beginArray();
+                    for (CoinSlot coinSlot : mCoinList) {
+                        coinSlot.writeToJson(writer);
+                    }
+                    writer.endArray();
+                    writer.name(JSON_REMOVED_COINS).beginArray();
+                    for (long coinId : mRemovedCoinIds) {
+                        writer.value(coinId);
+                    }
+                    writer.endArray();
+                }
+            }
+            writer.endObject();
+        }
+    }
 }
@@ -20,7 +20,6 @@
 
 package com.coincollection;
 
-import static com.coincollection.CollectionListInfo.COL_NAME;
 import static com.coincollection.ExportImportHelper.LEGACY_EXPORT_FOLDER_NAME;
 import static com.coincollection.ReorderCollections.REORDER_COLLECTION;
 import static com.spencerpages.MainApplication.APP_NAME;
@@ -29,6 +28,7 @@ import android.Manifest;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.database.Cursor;
@@ -82,10 +82,81 @@ public class MainActivity extends BaseActivity {
     // The number of actual collections in mCollectionListEntries
     public int mNumberOfCollections = 0;
 
+    // Keeps the collections in mCollectionListEntries up to date, reading only the collections
+    // that changed. Rows changed in place are rebound directly, and other changes are noted in
+    // mCollectionListStructureChanged until the list view is refreshed.
+    private final CollectionListRepository mCollectionListRepository =
+            new CollectionListRepository(new CollectionListRepository.Listener() {
+                @Override
+                public void onCollectionChanged(int index) {
+                    mCollectionListEntries.set(index, mCollectionListRepository.get(index));
+                    rebindCollectionRow(index);
+                }
+
+                @Override
+                public void onCollectionInserted(int index) {
+                    mCollectionListEntries.add(index, mCollectionListRepository.get(index));
+                    mNumberOfCollections += 1;
+                    mCollectionListStructureChanged = true;
+                }
+
+                @Override
+                public void onCollectionRemoved(int index) {
+                    mCollectionListEntries.remove(index);
+                    mNumberOfCollections -= 1;
+                    mCollectionListStructureChanged = true;
+                }
+
+                @Override
+                public void onCollectionMoved(int fromIndex, int toIndex) {
+                    mCollectionListEntries.add(toIndex, mCollectionListEntries.remove(fromIndex));
+                    mCollectionListStructureChanged = true;
+                }
+
+                @Override
+                public void onCollectionListReloaded() {
+                    mCollectionListEntries.clear();
+                    mCollectionListEntries.addAll(mCollectionListRepository.getCollections());
+
+                    // Record the actual number of collections before spacers are added
+                    mNumberOfCollections = mCollectionListEntries.size();
+
+                    // We use an ArrayAdapter to power the ListView, but since we want to add in
+                    // somethings that don't have items in the list, we add in some blank entries
+                    // to account for them.  Pretty hacked together but it should work.
+                    for(int i = 0; i < NUMBER_OF_COLLECTION_LIST_SPACERS; i++) {
+                        mCollectionListEntries.add(null);
+                    }
+                    mCollectionListStructureChanged = true;
+                }
+            });
+    private boolean mCollectionListStructureChanged = false;
+
+    // Updates the collection list as changes are made to the database, whether from this
+    // screen or from others (Ex: coins collected on a collection page)
+    private final DatabaseAdapter.ChangeListener mDataChangeListener = new DatabaseAdapter.ChangeListener() {
+        @Override
+        public void onDataChanged(List<ChangeJournal.Entry> changes) {
+            // The list is read again once an import finishes
+            if (!mIsImportingCollection) {
+                applyCollectionListChangesAndUpdateViewForUIThread(changes);
+            }
+        }
+
+        @Override
+        public void onDataReset() {
+            if (!mIsImportingCollection) {
+                mCollectionListRepository.invalidateAll();
+                updateCollectionListFromDatabaseAndUpdateViewForUIThread();
+            }
+        }
+    };
+
     // Used for the Update Database functionality
     private boolean mIsImportingCollection = false;
     private boolean mImportExportLegacyCsv = false;
     private boolean mExportSingleFileCsv = false;
+    private boolean mExportChangesJson = false;
     private Uri mImportExportFileUri = null;
 
     // App permission requests
@@ -100,7 +171,8 @@ public class MainActivity extends BaseActivity {
     //  2. Import Collections
     //  3. Export Collections
     //  4. Re-order Collections
-    //  5. About
+    //  5. Statistics
+    //  6. About
     // Note: Using constants instead of an enum based on this:
     // https://developer.android.com/training/articles/memory.html#Overhead
     // - Enums often require more than twice as much memory as static constants.
@@ -109,11 +181,12 @@ public class MainActivity extends BaseActivity {
     public final static int IMPORT_COLLECTIONS = 2;
     public final static int EXPORT_COLLECTIONS = 3;
     private final static int REORDER_COLLECTIONS = 4;
-    private final static int ABOUT = 5;
+    private final static int VIEW_STATISTICS = 5;
+    private final static int ABOUT = 6;
     // As a hack to get the static strings at the bottom of the list, we add spacers into
     // mCollectionListEntries.  This tracks the number of those spacers, which we use in several
     // places.
-    public final static int NUMBER_OF_COLLECTION_LIST_SPACERS = 6;
+    public final static int NUMBER_OF_COLLECTION_LIST_SPACERS = 7;
 
     // Action menu items
     private final static int NUM_ACTIONS = 4;
@@ -234,6 +307,9 @@ public class MainActivity extends BaseActivity {
                     case REORDER_COLLECTIONS:
                         launchReorderFragment();
                         break;
+                    case VIEW_STATISTICS:
+                        launchStatisticsActivity();
+                        break;
                     case ABOUT:
 
                         LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(LAYOUT_INFLATER_SERVICE);
@@ -340,6 +416,7 @@ public class MainActivity extends BaseActivity {
     public void onDestroy() {
         // Only MainActivity closes the DB adapter, as it's shared between all activities
         if (mDbAdapter != null) {
+            mDbAdapter.removeChangeListener(mDataChangeListener);
             mDbAdapter.close();
         }
         // Don't try and stop any tasks, as they could be in the middle of a DB upgrade
@@ -350,19 +427,36 @@ public class MainActivity extends BaseActivity {
     public String asyncProgressDoInBackground() {
         switch (mTask.mAsyncTaskId) {
             case TASK_OPEN_DATABASE: {
-                return openDbAdapterForAsyncThread();
+                // If the database needs an upgrade, report the progress to the dialog
+                final AsyncProgressTask task = mTask;
+                DatabaseAdapter dbAdapter = ((MainApplication) getApplication()).getDbAdapter();
+                dbAdapter.setUpgradeListener(new DatabaseHelper.UpgradeListener() {
+                    @Override
+                    public void onUpgradeProgress(int collectionsDone, int totalCollections) {
+                        task.reportProgress(collectionsDone, totalCollections);
+                    }
+
+                    @Override
+                    public void onUpgradeStageComplete(String stageName, long durationMs) { }
+                });
+                String resultStr = openDbAdapterForAsyncThread();
+                dbAdapter.setUpgradeListener(null);
+                return resultStr;
             }
             case TASK_IMPORT_COLLECTIONS: {
                 ExportImportHelper helper = new ExportImportHelper(mRes, mDbAdapter);
+                SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
+                String resultStr;
                 if (mImportExportLegacyCsv) {
-                    return helper.importCollectionsFromLegacyCSV(getLegacyExportFolderName());
+                    resultStr = helper.importCollectionsFromLegacyCSV(getLegacyExportFolderName());
                 } else {
                     try (InputStream inputStream = getContentResolver().openInputStream(mImportExportFileUri)) {
                         String fileName = getFileNameFromUri(mImportExportFileUri);
                         if (fileName.endsWith(".csv")) {
-                            return helper.importCollectionsFromSingleCSV(inputStream);
+                            resultStr = helper.importCollectionsFromSingleCSV(inputStream);
                         } else {
-                            return helper.importCollectionsFromJson(inputStream);
+                            resultStr = helper.importCollectionsFromJson(inputStream,
+                                    ExportImportHelper.getSavedImportJournalId(mainPreferences));
                         }
                     } catch (FileNotFoundException e) {
                         return mRes.getString(R.string.error_importing, e.getMessage());
@@ -370,6 +464,11 @@ public class MainActivity extends BaseActivity {
                         return mRes.getString(R.string.error_importing, e.getMessage());
                     }
                 }
+                // Later change exports are only imported on top of this import
+                if (resultStr.isEmpty()) {
+                    helper.saveLastImportJournalId(mainPreferences);
+                }
+                return resultStr;
             }
             case TASK_EXPORT_COLLECTIONS: {
                 ExportImportHelper helper = new ExportImportHelper(mRes, mDbAdapter);
@@ -380,9 +479,18 @@ public class MainActivity extends BaseActivity {
                         String fileName = getFileNameFromUri(mImportExportFileUri);
                         if (fileName.endsWith(".csv")) {
                             return helper.exportCollectionsToSingleCSV(outputStream, fileName);
+                        }
+                        SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
+                        String resultStr;
+                        if (mExportChangesJson) {
+                            resultStr = helper.exportChangesToJson(outputStream, fileName,
+                                    ExportImportHelper.getSavedExportJournalId(mainPreferences));
                         } else {
-                            return helper.exportCollectionsToJson(outputStream, fileName);
+                            resultStr = helper.exportCollectionsToJson(outputStream, fileName);
                         }
+                        // Later change exports include the changes made after this export
+                        helper.saveLastExportJournalId(mainPreferences);
+                        return resultStr;
                     } catch (FileNotFoundException e) {
                         return mRes.getString(R.string.error_exporting, e.getMessage());
                     } catch (IOException e) {
@@ -419,6 +527,15 @@ public class MainActivity extends BaseActivity {
         if (mTask.mAsyncTaskId == TASK_IMPORT_COLLECTIONS) {
             mIsImportingCollection = false;
         }
+        if (mTask.mAsyncTaskId == TASK_OPEN_DATABASE && resultStr.isEmpty()) {
+            // From here on the list is updated as changes are made
+            mDbAdapter.addChangeListener(mDataChangeListener);
+        }
+        if (mTask.mAsyncTaskId != TASK_EXPORT_COLLECTIONS) {
+            // Opening and importing can change the database without recording the changes
+            // in the change journal (Ex: upgrades), so read the whole list again
+            mCollectionListRepository.invalidateAll();
+        }
         updateCollectionListFromDatabaseAndUpdateViewForUIThread();
     }
 
@@ -435,6 +552,16 @@ public class MainActivity extends BaseActivity {
         return intent;
     }
 
+    /**
+     * Launches the statistics page
+     * @return Intent (used for testing)
+     */
+    public Intent launchStatisticsActivity() {
+        Intent intent = new Intent(mContext, CollectionStatisticsActivity.class);
+        startActivity(intent);
+        return intent;
+    }
+
     /**
      * Launches the collection creation page, either for creating a new collection or for editing
      * @param existingCollection if null, creates a new collection otherwise edits an existing one
@@ -523,6 +650,9 @@ public class MainActivity extends BaseActivity {
             if (mExportSingleFileCsv) {
                 intent.setType("text/csv");
                 intent.putExtra(Intent.EXTRA_TITLE, "coin-collection-" + getTodayDateString() + ".csv");
+            } else if (mExportChangesJson) {
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_TITLE, "coin-collection-changes-" + getTodayDateString() + ".json");
             } else {
                 intent.setType("application/json");
                 intent.putExtra(Intent.EXTRA_TITLE, "coin-collection-" + getTodayDateString() + ".json");
@@ -716,6 +846,10 @@ public class MainActivity extends BaseActivity {
                         image.setBackgroundResource(R.drawable.icon_sort);
                         text.setText(mRes.getString(R.string.reorder_collection));
                         break;
+                    case VIEW_STATISTICS:
+                        image.setBackgroundResource(R.drawable.icon_info);
+                        text.setText(mRes.getString(R.string.view_statistics));
+                        break;
                     case ABOUT:
                         image.setBackgroundResource(R.drawable.icon_info);
                         text.setText(mRes.getString(R.string.app_info));
@@ -731,55 +865,25 @@ public class MainActivity extends BaseActivity {
         }
     }
 
-    @Override
-    public void onWindowFocusChanged(boolean hasFocus){
-        super.onWindowFocusChanged(hasFocus);
-
-        // Note that this provides information about global focus state, which is managed
-        // independently of activity lifecycle. As such, while focus changes will generally have
-        // some relation to lifecycle changes (an activity that is stopped will not generally get
-        // window focus), you should not rely on any particular order between the callbacks here
-        // and those in the other lifecycle methods such as onResume().
-
-        // We use this function as a convenience for updating the database once the list gets focus
-        // after returning from the add/delete/reorder views.
-
-        if (hasFocus && !mIsImportingCollection){
-            // Only do this if the database has been opened with the AsyncTask first
-            // and we aren't modifying the database like crazy (importing)
-            // We need this so that new collections that are added/removed get shown
-
-            updateCollectionListFromDatabaseAndUpdateViewForUIThread();
-        }
-    }
-
     /**
-     * Reloads the collection list from the database.  This is useful after changes have been made
-     * (collections reordered, deleted, etc.)
+     * Updates the collection list from the database.  This is useful after changes have been made
+     * (collections reordered, deleted, etc.)  Only the collections that changed since the last
+     * update are read again.
      */
     public void updateCollectionListFromDatabase(){
 
-        //Get a list of all the database tables
         try {
-            mDbAdapter.getAllTables(mCollectionListEntries);
+            mCollectionListRepository.refresh(mDbAdapter);
         } catch (SQLException e){
             showCancelableAlert(mRes.getString(R.string.error_reading_database));
         }
-
-        // Record the actual number of collections before spacers are added
-        mNumberOfCollections = mCollectionListEntries.size();
-
-        // We use an ArrayAdapter to power the ListView, but since we want to add in somethings that
-        // don't have items in the list, we add in some blank entries to account for them.  Pretty
-        // hacked together but it should work.
-        for(int i = 0; i < NUMBER_OF_COLLECTION_LIST_SPACERS; i++) {
-            mCollectionListEntries.add(null);
-        }
     }
 
     /**
-     * Reloads the collection list from the database and updates the list adapter. This method
-     * should only be called from the UI Thread
+     * Updates the collection list from the database and updates the list adapter. Rows for
+     * collections that changed in place are rebound directly, and the list view is only
+     * refreshed if collections were added, removed or moved. This method should only be called
+     * from the UI Thread
      */
     public void updateCollectionListFromDatabaseAndUpdateViewForUIThread() {
 
@@ -796,11 +900,54 @@ public class MainActivity extends BaseActivity {
             return;
         }
 
-        // Update the list view adapter
-        if (mListAdapter != null) {
+        updateCollectionListView();
+    }
+
+    /**
+     * Updates the collection list with changes delivered by the database adapter, without
+     * reading the change journal again, and updates the list adapter. This method should only
+     * be called from the UI Thread
+     * @param changes journal entries in the order they were made
+     */
+    private void applyCollectionListChangesAndUpdateViewForUIThread(List<ChangeJournal.Entry> changes) {
+        if (mDbAdapter == null) {
+            return;
+        }
+        try {
+            mCollectionListRepository.applyChanges(mDbAdapter, changes);
+        } catch (SQLException e) {
+            showCancelableAlert(mRes.getString(R.string.error_reading_database));
+        }
+        updateCollectionListView();
+    }
+
+    /**
+     * Refreshes the list view if collections were added, removed or moved
+     */
+    private void updateCollectionListView() {
+        if (mListAdapter != null && mCollectionListStructureChanged) {
             mListAdapter.items = mCollectionListEntries;
             mListAdapter.numberOfCollections = mNumberOfCollections;
             mListAdapter.notifyDataSetChanged();
+            mCollectionListStructureChanged = false;
+        }
+    }
+
+    /**
+     * Rebinds the row for a collection, if it's visible, without refreshing the whole list
+     * @param index collection index
+     */
+    private void rebindCollectionRow(int index) {
+        // If the list structure has changed, the rows no longer match the list and the
+        // whole list view will be refreshed instead
+        ListView lv = findViewById(R.id.main_activity_listview);
+        if (mListAdapter == null || lv == null || mCollectionListStructureChanged
+                || index >= mListAdapter.numberOfCollections) {
+            return;
+        }
+        View view = lv.getChildAt(index - lv.getFirstVisiblePosition());
+        if (view != null) {
+            mListAdapter.getView(index, view, lv);
         }
     }
 
@@ -851,27 +998,17 @@ public class MainActivity extends BaseActivity {
                 .setPositiveButton(mRes.getString(R.string.yes), (dialog, id) -> {
                     dialog.dismiss();
                     //Do the deleting
-                    Cursor cursor = null;
                     try {
                         mDbAdapter.dropCollectionTable(name);
-                        //Get a list of all the database tables
-                        cursor = mDbAdapter.getAllCollectionNames();
-                        int i = 0;
-                        if (cursor.moveToFirst()) {
-                            do {
-                                String name1 = cursor.getString(cursor.getColumnIndexOrThrow(COL_NAME));
-                                // Fix up the displayOrder
-                                mDbAdapter.updateDisplayOrder(name1, i);
-                                i++;
-                            } while (cursor.moveToNext());
+                        // Fix up the displayOrder of the collections after the deleted one
+                        int numUpdated = mDbAdapter.compactDisplayOrders();
+                        if (BuildConfig.DEBUG) {
+                            Log.d(APP_NAME, "Updated display order of " + numUpdated + " collections");
                         }
-                        cursor.close();
                     } catch (SQLException e) {
                         showCancelableAlert(mRes.getString(R.string.error_delete_database));
-                        if (cursor != null) {
-                            cursor.close();
-                        }
                     }
+                    updateCollectionListFromDatabaseAndUpdateViewForUIThread();
                 })
                 .setNegativeButton(mRes.getString(R.string.no), (dialog, id) -> dialog.cancel()));
     }
@@ -909,15 +1046,7 @@ public class MainActivity extends BaseActivity {
         }
 
         // Pick a new table name
-        String newTableName;
-        int checkNameResult;
-        int attemptNumber = 0;
-        do {
-            String suffixIndex = (attemptNumber == 0) ?  "" : Integer.toString(attemptNumber);
-            newTableName = baseNewTableName + mRes.getString(R.string.copy_name_suffix) + suffixIndex;
-            checkNameResult = mDbAdapter.checkCollectionName(newTableName);
-            attemptNumber++;
-        } while(checkNameResult != -1);
+        String newTableName = mDbAdapter.getAvailableCollectionName(baseNewTableName, suffixBase);
 
         // Create the new table
         CollectionListInfo newCollectionListInfo;
@@ -928,10 +1057,10 @@ public class MainActivity extends BaseActivity {
             return;
         }
 
-        // Insert into the collection list and update the database sort order
-        mCollectionListEntries.add(insertIndex, newCollectionListInfo);
-        mNumberOfCollections += 1;
-        handleCollectionsReordered(new ArrayList<>(mCollectionListEntries.subList(0, mNumberOfCollections)));
+        // Update the database sort order, which also adds the copy to the collection list
+        ArrayList<CollectionListInfo> reorderedList = mCollectionListRepository.getCollections();
+        reorderedList.add(insertIndex, newCollectionListInfo);
+        handleCollectionsReordered(reorderedList);
     }
 
     /**
@@ -941,16 +1070,23 @@ public class MainActivity extends BaseActivity {
      */
     public void handleCollectionsReordered(ArrayList<CollectionListInfo> reorderedList){
 
-        for(int i = 0; i < reorderedList.size(); i++){
-            CollectionListInfo info = reorderedList.get(i);
-            try {
-                mDbAdapter.updateDisplayOrder(info.getName(), i);
-            } catch (SQLException e) {
-                showCancelableAlert(mRes.getString(R.string.error_reordering_databases));
-                return;
+        // Only the collections that moved are written to the database
+        ArrayList<String> orderedNames = new ArrayList<>(reorderedList.size());
+        for(CollectionListInfo info : reorderedList){
+            orderedNames.add(info.getName());
+        }
+        try {
+            int numUpdated = mDbAdapter.updateDisplayOrders(orderedNames);
+            if (BuildConfig.DEBUG) {
+                Log.d(APP_NAME, "Updated display order of " + numUpdated + " collections");
             }
-            mCollectionListEntries.set(i, info);
+        } catch (SQLException e) {
+            showCancelableAlert(mRes.getString(R.string.error_reordering_databases));
+            return;
         }
+
+        // Move the collections in the list to match
+        updateCollectionListFromDatabaseAndUpdateViewForUIThread();
     }
 
     /**
@@ -1080,6 +1216,7 @@ public class MainActivity extends BaseActivity {
             // If API is less than 19, only legacy storage is supported so go directly to that
             mImportExportLegacyCsv = true;
             mExportSingleFileCsv = false;
+            mExportChangesJson = false;
             launchExportTask();
             return;
         }
@@ -1087,20 +1224,36 @@ public class MainActivity extends BaseActivity {
         // In API 30+, access to the SD card is disabled, so don't show this option after that
         boolean showLegacyExport = (Build.VERSION.SDK_INT <= Build.VERSION_CODES.Q);
 
-        // Populate a menu of actions for export
-        CharSequence[] actionsList = new CharSequence[showLegacyExport ? 3 : 2];
+        // Populate a menu of actions for export, with the change export last
+        CharSequence[] actionsList = new CharSequence[showLegacyExport ? 4 : 3];
         actionsList[0] = mRes.getString(R.string.json_file);
         actionsList[1] = mRes.getString(R.string.csv_file);
         if (showLegacyExport) {
             actionsList[2] = mRes.getString(R.string.legacy_storage);
         }
+        final int changesItem = actionsList.length - 1;
+        actionsList[changesItem] = mRes.getString(R.string.json_changes_file);
         showAlert(newBuilder()
                 .setTitle(mRes.getString(R.string.export_format_message))
                 .setItems(actionsList, (dialog, item) -> {
+                    dialog.dismiss();
+                    mExportChangesJson = false;
+                    if (item == changesItem) {
+                        // JSON file with the changes since the last JSON export
+                        SharedPreferences mainPreferences = getSharedPreferences(MainApplication.PREFS, MODE_PRIVATE);
+                        if (ExportImportHelper.getSavedExportJournalId(mainPreferences) < 0) {
+                            Toast.makeText(mContext, mRes.getString(R.string.error_no_export_checkpoint), Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        mImportExportLegacyCsv = false;
+                        mExportSingleFileCsv = false;
+                        mExportChangesJson = true;
+                        launchExportTask();
+                        return;
+                    }
                     switch (item) {
                         case 0: {
                             // JSON file
-                            dialog.dismiss();
                             mImportExportLegacyCsv = false;
                             mExportSingleFileCsv = false;
                             launchExportTask();
@@ -1108,7 +1261,6 @@ public class MainActivity extends BaseActivity {
                         }
                         case 1: {
                             // CSV file (single-file)
-                            dialog.dismiss();
                             mImportExportLegacyCsv = false;
                             mExportSingleFileCsv = true;
                             launchExportTask();
@@ -1116,7 +1268,6 @@ public class MainActivity extends BaseActivity {
                         }
                         case 2: {
                             // Legacy CSV
-                            dialog.dismiss();
                             mImportExportLegacyCsv = true;
                             mExportSingleFileCsv = false;
                             launchExportTask();
@@ -0,0 +1,357 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import android.database.SQLException;
+
+import androidx.collection.LongSparseArray;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Coin list for large collections that loads the coins from the database a page at a time.
+ *
+ * The collection is split into pages by sort order when the list is created, which only reads
+ * the sort order index. Pages are then loaded by sort order range as they're accessed, and
+ * the next page in the direction of scrolling is loaded ahead of time on a background thread.
+ * Only the most recently used pages are kept in memory.
+ *
+ * Coins with in-memory changes that haven't been written to the database yet must be pinned
+ * with pin(), so that the same CoinSlot is used if its page is reloaded.
+ *
+ * Since the pages are based on the sort orders in the database, loadAll() must be called
+ * before any coins are added, removed or reordered. After that the whole list is kept in
+ * memory. Adding or removing coins calls loadAll() if it hasn't been called yet, which is
+ * only correct if the database hasn't been changed yet.
+ */
+public class PagedCoinList extends AbstractList<CoinSlot> {
+
+    /** Target number of coins in each page */
+    public final static int PAGE_SIZE = 100;
+
+    /** Maximum number of pages kept in memory */
+    public final static int MAX_RESIDENT_PAGES = 6;
+
+    // Number of pages to load ahead of the scroll direction
+    private final static int PREFETCH_PAGES = 1;
+
+    private final DatabaseAdapter mDbAdapter;
+    private final boolean mPopulateAdvInfo;
+    private final ExecutorService mExecutor;
+    private String mTableName;
+
+    private final int mPagedSize;
+    private final int[] mPageStartIndexes;
+    private final int[] mPageStartSortOrders;
+
+    // Pages in memory, keyed by page index, with the least recently used first
+    private final LinkedHashMap<Integer, ArrayList<CoinSlot>> mPages =
+            new LinkedHashMap<Integer, ArrayList<CoinSlot>>(MAX_RESIDENT_PAGES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<CoinSlot>> eldest) {
+                    return size() > MAX_RESIDENT_PAGES;
+                }
+            };
+
+    // Coins that must be used in place of the database values, keyed by coin database id
+    private final LongSparseArray<CoinSlot> mPinnedCoinSlots = new LongSparseArray<>();
+
+    // Page loads that have been queued on the background thread
+    private final ArrayList<Integer> mPendingPageLoads = new ArrayList<>();
+
+    // Every coin in the collection, once loadAll() is called
+    private ArrayList<CoinSlot> mAllCoinSlots = null;
+
+    private int mLastPageIndex = 0;
+    private int mScrollDirection = 1;
+
+    /**
+     * Constructor
+     * @param dbAdapter database adapter to read from
+     * @param tableName collection name
+     * @param populateAdvInfo If true, includes advanced attributes
+     * @param useBackgroundThread if false, pages are loaded ahead on the calling thread
+     *                            (used for unit tests)
+     * @throws SQLException if a database error occurs
+     */
+    public PagedCoinList(DatabaseAdapter dbAdapter, String tableName, boolean populateAdvInfo,
+                         boolean useBackgroundThread) throws SQLException {
+        mDbAdapter = dbAdapter;
+        mTableName = tableName;
+        mPopulateAdvInfo = populateAdvInfo;
+        mExecutor = useBackgroundThread ? Executors.newSingleThreadExecutor() : null;
+
+        ArrayList<Integer> pageStartIndexes = new ArrayList<>();
+        ArrayList<Integer> pageStartSortOrders = new ArrayList<>();
+        mPagedSize = dbAdapter.getCoinListPages(tableName, PAGE_SIZE, pageStartIndexes, pageStartSortOrders);
+        mPageStartIndexes = new int[pageStartIndexes.size()];
+        mPageStartSortOrders = new int[pageStartSortOrders.size()];
+        for (int i = 0; i < mPageStartIndexes.length; i++) {
+            mPageStartIndexes[i] = pageStartIndexes.get(i);
+            mPageStartSortOrders[i] = pageStartSortOrders.get(i);
+        }
+    }
+
+    @Override
+    public synchronized CoinSlot get(int index) {
+        if (mAllCoinSlots != null) {
+            return mAllCoinSlots.get(index);
+        }
+        if (index < 0 || index >= mPagedSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mPagedSize);
+        }
+        int pageIndex = getPageIndex(index);
+        ArrayList<CoinSlot> page = getPage(pageIndex);
+        int pageOffset = index - mPageStartIndexes[pageIndex];
+        if (pageOffset >= page.size()) {
+            // The collection was changed without calling loadAll(), so the pages are out of date
+            loadAll();
+            return mAllCoinSlots.get(index);
+        }
+        loadPagesAhead(pageIndex);
+        return page.get(pageOffset);
+    }
+
+    @Override
+    public synchronized int size() {
+        return (mAllCoinSlots != null) ? mAllCoinSlots.size() : mPagedSize;
+    }
+
+    @Override
+    public synchronized CoinSlot set(int index, CoinSlot coinSlot) {
+        loadAll();
+        return mAllCoinSlots.set(index, coinSlot);
+    }
+
+    @Override
+    public synchronized void add(int index, CoinSlot coinSlot) {
+        loadAll();
+        mAllCoinSlots.add(index, coinSlot);
+        modCount++;
+    }
+
+    @Override
+    public synchronized CoinSlot remove(int index) {
+        loadAll();
+        modCount++;
+        return mAllCoinSlots.remove(index);
+    }
+
+    /**
+     * Keeps a coin with in-memory changes in the list, so that it isn't replaced with the
+     * database values if its page is reloaded
+     * @param coinSlot coin to keep
+     */
+    public synchronized void pin(CoinSlot coinSlot) {
+        if (mAllCoinSlots == null) {
+            mPinnedCoinSlots.put(coinSlot.getDatabaseId(), coinSlot);
+        }
+    }
+
+    /**
+     * Loads every coin in the collection and keeps them in memory from then on. Coins that
+     * are already in memory are kept, so that any in-memory changes aren't lost.
+     * @throws SQLException if a database error occurs
+     */
+    public synchronized void loadAll() throws SQLException {
+        if (mAllCoinSlots != null) {
+            return;
+        }
+        ArrayList<CoinSlot> allCoinSlots = mDbAdapter.getCoinList(mTableName, mPopulateAdvInfo);
+        for (ArrayList<CoinSlot> page : mPages.values()) {
+            for (CoinSlot coinSlot : page) {
+                mPinnedCoinSlots.put(coinSlot.getDatabaseId(), coinSlot);
+            }
+        }
+        replacePinnedCoinSlots(allCoinSlots);
+        mAllCoinSlots = allCoinSlots;
+        mPages.clear();
+        mPinnedCoinSlots.clear();
+    }
+
+    /**
+     * Gets the coins that are in memory, without loading any pages
+     * @return coins in memory, in no particular order
+     */
+    public synchronized ArrayList<CoinSlot> getLoadedCoinSlots() {
+        if (mAllCoinSlots != null) {
+            return new ArrayList<>(mAllCoinSlots);
+        }
+        ArrayList<CoinSlot> coinSlots = new ArrayList<>();
+        for (ArrayList<CoinSlot> page : mPages.values()) {
+            coinSlots.addAll(page);
+        }
+        for (int i = 0; i < mPinnedCoinSlots.size(); i++) {
+            coinSlots.add(mPinnedCoinSlots.valueAt(i));
+        }
+        return coinSlots;
+    }
+
+    /**
+     * @return true if every coin has been loaded by loadAll()
+     */
+    public synchronized boolean isFullyLoaded() {
+        return mAllCoinSlots != null;
+    }
+
+    /**
+     * @return number of pages currently in memory
+     */
+    public synchronized int getResidentPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Update the collection name used for loading pages
+     * @param tableName new collection name
+     */
+    public synchronized void setTableName(String tableName) {
+        mTableName = tableName;
+    }
+
+    /**
+     * Stops loading pages in the background. Pages are still loaded when accessed.
+     */
+    public void close() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the page containing a coin
+     * @param index coin index
+     * @return page index
+     */
+    private int getPageIndex(int index) {
+        int result = Arrays.binarySearch(mPageStartIndexes, index);
+        return (result >= 0) ? result : (-result - 2);
+    }
+
+    /**
+     * Gets a page, loading it from the database if it isn't in memory
+     * @param pageIndex page index
+     * @return coins in the page
+     */
+    private ArrayList<CoinSlot> getPage(int pageIndex) {
+        ArrayList<CoinSlot> page = mPages.get(pageIndex);
+        if (page == null) {
+            page = queryPage(mTableName, pageIndex);
+            addPage(pageIndex, page);
+        }
+        return page;
+    }
+
+    /**
+     * Loads the pages ahead of the scroll direction, if they aren't in memory yet
+     * @param pageIndex index of the page being accessed
+     */
+    private void loadPagesAhead(final int pageIndex) {
+        if (pageIndex != mLastPageIndex) {
+            mScrollDirection = (pageIndex > mLastPageIndex) ? 1 : -1;
+            mLastPageIndex = pageIndex;
+        }
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            final int aheadPageIndex = pageIndex + (i * mScrollDirection);
+            if (aheadPageIndex < 0 || aheadPageIndex >= mPageStartIndexes.length
+                    || mPages.containsKey(aheadPageIndex) || mPendingPageLoads.contains(aheadPageIndex)) {
+                continue;
+            }
+            if (mExecutor == null) {
+                addPage(aheadPageIndex, queryPage(mTableName, aheadPageIndex));
+                continue;
+            }
+            final String tableName = mTableName;
+            mPendingPageLoads.add(aheadPageIndex);
+            try {
+                mExecutor.execute(() -> loadPageInBackground(tableName, aheadPageIndex));
+            } catch (RuntimeException e) {
+                // The list was closed, so the page will be loaded when it's accessed instead
+                mPendingPageLoads.remove((Integer) aheadPageIndex);
+            }
+        }
+    }
+
+    /**
+     * Loads a page on the background thread
+     * @param tableName collection name
+     * @param pageIndex page index
+     */
+    private void loadPageInBackground(String tableName, int pageIndex) {
+        ArrayList<CoinSlot> page = null;
+        try {
+            page = queryPage(tableName, pageIndex);
+        } catch (SQLException | IllegalStateException e) {
+            // The page will be loaded when it's accessed instead
+        }
+        synchronized (this) {
+            mPendingPageLoads.remove((Integer) pageIndex);
+            if (page != null && mAllCoinSlots == null && !mPages.containsKey(pageIndex)) {
+                addPage(pageIndex, page);
+            }
+        }
+    }
+
+    /**
+     * Reads a page from the database
+     * @param tableName collection name
+     * @param pageIndex page index
+     * @return coins in the page
+     */
+    private ArrayList<CoinSlot> queryPage(String tableName, int pageIndex) {
+        Integer maxSortOrder = (pageIndex + 1 < mPageStartSortOrders.length) ?
+                mPageStartSortOrders[pageIndex + 1] : null;
+        return mDbAdapter.getCoinListInSortOrderRange(tableName, mPopulateAdvInfo,
+                mPageStartSortOrders[pageIndex], maxSortOrder);
+    }
+
+    /**
+     * Adds a loaded page to memory, evicting the least recently used page if needed
+     * @param pageIndex page index
+     * @param page coins in the page
+     */
+    private void addPage(int pageIndex, ArrayList<CoinSlot> page) {
+        replacePinnedCoinSlots(page);
+        mPages.put(pageIndex, page);
+    }
+
+    /**
+     * Replaces coins loaded from the database with the pinned copies
+     * @param coinList coins loaded from the database
+     */
+    private void replacePinnedCoinSlots(ArrayList<CoinSlot> coinList) {
+        if (mPinnedCoinSlots.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < coinList.size(); i++) {
+            CoinSlot pinnedCoinSlot = mPinnedCoinSlots.get(coinList.get(i).getDatabaseId());
+            if (pinnedCoinSlot != null) {
+                coinList.set(i, pinnedCoinSlot);
+            }
+        }
+    }
+}
@@ -20,7 +20,13 @@
 
 package com.coincollection;
 
+import static com.coincollection.ChangeJournal.OP_CREATE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_DELETE_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_RENAME_COLLECTION;
+import static com.coincollection.ChangeJournal.OP_REORDER_COLLECTIONS;
+
 import android.content.res.Resources;
+import android.database.SQLException;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.util.Log;
@@ -48,11 +54,15 @@ import com.spencerpages.BuildConfig;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * Fragment utilizing a RecyclerView to implement a collection re-ordering capability
  */
-public class ReorderCollections extends Fragment implements OnStartDragListener {
+public class ReorderCollections extends Fragment implements OnStartDragListener,
+        DatabaseAdapter.ChangeListener {
 
     public final static String REORDER_COLLECTION = "ReorderFragment";
 
@@ -60,6 +70,7 @@ public class ReorderCollections extends Fragment implements OnStartDragListener
     private ArrayList<CollectionListInfo> mItems = null;
     private Boolean mUnsavedChanges = false;
     public ReorderAdapter mAdapter;
+    private DatabaseAdapter mDbAdapter = null;
 
     public void setCollectionList(ArrayList<CollectionListInfo> items) {
         mItems = items;
@@ -157,6 +168,14 @@ public class ReorderCollections extends Fragment implements OnStartDragListener
             showUnsavedTextView();
         }
 
+        // Keep the collections up to date if they're changed while the user is reordering
+        // (Ex: coins collected in the background), without changing the order
+        MainActivity activity = (MainActivity) getActivity();
+        if (activity != null && activity.mDbAdapter != null) {
+            mDbAdapter = activity.mDbAdapter;
+            mDbAdapter.addChangeListener(this);
+        }
+
         //http://stackoverflow.com/questions/7992216/android-fragment-handle-back-button-press
         view.setFocusableInTouchMode(true);
         view.requestFocus();
@@ -173,6 +192,119 @@ public class ReorderCollections extends Fragment implements OnStartDragListener
         });
     }
 
+    @Override
+    public void onDestroyView() {
+        if (mDbAdapter != null) {
+            mDbAdapter.removeChangeListener(this);
+            mDbAdapter = null;
+        }
+        super.onDestroyView();
+    }
+
+    /**
+     * Called when changes to the database are committed. Only the rows for collections that
+     * changed are updated, and the order the user has chosen is kept.
+     * @param changes changes in the order they were made
+     */
+    @Override
+    public void onDataChanged(List<ChangeJournal.Entry> changes) {
+        // Apply removals and renames to the rows as they happen, so later changes can be
+        // matched to the rows by name
+        ArrayList<String> rowNames = new ArrayList<>(mItems.size());
+        for (CollectionListInfo item : mItems) {
+            rowNames.add(item.getName());
+        }
+        HashSet<String> changedNames = new HashSet<>();
+        LinkedHashSet<String> createdNames = new LinkedHashSet<>();
+        for (ChangeJournal.Entry change : changes) {
+            String name = change.getCollectionName();
+            switch (change.getOp()) {
+                case OP_CREATE_COLLECTION: {
+                    createdNames.add(name);
+                    break;
+                }
+                case OP_DELETE_COLLECTION: {
+                    createdNames.remove(name);
+                    int index = rowNames.indexOf(name);
+                    if (index != -1) {
+                        rowNames.remove(index);
+                        mItems.remove(index);
+                        mAdapter.notifyItemRemoved(index);
+                    }
+                    break;
+                }
+                case OP_RENAME_COLLECTION: {
+                    int index = rowNames.indexOf(change.getValue());
+                    if (index != -1) {
+                        rowNames.set(index, name);
+                        changedNames.add(name);
+                    } else if (createdNames.remove(change.getValue())) {
+                        createdNames.add(name);
+                    }
+                    break;
+                }
+                case OP_REORDER_COLLECTIONS: {
+                    // The user is choosing the order
+                    break;
+                }
+                default: {
+                    changedNames.add(name);
+                    break;
+                }
+            }
+        }
+
+        // Read the changed and new collections
+        try {
+            for (int i = 0; i < rowNames.size(); i++) {
+                if (changedNames.contains(rowNames.get(i))) {
+                    CollectionListInfo info = mDbAdapter.getCollectionInfo(rowNames.get(i));
+                    if (info != null) {
+                        mItems.set(i, info);
+                        mAdapter.notifyItemChanged(i);
+                    }
+                }
+            }
+            for (String name : createdNames) {
+                CollectionListInfo info = mDbAdapter.getCollectionInfo(name);
+                if (info != null && !rowNames.contains(name)) {
+                    rowNames.add(name);
+                    mItems.add(info);
+                    mAdapter.notifyItemInserted(mItems.size() - 1);
+                }
+            }
+        } catch (SQLException e) {
+            // The rows are updated on the next change
+        }
+    }
+
+    /**
+     * Called when the database changed in a way that isn't described by change events.
+     * The collections are read again, keeping the order the user has chosen.
+     */
+    @Override
+    public void onDataReset() {
+        ArrayList<CollectionListInfo> collections = new ArrayList<>();
+        try {
+            mDbAdapter.getAllTables(collections);
+        } catch (SQLException e) {
+            return;
+        }
+        ArrayList<CollectionListInfo> items = new ArrayList<>(collections.size());
+        for (CollectionListInfo item : mItems) {
+            for (int i = 0; i < collections.size(); i++) {
+                if (collections.get(i).getName().equals(item.getName())) {
+                    items.add(collections.remove(i));
+                    break;
+                }
+            }
+        }
+        items.addAll(collections);
+        mItems.clear();
+        mItems.addAll(items);
+        mAdapter.notifyDataSetChanged();
+    }
+
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState){
         super.onSaveInstanceState(outState);
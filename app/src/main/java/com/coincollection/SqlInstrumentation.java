@@ -0,0 +1,398 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.coincollection;
+
+import static com.coincollection.CollectionListInfo.TBL_COLLECTION_INFO;
+import static com.spencerpages.MainApplication.APP_NAME;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in timing of the SQL statements run through the DatabaseHelper wrappers.
+ *
+ * When enabled, the time taken by each statement is added to a latency histogram for its
+ * shape, which is the SQL with collection names and literal values replaced by placeholders
+ * so that the same statement on different collections is counted together. Statements that
+ * take at least the slow threshold are also logged, along with their query plan.
+ *
+ * Timing is off by default, in which case each statement only checks the enabled flag.
+ */
+public class SqlInstrumentation {
+
+    /** Preference key storing whether timing is enabled */
+    public final static String SQL_TIMING_ENABLED = "sqlTimingEnabled";
+
+    /** Preference key storing the slow statement threshold */
+    public final static String SQL_SLOW_THRESHOLD_MS = "sqlSlowThresholdMs";
+
+    /** Slow statement thresholds that can be picked from the menu */
+    public final static long[] SLOW_THRESHOLD_CHOICES_MS = {10, 25, 50, 100, 250, 1000};
+
+    /** Default time at or above which statements are logged as slow */
+    public final static long DEFAULT_SLOW_THRESHOLD_MS = 50;
+
+    /** Number of slow statements to keep, oldest removed first */
+    public final static int MAX_SLOW_STATEMENTS = 50;
+
+    /** Upper limits of the histogram buckets, with a final bucket for longer statements */
+    public final static long[] BUCKET_LIMITS_MS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+
+    /** Start time returned when timing is disabled */
+    final static long NOT_TIMED = -1;
+
+    private final static long NANOS_PER_MS = 1000000;
+    private final static Pattern COLLECTION_NAME_PATTERN = Pattern.compile("\\[[^\\]]*\\]");
+    private final static Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^']|'')*'");
+    private final static Pattern NUMBER_LITERAL_PATTERN = Pattern.compile("\\b[0-9]+\\b");
+    private final static Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    /**
+     * Timing totals and latency histogram for one statement shape
+     */
+    public static class StatementStats {
+        private final String mShape;
+        private int mCount = 0;
+        private long mTotalNanos = 0;
+        private long mMaxNanos = 0;
+        private final int[] mBucketCounts = new int[BUCKET_LIMITS_MS.length + 1];
+
+        StatementStats(String shape) {
+            mShape = shape;
+        }
+
+        StatementStats(StatementStats other) {
+            mShape = other.mShape;
+            mCount = other.mCount;
+            mTotalNanos = other.mTotalNanos;
+            mMaxNanos = other.mMaxNanos;
+            System.arraycopy(other.mBucketCounts, 0, mBucketCounts, 0, mBucketCounts.length);
+        }
+
+        void add(long durationNanos) {
+            mCount++;
+            mTotalNanos += durationNanos;
+            mMaxNanos = Math.max(mMaxNanos, durationNanos);
+            mBucketCounts[getBucketIndex(durationNanos / NANOS_PER_MS)]++;
+        }
+
+        public String getShape() {
+            return mShape;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public long getTotalMs() {
+            return mTotalNanos / NANOS_PER_MS;
+        }
+
+        public double getAverageMs() {
+            return (mCount == 0) ? 0 : ((double) mTotalNanos / mCount / NANOS_PER_MS);
+        }
+
+        public long getMaxMs() {
+            return mMaxNanos / NANOS_PER_MS;
+        }
+
+        /**
+         * @param bucketIndex index into BUCKET_LIMITS_MS, or BUCKET_LIMITS_MS.length for
+         *                    the statements longer than the last limit
+         * @return number of statements in the bucket
+         */
+        public int getBucketCount(int bucketIndex) {
+            return mBucketCounts[bucketIndex];
+        }
+    }
+
+    /**
+     * A statement that took at least the slow threshold
+     */
+    public static class SlowStatement {
+        private final String mSql;
+        private final long mDurationMs;
+        private final long mTimeMillis;
+        private final String mQueryPlan;
+
+        SlowStatement(String sql, long durationMs, long timeMillis, String queryPlan) {
+            mSql = sql;
+            mDurationMs = durationMs;
+            mTimeMillis = timeMillis;
+            mQueryPlan = queryPlan;
+        }
+
+        public String getSql() {
+            return mSql;
+        }
+
+        public long getDurationMs() {
+            return mDurationMs;
+        }
+
+        /**
+         * @return wall clock time the statement finished (from System.currentTimeMillis)
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        /**
+         * @return query plan, or "" if the statement isn't one that has a query plan
+         */
+        public String getQueryPlan() {
+            return mQueryPlan;
+        }
+    }
+
+    private static volatile boolean sEnabled = false;
+    private static volatile long sSlowThresholdMs = DEFAULT_SLOW_THRESHOLD_MS;
+
+    // Guarded by the sStatementStats lock
+    private final static HashMap<String, StatementStats> sStatementStats = new HashMap<>();
+    private final static ArrayDeque<SlowStatement> sSlowStatements = new ArrayDeque<>();
+
+    private SqlInstrumentation() {}
+
+    /**
+     * Turns timing on or off. Recorded timings are kept when timing is turned off.
+     * @param enabled true to time statements
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return true if statements are being timed
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Sets the time at or above which statements are logged as slow
+     * @param thresholdMs threshold in milliseconds
+     */
+    public static void setSlowThresholdMs(long thresholdMs) {
+        sSlowThresholdMs = thresholdMs;
+    }
+
+    /**
+     * @return time at or above which statements are logged as slow, in milliseconds
+     */
+    public static long getSlowThresholdMs() {
+        return sSlowThresholdMs;
+    }
+
+    /**
+     * Clears all recorded timings and slow statements
+     */
+    public static void reset() {
+        synchronized (sStatementStats) {
+            sStatementStats.clear();
+            sSlowStatements.clear();
+        }
+    }
+
+    /**
+     * Called before running a statement
+     * @return start time to pass to endTiming, or NOT_TIMED if timing is disabled
+     */
+    static long startTiming() {
+        return sEnabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Called after running a statement to record the time taken
+     * @param db database the statement was run on, used to get the query plan of slow statements
+     * @param startTime value returned by startTiming
+     * @param sqlCmd the statement that was run
+     */
+    static void endTiming(SQLiteDatabase db, long startTime, String sqlCmd) {
+        if (startTime == NOT_TIMED) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - startTime;
+        String shape = getStatementShape(sqlCmd);
+        synchronized (sStatementStats) {
+            StatementStats stats = sStatementStats.get(shape);
+            if (stats == null) {
+                stats = new StatementStats(shape);
+                sStatementStats.put(shape, stats);
+            }
+            stats.add(durationNanos);
+        }
+
+        long durationMs = durationNanos / NANOS_PER_MS;
+        if (durationMs < sSlowThresholdMs) {
+            return;
+        }
+        String queryPlan = getQueryPlan(db, sqlCmd);
+        Log.w(APP_NAME, "Slow SQL (" + durationMs + " ms): " + sqlCmd
+                + (queryPlan.isEmpty() ? "" : "\n" + queryPlan));
+        SlowStatement slowStatement = new SlowStatement(sqlCmd, durationMs,
+                System.currentTimeMillis(), queryPlan);
+        synchronized (sStatementStats) {
+            if (sSlowStatements.size() >= MAX_SLOW_STATEMENTS) {
+                sSlowStatements.removeFirst();
+            }
+            sSlowStatements.addLast(slowStatement);
+        }
+    }
+
+    /**
+     * Gets the query plan for a statement that was logged as slow
+     * @param db database
+     * @param sqlCmd statement
+     * @return query plan, or "" if the statement doesn't have one or it couldn't be read
+     */
+    private static String getQueryPlan(SQLiteDatabase db, String sqlCmd) {
+        String verb = sqlCmd.trim();
+        verb = verb.substring(0, Math.min(verb.length(), 6)).toUpperCase(Locale.ROOT);
+        if (!verb.equals("SELECT") && !verb.equals("UPDATE") && !verb.equals("DELETE")
+                && !verb.equals("INSERT")) {
+            return "";
+        }
+        try {
+            // Parameters are left unbound, which doesn't change the plan
+            return DatabaseHelper.explainQueryPlan(db, sqlCmd, null);
+        } catch (RuntimeException e) {
+            // Ex: The table was dropped by a later statement in the same transaction
+            return "";
+        }
+    }
+
+    /**
+     * Gets the shape of a statement, which has the collection names and literal values
+     * replaced so that the same statement on different collections has the same shape
+     * @param sqlCmd statement
+     * @return statement shape
+     */
+    static String getStatementShape(String sqlCmd) {
+        // Names are replaced first, since they may contain quotes
+        Matcher matcher = COLLECTION_NAME_PATTERN.matcher(sqlCmd);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group();
+            boolean isInfoTable = name.equals("[" + TBL_COLLECTION_INFO + "]");
+            matcher.appendReplacement(buffer, isInfoTable ? TBL_COLLECTION_INFO : "[?]");
+        }
+        matcher.appendTail(buffer);
+        String shape = STRING_LITERAL_PATTERN.matcher(buffer).replaceAll("?");
+        shape = NUMBER_LITERAL_PATTERN.matcher(shape).replaceAll("?");
+        return WHITESPACE_PATTERN.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * Gets the histogram bucket for a duration
+     * @param durationMs duration in milliseconds
+     * @return bucket index
+     */
+    private static int getBucketIndex(long durationMs) {
+        for (int i = 0; i < BUCKET_LIMITS_MS.length; i++) {
+            if (durationMs < BUCKET_LIMITS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_LIMITS_MS.length;
+    }
+
+    /**
+     * @return copies of the timings for each statement shape, most total time first
+     */
+    public static List<StatementStats> getStatementStats() {
+        ArrayList<StatementStats> result = new ArrayList<>();
+        synchronized (sStatementStats) {
+            for (StatementStats stats : sStatementStats.values()) {
+                result.add(new StatementStats(stats));
+            }
+        }
+        Collections.sort(result, (a, b) -> {
+            long aTotal = a.mTotalNanos;
+            long bTotal = b.mTotalNanos;
+            return (aTotal > bTotal) ? -1 : ((aTotal == bTotal) ? 0 : 1);
+        });
+        return result;
+    }
+
+    /**
+     * @return the slow statements that were logged, most recent first
+     */
+    public static List<SlowStatement> getSlowStatements() {
+        ArrayList<SlowStatement> result = new ArrayList<>();
+        synchronized (sStatementStats) {
+            result.addAll(sSlowStatements);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Builds a plain text report of the recorded timings, for viewing or sharing
+     * @return report text
+     */
+    public static String buildReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SQL timing ").append(sEnabled ? "enabled" : "disabled")
+                .append(", slow threshold ").append(sSlowThresholdMs).append(" ms\n");
+
+        builder.append("\nHistogram buckets (ms): ");
+        for (long limit : BUCKET_LIMITS_MS) {
+            builder.append("<").append(limit).append(" ");
+        }
+        builder.append(">=").append(BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1]).append("\n");
+
+        for (StatementStats stats : getStatementStats()) {
+            builder.append("\n").append(stats.getShape()).append("\n");
+            builder.append(String.format(Locale.ROOT, "  count %d, total %d ms, avg %.2f ms, max %d ms\n",
+                    stats.getCount(), stats.getTotalMs(), stats.getAverageMs(), stats.getMaxMs()));
+            builder.append("  histogram");
+            for (int i = 0; i <= BUCKET_LIMITS_MS.length; i++) {
+                builder.append(" ").append(stats.getBucketCount(i));
+            }
+            builder.append("\n");
+        }
+
+        List<SlowStatement> slowStatements = getSlowStatements();
+        if (!slowStatements.isEmpty()) {
+            builder.append("\nSlow statements:\n");
+            DateFormat dateFormat = DateFormat.getDateTimeInstance();
+            for (SlowStatement slowStatement : slowStatements) {
+                builder.append("\n").append(dateFormat.format(new Date(slowStatement.getTimeMillis())))
+                        .append(" (").append(slowStatement.getDurationMs()).append(" ms)\n")
+                        .append(slowStatement.getSql()).append("\n")
+                        .append(slowStatement.getQueryPlan());
+            }
+        }
+        return builder.toString();
+    }
+}
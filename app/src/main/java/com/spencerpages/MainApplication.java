@@ -21,9 +21,14 @@
 package com.spencerpages;
 
 import android.app.Application;
+import android.content.SharedPreferences;
+import android.os.Build;
 
 import com.coincollection.CollectionInfo;
+import com.coincollection.CollectionStatisticsService;
 import com.coincollection.DatabaseAdapter;
+import com.coincollection.DatabaseMaintenanceJobService;
+import com.coincollection.SqlInstrumentation;
 import com.spencerpages.collections.AmericanEagleSilverDollars;
 import com.spencerpages.collections.AmericanInnovationDollars;
 import com.spencerpages.collections.AmericanWomenQuarters;
@@ -103,6 +108,29 @@ public class MainApplication extends Application {
         return mDbAdapter;
     }
 
+    private final CollectionStatisticsService mStatisticsService = new CollectionStatisticsService(mDbAdapter);
+
+    public CollectionStatisticsService getStatisticsService() {
+        return mStatisticsService;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Database timing is opt-in, from the statistics page menu in debug builds
+        SharedPreferences mainPreferences = getSharedPreferences(PREFS, MODE_PRIVATE);
+        SqlInstrumentation.setEnabled(BuildConfig.DEBUG
+                && mainPreferences.getBoolean(SqlInstrumentation.SQL_TIMING_ENABLED, false));
+        SqlInstrumentation.setSlowThresholdMs(mainPreferences.getLong(SqlInstrumentation.SQL_SLOW_THRESHOLD_MS,
+                SqlInstrumentation.DEFAULT_SLOW_THRESHOLD_MS));
+
+        // Database maintenance runs while the device is idle and charging
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            DatabaseMaintenanceJobService.schedule(this);
+        }
+    }
+
     /**
      *  DATABASE_VERSION Tracks the current database version, and is essential for periodic
      *                   database updating.  It should be raised anytime we need to insert new
@@ -125,8 +153,9 @@ public class MainApplication extends Application {
      *                   Version 16 - Used in Version 3.1.0 of the app
      *                   Version 17 - Used in Version 3.3.0 of the app
      *                   Version 18 - Used in Version 3.4.0 of the app
+     *                   Version 19 - Used in the next release of the app
      */
-    public static final int DATABASE_VERSION = 18;
+    public static final int DATABASE_VERSION = 19;
 
     /**
      * Get the collection index from collection type name
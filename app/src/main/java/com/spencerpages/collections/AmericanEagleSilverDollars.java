@@ -22,11 +22,11 @@ package com.spencerpages.collections;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -115,52 +115,56 @@ public class AmericanEagleSilverDollars extends CollectionInfo {
     public int onCollectionDatabaseUpgrade(SQLiteDatabase db, CollectionListInfo collectionListInfo,
                                            int oldVersion, int newVersion) {
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if (oldVersion <= 4) {
             // Add in new 2014 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2014);
+            planner.addFromYear(2014);
         }
 
         if (oldVersion <= 6) {
             // Add in new 2015 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2015);
+            planner.addFromYear(2015);
         }
 
         if (oldVersion <= 7) {
             // Add in new 2016 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2016);
+            planner.addFromYear(2016);
         }
 
         if (oldVersion <= 8) {
             // Add in new 2017 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2017);
+            planner.addFromYear(2017);
         }
 
         if (oldVersion <= 11) {
             // Add in new 2018 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2018);
+            planner.addFromYear(2018);
         }
 
         if (oldVersion <= 12) {
             // Add in new 2019 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2019);
+            planner.addFromYear(2019);
         }
 
         if (oldVersion <= 13) {
             // Add in new 2020 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2020);
+            planner.addFromYear(2020);
         }
 
         if (oldVersion <= 16) {
             // Add in new 2021 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2021);
+            planner.addFromYear(2021);
         }
 
-        if (oldVersion <= 18) {
+        if (oldVersion <= 17) {
             // Add in new 2022 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2022);
+            planner.addFromYear(2022);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
@@ -22,11 +22,11 @@ package com.spencerpages.collections;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -136,6 +136,7 @@ public class AmericanInnovationDollars extends CollectionInfo {
                                            int oldVersion, int newVersion) {
 
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if (oldVersion <= 13) {
             // Add in new 2019 coins if applicable
@@ -146,7 +147,7 @@ public class AmericanInnovationDollars extends CollectionInfo {
             newCoinIdentifiers.add("Georgia");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 16) {
@@ -158,10 +159,10 @@ public class AmericanInnovationDollars extends CollectionInfo {
             newCoinIdentifiers.add("South Carolina");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
-        if (oldVersion <= 18) {
+        if (oldVersion <= 17) {
             // Add in new 2021 and 2022 coins if applicable
             ArrayList<String> newCoinIdentifiers = new ArrayList<>();
             newCoinIdentifiers.add("New Hampshire");
@@ -174,9 +175,12 @@ public class AmericanInnovationDollars extends CollectionInfo {
             newCoinIdentifiers.add("Tennessee");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
@@ -26,10 +26,10 @@ import static com.coincollection.DatabaseHelper.runSqlUpdate;
 import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -141,6 +141,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
                                            int oldVersion, int newVersion) {
         String tableName = collectionListInfo.getName();
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if(oldVersion <= 3) {
             // Add in 2012 First Spouse Gold Coins
@@ -151,7 +152,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             newCoinIdentifiers.add("Frances Cleveland 2");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 4) {
@@ -165,7 +166,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             newCoinIdentifiers.add("Edith Wilson");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 6) {
@@ -178,7 +179,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             newCoinIdentifiers.add("Eleanor Roosevelt");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 7) {
@@ -191,7 +192,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             newCoinIdentifiers.add("Lady Bird Johnson");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 8) {
@@ -203,7 +204,7 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             newCoinIdentifiers.add("Nancy Reagan");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if(oldVersion <= 10){
@@ -233,9 +234,12 @@ public class FirstSpouseGoldCoins extends CollectionInfo {
             // Add in 2020 First Spouse Gold Coins
             ArrayList<String> newCoinIdentifiers = new ArrayList<>();
             newCoinIdentifiers.add("Barbara Bush");
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
@@ -25,11 +25,11 @@ import static com.coincollection.DatabaseHelper.runSqlDelete;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -199,6 +199,7 @@ public class JeffersonNickels extends CollectionInfo {
                                            int oldVersion, int newVersion) {
         String tableName = collectionListInfo.getName();
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if(oldVersion <= 2) {
 
@@ -217,54 +218,57 @@ public class JeffersonNickels extends CollectionInfo {
 
         if(oldVersion <= 3) {
             // Add in new 2013 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2013);
+            planner.addFromYear(2013);
         }
 
         if (oldVersion <= 4) {
             // Add in new 2014 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2014);
+            planner.addFromYear(2014);
         }
 
         if (oldVersion <= 6) {
             // Add in new 2015 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2015);
+            planner.addFromYear(2015);
         }
 
         if (oldVersion <= 7) {
             // Add in new 2016 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2016);
+            planner.addFromYear(2016);
         }
 
         if (oldVersion <= 8) {
             // Add in new 2017 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2017);
+            planner.addFromYear(2017);
         }
 
         if (oldVersion <= 11) {
             // Add in new 2018 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2018);
+            planner.addFromYear(2018);
         }
 
         if (oldVersion <= 12) {
             // Add in new 2019 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2019);
+            planner.addFromYear(2019);
         }
 
         if (oldVersion <= 13) {
             // Add in new 2020 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2020);
+            planner.addFromYear(2020);
         }
 
         if (oldVersion <= 16) {
             // Add in new 2021 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2021);
+            planner.addFromYear(2021);
         }
 
-        if (oldVersion <= 18) {
+        if (oldVersion <= 17) {
             // Add in new 2022 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 2022);
+            planner.addFromYear(2022);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
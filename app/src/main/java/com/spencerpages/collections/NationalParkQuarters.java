@@ -26,11 +26,11 @@ import static com.coincollection.DatabaseHelper.runSqlUpdate;
 import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -182,6 +182,7 @@ public class NationalParkQuarters extends CollectionInfo {
                                            int oldVersion, int newVersion) {
         String tableName = collectionListInfo.getName();
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if(oldVersion <= 2) {
             // Add in 2012 National Park Quarters
@@ -193,7 +194,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Denali");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if(oldVersion <= 3) {
@@ -206,7 +207,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Mount Rushmore");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 4) {
@@ -220,7 +221,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Everglades");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 6) {
@@ -234,7 +235,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Saratoga");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 7) {
@@ -248,7 +249,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Fort Moultrie");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 8) {
@@ -262,7 +263,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("George Rogers Clark");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if(oldVersion <= 10){
@@ -290,7 +291,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Block Island");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 12) {
@@ -304,7 +305,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("River of No Return");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 13) {
@@ -318,7 +319,7 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Tallgrass Prairie");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 16) {
@@ -328,9 +329,12 @@ public class NationalParkQuarters extends CollectionInfo {
             newCoinIdentifiers.add("Tuskegee Airmen");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
@@ -22,11 +22,11 @@ package com.spencerpages.collections;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -164,6 +164,7 @@ public class PresidentialDollars extends CollectionInfo {
     public int onCollectionDatabaseUpgrade(SQLiteDatabase db, CollectionListInfo collectionListInfo,
                                            int oldVersion, int newVersion) {
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if(oldVersion <= 2) {
             // Add in 2012 Presidential Dollars
@@ -175,7 +176,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Grover Cleveland 2");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if(oldVersion <= 3) {
@@ -188,7 +189,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Woodrow Wilson");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 4) {
@@ -201,7 +202,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Franklin D. Roosevelt");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 6) {
@@ -214,7 +215,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Lyndon B. Johnson");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 7) {
@@ -225,7 +226,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Gerald R. Ford");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 8) {
@@ -235,7 +236,7 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("Ronald Reagan");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
         if (oldVersion <= 16) {
@@ -245,9 +246,12 @@ public class PresidentialDollars extends CollectionInfo {
             newCoinIdentifiers.add("George H.W. Bush");
 
             // Add these coins, mimicking which coinMints the user already has defined
-            total += DatabaseHelper.addFromArrayList(db, collectionListInfo, newCoinIdentifiers);
+            planner.addFromArrayList(newCoinIdentifiers);
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
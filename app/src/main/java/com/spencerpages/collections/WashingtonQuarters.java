@@ -25,11 +25,11 @@ import static com.coincollection.DatabaseHelper.runSqlDelete;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
-import com.coincollection.DatabaseHelper;
 import com.spencerpages.R;
 
 import java.util.ArrayList;
@@ -163,6 +163,7 @@ public class WashingtonQuarters extends CollectionInfo {
                                            int oldVersion, int newVersion) {
         String tableName = collectionListInfo.getName();
         int total = 0;
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
 
         if(oldVersion <= 2) {
             // Remove 1965 - 1967 D quarters
@@ -173,9 +174,12 @@ public class WashingtonQuarters extends CollectionInfo {
 
         if (oldVersion <= 16) {
             // Add in new 2021 coins if applicable
-            total += DatabaseHelper.addFromYear(db, collectionListInfo, 1998, 2021, "Crossing the Delaware");
+            planner.addFromYear(1998, 2021, "Crossing the Delaware");
         }
 
+        // Write all of the new coins at once
+        total += planner.apply(db);
+
         return total;
     }
 }
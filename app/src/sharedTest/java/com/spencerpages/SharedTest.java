@@ -38,6 +38,7 @@ import com.coincollection.CollectionListInfo;
 import com.coincollection.helper.ParcelableHashMap;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class SharedTest {
 
@@ -163,7 +164,7 @@ public class SharedTest {
      * @param compareAdvInfo if true, enables comparison of advanced details
      * @return true if they have the same contents, false otherwise
      */
-    public static boolean compareCoinSlotLists(ArrayList<CoinSlot> base, ArrayList<CoinSlot> check, boolean compareAdvInfo) {
+    public static boolean compareCoinSlotLists(List<CoinSlot> base, List<CoinSlot> check, boolean compareAdvInfo) {
         if (base.size() != check.size()) {
             return false;
         }
@@ -75,6 +75,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 
 public class BaseTestCase {
@@ -382,11 +383,11 @@ public class BaseTestCase {
 
     /**
      * Compare two lists of CoinSlot objects to ensure they're the same
-     * @param base ArrayList<CoinSlot>
-     * @param check ArrayList<CoinSlot>
+     * @param base List<CoinSlot>
+     * @param check List<CoinSlot>
      * @param compareAdvInfo if true, enables comparison of advanced details
      */
-    void compareCoinSlotLists(ArrayList<CoinSlot> base, ArrayList<CoinSlot> check, boolean compareAdvInfo) {
+    void compareCoinSlotLists(List<CoinSlot> base, List<CoinSlot> check, boolean compareAdvInfo) {
         assertTrue(SharedTest.compareCoinSlotLists(base, check, compareAdvInfo));
     }
 
@@ -405,7 +406,7 @@ public class BaseTestCase {
      * @param coinList list of coin slots
      * @return list of sort orders
      */
-    ArrayList<Integer> getSortOrderList(ArrayList<CoinSlot> coinList) {
+    ArrayList<Integer> getSortOrderList(List<CoinSlot> coinList) {
         ArrayList<Integer> sortOrderList = new ArrayList<>();
         for (CoinSlot coinSlot : coinList) {
             sortOrderList.add(coinSlot.getSortOrder());
@@ -417,7 +418,7 @@ public class BaseTestCase {
      * Check that the sort orders in a list of coin slots are unique
      * @param coinList list of coins to check sort order
      */
-    void checkCoinSortOrdersUnique(ArrayList<CoinSlot> coinList) {
+    void checkCoinSortOrdersUnique(List<CoinSlot> coinList) {
         ArrayList<Integer> sortOrderList = getSortOrderList(coinList);
         assertEquals(new HashSet<>(sortOrderList).size(), sortOrderList.size());
     }
@@ -475,11 +476,20 @@ public class BaseTestCase {
             for (CoinSlot coinSlot : coinList) {
                 assertEquals(activity.mDbAdapter.fetchIsInCollection(tableName, coinSlot),
                         (coinSlot.isInCollection() ? 1 : 0));
-                activity.mDbAdapter.toggleInCollection(tableName, coinSlot);
+                assertEquals(!coinSlot.isInCollection(), activity.mDbAdapter.toggleInCollection(tableName, coinSlot));
                 assertEquals(activity.mDbAdapter.fetchIsInCollection(tableName, coinSlot),
                         (coinSlot.isInCollection() ? 0 : 1));
 
             }
+
+            // Make sure the collected count was kept up to date with the toggles
+            activity.mDbAdapter.getAllTables(collectionListEntries);
+            for (CollectionListInfo dbCollectionListInfo : collectionListEntries) {
+                if (dbCollectionListInfo.getName().equals(tableName)) {
+                    assertEquals(coinList.size() - collectionListInfo.getCollected(),
+                            dbCollectionListInfo.getCollected());
+                }
+            }
         }
     }
 
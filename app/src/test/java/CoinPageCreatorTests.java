@@ -19,6 +19,7 @@
  */
 
 import static com.spencerpages.SharedTest.COLLECTION_LIST_INFO_SCENARIOS;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import android.content.Intent;
@@ -30,6 +31,8 @@ import androidx.test.core.app.ApplicationProvider;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionListInfo;
+import com.coincollection.CollectionPage;
+import com.coincollection.DatabaseAdapter;
 import com.coincollection.helper.ParcelableHashMap;
 import com.spencerpages.SharedTest;
 
@@ -98,4 +101,97 @@ public class CoinPageCreatorTests extends BaseTestCase {
             }
         }
     }
+
+    /**
+     * Test that coins added by an update are placed in order after the existing coins were
+     * renumbered with gaps by copying a coin
+     */
+    @Test
+    public void test_updateCollectionAfterCopy() {
+        final CollectionListInfo info = COLLECTION_LIST_INFO_SCENARIOS[0];
+        final String name = info.getName();
+        try(ActivityScenario<CoinPageCreator> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CoinPageCreator.class)
+                        .putExtra(CoinPageCreator.UNIT_TEST_USE_ASYNC_TASKS, false)
+                        .putExtra(CoinPageCreator.EXISTING_COLLECTION_EXTRA, info))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                HashMap<String, Object> parameters = CoinPageCreator.getParametersFromCollectionListInfo(info);
+                ArrayList<CoinSlot> coinList = new ArrayList<>();
+                info.getCollectionObj().populateCollectionLists(parameters, coinList);
+                dbAdapter.createAndPopulateNewTable(info, 0, coinList);
+
+                // Copy the first coin, which renumbers the collection with gaps first
+                ArrayList<CoinSlot> dbCoinList = dbAdapter.getCoinList(name, true);
+                dbAdapter.renumberCoinSortOrders(name, dbCoinList);
+                CoinSlot copiedCoin = dbCoinList.get(0).copy(dbCoinList.get(0).getIdentifier(),
+                        dbCoinList.get(0).getMint(), true);
+                dbAdapter.addCoinSlotToCollection(copiedCoin, name, true, dbCoinList.size() + 1);
+
+                // Extend the end year and update the collection
+                int newStopYear = info.getEndYear() + 2;
+                activity.mParameters.put(CoinPageCreator.OPT_STOP_YEAR, newStopYear);
+                activity.createOrUpdateCoinListForAsyncThread();
+                dbAdapter.updateExistingCollection(name, activity.getCollectionInfoFromParameters(name),
+                        activity.mCoinList);
+
+                // The database order matches the merged list, with the copy after the first
+                // coin and the new years at the end
+                ArrayList<CoinSlot> checkCoinList = dbAdapter.getCoinList(name, false);
+                assertEquals(activity.mCoinList.size(), checkCoinList.size());
+                for (int i = 0; i < checkCoinList.size(); i++) {
+                    assertEquals(activity.mCoinList.get(i).getIdentifier(), checkCoinList.get(i).getIdentifier());
+                    assertEquals(activity.mCoinList.get(i).getMint(), checkCoinList.get(i).getMint());
+                    if (i > 0) {
+                        assertTrue(checkCoinList.get(i - 1).getSortOrder() < checkCoinList.get(i).getSortOrder());
+                    }
+                }
+                assertTrue(checkCoinList.get(1).isCustomCoin());
+                assertEquals(checkCoinList.get(0).getIdentifier(), checkCoinList.get(1).getIdentifier());
+                int firstNewIndex = -1;
+                for (int i = 0; i < checkCoinList.size(); i++) {
+                    String identifier = checkCoinList.get(i).getIdentifier();
+                    boolean isNewYear = identifier.startsWith(String.valueOf(info.getEndYear() + 1))
+                            || identifier.startsWith(String.valueOf(newStopYear));
+                    if (firstNewIndex == -1 && isNewYear) {
+                        firstNewIndex = i;
+                    }
+                    assertEquals(identifier, firstNewIndex != -1, isNewYear);
+                }
+                assertTrue(firstNewIndex > dbCoinList.size());
+            });
+        }
+    }
+
+    /**
+     * Test that updating a collection keeps a display type changed after the collection
+     * info was passed in
+     */
+    @Test
+    public void test_updateCollectionKeepsDisplayType() {
+        final CollectionListInfo info = COLLECTION_LIST_INFO_SCENARIOS[0];
+        final String name = info.getName();
+        try(ActivityScenario<CoinPageCreator> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CoinPageCreator.class)
+                        .putExtra(CoinPageCreator.UNIT_TEST_USE_ASYNC_TASKS, false)
+                        .putExtra(CoinPageCreator.EXISTING_COLLECTION_EXTRA, info))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                HashMap<String, Object> parameters = CoinPageCreator.getParametersFromCollectionListInfo(info);
+                ArrayList<CoinSlot> coinList = new ArrayList<>();
+                info.getCollectionObj().populateCollectionLists(parameters, coinList);
+                dbAdapter.createAndPopulateNewTable(info, 0, coinList);
+
+                // Switch the view after the existing collection info was created
+                assertEquals(CollectionPage.SIMPLE_DISPLAY, info.getDisplayType());
+                dbAdapter.updateTableDisplay(name, CollectionPage.ADVANCED_DISPLAY);
+
+                activity.createOrUpdateCoinListForAsyncThread();
+                CollectionListInfo newInfo = activity.getCollectionInfoFromParameters(name);
+                assertEquals(CollectionPage.ADVANCED_DISPLAY, newInfo.getDisplayType());
+                dbAdapter.updateExistingCollection(name, newInfo, activity.mCoinList);
+                assertEquals(CollectionPage.ADVANCED_DISPLAY, dbAdapter.fetchTableDisplay(name));
+            });
+        }
+    }
 }
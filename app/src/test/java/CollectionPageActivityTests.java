@@ -20,27 +20,52 @@
 
 import static com.spencerpages.SharedTest.COLLECTION_LIST_INFO_SCENARIOS;
 
+import static com.coincollection.CollectionPage.ADVANCED_DISPLAY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
 
+import android.app.Dialog;
 import android.content.Intent;
+import android.database.Cursor;
 import android.os.Build;
+import android.os.Looper;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
 
 import androidx.test.core.app.ActivityScenario;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.coincollection.ChangeJournal;
 import com.coincollection.CoinPageCreator;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionListInfo;
 import com.coincollection.CollectionPage;
+import com.coincollection.DatabaseAdapter;
+import com.coincollection.PagedCoinList;
 import com.coincollection.helper.ParcelableHashMap;
+import com.spencerpages.MainApplication;
+import com.spencerpages.R;
+import com.spencerpages.collections.LincolnCents;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.fakes.RoboMenuItem;
+import org.robolectric.shadows.ShadowDialog;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 @RunWith(RobolectricTestRunner.class)
 // TODO - Must keep at 28 until Robolectric supports Java 9 (required to use 29+)
@@ -122,4 +147,544 @@ public class CollectionPageActivityTests extends BaseTestCase {
             }
         }
     }
+
+    /**
+     * Test copying coins into the same position until the collection has to be renumbered
+     */
+    @Test
+    public void test_copyCoinSlotRenumbering() {
+        for (FullCollection collection : mCollectionList) {
+            String collectionName = collection.mCollectionListInfo.getName();
+            int coinTypeIdx = collection.mCollectionListInfo.getCollectionTypeIndex();
+            try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                    new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                            .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                            .putExtra(CollectionPage.COLLECTION_NAME, collectionName))) {
+                scenario.onActivity(activity -> {
+
+                    if (activity.mCoinList.size() > 1) {
+                        // Each copy halves the gap after the first coin, so this renumbers
+                        // the collection more than once
+                        for (int i = 0; i < 25; i++) {
+                            activity.copyCoinSlot(activity.mCoinList.get(0), 1);
+                        }
+                        int lastIndex = activity.mCoinList.size() - 1;
+                        activity.copyCoinSlot(activity.mCoinList.get(lastIndex), lastIndex + 1);
+                    }
+
+                    // Check that the order in the database matches the coin list
+                    ArrayList<CoinSlot> checkCoinList = activity.mDbAdapter.getCoinList(collectionName, true);
+                    compareCoinSlotLists(activity.mCoinList, checkCoinList, true);
+                    checkCoinSortOrdersUnique(activity.mCoinList);
+                    assertEquals(getSortOrderList(activity.mCoinList), getSortOrderList(checkCoinList));
+                });
+            }
+        }
+    }
+
+    /**
+     * Test toggling coins in and out of the collection
+     */
+    @Test
+    public void test_toggleCoinSlots() {
+        for (FullCollection collection : mCollectionList) {
+            String collectionName = collection.mCollectionListInfo.getName();
+            int coinTypeIdx = collection.mCollectionListInfo.getCollectionTypeIndex();
+            try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                    new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                            .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                            .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                            .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+                scenario.onActivity(activity -> {
+
+                    if (activity.mCoinList.size() > 1) {
+                        // Toggle one coin an odd number of times and another once
+                        CoinSlot firstCoin = activity.mCoinList.get(0);
+                        CoinSlot lastCoin = activity.mCoinList.get(activity.mCoinList.size() - 1);
+                        boolean firstCoinInitialValue = firstCoin.isInCollection();
+                        boolean lastCoinInitialValue = lastCoin.isInCollection();
+                        activity.toggleCoinSlotInCollection(firstCoin);
+                        activity.toggleCoinSlotInCollection(firstCoin);
+                        activity.toggleCoinSlotInCollection(firstCoin);
+                        activity.toggleCoinSlotInCollection(lastCoin);
+                        assertEquals(!firstCoinInitialValue, firstCoin.isInCollection());
+                        assertEquals(!lastCoinInitialValue, lastCoin.isInCollection());
+                    }
+
+                    // Check that the changes were written to the database
+                    ArrayList<CoinSlot> checkCoinList = activity.mDbAdapter.getCoinList(collectionName, true);
+                    compareCoinSlotLists(activity.mCoinList, checkCoinList, true);
+                });
+            }
+        }
+    }
+
+    /**
+     * Test that toggles are written on the background thread after a delay, with repeated
+     * toggles of a coin combined into one write
+     */
+    @Test
+    public void test_toggleCoinSlotsInBackground() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = collection.mCollectionListInfo.getName();
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName))) {
+            scenario.onActivity(activity -> {
+                assertTrue(activity.mCoinList.size() > 2);
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                long checkpoint = dbAdapter.getLatestJournalId();
+
+                // Toggle one coin three times, one twice and one once
+                CoinSlot firstCoin = activity.mCoinList.get(0);
+                CoinSlot secondCoin = activity.mCoinList.get(1);
+                CoinSlot lastCoin = activity.mCoinList.get(activity.mCoinList.size() - 1);
+                boolean firstCoinInitialValue = firstCoin.isInCollection();
+                boolean lastCoinInitialValue = lastCoin.isInCollection();
+                for (int i = 0; i < 3; i++) {
+                    activity.toggleCoinSlotInCollection(firstCoin);
+                }
+                activity.toggleCoinSlotInCollection(secondCoin);
+                activity.toggleCoinSlotInCollection(secondCoin);
+                activity.toggleCoinSlotInCollection(lastCoin);
+                assertEquals(!firstCoinInitialValue, firstCoin.isInCollection());
+                assertEquals(!lastCoinInitialValue, lastCoin.isInCollection());
+
+                // Nothing is written until the delay has passed
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(checkpoint, dbAdapter.getLatestJournalId());
+                shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+                waitFor(() -> dbAdapter.getLatestJournalId() > checkpoint);
+
+                // Only the final value of each changed coin is written
+                ArrayList<ChangeJournal.Entry> entries = new ArrayList<>();
+                Cursor cursor = dbAdapter.getJournalEntries(checkpoint, 100);
+                while (cursor.moveToNext()) {
+                    entries.add(new ChangeJournal.Entry(cursor));
+                }
+                cursor.close();
+                assertEquals(2, entries.size());
+                assertEquals(firstCoin.getDatabaseId(), entries.get(0).getCoinId());
+                assertEquals(lastCoin.getDatabaseId(), entries.get(1).getCoinId());
+                ArrayList<CoinSlot> checkCoinList = dbAdapter.getCoinList(collectionName, true);
+                compareCoinSlotLists(activity.mCoinList, checkCoinList, true);
+            });
+        }
+    }
+
+    /**
+     * Test that coins are reverted and the user is told when a background write fails
+     */
+    @Test
+    public void test_toggleCoinSlotWriteFailure() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = collection.mCollectionListInfo.getName();
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName))) {
+            scenario.onActivity(activity -> {
+                CoinSlot firstCoin = activity.mCoinList.get(0);
+                boolean firstCoinInitialValue = firstCoin.isInCollection();
+                Dialog previousDialog = ShadowDialog.getLatestDialog();
+
+                // Remove the collection from under the page, so that the write fails
+                activity.mDbAdapter.dropCollectionTable(collectionName);
+                activity.toggleCoinSlotInCollection(firstCoin);
+                assertEquals(!firstCoinInitialValue, firstCoin.isInCollection());
+                shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+                waitFor(() -> {
+                    shadowOf(Looper.getMainLooper()).idle();
+                    return firstCoin.isInCollection() == firstCoinInitialValue;
+                });
+
+                // The error is shown
+                Dialog dialog = ShadowDialog.getLatestDialog();
+                assertNotNull(dialog);
+                assertNotSame(previousDialog, dialog);
+                assertTrue(dialog.isShowing());
+            });
+        }
+    }
+
+    /**
+     * Test that toggles made outside the page are shown, except for coins with a toggle that
+     * hasn't been written yet
+     */
+    @Test
+    public void test_externalToggleWithPendingWrite() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = collection.mCollectionListInfo.getName();
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName))) {
+            scenario.onActivity(activity -> {
+                assertTrue(activity.mCoinList.size() > 1);
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                CoinSlot firstCoin = activity.mCoinList.get(0);
+                CoinSlot secondCoin = activity.mCoinList.get(1);
+                boolean firstCoinInitialValue = firstCoin.isInCollection();
+                boolean secondCoinInitialValue = secondCoin.isInCollection();
+
+                // Toggle the first coin on the page, then toggle both coins outside the page
+                // before the page's toggle is written
+                activity.toggleCoinSlotInCollection(firstCoin);
+                dbAdapter.toggleInCollection(collectionName, firstCoin);
+                dbAdapter.toggleInCollection(collectionName, firstCoin);
+                dbAdapter.toggleInCollection(collectionName, secondCoin);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(!firstCoinInitialValue, firstCoin.isInCollection());
+                assertEquals(!secondCoinInitialValue, secondCoin.isInCollection());
+
+                // Once written, the database matches the page
+                long checkpoint = dbAdapter.getLatestJournalId();
+                shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+                waitFor(() -> dbAdapter.getLatestJournalId() > checkpoint);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(!firstCoinInitialValue, firstCoin.isInCollection());
+                compareCoinSlotLists(activity.mCoinList, dbAdapter.getCoinList(collectionName, true), true);
+            });
+        }
+    }
+
+    /**
+     * Test that coin changes made outside the page are shown, keeping unsaved advanced info
+     */
+    @Test
+    public void test_externalCoinChanges() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = "External Changes Collection";
+        int numCoins = 30;
+        int coinTypeIdx = MainApplication.getIndexFromCollectionNameStr(new LincolnCents().getCoinType());
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collection.mCollectionListInfo.getName())
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                ArrayList<CoinSlot> coinList = new ArrayList<>();
+                for (int i = 0; i < numCoins; i++) {
+                    coinList.add(new CoinSlot("Coin " + i, "", i * 10));
+                }
+                CollectionListInfo info = new CollectionListInfo(collectionName, numCoins, 0,
+                        coinTypeIdx, ADVANCED_DISPLAY, 0, 0, 0, 0);
+                activity.mDbAdapter.createAndPopulateNewTable(info, 0, coinList);
+            });
+        }
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                ListView listView = activity.findViewById(R.id.advanced_collection_page);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertTrue(listView.getChildCount() > 1);
+                assertEquals(0, listView.getFirstVisiblePosition());
+
+                // Renaming a coin outside the page reads only that coin again and redraws its row
+                List<CoinSlot> pageCoinList = activity.mCoinList;
+                CoinSlot firstCoin = pageCoinList.get(0);
+                dbAdapter.updateCoinNameAndMint(collectionName, new CoinSlot(firstCoin.getDatabaseId(),
+                        "Renamed Coin", "P", firstCoin.isInCollection(), firstCoin.getSortOrder(), false));
+                shadowOf(Looper.getMainLooper()).idle();
+                assertSame(pageCoinList, activity.mCoinList);
+                assertSame(firstCoin, activity.mCoinList.get(0));
+                assertEquals("Renamed Coin", firstCoin.getIdentifier());
+                assertEquals("P", firstCoin.getMint());
+                TextView coinText = listView.getChildAt(0).findViewById(R.id.coinText);
+                assertEquals(activity.mRes.getString(R.string.coin_text_template, "Renamed Coin", "P"),
+                        coinText.getText().toString());
+
+                // Unsaved advanced info isn't overwritten when the coin is read again
+                CoinSlot changedCoin = pageCoinList.get(1);
+                long changedCoinId = changedCoin.getDatabaseId();
+                assertTrue(changedCoin.isAdvInfoLoaded());
+                changedCoin.setAdvancedNotes("Unsaved Note");
+                activity.onCoinSlotAdvInfoChanged(changedCoin);
+                dbAdapter.updateCoinNameAndMint(collectionName, new CoinSlot(changedCoinId,
+                        "Renamed Coin 2", "", changedCoin.isInCollection(), changedCoin.getSortOrder(), false));
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals("Renamed Coin 2", changedCoin.getIdentifier());
+                assertEquals("Unsaved Note", changedCoin.getAdvancedNotes());
+
+                // Adding, removing and reordering coins outside the page reloads the list,
+                // keeping the unsaved advanced info
+                CoinSlot newCoin = new CoinSlot("External Coin", "", dbAdapter.getNextCoinSortOrder(collectionName));
+                newCoin.setCustomCoin(true);
+                dbAdapter.addCoinSlotToCollection(newCoin, collectionName, true, numCoins + 1);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(numCoins + 1, activity.mCoinList.size());
+                assertEquals("External Coin", activity.mCoinList.get(numCoins).getIdentifier());
+                assertUnsavedNote(activity.mCoinList.get(1), changedCoinId);
+
+                CoinSlot removedCoin = activity.mCoinList.get(2);
+                dbAdapter.removeCoinSlotFromCollection(removedCoin, collectionName, numCoins);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(numCoins, activity.mCoinList.size());
+                for (CoinSlot coinSlot : activity.mCoinList) {
+                    assertTrue(coinSlot.getDatabaseId() != removedCoin.getDatabaseId());
+                }
+                assertUnsavedNote(activity.mCoinList.get(1), changedCoinId);
+
+                ArrayList<CoinSlot> reorderedCoinList = dbAdapter.getCoinList(collectionName, false);
+                reorderedCoinList.add(0, reorderedCoinList.remove(1));
+                dbAdapter.renumberCoinSortOrders(collectionName, reorderedCoinList);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(numCoins, activity.mCoinList.size());
+                assertUnsavedNote(activity.mCoinList.get(0), changedCoinId);
+                assertEquals("Renamed Coin", activity.mCoinList.get(1).getIdentifier());
+            });
+        }
+    }
+
+    /**
+     * Checks that a coin kept the unsaved advanced info set by test_externalCoinChanges
+     * @param coinSlot coin to check
+     * @param databaseId expected database id
+     */
+    private void assertUnsavedNote(CoinSlot coinSlot, long databaseId) {
+        assertEquals(databaseId, coinSlot.getDatabaseId());
+        assertTrue(coinSlot.hasAdvInfoChanged());
+        assertEquals("Unsaved Note", coinSlot.getAdvancedNotes());
+    }
+
+    /**
+     * Waits for work done on a background thread
+     * @param condition condition to wait for
+     */
+    private void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail();
+            }
+        }
+    }
+
+    /**
+     * Test saving advanced info changes when locking the collection
+     */
+    @Test
+    public void test_saveAdvInfoChanges() {
+        for (FullCollection collection : mCollectionList) {
+            String collectionName = collection.mCollectionListInfo.getName();
+            int coinTypeIdx = collection.mCollectionListInfo.getCollectionTypeIndex();
+            try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                    new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                            .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                            .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                            .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+                scenario.onActivity(activity -> {
+                    activity.mDbAdapter.updateTableDisplay(collectionName, ADVANCED_DISPLAY);
+                });
+            }
+            try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                    new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                            .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                            .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                            .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+                scenario.onActivity(activity -> {
+
+                    // Change every coin (large collections are saved on the async task)
+                    for (int i = 0; i < activity.mCoinList.size(); i++) {
+                        CoinSlot coinSlot = activity.mCoinList.get(i);
+                        coinSlot.setAdvancedNotes("Note " + i);
+                        coinSlot.setAdvancedQuantities(i % 2);
+                        coinSlot.setInCollection(!coinSlot.isInCollection());
+                        activity.onCoinSlotAdvInfoChanged(coinSlot);
+                    }
+                    List<CoinSlot> changedCoinList = activity.mCoinList;
+
+                    // Locking the collection saves the changes
+                    activity.onOptionsItemSelected(new RoboMenuItem(R.id.lock_unlock_collection));
+                    for (CoinSlot coinSlot : changedCoinList) {
+                        assertFalse(coinSlot.hasAdvInfoChanged());
+                    }
+                    ArrayList<CoinSlot> checkCoinList = activity.mDbAdapter.getCoinList(collectionName, true);
+                    compareCoinSlotLists(changedCoinList, checkCoinList, true);
+                });
+            }
+        }
+    }
+
+    /**
+     * Test that large collections are loaded a page at a time
+     */
+    @Test
+    public void test_pagedCoinList() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = "Paged Collection";
+        int numCoins = 2500;
+        int coinTypeIdx = MainApplication.getIndexFromCollectionNameStr(new LincolnCents().getCoinType());
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collection.mCollectionListInfo.getName())
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                ArrayList<CoinSlot> coinList = new ArrayList<>();
+                for (int i = 0; i < numCoins; i++) {
+                    coinList.add(new CoinSlot("Coin " + i, "", i * 10));
+                }
+                CollectionListInfo info = new CollectionListInfo(collectionName, numCoins, 0,
+                        coinTypeIdx, 0, 0, 0, 0, 0);
+                activity.mDbAdapter.createAndPopulateNewTable(info, 0, coinList);
+            });
+        }
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                assertTrue(activity.mCoinList instanceof PagedCoinList);
+                PagedCoinList pagedCoinList = (PagedCoinList) activity.mCoinList;
+                assertEquals(numCoins, pagedCoinList.size());
+
+                // Toggle the first coin, then scroll through the whole list
+                CoinSlot firstCoinSlot = pagedCoinList.get(0);
+                activity.toggleCoinSlotInCollection(firstCoinSlot);
+                for (int i = 0; i < numCoins; i++) {
+                    assertEquals("Coin " + i, pagedCoinList.get(i).getIdentifier());
+                    assertTrue(pagedCoinList.getResidentPageCount() <= PagedCoinList.MAX_RESIDENT_PAGES);
+                }
+                assertFalse(pagedCoinList.isFullyLoaded());
+
+                // Scroll back up, and make sure the toggled coin is kept
+                for (int i = numCoins - 1; i >= 0; i--) {
+                    assertEquals("Coin " + i, pagedCoinList.get(i).getIdentifier());
+                }
+                assertSame(firstCoinSlot, pagedCoinList.get(0));
+                assertTrue(firstCoinSlot.isInCollection());
+
+                // Copying a coin loads the full list
+                activity.copyCoinSlot(pagedCoinList.get(PagedCoinList.PAGE_SIZE), PagedCoinList.PAGE_SIZE + 1);
+                assertTrue(pagedCoinList.isFullyLoaded());
+                assertEquals(numCoins + 1, pagedCoinList.size());
+                assertSame(firstCoinSlot, pagedCoinList.get(0));
+                ArrayList<CoinSlot> checkCoinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                compareCoinSlotLists(pagedCoinList, checkCoinList, false);
+            });
+        }
+    }
+
+    /**
+     * Test that the advanced info is loaded as coins are needed rather than with the coin list
+     */
+    @Test
+    public void test_lazyAdvInfo() {
+        FullCollection collection = mCollectionList.get(0);
+        String collectionName = "Lazy Adv Info Collection";
+        int numCoins = 400;
+        int coinTypeIdx = MainApplication.getIndexFromCollectionNameStr(new LincolnCents().getCoinType());
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, collection.mCollectionListInfo.getCollectionTypeIndex())
+                        .putExtra(CollectionPage.COLLECTION_NAME, collection.mCollectionListInfo.getName())
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                ArrayList<CoinSlot> coinList = new ArrayList<>();
+                for (int i = 0; i < numCoins; i++) {
+                    CoinSlot coinSlot = new CoinSlot("Coin " + i, "", i * 10);
+                    coinSlot.setAdvancedGrades(i % 5);
+                    coinSlot.setAdvancedNotes("Note " + i);
+                    coinList.add(coinSlot);
+                }
+                CollectionListInfo info = new CollectionListInfo(collectionName, numCoins, 0,
+                        coinTypeIdx, ADVANCED_DISPLAY, 0, 0, 0, 0);
+                activity.mDbAdapter.createAndPopulateNewTable(info, 0, coinList);
+
+                // Loading the advanced info for a coin list matches loading it with the list
+                ArrayList<CoinSlot> lazyCoinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                assertFalse(lazyCoinList.get(0).isAdvInfoLoaded());
+                activity.mDbAdapter.populateAdvInfo(collectionName, lazyCoinList);
+                for (CoinSlot coinSlot : lazyCoinList) {
+                    assertTrue(coinSlot.isAdvInfoLoaded());
+                }
+                compareCoinSlotLists(lazyCoinList, activity.mDbAdapter.getCoinList(collectionName, true), true);
+            });
+        }
+        try (ActivityScenario<CollectionPage> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CollectionPage.class)
+                        .putExtra(CollectionPage.COLLECTION_TYPE_INDEX, coinTypeIdx)
+                        .putExtra(CollectionPage.COLLECTION_NAME, collectionName)
+                        .putExtra(CollectionPage.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                // The coins at the end of the list haven't been displayed yet
+                int lastIndex = numCoins - 1;
+                CoinSlot lastCoinSlot = activity.mCoinList.get(lastIndex);
+                assertFalse(lastCoinSlot.isAdvInfoLoaded());
+                assertEquals("", lastCoinSlot.getAdvancedNotes());
+
+                // Copying a coin loads its advanced info first, so it's copied too
+                activity.copyCoinSlot(lastCoinSlot, lastIndex + 1);
+                assertTrue(lastCoinSlot.isAdvInfoLoaded());
+                assertEquals("Note " + lastIndex, lastCoinSlot.getAdvancedNotes());
+                ArrayList<CoinSlot> checkCoinList = activity.mDbAdapter.getCoinList(collectionName, true);
+                assertEquals(numCoins + 1, checkCoinList.size());
+                CoinSlot copiedCoinSlot = checkCoinList.get(lastIndex + 1);
+                assertEquals("Note " + lastIndex, copiedCoinSlot.getAdvancedNotes());
+                assertEquals(Integer.valueOf(lastIndex % 5), copiedCoinSlot.getAdvancedGrades());
+
+                // Displaying a coin loads the coins around it in one batch (BATCH_SIZE is 40),
+                // starting a quarter of a batch before it
+                ListView listView = activity.findViewById(R.id.advanced_collection_page);
+                ListAdapter adapter = listView.getAdapter();
+                int position = 200;
+                assertFalse(activity.mCoinList.get(position).isAdvInfoLoaded());
+                adapter.getView(position, null, listView);
+                for (int i = position - 10; i < position + 30; i++) {
+                    CoinSlot coinSlot = activity.mCoinList.get(i);
+                    assertTrue(coinSlot.isAdvInfoLoaded());
+                    assertEquals("Note " + i, coinSlot.getAdvancedNotes());
+                    assertEquals(Integer.valueOf(i % 5), coinSlot.getAdvancedGrades());
+                }
+                assertFalse(activity.mCoinList.get(position - 11).isAdvInfoLoaded());
+                assertFalse(activity.mCoinList.get(position + 30).isAdvInfoLoaded());
+
+                // Change the oldest coin in that batch without saving
+                CoinSlot changedCoinSlot = activity.mCoinList.get(position - 10);
+                changedCoinSlot.setAdvancedNotes("Unsaved Note");
+                activity.onCoinSlotAdvInfoChanged(changedCoinSlot);
+
+                // Display more coins than are kept in memory (MAX_LOADED_COINS is 300), skipping
+                // the batch above so that it becomes the least recently used
+                for (int i = position + 30; i < activity.mCoinList.size(); i++) {
+                    adapter.getView(i, null, listView);
+                }
+                for (int i = 0; i < position - 50; i++) {
+                    adapter.getView(i, null, listView);
+                }
+                int numLoaded = 0;
+                for (CoinSlot coinSlot : activity.mCoinList) {
+                    if (coinSlot.isAdvInfoLoaded()) {
+                        numLoaded++;
+                    }
+                }
+                assertTrue(numLoaded <= 300 + 1);
+
+                // The least recently used coins were cleared, except for the unsaved change
+                assertTrue(changedCoinSlot.isAdvInfoLoaded());
+                assertEquals("Unsaved Note", changedCoinSlot.getAdvancedNotes());
+                CoinSlot evictedCoinSlot = activity.mCoinList.get(position - 9);
+                assertFalse(evictedCoinSlot.isAdvInfoLoaded());
+                assertEquals("", evictedCoinSlot.getAdvancedNotes());
+                CoinSlot recentCoinSlot = activity.mCoinList.get(position - 51);
+                assertTrue(recentCoinSlot.isAdvInfoLoaded());
+                assertEquals("Note " + (position - 51), recentCoinSlot.getAdvancedNotes());
+
+                // Displaying an evicted coin loads it again
+                adapter.getView(position - 9, null, listView);
+                assertTrue(evictedCoinSlot.isAdvInfoLoaded());
+                assertEquals("Note " + (position - 9), evictedCoinSlot.getAdvancedNotes());
+            });
+        }
+    }
 }
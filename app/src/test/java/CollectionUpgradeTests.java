@@ -18,14 +18,28 @@
  * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static com.coincollection.CollectionListInfo.MINT_D;
+import static com.coincollection.CollectionListInfo.MINT_P;
+import static com.coincollection.CollectionListInfo.SHOW_MINT_MARKS;
+import static com.coincollection.CollectionPage.SIMPLE_DISPLAY;
+import static com.spencerpages.MainApplication.DATABASE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 
 import androidx.test.core.app.ApplicationProvider;
 
+import com.coincollection.CoinAppendPlanner;
 import com.coincollection.CoinPageCreator;
+import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
+import com.coincollection.CollectionListInfo;
+import com.coincollection.DatabaseAdapter;
 import com.coincollection.helper.ParcelableHashMap;
+import com.spencerpages.MainApplication;
 import com.spencerpages.collections.AmericanEagleSilverDollars;
 import com.spencerpages.collections.AmericanInnovationDollars;
 import com.spencerpages.collections.BarberDimes;
@@ -59,6 +73,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 @RunWith(RobolectricTestRunner.class)
 // TODO - Must keep at 28 until Robolectric supports Java 9 (required to use 29+)
@@ -973,4 +988,65 @@ public class CollectionUpgradeTests extends BaseTestCase {
         // Compare against a new database
         validateUpdatedDb(collection, collectionName);
     }
-}
\ No newline at end of file
+
+    /**
+     * For CoinAppendPlanner
+     * - Test that planned years after a gap in the end year are skipped
+     * - Test that nothing is written until the plan is applied
+     * - Test that the planned coins are appended in order after the existing coins
+     */
+    @Test
+    public void test_coinAppendPlanner() {
+
+        // Create a collection with P and D coins from 2010 to 2012
+        Context context = ApplicationProvider.getApplicationContext();
+        String collectionName = "Append Planner";
+        ArrayList<CoinSlot> coinList = new ArrayList<>();
+        for (int year = 2010; year <= 2012; year++) {
+            coinList.add(new CoinSlot(Integer.toString(year), "P", coinList.size()));
+            coinList.add(new CoinSlot(Integer.toString(year), "D", coinList.size()));
+        }
+        CollectionListInfo collectionListInfo = new CollectionListInfo(collectionName,
+                coinList.size(), 0, MainApplication.getIndexFromCollectionNameStr(new LincolnCents().getCoinType()),
+                SIMPLE_DISPLAY, 2010, 2012, SHOW_MINT_MARKS | MINT_P | MINT_D, 0);
+        DatabaseAdapter dbAdapter = new DatabaseAdapter(context);
+        dbAdapter.open();
+        dbAdapter.createAndPopulateNewTable(collectionListInfo, 0, coinList);
+        dbAdapter.close();
+
+        // Plan the new coins
+        CoinAppendPlanner planner = new CoinAppendPlanner(collectionListInfo);
+        planner.addFromYear(2013);
+        planner.addFromYear(2014);
+        planner.addFromYear(2016);
+        planner.addFromYear(2012, 2017, "Skipped");
+        planner.addFromArrayList(new ArrayList<>(Arrays.asList("First", "Second")));
+        assertEquals(8, planner.getPlannedCoinCount());
+        assertEquals(2012, collectionListInfo.getEndYear());
+
+        // Write the plan
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        assertEquals(8, planner.apply(db));
+        assertEquals(0, planner.getPlannedCoinCount());
+        db.close();
+        assertEquals(2014, collectionListInfo.getEndYear());
+
+        // Check the coins and end year in the database
+        dbAdapter.open();
+        ArrayList<CoinSlot> coinSlots = dbAdapter.getCoinList(collectionName, false, true);
+        String[] expectedIdentifiers = {"2010", "2010", "2011", "2011", "2012", "2012", "2013", "2013",
+                "2014", "2014", "First", "First", "Second", "Second"};
+        assertEquals(expectedIdentifiers.length, coinSlots.size());
+        for (int i = 0; i < coinSlots.size(); i++) {
+            assertEquals(expectedIdentifiers[i], coinSlots.get(i).getIdentifier());
+            if (i > 0) {
+                assertTrue(coinSlots.get(i).getSortOrder() > coinSlots.get(i - 1).getSortOrder());
+            }
+        }
+        ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+        dbAdapter.getAllTables(collectionListEntries);
+        assertEquals(2014, collectionListEntries.get(0).getEndYear());
+        dbAdapter.close();
+    }
+}
@@ -18,6 +18,10 @@
  * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import android.content.Intent;
 import android.os.Build;
 
@@ -25,7 +29,9 @@ import androidx.test.core.app.ActivityScenario;
 import androidx.test.core.app.ApplicationProvider;
 
 import com.coincollection.CoinPageCreator;
+import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
+import com.coincollection.DatabaseAdapter;
 import com.spencerpages.MainApplication;
 
 import org.junit.Test;
@@ -33,6 +39,7 @@ import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -85,4 +92,96 @@ public class DatabaseAccessTests extends BaseTestCase {
             });
         }
     }
+
+    @Test
+    public void test_statementCache() {
+
+        try(ActivityScenario<CoinPageCreator> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CoinPageCreator.class)
+                        .putExtra(CoinPageCreator.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+
+                FullCollection scenario1 = getRandomTestScenarios(mCoinTypeObj, 1).get(0);
+                String collectionName = scenario1.mCollectionListInfo.getName();
+                String newCollectionName = "Statement Cache Rename";
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                dbAdapter.createAndPopulateNewTable(scenario1.mCollectionListInfo,
+                        scenario1.mDisplayOrder, scenario1.mCoinList);
+
+                // The first call compiles the statement and the second reuses it
+                int hits = dbAdapter.getStatementCacheHits();
+                int misses = dbAdapter.getStatementCacheMisses();
+                int nextSortOrder = dbAdapter.getNextCoinSortOrder(collectionName);
+                assertEquals(nextSortOrder, dbAdapter.getNextCoinSortOrder(collectionName));
+                assertEquals(misses + 1, dbAdapter.getStatementCacheMisses());
+                assertEquals(hits + 1, dbAdapter.getStatementCacheHits());
+
+                // Renaming invalidates the statements for the collection
+                dbAdapter.updateCollectionName(collectionName, newCollectionName);
+                assertEquals(nextSortOrder, dbAdapter.getNextCoinSortOrder(newCollectionName));
+                assertEquals(misses + 2, dbAdapter.getStatementCacheMisses());
+                dbAdapter.updateCollectionName(newCollectionName, collectionName);
+                assertEquals(nextSortOrder, dbAdapter.getNextCoinSortOrder(collectionName));
+                assertEquals(misses + 3, dbAdapter.getStatementCacheMisses());
+                assertEquals(hits + 1, dbAdapter.getStatementCacheHits());
+
+                // Dropping invalidates the statements for the collection
+                dbAdapter.dropCollectionTable(collectionName);
+                dbAdapter.createAndPopulateNewTable(scenario1.mCollectionListInfo,
+                        scenario1.mDisplayOrder, scenario1.mCoinList);
+                assertEquals(nextSortOrder, dbAdapter.getNextCoinSortOrder(collectionName));
+                assertEquals(misses + 4, dbAdapter.getStatementCacheMisses());
+                dbAdapter.dropCollectionTable(collectionName);
+            });
+        }
+    }
+
+    @Test
+    public void test_updateCoinListKeepsIds() {
+
+        try(ActivityScenario<CoinPageCreator> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), CoinPageCreator.class)
+                        .putExtra(CoinPageCreator.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+
+                FullCollection scenario1 = getRandomTestScenarios(mCoinTypeObj, 1).get(0);
+                String collectionName = scenario1.mCollectionListInfo.getName();
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                dbAdapter.createAndPopulateNewTable(scenario1.mCollectionListInfo,
+                        scenario1.mDisplayOrder, scenario1.mCoinList);
+                ArrayList<CoinSlot> coinList = dbAdapter.getCoinList(collectionName, true);
+                if (coinList.size() < 2) {
+                    dbAdapter.dropCollectionTable(collectionName);
+                    return;
+                }
+                ArrayList<Long> originalIds = new ArrayList<>();
+                for (CoinSlot coinSlot : coinList) {
+                    originalIds.add(coinSlot.getDatabaseId());
+                }
+
+                // Change the first coin, remove the second and add a new custom coin
+                coinList.get(0).setAdvancedNotes("Updated Notes");
+                coinList.get(0).setInCollection(!coinList.get(0).isInCollection());
+                coinList.remove(1);
+                originalIds.remove(1);
+                int lastSortOrder = coinList.get(coinList.size() - 1).getSortOrder();
+                CoinSlot newCoinSlot = new CoinSlot("New Coin", "", lastSortOrder + 1);
+                newCoinSlot.setCustomCoin(true);
+                coinList.add(newCoinSlot);
+                dbAdapter.updateExistingCollection(collectionName, scenario1.mCollectionListInfo, coinList);
+
+                // The kept coins have the same ids, and the new coin has a new one
+                ArrayList<CoinSlot> checkCoinList = dbAdapter.getCoinList(collectionName, true);
+                compareCoinSlotLists(coinList, checkCoinList, true);
+                for (int i = 0; i < originalIds.size(); i++) {
+                    assertEquals((long) originalIds.get(i), checkCoinList.get(i).getDatabaseId());
+                }
+                CoinSlot checkNewCoinSlot = checkCoinList.get(checkCoinList.size() - 1);
+                assertEquals(newCoinSlot.getDatabaseId(), checkNewCoinSlot.getDatabaseId());
+                assertFalse(originalIds.contains(checkNewCoinSlot.getDatabaseId()));
+                assertTrue(checkNewCoinSlot.isCustomCoin());
+                dbAdapter.dropCollectionTable(collectionName);
+            });
+        }
+    }
 }
@@ -0,0 +1,567 @@
+/*
+ * Coin Collection, an Android app that helps users track the coins that they've collected
+ * Copyright (C) 2010-2016 Andrew Williams
+ *
+ * This file is part of Coin Collection.
+ *
+ * Coin Collection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Coin Collection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Coin Collection.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static com.coincollection.CoinSlot.COL_ADV_GRADE_INDEX;
+import static com.coincollection.CoinSlot.COL_ADV_NOTES;
+import static com.coincollection.CoinSlot.COL_ADV_QUANTITY_INDEX;
+import static com.coincollection.CoinSlot.COL_COIN_ID;
+import static com.coincollection.CoinSlot.COL_COIN_IDENTIFIER;
+import static com.coincollection.CoinSlot.COL_COIN_MINT;
+import static com.coincollection.CoinSlot.COL_CUSTOM_COIN;
+import static com.coincollection.CoinSlot.COL_IN_COLLECTION;
+import static com.coincollection.CoinSlot.COL_SORT_ORDER;
+import static com.coincollection.ExportImportHelper.LEGACY_EXPORT_FOLDER_NAME;
+import static com.spencerpages.MainApplication.DATABASE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.coincollection.ChangeJournal;
+import com.coincollection.CoinSlot;
+import com.coincollection.CollectionListInfo;
+import com.coincollection.DatabaseAdapter;
+import com.coincollection.DatabaseHelper;
+import com.coincollection.DatabaseMaintenance;
+import com.coincollection.ExportImportHelper;
+import com.coincollection.MainActivity;
+import com.coincollection.SqlInstrumentation;
+import com.spencerpages.R;
+import com.spencerpages.collections.LincolnCents;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+// TODO - Must keep at 28 until Robolectric supports Java 9 (required to use 29+)
+@Config(sdk = Build.VERSION_CODES.P)
+public class DatabasePerformanceTests extends BaseTestCase {
+
+    // Upper bound for each timed step, to catch large regressions without being flaky
+    private final static long MAX_STEP_DURATION_MS = 20000;
+
+    /**
+     * Get the current time for benchmarks. Robolectric controls SystemClock, so the
+     * real time is used instead.
+     * @return time in milliseconds
+     */
+    private static long getTimeMs() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Benchmark opening, upgrading and exporting a database with many collections.
+     * The timings are printed so they can be compared across changes to the database layout.
+     */
+    @Test
+    public void test_openUpgradeExportTiming() {
+
+        // Create a V1 database with many collections
+        int numCollections = 40;
+        TestDatabaseHelper testDbHelper = new TestDatabaseHelper(ApplicationProvider.getApplicationContext());
+        SQLiteDatabase db = testDbHelper.getWritableDatabase();
+        for (int i = 0; i < numCollections; i++) {
+            ArrayList<Object[]> coinList = new ArrayList<>();
+            for (int year = 1959; year <= VERSION_1_YEAR; year++) {
+                coinList.add(new Object[]{Integer.toString(year), "", i % 2});
+                coinList.add(new Object[]{Integer.toString(year), "D", 0});
+            }
+            createV1Collection(db, "Pennies Benchmark " + i, "Pennies", coinList);
+        }
+        db.close();
+        testDbHelper.close();
+
+        // Opening the database the first time runs the upgrade
+        long startTime = getTimeMs();
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            long upgradeDurationMs = getTimeMs() - startTime;
+            scenario.onActivity(activity -> {
+                assertEquals(numCollections, getCollectionNames(activity).size());
+
+                // Export all collections
+                long exportStartTime = getTimeMs();
+                ExportImportHelper helper = new ExportImportHelper(activity.mRes, activity.mDbAdapter);
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                        helper.exportCollectionsToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME));
+                long exportDurationMs = getTimeMs() - exportStartTime;
+
+                assertTrue(upgradeDurationMs < MAX_STEP_DURATION_MS);
+                assertTrue(exportDurationMs < MAX_STEP_DURATION_MS);
+            });
+        }
+
+        // Opening an up-to-date database
+        startTime = getTimeMs();
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            long openDurationMs = getTimeMs() - startTime;
+            scenario.onActivity(activity -> {
+                assertTrue(openDurationMs < MAX_STEP_DURATION_MS);
+            });
+        }
+    }
+
+    /**
+     * Test that the upgrade reports progress for each collection and timing for each stage
+     */
+    @Test
+    public void test_upgradeProgress() {
+
+        // Create a V1 database
+        ArrayList<String> collectionNames = new ArrayList<>();
+        TestDatabaseHelper testDbHelper = new TestDatabaseHelper(ApplicationProvider.getApplicationContext());
+        SQLiteDatabase db = testDbHelper.getWritableDatabase();
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Object[]> coinList = new ArrayList<>();
+            for (int year = 1959; year <= VERSION_1_YEAR; year++) {
+                coinList.add(new Object[]{Integer.toString(year), "", 0});
+            }
+            String collectionName = "Pennies Progress " + i;
+            createV1Collection(db, collectionName, "Pennies", coinList);
+            collectionNames.add(collectionName);
+        }
+        db.close();
+        testDbHelper.close();
+
+        // Open the database, which runs the upgrade
+        final ArrayList<String> progressUpdates = new ArrayList<>();
+        final ArrayList<String> stageNames = new ArrayList<>();
+        DatabaseAdapter dbAdapter = new DatabaseAdapter(ApplicationProvider.getApplicationContext());
+        dbAdapter.setUpgradeListener(new DatabaseHelper.UpgradeListener() {
+            @Override
+            public void onUpgradeProgress(int collectionsDone, int totalCollections) {
+                progressUpdates.add(collectionsDone + "/" + totalCollections);
+            }
+
+            @Override
+            public void onUpgradeStageComplete(String stageName, long durationMs) {
+                assertTrue(durationMs >= 0);
+                stageNames.add(stageName);
+            }
+        });
+        dbAdapter.open();
+        dbAdapter.setUpgradeListener(null);
+
+        ArrayList<String> expectedStageNames = new ArrayList<>();
+        expectedStageNames.add(DatabaseHelper.UPGRADE_STAGE_STRUCTURE);
+        expectedStageNames.addAll(collectionNames);
+        assertEquals(expectedStageNames, stageNames);
+        ArrayList<String> expectedProgressUpdates = new ArrayList<>();
+        for (int i = 0; i <= collectionNames.size(); i++) {
+            expectedProgressUpdates.add(i + "/" + collectionNames.size());
+        }
+        assertEquals(expectedProgressUpdates, progressUpdates);
+        for (String collectionName : collectionNames) {
+            assertTrue(dbAdapter.getCoinList(collectionName, false).size() > 0);
+        }
+        dbAdapter.close();
+    }
+
+    /**
+     * Test that no progress is reported when upgrading a database without collections
+     */
+    @Test
+    public void test_upgradeProgressNoCollections() {
+
+        // Create an empty V1 database
+        TestDatabaseHelper testDbHelper = new TestDatabaseHelper(ApplicationProvider.getApplicationContext());
+        testDbHelper.getWritableDatabase().close();
+        testDbHelper.close();
+
+        final ArrayList<String> progressUpdates = new ArrayList<>();
+        final ArrayList<String> stageNames = new ArrayList<>();
+        DatabaseAdapter dbAdapter = new DatabaseAdapter(ApplicationProvider.getApplicationContext());
+        dbAdapter.setUpgradeListener(new DatabaseHelper.UpgradeListener() {
+            @Override
+            public void onUpgradeProgress(int collectionsDone, int totalCollections) {
+                progressUpdates.add(collectionsDone + "/" + totalCollections);
+            }
+
+            @Override
+            public void onUpgradeStageComplete(String stageName, long durationMs) {
+                stageNames.add(stageName);
+            }
+        });
+        dbAdapter.open();
+        dbAdapter.setUpgradeListener(null);
+
+        assertEquals(0, progressUpdates.size());
+        assertEquals(1, stageNames.size());
+        assertEquals(DatabaseHelper.UPGRADE_STAGE_STRUCTURE, stageNames.get(0));
+        dbAdapter.close();
+    }
+
+    /**
+     * Create a collection with a large number of coins, with the sort order reversed
+     * from the insert order
+     * @param activity activity associated with the collection
+     * @param collectionName collection name
+     * @param numCoins number of coins
+     */
+    private void createLargeCollection(MainActivity activity, String collectionName, int numCoins) {
+        ArrayList<CoinSlot> coinList = new ArrayList<>();
+        for (int i = 0; i < numCoins; i++) {
+            CoinSlot coinSlot = new CoinSlot("Coin " + i, (i % 2 == 0) ? "" : "D", numCoins - i);
+            coinSlot.setInCollection(i % 3 == 0);
+            coinList.add(coinSlot);
+        }
+        CollectionListInfo collectionListInfo = getCollectionListInfo(collectionName, new LincolnCents(), coinList);
+        createNewTable(activity, collectionListInfo, coinList, 0);
+    }
+
+    /**
+     * Test that the coin list queries use the collection indexes
+     */
+    @Test
+    public void test_coinListQueryPlans() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                String collectionName = "Query Plan";
+                createLargeCollection(activity, collectionName, 100);
+
+                // The simple view coin list is read entirely from the sort order index
+                String plan = activity.mDbAdapter.explainQueryPlan("SELECT " + COL_COIN_ID + ", "
+                        + COL_COIN_IDENTIFIER + ", " + COL_COIN_MINT + ", " + COL_IN_COLLECTION + ", "
+                        + COL_SORT_ORDER + ", " + COL_CUSTOM_COIN + " FROM [" + collectionName + "]"
+                        + " ORDER BY " + COL_SORT_ORDER);
+                assertTrue(plan, plan.contains("USING COVERING INDEX index_sortOrder_" + collectionName));
+                assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+                // The advanced view coin list still uses the index for sorting
+                plan = activity.mDbAdapter.explainQueryPlan("SELECT * FROM [" + collectionName + "]"
+                        + " ORDER BY " + COL_SORT_ORDER);
+                assertTrue(plan, plan.contains("USING INDEX index_sortOrder_" + collectionName));
+                assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+                // Counting collected coins only reads the in collection index
+                plan = activity.mDbAdapter.explainQueryPlan("SELECT COUNT(" + COL_COIN_ID + ") FROM ["
+                        + collectionName + "] WHERE " + COL_IN_COLLECTION + "=1");
+                assertTrue(plan, plan.contains("USING COVERING INDEX index_inCollection_" + collectionName));
+
+                // The indexes follow the collection when renamed
+                String newCollectionName = "Query Plan Renamed";
+                activity.mDbAdapter.updateCollectionName(collectionName, newCollectionName);
+                plan = activity.mDbAdapter.explainQueryPlan("SELECT COUNT(" + COL_COIN_ID + ") FROM ["
+                        + newCollectionName + "] WHERE " + COL_IN_COLLECTION + "=1");
+                assertTrue(plan, plan.contains("USING COVERING INDEX index_inCollection_" + newCollectionName));
+
+                // The old name can be reused since the old index names were dropped
+                createLargeCollection(activity, collectionName, 10);
+                assertEquals(10, activity.mDbAdapter.getCoinList(collectionName, false).size());
+            });
+        }
+    }
+
+    /**
+     * Test recording statement timings and logging slow statements
+     */
+    @Test
+    public void test_sqlInstrumentation() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                SqlInstrumentation.reset();
+                try {
+                    // Nothing is recorded while disabled
+                    createLargeCollection(activity, "Timing 1", 10);
+                    assertTrue(SqlInstrumentation.getStatementStats().isEmpty());
+
+                    // The same statement on different collections has the same shape
+                    SqlInstrumentation.setEnabled(true);
+                    SqlInstrumentation.setSlowThresholdMs(0);
+                    createLargeCollection(activity, "Timing 2", 10);
+                    createLargeCollection(activity, "Timing 3", 10);
+                    activity.mDbAdapter.fetchTableDisplay("Timing 2");
+                    activity.mDbAdapter.updateTableDisplay("Timing 2", 1);
+                    activity.mDbAdapter.updateTableDisplay("Timing 3", 1);
+                    SqlInstrumentation.StatementStats updateStats = null;
+                    for (SqlInstrumentation.StatementStats stats : SqlInstrumentation.getStatementStats()) {
+                        assertFalse(stats.getShape(), stats.getShape().contains("Timing"));
+                        if (stats.getShape().startsWith("UPDATE collection_info SET display = ?")) {
+                            updateStats = stats;
+                        }
+                    }
+                    assertTrue(updateStats != null);
+                    assertEquals(2, updateStats.getCount());
+                    int bucketTotal = 0;
+                    for (int i = 0; i <= SqlInstrumentation.BUCKET_LIMITS_MS.length; i++) {
+                        bucketTotal += updateStats.getBucketCount(i);
+                    }
+                    assertEquals(2, bucketTotal);
+
+                    // Every statement is slow with a zero threshold, and queries have a plan
+                    boolean foundPlan = false;
+                    for (SqlInstrumentation.SlowStatement slowStatement : SqlInstrumentation.getSlowStatements()) {
+                        if (slowStatement.getSql().startsWith("SELECT " + CollectionListInfo.COL_DISPLAY)) {
+                            foundPlan = !slowStatement.getQueryPlan().isEmpty();
+                        }
+                    }
+                    assertTrue(foundPlan);
+                    assertTrue(SqlInstrumentation.getSlowStatements().size() <= SqlInstrumentation.MAX_SLOW_STATEMENTS);
+                    assertTrue(SqlInstrumentation.buildReport().contains("UPDATE collection_info SET display = ?"));
+                } finally {
+                    SqlInstrumentation.setEnabled(false);
+                    SqlInstrumentation.setSlowThresholdMs(SqlInstrumentation.DEFAULT_SLOW_THRESHOLD_MS);
+                    SqlInstrumentation.reset();
+                }
+            });
+        }
+    }
+
+    /**
+     * Test that database maintenance fills sort order holes and reclaims freed space
+     */
+    @Test
+    public void test_databaseMaintenance() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                String collectionName = "Maintenance";
+                createLargeCollection(activity, collectionName, 20);
+                createLargeCollection(activity, "Maintenance Deleted", 2000);
+                DatabaseMaintenance maintenance = new DatabaseMaintenance(activity.mDbAdapter);
+                DatabaseMaintenance.Report report = maintenance.run(true);
+                assertTrue(report.isFullVacuum());
+                assertTrue(report.isIntegrityOk());
+
+                // Removing coins leaves holes, which the next run renumbers
+                ArrayList<CoinSlot> coinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                activity.mDbAdapter.removeCoinSlotFromCollection(coinList.get(5), collectionName, 19);
+                activity.mDbAdapter.removeCoinSlotFromCollection(coinList.get(10), collectionName, 18);
+                activity.mDbAdapter.dropCollectionTable("Maintenance Deleted");
+                long journalId = activity.mDbAdapter.getLatestJournalId();
+                report = maintenance.run(true);
+                assertFalse(report.isFullVacuum());
+                assertEquals(1, report.getCollectionsCompacted());
+                assertTrue(report.getBytesReclaimed() > 0);
+                assertTrue(report.isIntegrityOk());
+                assertTrue(report.getTotalMs() < MAX_STEP_DURATION_MS);
+                coinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                assertEquals(18, coinList.size());
+                for (int i = 0; i < coinList.size(); i++) {
+                    assertEquals(i * DatabaseAdapter.COIN_SORT_ORDER_GAP, coinList.get(i).getSortOrder());
+                }
+
+                // Only the coins after each hole moved, and each is journaled
+                Cursor cursor = activity.mDbAdapter.getJournalEntries(journalId, 100);
+                assertEquals(coinList.size() - 5, cursor.getCount());
+                while (cursor.moveToNext()) {
+                    ChangeJournal.Entry entry = new ChangeJournal.Entry(cursor);
+                    assertEquals(ChangeJournal.OP_UPDATE_COIN, entry.getOp());
+                    assertEquals(collectionName, entry.getCollectionName());
+                }
+                cursor.close();
+
+                // Nothing to do when run again
+                report = maintenance.run(true);
+                assertEquals(0, report.getCollectionsCompacted());
+                assertTrue(report.buildText(activity.mRes).contains(
+                        activity.mRes.getString(R.string.maintenance_report_integrity_ok)));
+
+                // Collections open in a collection page aren't renumbered, including after
+                // being renamed from the page
+                coinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                activity.mDbAdapter.removeCoinSlotFromCollection(coinList.get(3), collectionName, 17);
+                activity.mDbAdapter.addOpenCollectionPage(collectionName);
+                String newCollectionName = "Maintenance Renamed";
+                activity.mDbAdapter.updateCollectionName(collectionName, newCollectionName);
+                assertEquals(0, maintenance.run(false).getCollectionsCompacted());
+                activity.mDbAdapter.removeOpenCollectionPage(newCollectionName);
+                assertEquals(1, maintenance.run(false).getCollectionsCompacted());
+
+                // The connection stays open for a background task until it's done
+                activity.mDbAdapter.beginBackgroundUse();
+                activity.mDbAdapter.close();
+                assertEquals(17, activity.mDbAdapter.getCoinList(newCollectionName, false).size());
+                activity.mDbAdapter.endBackgroundUse();
+                try {
+                    activity.mDbAdapter.getCoinList(newCollectionName, false);
+                    fail("The database should be closed");
+                } catch (NullPointerException | IllegalStateException e) {
+                    // Expected
+                }
+                activity.mDbAdapter.open();
+            });
+        }
+    }
+
+    /**
+     * Benchmark reading a large collection, checking that the collection indexes are used
+     * and that the reads stay within the step duration limit
+     */
+    @Test
+    public void test_coinListIndexTiming() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                String collectionName = "Index Benchmark";
+                int numCoins = 10000;
+                createLargeCollection(activity, collectionName, numCoins);
+
+                // Use a separate connection so the timings don't include the adapter
+                SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                        activity.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READONLY);
+                String listSql = "SELECT " + COL_COIN_ID + ", " + COL_COIN_IDENTIFIER + ", " + COL_COIN_MINT + ", "
+                        + COL_IN_COLLECTION + ", " + COL_SORT_ORDER + ", " + COL_CUSTOM_COIN
+                        + " FROM [" + collectionName + "]%s ORDER BY " + COL_SORT_ORDER;
+                String countSql = "SELECT COUNT(" + COL_COIN_ID + ") FROM [" + collectionName + "]%s"
+                        + " WHERE " + COL_IN_COLLECTION + "=1";
+                assertTrue(timeQuery(db, String.format(listSql, ""), numCoins) < MAX_STEP_DURATION_MS);
+                assertTrue(timeQuery(db, String.format(countSql, ""), 1) < MAX_STEP_DURATION_MS);
+                db.close();
+
+                // The timed queries use the indexes, and only sort without them
+                String plan = activity.mDbAdapter.explainQueryPlan(String.format(listSql, ""));
+                assertTrue(plan, plan.contains("index_sortOrder_" + collectionName));
+                assertFalse(plan, plan.contains("TEMP B-TREE"));
+                plan = activity.mDbAdapter.explainQueryPlan(String.format(countSql, ""));
+                assertTrue(plan, plan.contains("index_inCollection_" + collectionName));
+                plan = activity.mDbAdapter.explainQueryPlan(String.format(listSql, " NOT INDEXED"));
+                assertFalse(plan, plan.contains("index_sortOrder_" + collectionName));
+                assertTrue(plan, plan.contains("TEMP B-TREE"));
+                plan = activity.mDbAdapter.explainQueryPlan(String.format(countSql, " NOT INDEXED"));
+                assertFalse(plan, plan.contains("index_inCollection_" + collectionName));
+
+                // Check the results through the adapter as well
+                ArrayList<CoinSlot> coinList = activity.mDbAdapter.getCoinList(collectionName, false);
+                assertEquals(numCoins, coinList.size());
+                for (int i = 1; i < coinList.size(); i++) {
+                    assertTrue(coinList.get(i - 1).getSortOrder() < coinList.get(i).getSortOrder());
+                }
+            });
+        }
+    }
+
+    /**
+     * Compare the per-row cost of reading the coin list with the cached column indexes used
+     * by getCoinList against looking up the column indexes for every row
+     */
+    @Test
+    public void test_coinListRowMappingTiming() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                String collectionName = "Row Mapping Benchmark";
+                int numCoins = 5000;
+                int numRuns = 5;
+                createLargeCollection(activity, collectionName, numCoins);
+
+                // Read the list with a column index lookup for every value
+                SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                        activity.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READONLY);
+                String[] columns = {COL_COIN_ID, COL_COIN_IDENTIFIER, COL_COIN_MINT, COL_IN_COLLECTION,
+                        COL_SORT_ORDER, COL_CUSTOM_COIN, COL_ADV_GRADE_INDEX, COL_ADV_QUANTITY_INDEX, COL_ADV_NOTES};
+                long startTime = System.nanoTime();
+                for (int run = 0; run < numRuns; run++) {
+                    ArrayList<CoinSlot> coinList = new ArrayList<>();
+                    Cursor cursor = db.query("[" + collectionName + "]", columns,
+                            null, null, null, null, COL_SORT_ORDER);
+                    while (cursor.moveToNext()) {
+                        coinList.add(new CoinSlot(
+                                cursor.getLong(cursor.getColumnIndexOrThrow(COL_COIN_ID)),
+                                cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_IDENTIFIER)),
+                                cursor.getString(cursor.getColumnIndexOrThrow(COL_COIN_MINT)),
+                                (cursor.getInt(cursor.getColumnIndexOrThrow(COL_IN_COLLECTION)) != 0),
+                                cursor.getInt(cursor.getColumnIndexOrThrow(COL_ADV_GRADE_INDEX)),
+                                cursor.getInt(cursor.getColumnIndexOrThrow(COL_ADV_QUANTITY_INDEX)),
+                                cursor.getString(cursor.getColumnIndexOrThrow(COL_ADV_NOTES)),
+                                cursor.getInt(cursor.getColumnIndexOrThrow(COL_SORT_ORDER)),
+                                (cursor.getInt(cursor.getColumnIndexOrThrow(COL_CUSTOM_COIN)) != 0)));
+                    }
+                    cursor.close();
+                    assertEquals(numCoins, coinList.size());
+                }
+                long perRowLookupNs = (System.nanoTime() - startTime) / ((long) numRuns * numCoins);
+                db.close();
+
+                // Read the list through the adapter, which looks up the column indexes once
+                startTime = System.nanoTime();
+                ArrayList<CoinSlot> coinList = null;
+                for (int run = 0; run < numRuns; run++) {
+                    coinList = activity.mDbAdapter.getCoinList(collectionName, true, true);
+                    assertEquals(numCoins, coinList.size());
+                }
+                long cachedLookupNs = (System.nanoTime() - startTime) / ((long) numRuns * numCoins);
+
+                assertTrue(perRowLookupNs * numCoins / 1000000 < MAX_STEP_DURATION_MS);
+                assertTrue(cachedLookupNs * numCoins / 1000000 < MAX_STEP_DURATION_MS);
+
+                // Check that the mapped values are correct
+                for (int i = 0; i < numCoins; i++) {
+                    CoinSlot coinSlot = coinList.get(i);
+                    int coinIndex = numCoins - 1 - i;
+                    assertEquals("Coin " + coinIndex, coinSlot.getIdentifier());
+                    assertEquals((coinIndex % 2 == 0) ? "" : "D", coinSlot.getMint());
+                    assertEquals(coinIndex % 3 == 0, coinSlot.isInCollection());
+                    assertEquals(numCoins - coinIndex, coinSlot.getSortOrder());
+                    assertEquals(0, (int) coinSlot.getAdvancedGrades());
+                    assertEquals(0, (int) coinSlot.getAdvancedQuantities());
+                    assertEquals("", coinSlot.getAdvancedNotes());
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a query several times, reading every row
+     * @param db database
+     * @param sqlCmd query to run
+     * @param expectedRows expected number of rows
+     * @return average time per run in milliseconds
+     */
+    private static long timeQuery(SQLiteDatabase db, String sqlCmd, int expectedRows) {
+        int numRuns = 5;
+        long startTime = getTimeMs();
+        for (int i = 0; i < numRuns; i++) {
+            Cursor cursor = db.rawQuery(sqlCmd, null);
+            int numRows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getString(0);
+                numRows++;
+            }
+            cursor.close();
+            assertEquals(expectedRows, numRows);
+        }
+        return (getTimeMs() - startTime) / numRuns;
+    }
+}
@@ -35,6 +35,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.content.Intent;
+import android.database.Cursor;
 import android.os.Build;
 import android.util.JsonReader;
 import android.util.JsonWriter;
@@ -42,9 +43,11 @@ import android.util.JsonWriter;
 import androidx.test.core.app.ActivityScenario;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.coincollection.ChangeJournal;
 import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
+import com.coincollection.CollectionPage;
 import com.coincollection.DatabaseAdapter;
 import com.coincollection.ExportImportHelper;
 import com.coincollection.MainActivity;
@@ -372,6 +375,305 @@ public class ExportImportTests extends BaseTestCase {
         }
     }
 
+    /**
+     * Test that importing a large backup uses the bulk insert path and completes quickly
+     */
+    @Test
+    public void test_jsonImportLargeBackupTiming() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                // Set up a large number of collections
+                ArrayList<String> collectionNames = new ArrayList<>();
+                for (int i = 0; i < 40; i++) {
+                    collectionNames.add("Large Backup " + i);
+                }
+                assertTrue(setupCollectionsWithNames(activity, collectionNames));
+                ArrayList<ArrayList<CoinSlot>> beforeCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, collectionNames, true);
+                int totalCoins = 0;
+                for (ArrayList<CoinSlot> coinList : beforeCoinLists) {
+                    totalCoins += coinList.size();
+                }
+
+                // Export the collections
+                File exportFile = getTempFile("json-large-export.json");
+                ExportImportHelper helper = new ExportImportHelper(activity.mRes, activity.mDbAdapter);
+                OutputStream outputStream = openOutputStream(exportFile);
+                assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                        helper.exportCollectionsToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME));
+                closeStream(outputStream);
+
+                // Run import and check the timing and results
+                InputStream inputStream = openInputStream(exportFile);
+                assertEquals("", helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                assertEquals(totalCoins, helper.getLastImportRowCount());
+                assertTrue("Import took " + helper.getLastImportDurationMs() + " ms",
+                        helper.getLastImportDurationMs() < 20000);
+                assertTrue(helper.getLastImportRowsPerSecond() > 0);
+                ArrayList<String> afterCollectionNames = getCollectionNames(activity);
+                assertEquals(collectionNames, afterCollectionNames);
+                ArrayList<ArrayList<CoinSlot>> afterCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, afterCollectionNames, true);
+                compareListOfCoinSlotLists(beforeCoinLists, afterCoinLists, true);
+            });
+        }
+    }
+
+    /**
+     * Test importing collections with names that start like the database index names
+     */
+    @Test
+    public void test_jsonImportIndexLikeNames() {
+        final ArrayList<String> namesToTest = new ArrayList<>(Arrays.asList(
+                "Index_Cents",
+                "index_Quarters",
+                "INDEX_"
+        ));
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                // Set up collections
+                assertTrue(setupCollectionsWithNames(activity, namesToTest));
+                ArrayList<ArrayList<CoinSlot>> beforeCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, namesToTest, true);
+
+                // Export the collections
+                File exportFile = getTempFile("json-index-names-export.json");
+                ExportImportHelper helper = new ExportImportHelper(activity.mRes, activity.mDbAdapter);
+                OutputStream outputStream = openOutputStream(exportFile);
+                assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                        helper.exportCollectionsToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME));
+                closeStream(outputStream);
+
+                // Run import and check results
+                InputStream inputStream = openInputStream(exportFile);
+                assertEquals("", helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                ArrayList<String> afterCollectionNames = getCollectionNames(activity);
+                assertEquals(namesToTest, afterCollectionNames);
+                ArrayList<ArrayList<CoinSlot>> afterCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, afterCollectionNames, true);
+                compareListOfCoinSlotLists(beforeCoinLists, afterCoinLists, true);
+            });
+        }
+    }
+
+    /**
+     * Test exporting the changes since a JSON export and importing them on top of it
+     */
+    @Test
+    public void test_jsonExportChanges() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                assertTrue(setupOneOfEachCollectionTypes(activity));
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                ExportImportHelper helper = new ExportImportHelper(activity.mRes, dbAdapter);
+
+                // Export everything, recording the journal id
+                File baseFile = getTempFile("json-export-base.json");
+                OutputStream outputStream = openOutputStream(baseFile);
+                assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                        helper.exportCollectionsToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME));
+                closeStream(outputStream);
+                long baseJournalId = helper.getLastExportJournalId();
+                assertEquals(dbAdapter.getLatestJournalId(), baseJournalId);
+
+                // Change coins in one collection, rename one, delete one, change the display of
+                // one, create a copy and swap the first two collections
+                ArrayList<String> names = getCollectionNames(activity);
+                ArrayList<CoinSlot> coinList = dbAdapter.getCoinList(names.get(0), true);
+                dbAdapter.toggleInCollection(names.get(0), coinList.get(0));
+                dbAdapter.removeCoinSlotFromCollection(coinList.get(1), names.get(0), coinList.size() - 1);
+                CoinSlot newCoinSlot = new CoinSlot("New Coin", "", dbAdapter.getNextCoinSortOrder(names.get(0)));
+                newCoinSlot.setCustomCoin(true);
+                dbAdapter.addCoinSlotToCollection(newCoinSlot, names.get(0), true, coinList.size());
+                dbAdapter.updateCollectionName(names.get(1), "Renamed Collection");
+                dbAdapter.toggleInCollection("Renamed Collection", dbAdapter.getCoinList("Renamed Collection", false).get(0));
+                dbAdapter.dropCollectionTable(names.get(2));
+                // Display changes aren't journaled, but are still exported
+                long displayJournalId = dbAdapter.getLatestJournalId();
+                dbAdapter.updateTableDisplay(names.get(3), CollectionPage.ADVANCED_DISPLAY);
+                assertEquals(displayJournalId, dbAdapter.getLatestJournalId());
+                ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+                dbAdapter.getAllTables(collectionListEntries);
+                CollectionListInfo copyInfo = null;
+                for (CollectionListInfo info : collectionListEntries) {
+                    if (info.getName().equals(names.get(3))) {
+                        copyInfo = info;
+                    }
+                }
+                assertNotNull(copyInfo);
+                dbAdapter.createAndPopulateNewTable(new CollectionListInfo("Copied Collection", copyInfo.getMax(),
+                                copyInfo.getCollected(), copyInfo.getCollectionTypeIndex(), copyInfo.getDisplayType(),
+                                copyInfo.getStartYear(), copyInfo.getEndYear(), copyInfo.getMintMarkFlags(),
+                                copyInfo.getCheckboxFlags()),
+                        dbAdapter.getNextDisplayOrder(), dbAdapter.getCoinList(names.get(3), true));
+                ArrayList<String> orderedNames = getCollectionNames(activity);
+                orderedNames.add(0, orderedNames.remove(1));
+                dbAdapter.updateDisplayOrders(orderedNames);
+
+                ArrayList<String> changedNames = getCollectionNames(activity);
+                assertEquals(orderedNames, changedNames);
+                ArrayList<ArrayList<CoinSlot>> changedCoinLists = getCoinSlotListsFromCollectionNames(dbAdapter, changedNames, true);
+                ArrayList<CollectionListInfo> changedEntries = new ArrayList<>();
+                dbAdapter.getAllTables(changedEntries);
+
+                // Export the changes
+                File changesFile = getTempFile("json-export-changes.json");
+                outputStream = openOutputStream(changesFile);
+                assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                        helper.exportChangesToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME, baseJournalId));
+                closeStream(outputStream);
+                long changesJournalId = helper.getLastExportJournalId();
+                assertEquals(dbAdapter.getLatestJournalId(), changesJournalId);
+
+                // The changes can't be imported on top of collections that weren't imported
+                // from the export they were made after
+                InputStream inputStream = openInputStream(changesFile);
+                assertEquals(activity.mRes.getString(R.string.error_import_changes_base),
+                        helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                assertEquals(changedNames, getCollectionNames(activity));
+
+                // Restore the first export, then apply the changes on top of it
+                inputStream = openInputStream(baseFile);
+                assertEquals("", helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                assertEquals(names, getCollectionNames(activity));
+                assertEquals(baseJournalId, helper.getLastImportJournalId());
+                long importJournalId = dbAdapter.getLatestJournalId();
+                inputStream = openInputStream(changesFile);
+                assertEquals("", helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                assertEquals(changesJournalId, helper.getLastImportJournalId());
+
+                // The coin changes are journaled per coin
+                boolean removedCoinJournaled = false;
+                Cursor cursor = dbAdapter.getJournalEntries(importJournalId, 100);
+                while (cursor.moveToNext()) {
+                    ChangeJournal.Entry entry = new ChangeJournal.Entry(cursor);
+                    assertTrue(entry.getOp() != ChangeJournal.OP_UPDATE_COLLECTION);
+                    if (entry.getOp() == ChangeJournal.OP_REMOVE_COIN) {
+                        assertEquals(names.get(0), entry.getCollectionName());
+                        assertEquals(coinList.get(1).getDatabaseId(), entry.getCoinId());
+                        removedCoinJournaled = true;
+                    }
+                }
+                cursor.close();
+                assertTrue(removedCoinJournaled);
+
+                // Check that the result matches the changed collections, keeping the coin ids
+                assertEquals(changedNames, getCollectionNames(activity));
+                ArrayList<ArrayList<CoinSlot>> afterCoinLists = getCoinSlotListsFromCollectionNames(dbAdapter, changedNames, true);
+                compareListOfCoinSlotLists(changedCoinLists, afterCoinLists, true);
+                for (int i = 0; i < changedCoinLists.size(); i++) {
+                    for (int j = 0; j < changedCoinLists.get(i).size(); j++) {
+                        assertEquals(changedCoinLists.get(i).get(j).getDatabaseId(),
+                                afterCoinLists.get(i).get(j).getDatabaseId());
+                    }
+                }
+                ArrayList<CollectionListInfo> afterEntries = new ArrayList<>();
+                dbAdapter.getAllTables(afterEntries);
+                assertEquals(changedEntries.size(), afterEntries.size());
+                for (int i = 0; i < changedEntries.size(); i++) {
+                    compareCollectionListInfos(changedEntries.get(i), afterEntries.get(i));
+                }
+                assertEquals(CollectionPage.ADVANCED_DISPLAY, dbAdapter.fetchTableDisplay(names.get(3)));
+
+                // The same changes can't be imported twice, by this helper or a new one with
+                // the saved journal id
+                inputStream = openInputStream(changesFile);
+                assertEquals(activity.mRes.getString(R.string.error_import_changes_base),
+                        helper.importCollectionsFromJson(inputStream));
+                closeStream(inputStream);
+                assertEquals(changesJournalId, helper.getLastImportJournalId());
+                inputStream = openInputStream(changesFile);
+                assertEquals(activity.mRes.getString(R.string.error_import_changes_base),
+                        new ExportImportHelper(activity.mRes, dbAdapter).importCollectionsFromJson(
+                                inputStream, changesJournalId));
+                closeStream(inputStream);
+                assertEquals(changedNames, getCollectionNames(activity));
+                compareListOfCoinSlotLists(changedCoinLists,
+                        getCoinSlotListsFromCollectionNames(dbAdapter, changedNames, true), true);
+
+                // The changes can't be exported from a point that isn't in the journal
+                outputStream = openOutputStream(getTempFile("json-export-bad-changes.json"));
+                assertEquals(activity.mRes.getString(R.string.error_no_export_checkpoint),
+                        helper.exportChangesToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME,
+                                dbAdapter.getLatestJournalId() + 1));
+                closeStream(outputStream);
+                assertEquals(-1, helper.getLastExportJournalId());
+            });
+        }
+    }
+
+    /**
+     * Test exporting while coins are toggled from another thread
+     */
+    @Test
+    public void test_exportWhileToggling() {
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                assertTrue(setupOneOfEachCollectionTypes(activity));
+                ArrayList<String> collectionNames = getCollectionNames(activity);
+                final String toggleCollectionName = collectionNames.get(0);
+                final ArrayList<CoinSlot> toggleCoinList = activity.mDbAdapter.getCoinList(toggleCollectionName, false);
+                ArrayList<ArrayList<CoinSlot>> beforeCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, collectionNames, true);
+
+                // Toggle each coin an even number of times so the final state is unchanged
+                final int numToggles = 20;
+                final ArrayList<Throwable> toggleErrors = new ArrayList<>();
+                Thread toggleThread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < numToggles; i++) {
+                            for (CoinSlot coinSlot : toggleCoinList) {
+                                activity.mDbAdapter.toggleInCollection(toggleCollectionName, coinSlot);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (toggleErrors) {
+                            toggleErrors.add(e);
+                        }
+                    }
+                });
+                toggleThread.start();
+
+                // Export repeatedly while the toggles are happening
+                ExportImportHelper helper = new ExportImportHelper(activity.mRes, activity.mDbAdapter);
+                for (int i = 0; i < 5; i++) {
+                    File exportFile = getTempFile("json-export-toggle-" + i + ".json");
+                    OutputStream outputStream = openOutputStream(exportFile);
+                    assertEquals(activity.mRes.getString(R.string.success_export, LEGACY_EXPORT_FOLDER_NAME),
+                            helper.exportCollectionsToJson(outputStream, LEGACY_EXPORT_FOLDER_NAME));
+                    closeStream(outputStream);
+                }
+                try {
+                    toggleThread.join();
+                } catch (InterruptedException e) {
+                    fail();
+                }
+                assertTrue(toggleErrors.toString(), toggleErrors.isEmpty());
+
+                // Check that the data is unchanged and the collected counts are correct
+                ArrayList<ArrayList<CoinSlot>> afterCoinLists = getCoinSlotListsFromCollectionNames(activity.mDbAdapter, collectionNames, true);
+                compareListOfCoinSlotLists(beforeCoinLists, afterCoinLists, true);
+                ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+                activity.mDbAdapter.getAllTables(collectionListEntries);
+                for (int i = 0; i < collectionListEntries.size(); i++) {
+                    int numCollected = 0;
+                    for (CoinSlot coinSlot : afterCoinLists.get(i)) {
+                        numCollected += coinSlot.isInCollection() ? 1 : 0;
+                    }
+                    assertEquals(numCollected, collectionListEntries.get(i).getCollected());
+                }
+            });
+        }
+    }
+
     /**
      * Test importing a saved collection
      */
@@ -20,21 +20,38 @@
 
 import static com.spencerpages.SharedTest.COLLECTION_LIST_INFO_SCENARIOS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
 
 import android.content.Intent;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.os.Build;
+import android.os.Looper;
 
 import androidx.test.core.app.ActivityScenario;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.coincollection.ChangeJournal;
+import com.coincollection.CoinSlot;
 import com.coincollection.CollectionInfo;
 import com.coincollection.CollectionListInfo;
+import com.coincollection.CollectionListRepository;
+import com.coincollection.CollectionStatistics;
+import com.coincollection.CollectionStatisticsService;
+import com.coincollection.DatabaseAdapter;
 import com.coincollection.MainActivity;
 import com.coincollection.ReorderAdapter;
 import com.coincollection.ReorderCollections;
 import com.spencerpages.MainApplication;
+import com.spencerpages.R;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -43,6 +60,9 @@ import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 
 @RunWith(RobolectricTestRunner.class)
 // TODO - Must keep at 28 until Robolectric supports Java 9 (required to use 29+)
@@ -148,6 +168,98 @@ public class MainActivityTests extends BaseTestCase {
         }
     }
 
+    /**
+     * Test that the reorder fragment keeps the order the user has chosen when collections
+     * are renamed, deleted and created while it's open
+     */
+    @Test
+    public void test_reorderFragmentChanges() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                for (int i = 0; i < COLLECTION_LIST_INFO_SCENARIOS.length; i++) {
+                    dbAdapter.createAndPopulateNewTable(COLLECTION_LIST_INFO_SCENARIOS[i], i, null);
+                }
+                activity.updateCollectionListFromDatabase();
+                shadowOf(Looper.getMainLooper()).idle();
+
+                ReorderCollections reorderFragment = activity.launchReorderFragment();
+                assertNotNull(reorderFragment);
+                activity.getSupportFragmentManager().executePendingTransactions();
+                ReorderAdapter adapter = reorderFragment.mAdapter;
+                assertNotNull(adapter);
+
+                // Move the last collection to the top without saving the order
+                int numCollections = adapter.mItems.size();
+                for (int i = 0; i < numCollections - 1; i++) {
+                    adapter.onItemMove(numCollections - 1, i);
+                }
+                ArrayList<String> expectedNames = new ArrayList<>();
+                for (CollectionListInfo info : adapter.mItems) {
+                    expectedNames.add(info.getName());
+                }
+                assertEquals(COLLECTION_LIST_INFO_SCENARIOS[numCollections - 1].getName(), expectedNames.get(0));
+
+                // Rename and delete collections, and create a new one
+                String renamedName = "Reorder Renamed";
+                dbAdapter.updateCollectionName(expectedNames.get(1), renamedName);
+                expectedNames.set(1, renamedName);
+                dbAdapter.dropCollectionTable(expectedNames.get(2));
+                expectedNames.remove(2);
+                CollectionListInfo base = COLLECTION_LIST_INFO_SCENARIOS[0];
+                String createdName = "Reorder Created";
+                dbAdapter.createAndPopulateNewTable(new CollectionListInfo(createdName, base.getMax(),
+                        base.getCollected(), base.getCollectionTypeIndex(), base.getDisplayType(),
+                        base.getStartYear(), base.getEndYear(), base.getMintMarkFlags(),
+                        base.getCheckboxFlags()), dbAdapter.getNextDisplayOrder(), null);
+                expectedNames.add(createdName);
+                shadowOf(Looper.getMainLooper()).idle();
+
+                // The user's order is kept, with the new collection at the end
+                ArrayList<String> itemNames = new ArrayList<>();
+                for (CollectionListInfo info : adapter.mItems) {
+                    itemNames.add(info.getName());
+                }
+                assertEquals(expectedNames, itemNames);
+
+                // The main screen applied the same changes in the saved order
+                ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+                dbAdapter.getAllTables(collectionListEntries);
+                assertEquals(collectionListEntries.size(), activity.mNumberOfCollections);
+                for (int i = 0; i < collectionListEntries.size(); i++) {
+                    assertEquals(collectionListEntries.get(i).getName(),
+                            activity.mCollectionListEntries.get(i).getName());
+                }
+
+                // A collection created and then renamed is added with its new name
+                dbAdapter.createAndPopulateNewTable(new CollectionListInfo("Reorder Temp", base.getMax(),
+                        base.getCollected(), base.getCollectionTypeIndex(), base.getDisplayType(),
+                        base.getStartYear(), base.getEndYear(), base.getMintMarkFlags(),
+                        base.getCheckboxFlags()), dbAdapter.getNextDisplayOrder(), null);
+                dbAdapter.updateCollectionName("Reorder Temp", "Reorder Temp Renamed");
+                expectedNames.add("Reorder Temp Renamed");
+                shadowOf(Looper.getMainLooper()).idle();
+                itemNames.clear();
+                for (CollectionListInfo info : adapter.mItems) {
+                    itemNames.add(info.getName());
+                }
+                assertEquals(expectedNames, itemNames);
+
+                // Saving stores the user's order
+                activity.handleCollectionsReordered(adapter.mItems);
+                dbAdapter.getAllTables(collectionListEntries);
+                itemNames.clear();
+                for (CollectionListInfo info : collectionListEntries) {
+                    itemNames.add(info.getName());
+                }
+                assertEquals(expectedNames, itemNames);
+            });
+        }
+    }
+
     /**
      * Make sure the doesCollectionTypeUseDates method works correctly
      */
@@ -163,4 +275,559 @@ public class MainActivityTests extends BaseTestCase {
             }
         }
     }
+
+    /**
+     * Make sure reordering collections only updates the collections that moved
+     */
+    @Test
+    public void test_updateDisplayOrders() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                ArrayList<String> orderedNames = new ArrayList<>();
+                for (int i = 0; i < COLLECTION_LIST_INFO_SCENARIOS.length; i++) {
+                    CollectionListInfo info = COLLECTION_LIST_INFO_SCENARIOS[i];
+                    activity.mDbAdapter.createAndPopulateNewTable(info, i, null);
+                    orderedNames.add(info.getName());
+                }
+                int numCollections = orderedNames.size();
+
+                // Nothing to update if the order didn't change
+                assertEquals(0, activity.mDbAdapter.updateDisplayOrders(orderedNames));
+
+                // Swapping two collections only updates those two
+                Collections.swap(orderedNames, 1, 2);
+                assertEquals(2, activity.mDbAdapter.updateDisplayOrders(orderedNames));
+                assertEquals(orderedNames, getCollectionNamesInDisplayOrder(activity));
+
+                // Moving the last collection to the front updates all of them
+                orderedNames.add(0, orderedNames.remove(numCollections - 1));
+                assertEquals(numCollections, activity.mDbAdapter.updateDisplayOrders(orderedNames));
+                assertEquals(orderedNames, getCollectionNamesInDisplayOrder(activity));
+
+                // Deleting the second to last collection only renumbers the last one
+                activity.mDbAdapter.dropCollectionTable(orderedNames.remove(numCollections - 2));
+                assertEquals(1, activity.mDbAdapter.compactDisplayOrders());
+                assertEquals(0, activity.mDbAdapter.compactDisplayOrders());
+                assertEquals(orderedNames, getCollectionNamesInDisplayOrder(activity));
+            });
+        }
+    }
+
+    /**
+     * Get the collection names from the database in display order
+     * @param activity activity with the database open
+     * @return list of collection names
+     */
+    private ArrayList<String> getCollectionNamesInDisplayOrder(MainActivity activity) {
+        ArrayList<CollectionListInfo> collectionListEntries = new ArrayList<>();
+        activity.mDbAdapter.getAllTables(collectionListEntries);
+        ArrayList<String> names = new ArrayList<>();
+        for (CollectionListInfo info : collectionListEntries) {
+            names.add(info.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Test checking collection names and picking names for copies
+     */
+    @Test
+    public void test_collectionNames() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                CollectionListInfo info = COLLECTION_LIST_INFO_SCENARIOS[0];
+                String name = info.getName();
+                assertEquals(-1, dbAdapter.checkCollectionName(name));
+                dbAdapter.createAndPopulateNewTable(info, 0, null);
+
+                // Names are compared ignoring case
+                assertEquals(R.string.collection_name_exists, dbAdapter.checkCollectionName(name));
+                assertEquals(R.string.collection_name_exists,
+                        dbAdapter.checkCollectionName(name.toUpperCase(Locale.getDefault())));
+                assertEquals(R.string.collection_name_reserved,
+                        dbAdapter.checkCollectionName(CollectionListInfo.TBL_COLLECTION_INFO));
+                assertEquals(R.string.collection_name_reserved,
+                        dbAdapter.checkCollectionName(ChangeJournal.TBL_CHANGE_JOURNAL));
+                assertEquals(R.string.collection_name_reserved,
+                        dbAdapter.checkCollectionName("index_sortOrder_" + name));
+                assertEquals(R.string.collection_name_reserved,
+                        dbAdapter.checkCollectionName("INDEX_inCollection_" + name));
+                assertEquals(R.string.collection_name_reserved,
+                        dbAdapter.checkCollectionName("index_name_" + CollectionListInfo.TBL_COLLECTION_INFO));
+
+                // Names that only look like index names are allowed, but a collection can't
+                // be created if its index names are taken by another collection
+                assertEquals(-1, dbAdapter.checkCollectionName("Index_Cents"));
+                dbAdapter.createAndPopulateNewTable(info.copy("index_sortOrder_Cents"), 1, null);
+                assertEquals(R.string.collection_name_reserved, dbAdapter.checkCollectionName("Cents"));
+                dbAdapter.dropCollectionTable("index_sortOrder_Cents");
+                assertEquals(-1, dbAdapter.checkCollectionName("Cents"));
+
+                // Name lookups use the collection name index
+                String plan = dbAdapter.explainQueryPlan("SELECT " + CollectionListInfo.COL_ID + " FROM "
+                        + CollectionListInfo.TBL_COLLECTION_INFO + " WHERE " + CollectionListInfo.COL_NAME
+                        + "=? COLLATE NOCASE", name);
+                assertTrue(plan, plan.contains("index_name_" + CollectionListInfo.TBL_COLLECTION_INFO));
+
+                // Renaming and deleting keep the names in sync
+                String newName = "Renamed Collection";
+                dbAdapter.updateCollectionName(name, newName);
+                assertEquals(-1, dbAdapter.checkCollectionName(name));
+                assertEquals(R.string.collection_name_exists, dbAdapter.checkCollectionName(newName));
+
+                // Copy names use the lowest available number
+                String suffix = " (copy)";
+                ArrayList<String> copyNames = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    String copyName = dbAdapter.getAvailableCollectionName(newName, suffix);
+                    dbAdapter.createAndPopulateNewTable(info.copy(copyName), i + 1, null);
+                    copyNames.add(copyName);
+                }
+                assertEquals(newName + suffix, copyNames.get(0));
+                assertEquals(newName + suffix + "1", copyNames.get(1));
+                assertEquals(newName + suffix + "2", copyNames.get(2));
+                dbAdapter.dropCollectionTable(copyNames.get(1));
+                assertEquals(-1, dbAdapter.checkCollectionName(copyNames.get(1)));
+                assertEquals(copyNames.get(1), dbAdapter.getAvailableCollectionName(newName, suffix));
+            });
+        }
+    }
+    /**
+     * Test computing and caching the statistics across collections
+     */
+    @Test
+    public void test_collectionStatistics() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                HashMap<String, int[]> expectedByYear = new HashMap<>();
+                HashMap<String, int[]> expectedByMint = new HashMap<>();
+                HashMap<String, int[]> expectedByGrade = new HashMap<>();
+                HashMap<String, int[]> expectedByType = new HashMap<>();
+                FullCollection firstCollection = null;
+                for (int i = 0; i < 3; i++) {
+                    CollectionInfo coinType = MainApplication.COLLECTION_TYPES[i];
+                    for (FullCollection collection : getRandomTestScenarios(coinType, 2)) {
+                        dbAdapter.createAndPopulateNewTable(collection.mCollectionListInfo,
+                                collection.mDisplayOrder, collection.mCoinList);
+                        if (firstCollection == null) {
+                            firstCollection = collection;
+                        }
+                        for (CoinSlot coinSlot : collection.mCoinList) {
+                            String identifier = coinSlot.getIdentifier();
+                            String year = identifier.matches("^[0-9]{4}.*") ? identifier.substring(0, 4) : "";
+                            String mint = (coinSlot.getMint() == null) ? "" : coinSlot.getMint().trim();
+                            addExpectedCount(expectedByYear, year, coinSlot.isInCollection());
+                            addExpectedCount(expectedByMint, mint, coinSlot.isInCollection());
+                            addExpectedCount(expectedByGrade, String.valueOf(coinSlot.getAdvancedGrades()),
+                                    coinSlot.isInCollection());
+                            addExpectedCount(expectedByType, coinType.getCoinType(), coinSlot.isInCollection());
+                        }
+                    }
+                }
+
+                CollectionStatisticsService service = new CollectionStatisticsService(dbAdapter);
+                CollectionStatistics statistics = service.getStatistics();
+                assertGroupsEqual(expectedByYear, statistics.getByYear());
+                assertGroupsEqual(expectedByMint, statistics.getByMint());
+                assertGroupsEqual(expectedByGrade, statistics.getByGrade());
+                assertGroupsEqual(expectedByType, statistics.getByType());
+
+                // Nothing changed, so the cached statistics are used
+                assertSame(statistics, service.getCachedStatistics());
+                assertSame(statistics, service.getStatistics());
+                assertEquals(1, service.getComputeCount());
+
+                // Changing a coin causes the statistics to be recomputed
+                assertNotNull(firstCollection);
+                CoinSlot coinSlot = firstCollection.mCoinList.get(0);
+                boolean inCollection = dbAdapter.toggleInCollection(
+                        firstCollection.mCollectionListInfo.getName(), coinSlot);
+                assertNull(service.getCachedStatistics());
+                CollectionStatistics newStatistics = service.getStatistics();
+                assertNotSame(statistics, newStatistics);
+                assertEquals(2, service.getComputeCount());
+                assertEquals(statistics.getTotal(), newStatistics.getTotal());
+                assertEquals(statistics.getCollected() + (inCollection ? 1 : -1), newStatistics.getCollected());
+            });
+        }
+    }
+
+    /**
+     * Test that each change is added to the change journal and that the journal is trimmed
+     */
+    @Test
+    public void test_changeJournal() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                FullCollection collection = getRandomTestScenarios(MainApplication.COLLECTION_TYPES[0], 1).get(0);
+                String name = collection.mCollectionListInfo.getName();
+                dbAdapter.createAndPopulateNewTable(collection.mCollectionListInfo,
+                        collection.mDisplayOrder, collection.mCoinList);
+                long checkpoint = dbAdapter.getLatestJournalId();
+                assertTrue(checkpoint > 0);
+
+                // Make one of each change
+                CoinSlot firstCoin = collection.mCoinList.get(0);
+                boolean inCollection = dbAdapter.toggleInCollection(name, firstCoin);
+                CoinSlot newCoin = new CoinSlot("Journal Coin", "", dbAdapter.getNextCoinSortOrder(name));
+                dbAdapter.addCoinSlotToCollection(newCoin, name, true, collection.mCoinList.size() + 1);
+                dbAdapter.removeCoinSlotFromCollection(newCoin, name, collection.mCoinList.size());
+                dbAdapter.updateCollectionName(name, name + " Renamed");
+
+                // Failed changes aren't added
+                try {
+                    dbAdapter.removeCoinSlotFromCollection(newCoin, name + " Renamed", collection.mCoinList.size());
+                    fail();
+                } catch (SQLException e) {
+                    // Expected, since the coin was already removed
+                }
+
+                // Read the entries two at a time
+                ArrayList<ChangeJournal.Entry> entries = new ArrayList<>();
+                long lastId = checkpoint;
+                while (true) {
+                    Cursor cursor = dbAdapter.getJournalEntries(lastId, 2);
+                    if (!cursor.moveToFirst()) {
+                        cursor.close();
+                        break;
+                    }
+                    do {
+                        ChangeJournal.Entry entry = new ChangeJournal.Entry(cursor);
+                        assertTrue(entry.getId() > lastId);
+                        lastId = entry.getId();
+                        entries.add(entry);
+                    } while (cursor.moveToNext());
+                    cursor.close();
+                }
+                assertEquals(dbAdapter.getLatestJournalId(), lastId);
+                assertEquals(4, entries.size());
+                assertEquals(ChangeJournal.OP_SET_IN_COLLECTION, entries.get(0).getOp());
+                assertEquals(name, entries.get(0).getCollectionName());
+                assertEquals(firstCoin.getDatabaseId(), entries.get(0).getCoinId());
+                assertEquals(inCollection ? "1" : "0", entries.get(0).getValue());
+                assertEquals(ChangeJournal.OP_ADD_COIN, entries.get(1).getOp());
+                assertEquals(newCoin.getDatabaseId(), entries.get(1).getCoinId());
+                assertEquals(ChangeJournal.OP_REMOVE_COIN, entries.get(2).getOp());
+                assertEquals(newCoin.getDatabaseId(), entries.get(2).getCoinId());
+                assertEquals(ChangeJournal.OP_RENAME_COLLECTION, entries.get(3).getOp());
+                assertEquals(name + " Renamed", entries.get(3).getCollectionName());
+                assertEquals(name, entries.get(3).getValue());
+
+                // Only the most recent entries are kept
+                HashMap<Long, Boolean> coinStates = new HashMap<>();
+                for (CoinSlot coinSlot : collection.mCoinList) {
+                    coinStates.put(coinSlot.getDatabaseId(), true);
+                }
+                while (dbAdapter.getLatestJournalId() <= ChangeJournal.MAX_JOURNAL_ENTRIES + checkpoint) {
+                    dbAdapter.updateInCollection(name + " Renamed", coinStates);
+                }
+                dbAdapter.trimChangeJournal();
+                Cursor cursor = dbAdapter.getJournalEntries(0, 2 * ChangeJournal.MAX_JOURNAL_ENTRIES);
+                assertEquals(ChangeJournal.MAX_JOURNAL_ENTRIES, cursor.getCount());
+                assertTrue(cursor.moveToFirst());
+                assertTrue(new ChangeJournal.Entry(cursor).getId() > checkpoint);
+                cursor.close();
+            });
+        }
+    }
+
+    /**
+     * Test that the collection list repository only reads the collections that changed
+     */
+    @Test
+    public void test_collectionListRepository() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                ArrayList<FullCollection> collections = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    collections.add(getRandomTestScenarios(MainApplication.COLLECTION_TYPES[i], 1).get(0));
+                }
+                for (int i = 0; i < collections.size(); i++) {
+                    FullCollection collection = collections.get(i);
+                    dbAdapter.createAndPopulateNewTable(collection.mCollectionListInfo, i, collection.mCoinList);
+                }
+                final ArrayList<String> events = new ArrayList<>();
+                CollectionListRepository repository = new CollectionListRepository(new CollectionListRepository.Listener() {
+                    @Override
+                    public void onCollectionChanged(int index) {
+                        events.add("changed " + index);
+                    }
+
+                    @Override
+                    public void onCollectionInserted(int index) {
+                        events.add("inserted " + index);
+                    }
+
+                    @Override
+                    public void onCollectionRemoved(int index) {
+                        events.add("removed " + index);
+                    }
+
+                    @Override
+                    public void onCollectionMoved(int fromIndex, int toIndex) {
+                        events.add("moved " + fromIndex + " " + toIndex);
+                    }
+
+                    @Override
+                    public void onCollectionListReloaded() {
+                        events.add("reloaded");
+                    }
+                });
+
+                // The first refresh reads the whole list, and later ones without changes do nothing
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("reloaded"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+                repository.refresh(dbAdapter);
+                assertTrue(events.isEmpty());
+
+                // Changing a coin only reads that collection again
+                FullCollection second = collections.get(1);
+                String secondName = second.mCollectionListInfo.getName();
+                dbAdapter.toggleInCollection(secondName, second.mCoinList.get(0));
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("changed 1"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+
+                // Renaming keeps the collection in place
+                dbAdapter.updateCollectionName(secondName, secondName + " Renamed");
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("changed 1"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+
+                // Reordering moves the collections
+                ArrayList<String> orderedNames = new ArrayList<>();
+                for (CollectionListInfo info : repository.getCollections()) {
+                    orderedNames.add(0, info.getName());
+                }
+                dbAdapter.updateDisplayOrders(orderedNames);
+                repository.refresh(dbAdapter);
+                assertFalse(events.isEmpty());
+                for (String event : events) {
+                    assertTrue(event, event.startsWith("moved"));
+                }
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+
+                // Deleting and creating collections
+                dbAdapter.dropCollectionTable(orderedNames.get(0));
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("removed 0"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+                FullCollection created = getRandomTestScenarios(MainApplication.COLLECTION_TYPES[3], 1).get(0);
+                dbAdapter.createAndPopulateNewTable(created.mCollectionListInfo, 3, created.mCoinList);
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("inserted 2"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+
+                // After invalidating, the whole list is read again
+                repository.invalidateAll();
+                repository.refresh(dbAdapter);
+                assertEquals(Collections.singletonList("reloaded"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+
+                // Changes already read from the journal are applied without reading it again,
+                // and changes already applied are skipped
+                String firstName = repository.get(0).getName();
+                long checkpoint = dbAdapter.getLatestJournalId();
+                dbAdapter.toggleInCollection(firstName, dbAdapter.getCoinList(firstName, false).get(0));
+                ArrayList<ChangeJournal.Entry> entries = new ArrayList<>();
+                Cursor cursor = dbAdapter.getJournalEntries(checkpoint, 100);
+                while (cursor.moveToNext()) {
+                    entries.add(new ChangeJournal.Entry(cursor));
+                }
+                cursor.close();
+                repository.applyChanges(dbAdapter, entries);
+                assertEquals(Collections.singletonList("changed 0"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+                events.clear();
+                repository.applyChanges(dbAdapter, entries);
+                repository.refresh(dbAdapter);
+                assertTrue(events.isEmpty());
+
+                // Missing changes cause the whole list to be read again
+                dbAdapter.toggleInCollection(firstName, dbAdapter.getCoinList(firstName, false).get(0));
+                checkpoint = dbAdapter.getLatestJournalId();
+                dbAdapter.toggleInCollection(firstName, dbAdapter.getCoinList(firstName, false).get(0));
+                entries.clear();
+                cursor = dbAdapter.getJournalEntries(checkpoint, 100);
+                while (cursor.moveToNext()) {
+                    entries.add(new ChangeJournal.Entry(cursor));
+                }
+                cursor.close();
+                repository.applyChanges(dbAdapter, entries);
+                assertEquals(Collections.singletonList("reloaded"), events);
+                assertRepositoryMatches(dbAdapter, repository);
+            });
+        }
+    }
+
+    /**
+     * Test that committed changes are published to the change listeners in batches
+     */
+    @Test
+    public void test_changeListeners() {
+
+        try(ActivityScenario<MainActivity> scenario = ActivityScenario.launch(
+                new Intent(ApplicationProvider.getApplicationContext(), MainActivity.class)
+                        .putExtra(MainActivity.UNIT_TEST_USE_ASYNC_TASKS, false))) {
+            scenario.onActivity(activity -> {
+                DatabaseAdapter dbAdapter = activity.mDbAdapter;
+                FullCollection collection = getRandomTestScenarios(MainApplication.COLLECTION_TYPES[0], 1).get(0);
+                String name = collection.mCollectionListInfo.getName();
+                dbAdapter.createAndPopulateNewTable(collection.mCollectionListInfo, 0, collection.mCoinList);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(1, activity.mNumberOfCollections);
+
+                final ArrayList<List<ChangeJournal.Entry>> batches = new ArrayList<>();
+                final int[] resetCount = new int[1];
+                DatabaseAdapter.ChangeListener listener = new DatabaseAdapter.ChangeListener() {
+                    @Override
+                    public void onDataChanged(List<ChangeJournal.Entry> changes) {
+                        batches.add(new ArrayList<>(changes));
+                    }
+
+                    @Override
+                    public void onDataReset() {
+                        resetCount[0]++;
+                    }
+                };
+                dbAdapter.addChangeListener(listener);
+
+                // Changes are delivered together once the main thread is idle
+                CoinSlot firstCoin = collection.mCoinList.get(0);
+                dbAdapter.toggleInCollection(name, firstCoin);
+                dbAdapter.updateCollectionName(name, name + " Renamed");
+                try {
+                    dbAdapter.removeCoinSlotFromCollection(new CoinSlot(-1, "", "", false, 0, false),
+                            name + " Renamed", collection.mCoinList.size() - 1);
+                    fail();
+                } catch (SQLException e) {
+                    // Expected, and rolled back changes aren't published
+                }
+                assertTrue(batches.isEmpty());
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(1, batches.size());
+                assertEquals(2, batches.get(0).size());
+                assertEquals(ChangeJournal.OP_SET_IN_COLLECTION, batches.get(0).get(0).getOp());
+                assertEquals(firstCoin.getDatabaseId(), batches.get(0).get(0).getCoinId());
+                assertEquals(ChangeJournal.OP_RENAME_COLLECTION, batches.get(0).get(1).getOp());
+
+                // The main screen updated its list from the changes
+                assertEquals(name + " Renamed", activity.mCollectionListEntries.get(0).getName());
+                assertEquals(dbAdapter.getCollectionInfo(name + " Renamed").getCollected(),
+                        activity.mCollectionListEntries.get(0).getCollected());
+
+                // A listener only gets changes made after it's registered
+                dbAdapter.toggleInCollection(name + " Renamed", firstCoin);
+                final ArrayList<ChangeJournal.Entry> lateChanges = new ArrayList<>();
+                DatabaseAdapter.ChangeListener lateListener = new DatabaseAdapter.ChangeListener() {
+                    @Override
+                    public void onDataChanged(List<ChangeJournal.Entry> changes) {
+                        lateChanges.addAll(changes);
+                    }
+
+                    @Override
+                    public void onDataReset() {
+                        fail();
+                    }
+                };
+                dbAdapter.addChangeListener(lateListener);
+                dbAdapter.updateCollectionName(name + " Renamed", name);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(2, batches.size());
+                assertEquals(2, batches.get(1).size());
+                assertEquals(1, lateChanges.size());
+                assertEquals(ChangeJournal.OP_RENAME_COLLECTION, lateChanges.get(0).getOp());
+                dbAdapter.removeChangeListener(lateListener);
+
+                // Too many changes at once are published as a reset
+                for (int i = 0; i <= DatabaseAdapter.MAX_PUBLISHED_CHANGES; i++) {
+                    dbAdapter.toggleInCollection(name, firstCoin);
+                }
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(2, batches.size());
+                assertEquals(1, resetCount[0]);
+
+                // Nothing is published after the listener is removed
+                dbAdapter.removeChangeListener(listener);
+                dbAdapter.toggleInCollection(name, firstCoin);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(2, batches.size());
+                assertEquals(1, resetCount[0]);
+            });
+        }
+    }
+
+    /**
+     * Checks that the repository holds the same collections as the database
+     * @param dbAdapter database adapter
+     * @param repository repository to check
+     */
+    private void assertRepositoryMatches(DatabaseAdapter dbAdapter, CollectionListRepository repository) {
+        ArrayList<CollectionListInfo> expected = new ArrayList<>();
+        dbAdapter.getAllTables(expected);
+        assertEquals(expected.size(), repository.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), repository.get(i).getName());
+            assertEquals(expected.get(i).getMax(), repository.get(i).getMax());
+            assertEquals(expected.get(i).getCollected(), repository.get(i).getCollected());
+        }
+    }
+
+    /**
+     * Adds a coin to the expected statistics counts
+     * @param groups expected counts
+     * @param key group key
+     * @param inCollection whether the coin is in the collection
+     */
+    private void addExpectedCount(HashMap<String, int[]> groups, String key, boolean inCollection) {
+        int[] counts = groups.get(key);
+        if (counts == null) {
+            counts = new int[2];
+            groups.put(key, counts);
+        }
+        counts[0]++;
+        counts[1] += inCollection ? 1 : 0;
+    }
+
+    /**
+     * Checks the statistics groups against the expected counts
+     * @param expected expected counts
+     * @param groups groups to check
+     */
+    private void assertGroupsEqual(HashMap<String, int[]> expected, List<CollectionStatistics.Group> groups) {
+        assertEquals(expected.size(), groups.size());
+        for (CollectionStatistics.Group group : groups) {
+            int[] counts = expected.get(group.getKey());
+            assertNotNull(group.getKey(), counts);
+            assertEquals(group.getKey(), counts[0], group.getTotal());
+            assertEquals(group.getKey(), counts[1], group.getCollected());
+        }
+    }
 }